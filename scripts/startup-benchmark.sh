@@ -0,0 +1,52 @@
+#!/usr/bin/env bash
+# Mierzy czas od uruchomienia JVM do pierwszej poprawnej odpowiedzi HTTP (time-to-first-request)
+# dla zwykłego startu i dla startu z AppCDS, AOT i profilem fast-startup.
+#
+# Wymaga zbudowania aplikacji profilem fast-startup:
+#   mvn -Pfast-startup -DskipTests package
+#   scripts/startup-benchmark.sh [liczba_powtórzeń]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS="${1:-5}"
+PORT="${PORT:-18080}"
+JAR="$(ls target/CapWSB-FitnessTracker-*.jar | head -n 1)"
+ARCHIVE="target/fitness-tracker.jsa"
+URL="http://localhost:${PORT}/v1/users/simple"
+
+[[ -f "$ARCHIVE" ]] || { echo "Missing $ARCHIVE - run: mvn -Pfast-startup -DskipTests package" >&2; exit 1; }
+
+now_ms() {
+  date +%s%3N
+}
+
+# Uruchamia aplikację z podanymi opcjami JVM i wypisuje czas do pierwszej odpowiedzi 200 w milisekundach.
+time_to_first_request() {
+  local started pid
+  started=$(now_ms)
+  java "$@" -jar "$JAR" --server.port="$PORT" > /dev/null 2>&1 &
+  pid=$!
+  until [[ "$(curl -s -o /dev/null -w '%{http_code}' "$URL" || true)" == "200" ]]; do
+    kill -0 "$pid" 2> /dev/null || { echo "Application exited before serving a request" >&2; exit 1; }
+    sleep 0.05
+  done
+  echo $(( $(now_ms) - started ))
+  kill "$pid"
+  wait "$pid" 2> /dev/null || true
+}
+
+benchmark() {
+  local name="$1" total=0 best="" elapsed
+  shift
+  for _ in $(seq "$RUNS"); do
+    elapsed=$(time_to_first_request "$@")
+    total=$(( total + elapsed ))
+    if [[ -z "$best" || "$elapsed" -lt "$best" ]]; then
+      best=$elapsed
+    fi
+  done
+  printf '%-10s runs=%d  avg=%d ms  best=%d ms\n' "$name" "$RUNS" $(( total / RUNS )) "$best"
+}
+
+benchmark baseline -Xshare:auto
+benchmark fast -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true -Dspring.profiles.active=fast-startup
@@ -2,12 +2,22 @@ package com.capgemini.wsb;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FitnessTracker {
 
+    /**
+     * Liczba kroków startu zapamiętywanych na potrzeby raportu startu i {@code /actuator/startup}.
+     */
+    private static final int STARTUP_STEPS_CAPACITY = 8192;
+
     public static void main(String[] args) {
-        SpringApplication.run(FitnessTracker.class, args);
+        SpringApplication application = new SpringApplication(FitnessTracker.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS_CAPACITY));
+        application.run(args);
     }
 
 }
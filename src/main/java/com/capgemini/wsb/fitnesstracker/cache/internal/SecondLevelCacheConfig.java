@@ -0,0 +1,54 @@
+package com.capgemini.wsb.fitnesstracker.cache.internal;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Konfiguracja cache drugiego poziomu i cache zapytań Hibernate (Ehcache przez JCache).
+ * <p>
+ * Regiony, ich limity i czasy życia opisane są w {@code ehcache.xml}. Statystyki Hibernate są włączone,
+ * dzięki czemu trafienia i chybienia w poszczególnych regionach widoczne są w Actuatorze jako metryki
+ * {@code hibernate.second.level.cache.requests} i {@code hibernate.cache.query.requests}. Podsumowania
+ * poszczególnych sesji nie są logowane.
+ */
+@Configuration
+class SecondLevelCacheConfig {
+
+    private static final String CACHE_CONFIG = "/ehcache.xml";
+
+    @Bean
+    HibernatePropertiesCustomizer secondLevelCacheCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager());
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            // Statystyki zbierane są dla metryk - bez logowania "Session Metrics" po każdej sesji.
+            properties.put(AvailableSettings.LOG_SESSION_METRICS, false);
+        };
+    }
+
+    /**
+     * Tworzy osobny {@link CacheManager} dla każdego kontekstu aplikacji. Hibernate zamyka go razem z fabryką sesji,
+     * więc współdzielony menedżer (domyślnie JCache zwraca jeden na URI) zostałby zamknięty pod innymi kontekstami,
+     * np. w testach z {@code @DirtiesContext}.
+     */
+    private static CacheManager hibernateCacheManager() {
+        EhcacheCachingProvider provider =
+                (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        XmlConfiguration configuration = new XmlConfiguration(SecondLevelCacheConfig.class.getResource(CACHE_CONFIG));
+        return provider.getCacheManager(URI.create("urn:fitnesstracker:hibernate:" + UUID.randomUUID()), configuration);
+    }
+}
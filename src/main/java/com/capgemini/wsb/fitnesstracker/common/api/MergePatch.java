@@ -0,0 +1,67 @@
+package com.capgemini.wsb.fitnesstracker.common.api;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.lang.Nullable;
+
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * JSON Merge Patch (RFC 7396) document restricted to a known set of top-level fields. Fields missing from
+ * the document stay unchanged. Unknown fields and removals ({@code null} values) are rejected, as every
+ * patchable field is required.
+ */
+public final class MergePatch {
+
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    private final JsonNode document;
+    private final ObjectMapper objectMapper;
+
+    private MergePatch(JsonNode document, ObjectMapper objectMapper) {
+        this.document = document;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param document      request body
+     * @param objectMapper  mapper used to convert field values
+     * @param allowedFields fields that may be patched
+     * @throws BusinessException if the document is not an object or contains a field that cannot be patched
+     */
+    public static MergePatch of(JsonNode document, ObjectMapper objectMapper, Set<String> allowedFields) {
+        if (!document.isObject()) {
+            throw new BusinessException("Merge patch must be a JSON object");
+        }
+        for (Iterator<String> names = document.fieldNames(); names.hasNext(); ) {
+            String name = names.next();
+            if (!allowedFields.contains(name)) {
+                throw new BusinessException("Field '%s' cannot be patched".formatted(name));
+            }
+        }
+        return new MergePatch(document, objectMapper);
+    }
+
+    /**
+     * @return new value of the field or {@code null} if the patch does not change it
+     * @throws BusinessException if the patch removes the field or its value cannot be converted
+     */
+    @Nullable
+    public <T> T get(String field, Class<T> type) {
+        JsonNode value = document.get(field);
+        if (value == null) {
+            return null;
+        }
+        if (value.isNull()) {
+            throw new BusinessException("Field '%s' cannot be removed".formatted(field));
+        }
+        try {
+            return objectMapper.treeToValue(value, type);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new BusinessException("Field '%s' has an invalid value".formatted(field));
+        }
+    }
+}
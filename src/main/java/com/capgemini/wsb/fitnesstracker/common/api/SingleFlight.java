@@ -0,0 +1,129 @@
+package com.capgemini.wsb.fitnesstracker.common.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller (the leader) runs the loader, and callers arriving
+ * while it runs wait for and share its result, or its exception.
+ * <p>
+ * A successful result may additionally be kept for a short {@code ttl}. Failures are never kept. The number of
+ * tracked keys is bounded by {@code maxKeys}; once it is reached, callers with new keys load directly without
+ * coalescing, so memory stays bounded under a flood of distinct keys. {@code maxKeys = 0} disables coalescing.
+ * <p>
+ * Followers receive the very same result instance as the leader, so results must not be mutated by callers.
+ * <p>
+ * Metrics: {@code singleflight.calls} tagged with {@code name} and {@code result} ({@code load}, {@code shared},
+ * {@code bypassed}) and the {@code singleflight.keys} gauge.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int maxKeys;
+    private final Counter loads;
+    private final Counter shared;
+    private final Counter bypassed;
+
+    public SingleFlight(String name, Duration ttl, int maxKeys, MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxKeys = maxKeys;
+        this.loads = meterRegistry.counter("singleflight.calls", "name", name, "result", "load");
+        this.shared = meterRegistry.counter("singleflight.calls", "name", name, "result", "shared");
+        this.bypassed = meterRegistry.counter("singleflight.calls", "name", name, "result", "bypassed");
+        Gauge.builder("singleflight.keys", flights, ConcurrentHashMap::size).tag("name", name).register(meterRegistry);
+    }
+
+    /**
+     * Returns the result of the in-flight or recently completed load of {@code key}, or runs {@code loader}.
+     *
+     * @param key    load key
+     * @param loader loads the value; runs in the calling thread when this caller becomes the leader
+     * @return loaded value
+     */
+    public V load(K key, Supplier<V> loader) {
+        Flight<V> flight = flights.get(key);
+        if (flight != null && flight.isExpired()) {
+            flights.remove(key, flight);
+            flight = null;
+        }
+        if (flight == null) {
+            if (flights.size() >= maxKeys) {
+                bypassed.increment();
+                return loader.get();
+            }
+            Flight<V> created = new Flight<>();
+            flight = flights.putIfAbsent(key, created);
+            if (flight == null) {
+                return lead(key, created, loader);
+            }
+        }
+        shared.increment();
+        return flight.await();
+    }
+
+    /**
+     * Drops the in-flight or kept result of {@code key}, so the next caller loads fresh data. Callers already
+     * waiting for that load still receive its result.
+     *
+     * @param key load key
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    private V lead(K key, Flight<V> flight, Supplier<V> loader) {
+        loads.increment();
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        if (ttlNanos > 0) {
+            flight.expiresAt = System.nanoTime() + ttlNanos;
+            CompletableFuture.delayedExecutor(ttlNanos, TimeUnit.NANOSECONDS).execute(() -> flights.remove(key, flight));
+        } else {
+            flights.remove(key, flight);
+        }
+        flight.result.complete(value);
+        return value;
+    }
+
+    private static final class Flight<V> {
+
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        boolean isExpired() {
+            return expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt >= 0;
+        }
+
+        V await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.capgemini.wsb.fitnesstracker.common.api;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sparse fieldset requested by a client with a {@code fields} query parameter (e.g. {@code ?fields=id,email}).
+ * Fields keep the requested order; duplicates are ignored.
+ */
+public final class SparseFieldset {
+
+    private SparseFieldset() {
+    }
+
+    /**
+     * @param fields    comma separated field names or {@code null} if the parameter was not sent
+     * @param available fields the endpoint can return
+     * @param defaults  fields returned when the parameter is missing
+     * @return requested fields
+     * @throws BusinessException if an unknown field is requested or the list is empty
+     */
+    public static List<String> parse(@Nullable String fields, List<String> available, List<String> defaults) {
+        if (fields == null) {
+            return defaults;
+        }
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!available.contains(name)) {
+                throw new BusinessException("Unknown field '%s', available fields: %s".formatted(name, String.join(",", available)));
+            }
+            requested.add(name);
+        }
+        if (requested.isEmpty()) {
+            throw new BusinessException("At least one field must be requested");
+        }
+        return List.copyOf(requested);
+    }
+}
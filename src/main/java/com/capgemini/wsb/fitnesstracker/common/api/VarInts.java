@@ -0,0 +1,63 @@
+package com.capgemini.wsb.fitnesstracker.common.api;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable-length encoding of {@code long} values, shared by the binary storage formats.
+ * Small values take fewer bytes (one byte for 0-127). Signed values are ZigZag-encoded first, so small
+ * negative deltas stay short as well.
+ * <p>
+ * All methods read and write at the buffer's current position, so they work directly on direct and
+ * memory-mapped buffers without copying.
+ */
+public final class VarInts {
+
+    /**
+     * Maximum number of bytes a single encoded {@code long} can take.
+     */
+    public static final int MAX_LENGTH = 10;
+
+    private VarInts() {
+    }
+
+    public static void writeUnsigned(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    public static void writeSigned(ByteBuffer buffer, long value) {
+        writeUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSigned(ByteBuffer buffer) {
+        long encoded = readUnsigned(buffer);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    /**
+     * @return number of bytes {@link #writeUnsigned(ByteBuffer, long)} would write for the value
+     */
+    public static int sizeOfUnsigned(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
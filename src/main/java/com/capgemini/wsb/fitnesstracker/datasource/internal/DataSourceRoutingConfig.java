@@ -0,0 +1,67 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Konfiguracja kierowania odczytów do replik. Aktywna tylko przy {@code datasource.routing.enabled=true};
+ * w przeciwnym wypadku używane jest standardowe, pojedyncze źródło danych Spring Boot.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+class DataSourceRoutingConfig {
+
+    @Bean
+    ReplicaHealthMonitor replicaHealthMonitor(DataSourceRoutingProperties properties, TaskScheduler taskScheduler) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<DataSourceRoutingProperties.Replica> configuredReplicas = properties.replicas();
+        for (int i = 0; i < configuredReplicas.size(); i++) {
+            DataSourceRoutingProperties.Replica replica = configuredReplicas.get(i);
+            replicas.put("replica-" + i, DataSourceBuilder.create()
+                    .url(replica.url())
+                    .username(replica.username())
+                    .password(replica.password())
+                    .build());
+        }
+        ReplicaHealthMonitor monitor = new ReplicaHealthMonitor(replicas, properties.maxLag(), properties.lagQuery());
+        monitor.checkReplicas();
+        taskScheduler.scheduleWithFixedDelay(monitor::checkReplicas, properties.healthCheckInterval());
+        return monitor;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(DataSourceProperties primaryProperties, ReplicaHealthMonitor replicaHealthMonitor) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReadWriteRoutingDataSource.PRIMARY, primaryProperties.initializeDataSourceBuilder().build());
+        targets.putAll(replicaHealthMonitor.replicas());
+        ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(replicaHealthMonitor);
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(targets.get(ReadWriteRoutingDataSource.PRIMARY));
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,32 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguracja kierowania odczytów do replik bazy danych. Baza główna konfigurowana jest standardowo przez
+ * {@code spring.datasource.*}.
+ *
+ * @param enabled             czy kierowanie odczytów do replik jest włączone
+ * @param replicas            lista replik
+ * @param maxLag              maksymalne opóźnienie repliki, powyżej którego odczyty wracają do bazy głównej
+ * @param lagQuery            zapytanie wykonywane na replice, zwracające jej opóźnienie w milisekundach;
+ *                            bez niego sprawdzana jest jedynie dostępność repliki
+ * @param healthCheckInterval odstęp między kolejnymi sprawdzeniami replik
+ */
+@ConfigurationProperties(prefix = "datasource.routing")
+record DataSourceRoutingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<Replica> replicas,
+        @DefaultValue("5s") Duration maxLag,
+        @Nullable String lagQuery,
+        @DefaultValue("5s") Duration healthCheckInterval
+) {
+
+    record Replica(String url, @Nullable String username, @Nullable String password) {
+    }
+}
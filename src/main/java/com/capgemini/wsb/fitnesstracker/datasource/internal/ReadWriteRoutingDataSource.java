@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Źródło danych kierujące połączenia do bazy głównej lub do jednej z replik.
+ * <p>
+ * Do repliki trafiają wyłącznie transakcje {@code readOnly}, i tylko jeśli w bieżącym żądaniu nie było jeszcze zapisu
+ * oraz istnieje replika uznana przez {@link ReplicaHealthMonitor} za aktualną. W pozostałych przypadkach używana jest
+ * baza główna. Decyzja zapada przy pobraniu fizycznego połączenia, dlatego źródło musi być opakowane w
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} - inaczej połączenie zostałoby pobrane
+ * przed ustawieniem flagi {@code readOnly} transakcji.
+ */
+@RequiredArgsConstructor
+class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final ReplicaHealthMonitor replicaHealthMonitor;
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            ReadYourWritesContext.markWrite();
+            return PRIMARY;
+        }
+        if (ReadYourWritesContext.hasWritten()) {
+            return PRIMARY;
+        }
+        return replicaHealthMonitor.nextHealthyReplica().orElse(PRIMARY);
+    }
+}
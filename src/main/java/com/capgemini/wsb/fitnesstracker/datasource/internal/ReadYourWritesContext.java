@@ -0,0 +1,36 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+/**
+ * Stan żądania HTTP potrzebny do zachowania zasady "read-your-writes": po pierwszym zapisie w obrębie żądania
+ * wszystkie kolejne odczyty tego żądania trafiają do bazy głównej, nawet jeśli są oznaczone jako tylko do odczytu.
+ * <p>
+ * Stan istnieje tylko pomiędzy {@link #begin()} i {@link #end()} (wywoływanymi przez {@link ReadYourWritesFilter}),
+ * więc zadania w tle nie są "przyklejane" do bazy głównej na stałe.
+ */
+final class ReadYourWritesContext {
+
+    private static final ThreadLocal<boolean[]> WROTE_TO_PRIMARY = new ThreadLocal<>();
+
+    private ReadYourWritesContext() {
+    }
+
+    static void begin() {
+        WROTE_TO_PRIMARY.set(new boolean[1]);
+    }
+
+    static void end() {
+        WROTE_TO_PRIMARY.remove();
+    }
+
+    static void markWrite() {
+        boolean[] state = WROTE_TO_PRIMARY.get();
+        if (state != null) {
+            state[0] = true;
+        }
+    }
+
+    static boolean hasWritten() {
+        boolean[] state = WROTE_TO_PRIMARY.get();
+        return state != null && state[0];
+    }
+}
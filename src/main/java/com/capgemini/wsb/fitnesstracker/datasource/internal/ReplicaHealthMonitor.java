@@ -0,0 +1,85 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Okresowo sprawdza repliki i udostępnia te, które są dostępne i nie są opóźnione bardziej niż {@code maxLag}.
+ * <p>
+ * Opóźnienie mierzone jest zapytaniem {@code lagQuery} wykonywanym na replice (np. dla PostgreSQL
+ * {@code SELECT EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000}). Kolejne odczyty
+ * rozdzielane są po zdrowych replikach metodą round-robin.
+ */
+@Slf4j
+class ReplicaHealthMonitor {
+
+    private final Map<String, DataSource> replicas;
+    private final Duration maxLag;
+    @Nullable
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile List<String> healthyReplicas = List.of();
+
+    ReplicaHealthMonitor(Map<String, DataSource> replicas, Duration maxLag, @Nullable String lagQuery) {
+        this.replicas = replicas;
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+    }
+
+    Optional<String> nextHealthyReplica() {
+        List<String> healthy = healthyReplicas;
+        if (healthy.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size())));
+    }
+
+    Map<String, DataSource> replicas() {
+        return replicas;
+    }
+
+    List<String> healthyReplicas() {
+        return healthyReplicas;
+    }
+
+    void checkReplicas() {
+        List<String> healthy = new ArrayList<>();
+        replicas.forEach((key, dataSource) -> {
+            try {
+                long lagMillis = measureLag(dataSource);
+                if (lagMillis <= maxLag.toMillis()) {
+                    healthy.add(key);
+                } else {
+                    log.warn("Replica {} is {} ms behind, routing its reads to the primary", key, lagMillis);
+                }
+            } catch (SQLException e) {
+                log.warn("Replica {} is unavailable, routing its reads to the primary: {}", key, e.getMessage());
+            }
+        });
+        healthyReplicas = List.copyOf(healthy);
+    }
+
+    private long measureLag(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            if (lagQuery == null) {
+                return connection.isValid(1) ? 0 : Long.MAX_VALUE;
+            }
+            try (ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                return resultSet.next() ? resultSet.getLong(1) : Long.MAX_VALUE;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.api;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import org.springframework.lang.Nullable;
+
+/**
+ * Change of a single {@link Training}, as stored in the {@link TrainingEventLog}.
+ * <p>
+ * Created and updated events carry the full state of the training after the change, so a projection can treat
+ * every event as an upsert keyed by {@link #trainingId()} and does not need the events that preceded it.
+ * Deleted events (tombstones) carry only the training and user IDs.
+ *
+ * @param type         kind of the change
+ * @param trainingId   ID of the training
+ * @param userId       ID of the training's owner, {@code null} if the training has none
+ * @param occurredAt   time the change was recorded, in epoch milliseconds
+ * @param startTime    start of the training, in epoch milliseconds ({@code 0} for deleted events)
+ * @param endTime      end of the training, in epoch milliseconds ({@code 0} for deleted events)
+ * @param activityType activity of the training, {@code null} for deleted events
+ * @param distance     distance of the training
+ * @param averageSpeed average speed of the training
+ * @param calories     estimated calories, {@code null} if not estimated
+ */
+public record TrainingEvent(
+        Type type,
+        long trainingId,
+        @Nullable Long userId,
+        long occurredAt,
+        long startTime,
+        long endTime,
+        @Nullable ActivityType activityType,
+        double distance,
+        double averageSpeed,
+        @Nullable Integer calories
+) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public static TrainingEvent created(Training training) {
+        return of(Type.CREATED, training);
+    }
+
+    public static TrainingEvent updated(Training training) {
+        return of(Type.UPDATED, training);
+    }
+
+    public static TrainingEvent deleted(@Nullable Long userId, Long trainingId) {
+        return new TrainingEvent(Type.DELETED, trainingId, userId, System.currentTimeMillis(), 0, 0, null, 0, 0, null);
+    }
+
+    private static TrainingEvent of(Type type, Training training) {
+        return new TrainingEvent(type, training.getId(), training.getUser() == null ? null : training.getUser().getId(),
+                System.currentTimeMillis(), training.getStartTime().getTime(), training.getEndTime().getTime(),
+                training.getActivityType(), training.getDistance(), training.getAverageSpeed(), training.getCalories());
+    }
+}
@@ -0,0 +1,18 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.api;
+
+import java.util.List;
+
+/**
+ * Append-only log of {@link TrainingEvent}s, from which derived data can be rebuilt by replaying it into
+ * {@link TrainingEventProjection}s instead of scanning the {@code trainings} table.
+ */
+public interface TrainingEventLog {
+
+    /**
+     * Appends events to the log, assigning them consecutive offsets. Events should be appended after the change
+     * they describe has been committed. Does nothing if the log is disabled.
+     *
+     * @param events events in the order they happened
+     */
+    void append(List<TrainingEvent> events);
+}
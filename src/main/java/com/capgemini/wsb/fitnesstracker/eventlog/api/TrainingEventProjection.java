@@ -0,0 +1,26 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.api;
+
+/**
+ * Derived data built from the {@link TrainingEventLog}. Every bean implementing this interface can be fed with
+ * the log from any offset, e.g. with the {@code replay} operation of the {@code trainingeventlog} JMX endpoint,
+ * given {@code projection} and {@code fromOffset}.
+ * <p>
+ * Old segments of the log are compacted to the latest event of every training, so replaying from an offset
+ * that falls into a compacted segment skips intermediate changes. Projections should therefore apply events
+ * as upserts and deletions keyed by the training ID.
+ */
+public interface TrainingEventProjection {
+
+    /**
+     * @return unique name of the projection, used to select it for a replay
+     */
+    String name();
+
+    /**
+     * Applies a single event. Events are delivered in offset order, from a single thread.
+     *
+     * @param offset position of the event in the log
+     * @param event  the event
+     */
+    void apply(long offset, TrainingEvent event);
+}
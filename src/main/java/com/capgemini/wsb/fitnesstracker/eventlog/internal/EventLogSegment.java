@@ -0,0 +1,348 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Plik segmentu dziennika zdarzeń treningów.
+ * <pre>
+ * nagłówek: magic, wersja, offset bazowy, długość nagłówka, słownik typów aktywności (liczba, nazwy)
+ * rekordy:  CRC32C danych, offset, typ zdarzenia, ID treningu, ID użytkownika, czas zdarzenia, początek, koniec,
+ *           indeks typu aktywności w słowniku, dystans, średnia prędkość, kalorie
+ * </pre>
+ * Rekordy mają stałą długość ({@value #RECORD_SIZE} bajtów) i rosnące offsety, więc pierwszy rekord o danym
+ * offsecie znajdowany jest wyszukiwaniem binarnym - także w segmencie po kompakcji, z którego część rekordów
+ * usunięto. Nazwa pliku to offset bazowy, więc sortowanie nazw porządkuje segmenty.
+ * <p>
+ * Do segmentu aktywnego dopisywane są rekordy; pozostałe segmenty są niezmienne aż do kompakcji, która zapisuje
+ * nowy plik obok i atomowo podmienia stary. Segmenty czytane są przez mapowanie pliku do pamięci.
+ */
+@Slf4j
+final class EventLogSegment {
+
+    static final int RECORD_SIZE = Integer.BYTES + 6 * Long.BYTES + 2 * Byte.BYTES + 2 * Double.BYTES + Integer.BYTES;
+    static final String SUFFIX = ".log";
+
+    private static final int MAGIC = 0x4654454C;
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final long NO_USER = -1;
+    private static final int NO_CALORIES = Integer.MIN_VALUE;
+    private static final byte NO_ACTIVITY = -1;
+    private static final TrainingEvent.Type[] TYPES = TrainingEvent.Type.values();
+
+    private final Path path;
+    private final long baseOffset;
+    private final int headerSize;
+    private final ActivityType[] activityTypes;
+    @Nullable
+    private final FileChannel channel;
+    private volatile long size;
+
+    private EventLogSegment(Path path, long baseOffset, int headerSize, ActivityType[] activityTypes,
+                            @Nullable FileChannel channel, long size) {
+        this.path = path;
+        this.baseOffset = baseOffset;
+        this.headerSize = headerSize;
+        this.activityTypes = activityTypes;
+        this.channel = channel;
+        this.size = size;
+    }
+
+    static Path pathOf(Path directory, long baseOffset) {
+        return directory.resolve("%020d%s".formatted(baseOffset, SUFFIX));
+    }
+
+    /**
+     * Tworzy nowy, pusty segment aktywny.
+     */
+    static EventLogSegment create(Path directory, long baseOffset) throws IOException {
+        Path path = pathOf(directory, baseOffset);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = encodeHeader(baseOffset);
+        int headerSize = header.remaining();
+        writeFully(channel, header);
+        channel.force(true);
+        return new EventLogSegment(path, baseOffset, headerSize, ActivityType.values(), channel, headerSize);
+    }
+
+    /**
+     * Otwiera zamknięty segment tylko do odczytu.
+     */
+    static EventLogSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(path, channel, null);
+        }
+    }
+
+    /**
+     * Otwiera ostatni segment do dopisywania. Niepełny rekord na końcu pliku i rekordy o niezgodnej sumie kontrolnej
+     * (zapis przerwany awarią) są odcinane razem ze wszystkim, co po nich następuje.
+     */
+    static EventLogSegment recover(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        EventLogSegment segment = readHeader(path, channel, channel);
+        long valid = segment.headerSize + segment.validRecords(channel.size()) * RECORD_SIZE;
+        if (valid < channel.size()) {
+            log.warn("Truncating event log segment {} from {} to {} bytes", path, channel.size(), valid);
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        segment.size = valid;
+        return segment;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long baseOffset() {
+        return baseOffset;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int recordCount() {
+        return (int) ((size - headerSize) / RECORD_SIZE);
+    }
+
+    /**
+     * Liczba rekordów w zmapowanej części segmentu - segment aktywny mógł od mapowania urosnąć.
+     */
+    int recordCount(ByteBuffer mapped) {
+        return (mapped.capacity() - headerSize) / RECORD_SIZE;
+    }
+
+    /**
+     * @return offset ostatniego rekordu albo {@code baseOffset - 1}, jeśli segment jest pusty
+     */
+    long lastOffset() throws IOException {
+        int records = recordCount();
+        if (records == 0) {
+            return baseOffset - 1;
+        }
+        return map().getLong(headerSize + (records - 1) * RECORD_SIZE + Integer.BYTES);
+    }
+
+    void append(ByteBuffer records) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Event log segment is sealed: " + path);
+        }
+        long length = records.remaining();
+        writeFully(channel, records);
+        size += length;
+    }
+
+    void force() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Utrwala i zamyka segment aktywny; zwraca jego niezmienną wersję.
+     */
+    EventLogSegment seal() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+        return new EventLogSegment(path, baseOffset, headerSize, activityTypes, null, size);
+    }
+
+    /**
+     * Mapuje do pamięci zapisaną część segmentu.
+     */
+    MappedByteBuffer map() throws IOException {
+        try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            return reader.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Znajduje pierwszy rekord o offsecie nie mniejszym od podanego.
+     *
+     * @return numer rekordu w segmencie ({@code recordCount()}, jeśli takiego rekordu nie ma)
+     */
+    int firstRecordAtOrAfter(ByteBuffer mapped, long offset) {
+        int low = 0;
+        int high = recordCount(mapped);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsetAt(mapped, middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    long offsetAt(ByteBuffer mapped, int record) {
+        return mapped.getLong(headerSize + record * RECORD_SIZE + Integer.BYTES);
+    }
+
+    long trainingIdAt(ByteBuffer mapped, int record) {
+        return mapped.getLong(headerSize + record * RECORD_SIZE + Integer.BYTES + Long.BYTES + 1);
+    }
+
+    /**
+     * Dekoduje rekord, sprawdzając jego sumę kontrolną.
+     *
+     * @throws IllegalStateException jeśli suma kontrolna się nie zgadza
+     */
+    TrainingEvent eventAt(ByteBuffer mapped, int record) {
+        int position = headerSize + record * RECORD_SIZE;
+        if (!checksumMatches(mapped, position)) {
+            throw new IllegalStateException("Corrupted event log record %d in %s".formatted(record, path));
+        }
+        ByteBuffer data = mapped.slice(position + Integer.BYTES + Long.BYTES, RECORD_SIZE - Integer.BYTES - Long.BYTES);
+        TrainingEvent.Type type = TYPES[data.get()];
+        long trainingId = data.getLong();
+        long userId = data.getLong();
+        long occurredAt = data.getLong();
+        long startTime = data.getLong();
+        long endTime = data.getLong();
+        byte activityType = data.get();
+        double distance = data.getDouble();
+        double averageSpeed = data.getDouble();
+        int calories = data.getInt();
+        return new TrainingEvent(type, trainingId, userId == NO_USER ? null : userId, occurredAt, startTime, endTime,
+                activityType == NO_ACTIVITY ? null : activityTypes[activityType], distance, averageSpeed,
+                calories == NO_CALORIES ? null : calories);
+    }
+
+    /**
+     * Zapisuje wybrane rekordy tego segmentu do nowego pliku i atomowo podmienia nim segment.
+     *
+     * @param records numery rekordów do zachowania, rosnąco
+     * @return segment po kompakcji
+     */
+    EventLogSegment rewrite(ByteBuffer mapped, int[] records) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".compacting");
+        ByteBuffer header = encodeHeader(baseOffset);
+        int newHeaderSize = header.remaining();
+        ByteBuffer body = ByteBuffer.allocate(records.length * RECORD_SIZE);
+        for (int record : records) {
+            body.put(reencode(mapped, record));
+        }
+        try (FileChannel writer = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(writer, header);
+            writeFully(writer, body.flip());
+            writer.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new EventLogSegment(path, baseOffset, newHeaderSize, ActivityType.values(), null,
+                newHeaderSize + (long) records.length * RECORD_SIZE);
+    }
+
+    static void encode(ByteBuffer buffer, long offset, TrainingEvent event) {
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES)
+                .putLong(offset)
+                .put((byte) event.type().ordinal())
+                .putLong(event.trainingId())
+                .putLong(event.userId() == null ? NO_USER : event.userId())
+                .putLong(event.occurredAt())
+                .putLong(event.startTime())
+                .putLong(event.endTime())
+                .put(event.activityType() == null ? NO_ACTIVITY : (byte) event.activityType().ordinal())
+                .putDouble(event.distance())
+                .putDouble(event.averageSpeed())
+                .putInt(event.calories() == null ? NO_CALORIES : event.calories());
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(start + Integer.BYTES, RECORD_SIZE - Integer.BYTES));
+        buffer.putInt(start, (int) checksum.getValue());
+    }
+
+    /**
+     * Rekord przepisywany przy kompakcji dostaje nowy nagłówek ze słownikiem bieżących typów aktywności,
+     * więc jest kodowany od nowa.
+     */
+    private ByteBuffer reencode(ByteBuffer mapped, int record) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        encode(buffer, offsetAt(mapped, record), eventAt(mapped, record));
+        return buffer.flip();
+    }
+
+    private int validRecords(long fileSize) throws IOException {
+        int complete = (int) ((fileSize - headerSize) / RECORD_SIZE);
+        ByteBuffer mapped;
+        try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = reader.map(FileChannel.MapMode.READ_ONLY, 0, headerSize + (long) complete * RECORD_SIZE);
+        }
+        long previous = baseOffset - 1;
+        for (int record = 0; record < complete; record++) {
+            int position = headerSize + record * RECORD_SIZE;
+            long offset = mapped.getLong(position + Integer.BYTES);
+            if (offset <= previous || !checksumMatches(mapped, position)) {
+                return record;
+            }
+            previous = offset;
+        }
+        return complete;
+    }
+
+    private static boolean checksumMatches(ByteBuffer mapped, int position) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(mapped.slice(position + Integer.BYTES, RECORD_SIZE - Integer.BYTES));
+        return (int) checksum.getValue() == mapped.getInt(position);
+    }
+
+    private static ByteBuffer encodeHeader(long baseOffset) {
+        ActivityType[] activityTypes = ActivityType.values();
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + Short.BYTES + activityTypes.length * 64);
+        header.putInt(MAGIC).putInt(VERSION).putLong(baseOffset).putInt(0).putShort((short) activityTypes.length);
+        for (ActivityType activityType : activityTypes) {
+            byte[] name = activityType.name().getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) name.length).put(name);
+        }
+        header.putInt(FIXED_HEADER_SIZE - Integer.BYTES, header.position());
+        return header.flip();
+    }
+
+    private static EventLogSegment readHeader(Path path, FileChannel channel, @Nullable FileChannel writable) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+        channel.read(fixed, 0);
+        fixed.flip();
+        if (fixed.remaining() < FIXED_HEADER_SIZE || fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+            throw new IllegalStateException("Not an event log segment: " + path);
+        }
+        long baseOffset = fixed.getLong();
+        int headerSize = fixed.getInt();
+        ByteBuffer dictionary = ByteBuffer.allocate(headerSize - FIXED_HEADER_SIZE);
+        channel.read(dictionary, FIXED_HEADER_SIZE);
+        dictionary.flip();
+        ActivityType[] activityTypes = new ActivityType[dictionary.getShort()];
+        for (int i = 0; i < activityTypes.length; i++) {
+            byte[] name = new byte[dictionary.getShort()];
+            dictionary.get(name);
+            activityTypes[i] = ActivityType.valueOf(new String(name, StandardCharsets.UTF_8));
+        }
+        long size = headerSize + (channel.size() - headerSize) / RECORD_SIZE * RECORD_SIZE;
+        return new EventLogSegment(path, baseOffset, headerSize, activityTypes, writable, size);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
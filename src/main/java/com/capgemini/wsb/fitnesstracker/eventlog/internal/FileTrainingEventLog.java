@@ -0,0 +1,320 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventLog;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventProjection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Dziennik zdarzeń treningów zapisywany w plikach segmentów ({@link EventLogSegment}) w katalogu
+ * {@link TrainingEventLogProperties#directory()}.
+ * <p>
+ * Zdarzenia dopisywane są przez {@link java.nio.channels.FileChannel} do segmentu aktywnego, a po przekroczeniu
+ * {@link TrainingEventLogProperties#segmentSize()} zaczynany jest nowy segment. Dopisanie nie czeka na dysk: osobny
+ * wątek co {@link TrainingEventLogProperties#fsyncInterval()} utrwala jednym {@code fsync} wszystko, co dopisano
+ * w tym czasie (kompakcja działa na innym wątku i go nie opóźnia), więc po awarii systemu można stracić zdarzenia z ostatniego okresu. Zdarzenia dopisywane są po
+ * zatwierdzeniu zmian w bazie - dziennik nie jest źródłem prawdy, tylko pozwala odbudować dane pochodne bez
+ * przeglądania tabeli {@code trainings}. Przy starcie niepełny lub uszkodzony koniec segmentu aktywnego jest
+ * odcinany.
+ * <p>
+ * Odtwarzanie ({@link #replay}) mapuje kolejne segmenty do pamięci i przekazuje zdarzenia projekcji, zaczynając od
+ * dowolnego offsetu. Kompakcja ({@link #compact}) przepisuje zamknięte segmenty, zostawiając tylko ostatnie
+ * zdarzenie każdego treningu; zdarzenia usunięcia starsze niż {@link TrainingEventLogProperties#tombstoneRetention()}
+ * są usuwane razem z treningiem.
+ * <p>
+ * Liczbę dopisanych zdarzeń i nieudanych zapisów pokazują metryki {@code event.log.appended}
+ * i {@code event.log.append.failures}, a rozmiar dziennika {@code event.log.bytes} i {@code event.log.segments}.
+ */
+@Component
+@Slf4j
+class FileTrainingEventLog implements TrainingEventLog {
+
+    private final TrainingEventLogProperties properties;
+    private final List<EventLogSegment> segments = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService fsyncExecutor;
+    private final ScheduledExecutorService compactionExecutor;
+    private final Counter appended;
+    private final Counter appendFailures;
+    private final Object compactionLock = new Object();
+
+    private long nextOffset;
+    private boolean dirty;
+
+    FileTrainingEventLog(TrainingEventLogProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        // Osobne wątki - kompakcja całego dziennika nie może opóźniać utrwalania dopisanych zdarzeń.
+        this.fsyncExecutor = daemonExecutor("training-event-log-fsync");
+        this.compactionExecutor = daemonExecutor("training-event-log-compaction");
+        this.appended = meterRegistry.counter("event.log.appended");
+        this.appendFailures = meterRegistry.counter("event.log.append.failures");
+        Gauge.builder("event.log.bytes", segments, all -> all.stream().mapToLong(EventLogSegment::size).sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("event.log.segments", segments, List::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!properties.enabled()) {
+            return;
+        }
+        Path directory = properties.directory();
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(directory)) {
+            files = listed.sorted().toList();
+        }
+        List<Path> segmentFiles = new ArrayList<>();
+        for (Path file : files) {
+            if (file.toString().endsWith(EventLogSegment.SUFFIX)) {
+                segmentFiles.add(file);
+            } else if (file.toString().endsWith(".compacting")) {
+                Files.delete(file);
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < segmentFiles.size() - 1; i++) {
+                segments.add(EventLogSegment.open(segmentFiles.get(i)));
+            }
+            if (segmentFiles.isEmpty()) {
+                segments.add(EventLogSegment.create(directory, 0));
+            } else {
+                segments.add(EventLogSegment.recover(segmentFiles.get(segmentFiles.size() - 1)));
+            }
+            nextOffset = active().lastOffset() + 1;
+        }
+        long fsyncInterval = properties.fsyncInterval().toMillis();
+        fsyncExecutor.scheduleWithFixedDelay(this::fsync, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+        long compactionInterval = properties.compactionInterval().toMillis();
+        compactionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Event log compaction failed", e);
+            }
+        }, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        log.info("Opened training event log in {}: {} segments, next offset {}", directory, segments.size(), nextOffset);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        fsyncExecutor.shutdownNow();
+        compactionExecutor.shutdownNow();
+        if (!segments.isEmpty()) {
+            active().seal();
+        }
+    }
+
+    boolean enabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Błąd zapisu jest logowany i liczony, ale nie przerywa operacji, która zdarzenie wywołała - jej zmiany są już
+     * zatwierdzone. Dziennik ma wtedy lukę, więc dane odbudowane z niego mogą wymagać pełnego przeliczenia.
+     */
+    @Override
+    public synchronized void append(List<TrainingEvent> events) {
+        if (!properties.enabled() || events.isEmpty()) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate(events.size() * EventLogSegment.RECORD_SIZE);
+        long offset = nextOffset;
+        for (TrainingEvent event : events) {
+            EventLogSegment.encode(records, offset++, event);
+        }
+        try {
+            if (active().size() + records.capacity() > properties.segmentSize().toBytes() && active().recordCount() > 0) {
+                roll();
+            }
+            active().append(records.flip());
+            nextOffset = offset;
+            dirty = true;
+            appended.increment(events.size());
+        } catch (IOException e) {
+            appendFailures.increment(events.size());
+            log.error("Could not append {} events to the training event log", events.size(), e);
+        }
+    }
+
+    /**
+     * Przekazuje projekcji zdarzenia od podanego offsetu do końca dziennika.
+     *
+     * @param projection projekcja
+     * @param fromOffset offset pierwszego zdarzenia; zdarzenia usunięte przez kompakcję są pomijane
+     * @return podsumowanie, z offsetem, od którego należy wznowić kolejne odtwarzanie
+     */
+    ReplaySummary replay(TrainingEventProjection projection, long fromOffset) throws IOException {
+        long startedAt = System.nanoTime();
+        List<EventLogSegment> snapshot = List.copyOf(segments);
+        long next = fromOffset;
+        long events = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (i + 1 < snapshot.size() && snapshot.get(i + 1).baseOffset() <= fromOffset) {
+                continue;
+            }
+            EventLogSegment segment = snapshot.get(i);
+            ByteBuffer mapped;
+            try {
+                mapped = segment.map();
+            } catch (NoSuchFileException e) {
+                // Segment usunięty przez kompakcję - wszystkie jego zdarzenia były nieaktualne.
+                continue;
+            }
+            int records = segment.recordCount(mapped);
+            for (int record = segment.firstRecordAtOrAfter(mapped, fromOffset); record < records; record++) {
+                long offset = segment.offsetAt(mapped, record);
+                projection.apply(offset, segment.eventAt(mapped, record));
+                next = offset + 1;
+                events++;
+            }
+        }
+        ReplaySummary summary = new ReplaySummary(projection.name(), fromOffset, next, events,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        log.info("Replayed training event log {}", summary);
+        return summary;
+    }
+
+    /**
+     * Kompaktuje zamknięte segmenty: zostawia ostatnie zdarzenie każdego treningu (szukane w całym dzienniku,
+     * także w segmencie aktywnym) i usuwa przeterminowane zdarzenia usunięcia. Segment bez zdarzeń jest usuwany.
+     * Dopisywanie do segmentu aktywnego nie jest w tym czasie blokowane.
+     */
+    CompactionSummary compact() throws IOException {
+        synchronized (compactionLock) {
+            long startedAt = System.nanoTime();
+            List<EventLogSegment> snapshot = List.copyOf(segments);
+            long bytesBefore = snapshot.stream().mapToLong(EventLogSegment::size).sum();
+            if (snapshot.size() < 2) {
+                return new CompactionSummary(snapshot.size(), snapshot.size(), 0, bytesBefore, bytesBefore, 0);
+            }
+            List<ByteBuffer> mapped = new ArrayList<>(snapshot.size());
+            Map<Long, Long> latestOffsets = new HashMap<>();
+            for (EventLogSegment segment : snapshot) {
+                ByteBuffer buffer = segment.map();
+                mapped.add(buffer);
+                for (int record = 0; record < segment.recordCount(buffer); record++) {
+                    latestOffsets.put(segment.trainingIdAt(buffer, record), segment.offsetAt(buffer, record));
+                }
+            }
+            long tombstonesBefore = System.currentTimeMillis() - properties.tombstoneRetention().toMillis();
+            long removed = 0;
+            for (int i = 0; i < snapshot.size() - 1; i++) {
+                EventLogSegment segment = snapshot.get(i);
+                ByteBuffer buffer = mapped.get(i);
+                int records = segment.recordCount(buffer);
+                int[] kept = new int[records];
+                int keptCount = 0;
+                for (int record = 0; record < records; record++) {
+                    long offset = segment.offsetAt(buffer, record);
+                    if (latestOffsets.get(segment.trainingIdAt(buffer, record)) != offset) {
+                        continue;
+                    }
+                    TrainingEvent event = segment.eventAt(buffer, record);
+                    if (event.type() != TrainingEvent.Type.DELETED || event.occurredAt() >= tombstonesBefore) {
+                        kept[keptCount++] = record;
+                    }
+                }
+                if (keptCount == records) {
+                    continue;
+                }
+                removed += records - keptCount;
+                if (keptCount == 0) {
+                    synchronized (this) {
+                        segments.remove(segment);
+                    }
+                    Files.delete(segment.path());
+                } else {
+                    EventLogSegment compacted = segment.rewrite(buffer, Arrays.copyOf(kept, keptCount));
+                    synchronized (this) {
+                        segments.set(segments.indexOf(segment), compacted);
+                    }
+                }
+            }
+            long bytesAfter = segments.stream().mapToLong(EventLogSegment::size).sum();
+            CompactionSummary summary = new CompactionSummary(snapshot.size(), segments.size(), removed, bytesBefore,
+                    bytesAfter, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            if (removed > 0) {
+                log.info("Compacted training event log {}", summary);
+            }
+            return summary;
+        }
+    }
+
+    synchronized EventLogStatus status() {
+        if (segments.isEmpty()) {
+            return new EventLogStatus(properties.enabled(), 0, 0, 0, 0);
+        }
+        return new EventLogStatus(properties.enabled(), segments.size(), segments.get(0).baseOffset(), nextOffset,
+                segments.stream().mapToLong(EventLogSegment::size).sum());
+    }
+
+    /**
+     * Utrwala na dysku zdarzenia dopisane od poprzedniego wywołania.
+     */
+    void fsync() {
+        EventLogSegment segment;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            segment = active();
+        }
+        try {
+            segment.force();
+        } catch (IOException e) {
+            log.error("Could not fsync training event log segment {}", segment.path(), e);
+        }
+    }
+
+    private void roll() throws IOException {
+        EventLogSegment sealed = active().seal();
+        segments.set(segments.size() - 1, sealed);
+        segments.add(EventLogSegment.create(properties.directory(), nextOffset));
+    }
+
+    private static ScheduledExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private EventLogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    record ReplaySummary(String projection, long fromOffset, long nextOffset, long events, long millis) {
+    }
+
+    record CompactionSummary(int segmentsBefore, int segmentsAfter, long eventsRemoved, long bytesBefore,
+                             long bytesAfter, long millis) {
+    }
+
+    record EventLogStatus(boolean enabled, int segments, long firstOffset, long nextOffset, long bytes) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventProjection;
+import com.capgemini.wsb.fitnesstracker.eventlog.internal.FileTrainingEventLog.EventLogStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Endpoint actuatora {@code trainingeventlog}: odczyt zwraca stan dziennika, a zapis uruchamia
+ * odtworzenie dziennika do projekcji ({@code replay}, pola {@code projection} i {@code fromOffset}) lub kompakcję
+ * ({@code compact}).
+ * <p>
+ * Odtworzenie przebudowuje projekcje, a kompakcja przepisuje segmenty, więc endpoint dostępny jest wyłącznie
+ * przez JMX (dla operatora) - nigdy przez HTTP.
+ */
+@Component
+@JmxEndpoint(id = "trainingeventlog")
+@RequiredArgsConstructor
+class TrainingEventLogEndpoint {
+
+    private final FileTrainingEventLog eventLog;
+    private final List<TrainingEventProjection> projections;
+
+    @ReadOperation
+    public EventLogStatus status() {
+        return eventLog.status();
+    }
+
+    @WriteOperation
+    public Object run(@Selector String action, @Nullable String projection, @Nullable Long fromOffset) throws IOException {
+        return switch (action) {
+            case "replay" -> eventLog.replay(projection(projection), fromOffset == null ? 0 : fromOffset);
+            case "compact" -> eventLog.compact();
+            default -> throw new IllegalArgumentException("Unknown event log action: " + action);
+        };
+    }
+
+    private TrainingEventProjection projection(@Nullable String name) {
+        return projections.stream()
+                .filter(projection -> projection.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown event log projection: " + name));
+    }
+}
@@ -0,0 +1,31 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Konfiguracja dziennika zdarzeń treningów.
+ *
+ * @param enabled            czy zdarzenia są zapisywane do dziennika
+ * @param directory          katalog z plikami segmentów
+ * @param segmentSize        rozmiar, po przekroczeniu którego zaczynany jest nowy segment
+ * @param fsyncInterval      co ile dopisane zdarzenia są utrwalane na dysku ({@code fsync}) - jednym wywołaniem
+ *                           dla wszystkich zdarzeń dopisanych w tym czasie
+ * @param compactionInterval odstęp między kolejnymi kompakcjami zamkniętych segmentów
+ * @param tombstoneRetention jak długo po usunięciu treningu kompakcja zachowuje zdarzenie usunięcia
+ */
+@ConfigurationProperties(prefix = "event-log")
+record TrainingEventLogProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("data/event-log") Path directory,
+        @DefaultValue("64MB") DataSize segmentSize,
+        @DefaultValue("200ms") Duration fsyncInterval,
+        @DefaultValue("1h") Duration compactionInterval,
+        @DefaultValue("7d") Duration tombstoneRetention
+) {
+
+}
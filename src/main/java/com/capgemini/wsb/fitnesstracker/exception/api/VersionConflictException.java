@@ -0,0 +1,18 @@
+package com.capgemini.wsb.fitnesstracker.exception.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Generic exception indicating that a resource was modified concurrently, so the requested change was based
+ * on an outdated version of it.
+ * Will resolve to the {@link HttpStatus#CONFLICT} if handled by the Spring's exception handler.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class VersionConflictException extends BusinessException {
+
+    public VersionConflictException(String message) {
+        super(message);
+    }
+
+}
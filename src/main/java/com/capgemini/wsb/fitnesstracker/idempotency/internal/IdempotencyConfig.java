@@ -0,0 +1,53 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Instant;
+
+/**
+ * Rejestruje {@link IdempotencyFilter} dla {@code POST /v1/trainings} i {@code POST /v1/users} oraz okresowe
+ * usuwanie wygasłych kluczy. Wyłączana przez {@code idempotency.enabled=false}.
+ * <p>
+ * Metryki: {@code idempotency.requests} (z tagiem {@code result}: {@code executed}, {@code replayed},
+ * {@code in_progress}, {@code mismatch}) i {@code idempotency.memory.keys}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "idempotency", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(IdempotencyProperties.class)
+class IdempotencyConfig {
+
+    @Bean
+    IdempotencyStore idempotencyStore(JdbcTemplate jdbcTemplate,
+                                      NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                                      IdempotencyProperties properties,
+                                      TaskScheduler taskScheduler,
+                                      MeterRegistry meterRegistry) {
+        IdempotencyStore store = new IdempotencyStore(jdbcTemplate, namedParameterJdbcTemplate, properties);
+        taskScheduler.scheduleWithFixedDelay(store::sweep, Instant.now().plus(properties.sweepInterval()),
+                properties.sweepInterval());
+        Gauge.builder("idempotency.memory.keys", store, IdempotencyStore::memoryKeys).register(meterRegistry);
+        return store;
+    }
+
+    @Bean
+    FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(IdempotencyStore store,
+                                                                IdempotencyProperties properties,
+                                                                MeterRegistry meterRegistry) {
+        FilterRegistrationBean<IdempotencyFilter> registration =
+                new FilterRegistrationBean<>(new IdempotencyFilter(store, properties, meterRegistry));
+        registration.addUrlPatterns("/v1/trainings", "/v1/users");
+        // Po ograniczaniu ruchu - odtworzenie odpowiedzi też jest żądaniem klienta.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+}
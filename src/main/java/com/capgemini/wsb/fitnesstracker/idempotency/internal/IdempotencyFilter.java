@@ -0,0 +1,153 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.HexFormat;
+
+/**
+ * Obsługuje nagłówek {@code Idempotency-Key} żądań {@code POST}. Pierwsze żądanie z kluczem jest obsługiwane,
+ * a jego odpowiedź 2xx zapamiętywana w {@link IdempotencyStore}; ponowienia z tym samym kluczem i tą samą treścią
+ * dostają tę odpowiedź (z nagłówkiem {@value #REPLAYED_HEADER}) bez ponownego zapisu. Ponowienie z inną treścią
+ * dostaje 422, a ponowienie obsługiwanego jeszcze żądania (także na innej instancji), które nie doczekało się
+ * odpowiedzi w {@link IdempotencyProperties#waitTimeout()} - 409.
+ * Odpowiedzi spoza 2xx nie są zapamiętywane, więc ponowienie po błędzie wykonuje żądanie od nowa. Treść żądania
+ * z kluczem wczytywana jest do pamięci, więc żądania dłuższe niż {@link IdempotencyProperties#maxRequestSize()}
+ * dostają 413.
+ * <p>
+ * Klucz obowiązuje w obrębie klienta (zalogowanego użytkownika albo adresu IP i nagłówka
+ * {@link IdempotencyProperties#clientHeader()}), metody i ścieżki - ten sam klucz innego klienta nie odtworzy
+ * cudzej odpowiedzi. Metryka {@code idempotency.requests} (z tagiem {@code result}).
+ */
+class IdempotencyFilter extends OncePerRequestFilter {
+
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final IdempotencyStore store;
+    private final IdempotencyProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    IdempotencyFilter(IdempotencyStore store, IdempotencyProperties properties, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(properties.header()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(properties.header());
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > properties.maxKeyLength()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(),
+                    "%s must have 1 to %d characters".formatted(properties.header(), properties.maxKeyLength()));
+            return;
+        }
+        CachedBodyRequest cachedRequest = CachedBodyRequest.read(request, properties.maxRequestSize());
+        if (cachedRequest == null) {
+            count("too_large");
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "Requests with %s must not exceed %d bytes".formatted(properties.header(), properties.maxRequestSize()));
+            return;
+        }
+        String requestHash = sha256(cachedRequest.body());
+        IdempotencyStore.Claim claim;
+        try {
+            claim = store.claim(client(request) + " " + request.getMethod() + " " + request.getRequestURI() + " "
+                    + idempotencyKey, requestHash);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        if (claim instanceof IdempotencyStore.Claim.Replay replay) {
+            replay(replay.response(), requestHash, response);
+        } else if (claim instanceof IdempotencyStore.Claim.Owner owner) {
+            execute(owner, cachedRequest, response, filterChain);
+        } else {
+            count("in_progress");
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.CONFLICT.value(), "A request with this %s is in progress".formatted(properties.header()));
+        }
+    }
+
+    private void execute(IdempotencyStore.Claim.Owner owner, CachedBodyRequest request, HttpServletResponse response,
+                         FilterChain filterChain) throws ServletException, IOException {
+        count("executed");
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(request, cachingResponse);
+            int status = cachingResponse.getStatus();
+            byte[] body = cachingResponse.getContentAsByteArray();
+            if (status >= 200 && status < 300 && body.length <= properties.maxBodySize()) {
+                store.complete(owner, status, cachingResponse.getContentType(), body);
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                store.abandon(owner);
+            }
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    private void replay(StoredResponse stored, String requestHash, HttpServletResponse response) throws IOException {
+        if (!stored.requestHash().equals(requestHash)) {
+            count("mismatch");
+            response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    "%s was already used with a different request body".formatted(properties.header()));
+            return;
+        }
+        count("replayed");
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    /**
+     * Skrót identyfikatora klienta - stała długość niezależnie od nagłówka klienta.
+     */
+    private String client(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        String client = principal == null ? request.getRemoteAddr() : "principal:" + principal.getName();
+        String clientId = request.getHeader(properties.clientHeader());
+        if (clientId != null && !clientId.isBlank()) {
+            client += " " + clientId;
+        }
+        return sha256(client.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("idempotency.requests", "result", result).increment();
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
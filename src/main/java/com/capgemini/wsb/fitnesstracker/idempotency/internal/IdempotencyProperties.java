@@ -0,0 +1,44 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja obsługi nagłówka {@code Idempotency-Key} dla {@code POST /v1/trainings} i {@code POST /v1/users}.
+ *
+ * @param enabled        czy filtr jest włączony
+ * @param header         nazwa nagłówka z kluczem
+ * @param clientHeader   nagłówek rozróżniający klientów API za jednym adresem IP; klucz obowiązuje w obrębie
+ *                       klienta - zalogowanego użytkownika albo adresu IP i tego nagłówka
+ * @param maxKeyLength   najdłuższy dopuszczalny klucz
+ * @param ttl            jak długo odpowiedź jest odtwarzana dla ponowień z tym samym kluczem
+ * @param inFlightLease  jak długo klucz żądania w trakcie obsługi jest zajęty; po tym czasie (np. po awarii
+ *                       instancji, która je obsługiwała) ponowienie wykona zapis od nowa
+ * @param waitTimeout    jak długo równoczesne ponowienie czeka na obsługiwane żądanie, zanim dostanie 409
+ * @param pollInterval   co ile ponowienie sprawdza klucz żądania obsługiwanego przez inną instancję
+ * @param maxMemoryKeys  liczba zakończonych odpowiedzi trzymanych w pamięci; starsze są czytane z bazy
+ * @param maxBodySize    największa zapamiętywana odpowiedź; większe nie są odtwarzane
+ * @param maxRequestSize największa treść żądania z kluczem (wczytywana do pamięci); większe dostają 413
+ * @param sweepInterval  odstęp między usuwaniem wygasłych kluczy
+ * @param sweepBatchSize liczba kluczy usuwanych jednym zapytaniem
+ */
+@ConfigurationProperties(prefix = "idempotency")
+record IdempotencyProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("Idempotency-Key") String header,
+        @DefaultValue("X-Client-Id") String clientHeader,
+        @DefaultValue("255") int maxKeyLength,
+        @DefaultValue("24h") Duration ttl,
+        @DefaultValue("1m") Duration inFlightLease,
+        @DefaultValue("10s") Duration waitTimeout,
+        @DefaultValue("100ms") Duration pollInterval,
+        @DefaultValue("10000") int maxMemoryKeys,
+        @DefaultValue("65536") int maxBodySize,
+        @DefaultValue("1048576") int maxRequestSize,
+        @DefaultValue("1m") Duration sweepInterval,
+        @DefaultValue("1000") int sweepBatchSize
+) {
+
+}
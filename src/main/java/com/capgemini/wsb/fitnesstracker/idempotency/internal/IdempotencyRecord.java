@@ -0,0 +1,58 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Klucz idempotencji i zapamiętana odpowiedź. Wiersz bez {@code status} oznacza żądanie w trakcie obsługi,
+ * a {@code expires_at} - koniec dzierżawy takiego żądania albo koniec odtwarzania odpowiedzi.
+ * <p>
+ * Tabela jest obsługiwana zapytaniami JDBC w {@link IdempotencyStore}; encja opisuje jej schemat.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key", length = 512)
+    private String key;
+
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    /**
+     * Token żądania, które zajęło klucz; zakończenie i zwolnienie klucza wymagają tego tokenu.
+     */
+    @Column(name = "lease_token", length = 36)
+    @Nullable
+    private String leaseToken;
+
+    @Column(name = "status")
+    @Nullable
+    private Integer status;
+
+    @Column(name = "content_type")
+    @Nullable
+    private String contentType;
+
+    @Column(name = "body", length = 65536)
+    @Nullable
+    private byte[] body;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
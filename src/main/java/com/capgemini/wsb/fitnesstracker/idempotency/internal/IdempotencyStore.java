@@ -0,0 +1,247 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Magazyn kluczy idempotencji: współbieżna mapa w pamięci przed tabelą {@code idempotency_keys}.
+ * <p>
+ * Mapa trzyma dla klucza {@link CompletableFuture} z odpowiedzią: niezakończony dla żądania w trakcie obsługi
+ * (równoczesne ponowienia na tej instancji czekają na niego), zakończony dla odtwarzanych odpowiedzi (co najwyżej
+ * {@link IdempotencyProperties#maxMemoryKeys()} - pozostałe czytane są z bazy). Tabela rozstrzyga, która instancja
+ * obsłuży żądanie: wstawienie wiersza bez statusu zajmuje klucz na czas dzierżawy, a zakończenie zapisuje odpowiedź
+ * na czas {@link IdempotencyProperties#ttl()}. Zajęcie zapisuje w wierszu losowy token dzierżawy, a zakończenie
+ * i zwolnienie zmieniają wiersz tylko z tym tokenem - żądanie, którego dzierżawę po wygaśnięciu przejęło ponowienie,
+ * nie nadpisze ani nie usunie klucza nowego właściciela. Wygasłe wiersze usuwa porcjami {@link #sweep()}.
+ * <p>
+ * Odpowiedź zapisywana jest po zatwierdzeniu transakcji, w której kontroler wykonał zapis, a nie w tej samej
+ * transakcji - obejmowałaby wtedy całe żądanie razem z blokadami, pod którymi serwisy zatwierdzają zmiany. Jeśli
+ * instancja ulegnie awarii między tymi zatwierdzeniami, klucz zostaje zajęty bez odpowiedzi do końca dzierżawy,
+ * a ponowienie po jej wygaśnięciu wykona zapis drugi raz.
+ */
+@Slf4j
+class IdempotencyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final IdempotencyProperties properties;
+    private final Map<String, CompletableFuture<StoredResponse>> inMemory = new ConcurrentHashMap<>();
+
+    IdempotencyStore(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                     IdempotencyProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * Wynik zajęcia klucza.
+     */
+    sealed interface Claim {
+
+        /**
+         * Klucz zajęty przez to żądanie - należy je obsłużyć i wywołać {@link #complete} albo {@link #abandon}.
+         */
+        record Owner(String key, String requestHash, String leaseToken, CompletableFuture<StoredResponse> slot)
+                implements Claim {
+        }
+
+        /**
+         * Żądanie z tym kluczem zostało już obsłużone.
+         */
+        record Replay(StoredResponse response) implements Claim {
+        }
+
+        /**
+         * Żądanie z tym kluczem jest obsługiwane przez inną instancję albo nie zakończyło się w czasie oczekiwania.
+         */
+        record InProgress() implements Claim {
+        }
+    }
+
+    /**
+     * Zajmuje klucz albo zwraca zapamiętaną odpowiedź. Jeśli żądanie z tym kluczem jest w trakcie obsługi na tej
+     * instancji, czeka na jego zakończenie, a jeśli na innej - odpytuje wiersz klucza co
+     * {@link IdempotencyProperties#pollInterval()}; w obu przypadkach co najwyżej
+     * {@link IdempotencyProperties#waitTimeout()}.
+     */
+    Claim claim(String key, String requestHash) throws InterruptedException {
+        long deadline = System.nanoTime() + properties.waitTimeout().toNanos();
+        while (true) {
+            CompletableFuture<StoredResponse> slot = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> existing = inMemory.putIfAbsent(key, slot);
+            if (existing == null) {
+                Claim claim;
+                try {
+                    claim = claimInDatabase(key, requestHash, slot);
+                    // Ponowienia na tej instancji czekają w tym czasie na miejsce w mapie, nie odpytują bazy same.
+                    while (claim instanceof Claim.InProgress && deadline - System.nanoTime() > 0) {
+                        TimeUnit.NANOSECONDS.sleep(Math.min(properties.pollInterval().toNanos(), deadline - System.nanoTime()));
+                        claim = claimInDatabase(key, requestHash, slot);
+                    }
+                } catch (RuntimeException | InterruptedException e) {
+                    // Bez zwolnienia miejsca ponowienia czekałyby na nie aż do limitu czasu, a klucz nie zostałby
+                    // już nigdy zajęty na tej instancji.
+                    inMemory.remove(key, slot);
+                    slot.complete(null);
+                    throw e;
+                }
+                if (claim instanceof Claim.Replay replay) {
+                    slot.complete(replay.response());
+                    trimMemory(key, slot);
+                } else if (claim instanceof Claim.InProgress) {
+                    inMemory.remove(key, slot);
+                    slot.complete(null);
+                }
+                return claim;
+            }
+            StoredResponse response;
+            try {
+                response = existing.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return new Claim.InProgress();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            if (response != null && !response.isExpired(Instant.now())) {
+                return new Claim.Replay(response);
+            }
+            // Żądanie porzucone (błąd, odpowiedź spoza 2xx) albo odpowiedź wygasła - klucz można zająć ponownie.
+            inMemory.remove(key, existing);
+        }
+    }
+
+    /**
+     * Zapisuje odpowiedź obsłużonego żądania i przekazuje ją czekającym ponowieniom. Jeśli dzierżawa wygasła i klucz
+     * zajęło w międzyczasie inne żądanie, odpowiedź nie jest zapamiętywana.
+     */
+    void complete(Claim.Owner owner, int status, @Nullable String contentType, byte[] body) {
+        StoredResponse response = new StoredResponse(owner.requestHash(), status, contentType, body,
+                Instant.now().plus(properties.ttl()));
+        int stored = jdbcTemplate.update("""
+                        UPDATE idempotency_keys SET status = ?, content_type = ?, body = ?, expires_at = ?
+                        WHERE idempotency_key = ? AND lease_token = ? AND status IS NULL""",
+                status, contentType, body, Timestamp.from(response.expiresAt()), owner.key(), owner.leaseToken());
+        if (stored == 0) {
+            log.warn("Idempotency key lease expired before the response was stored, it will not be replayed");
+            inMemory.remove(owner.key(), owner.slot());
+            owner.slot().complete(null);
+            return;
+        }
+        owner.slot().complete(response);
+        trimMemory(owner.key(), owner.slot());
+    }
+
+    /**
+     * Zwalnia klucz żądania, którego odpowiedź nie będzie odtwarzana - ponowienie wykona zapis od nowa.
+     */
+    void abandon(Claim.Owner owner) {
+        try {
+            jdbcTemplate.update("DELETE FROM idempotency_keys WHERE idempotency_key = ? AND lease_token = ? AND status IS NULL",
+                    owner.key(), owner.leaseToken());
+        } finally {
+            inMemory.remove(owner.key(), owner.slot());
+            owner.slot().complete(null);
+        }
+    }
+
+    /**
+     * Usuwa wygasłe klucze z pamięci i porcjami z bazy.
+     *
+     * @return liczba usuniętych wierszy
+     */
+    int sweep() {
+        Instant now = Instant.now();
+        inMemory.values().removeIf(slot -> slot.isDone() && (slot.getNow(null) == null || slot.getNow(null).isExpired(now)));
+        int deleted = 0;
+        List<String> keys;
+        do {
+            keys = jdbcTemplate.queryForList("""
+                            SELECT idempotency_key FROM idempotency_keys WHERE expires_at <= ?
+                            ORDER BY expires_at LIMIT ?""",
+                    String.class, Timestamp.from(now), properties.sweepBatchSize());
+            if (!keys.isEmpty()) {
+                deleted += namedParameterJdbcTemplate.update(
+                        "DELETE FROM idempotency_keys WHERE idempotency_key IN (:keys) AND expires_at <= :now",
+                        Map.of("keys", keys, "now", Timestamp.from(now)));
+            }
+        } while (keys.size() == properties.sweepBatchSize());
+        if (deleted > 0) {
+            log.debug("Removed {} expired idempotency keys", deleted);
+        }
+        return deleted;
+    }
+
+    int memoryKeys() {
+        return inMemory.size();
+    }
+
+    private Claim claimInDatabase(String key, String requestHash, CompletableFuture<StoredResponse> slot) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Instant now = Instant.now();
+            Timestamp leaseEnd = Timestamp.from(now.plus(properties.inFlightLease()));
+            String leaseToken = UUID.randomUUID().toString();
+            List<Row> rows = jdbcTemplate.query("""
+                            SELECT request_hash, status, content_type, body, expires_at FROM idempotency_keys
+                            WHERE idempotency_key = ?""",
+                    (resultSet, rowNum) -> new Row(resultSet.getString("request_hash"),
+                            resultSet.getObject("status", Integer.class), resultSet.getString("content_type"),
+                            resultSet.getBytes("body"), resultSet.getTimestamp("expires_at").toInstant()),
+                    key);
+            if (rows.isEmpty()) {
+                try {
+                    jdbcTemplate.update("""
+                                    INSERT INTO idempotency_keys
+                                    (idempotency_key, request_hash, lease_token, created_at, expires_at)
+                                    VALUES (?, ?, ?, ?, ?)""",
+                            key, requestHash, leaseToken, Timestamp.from(now), leaseEnd);
+                    return new Claim.Owner(key, requestHash, leaseToken, slot);
+                } catch (DuplicateKeyException e) {
+                    continue;
+                }
+            }
+            Row row = rows.get(0);
+            if (row.expiresAt().isAfter(now)) {
+                return row.status() == null
+                        ? new Claim.InProgress()
+                        : new Claim.Replay(new StoredResponse(row.requestHash(), row.status(), row.contentType(),
+                        row.body(), row.expiresAt()));
+            }
+            // Wygasła odpowiedź albo dzierżawa porzucona przez inną instancję.
+            int taken = jdbcTemplate.update("""
+                            UPDATE idempotency_keys
+                            SET request_hash = ?, lease_token = ?, status = NULL, content_type = NULL, body = NULL,
+                            created_at = ?, expires_at = ?
+                            WHERE idempotency_key = ? AND expires_at <= ?""",
+                    requestHash, leaseToken, Timestamp.from(now), leaseEnd, key, Timestamp.from(now));
+            if (taken == 1) {
+                return new Claim.Owner(key, requestHash, leaseToken, slot);
+            }
+        }
+        return new Claim.InProgress();
+    }
+
+    private void trimMemory(String key, CompletableFuture<StoredResponse> slot) {
+        if (inMemory.size() > properties.maxMemoryKeys()) {
+            inMemory.remove(key, slot);
+        }
+    }
+
+    private record Row(String requestHash, @Nullable Integer status, @Nullable String contentType,
+                       byte[] body, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Odpowiedź odtwarzana dla ponowień żądania z tym samym kluczem idempotencji.
+ *
+ * @param requestHash skrót treści pierwotnego żądania
+ * @param status      kod odpowiedzi
+ * @param contentType typ treści odpowiedzi
+ * @param body        treść odpowiedzi
+ * @param expiresAt   koniec odtwarzania
+ */
+record StoredResponse(String requestHash, int status, @Nullable String contentType, byte[] body, Instant expiresAt) {
+
+    boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
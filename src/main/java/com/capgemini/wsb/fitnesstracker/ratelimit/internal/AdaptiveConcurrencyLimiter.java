@@ -0,0 +1,114 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptacyjny limit równoległych żądań sterowany gradientem czasu obsługi.
+ * <p>
+ * Czasy obsługi zbierane są w oknach; po każdym oknie limit jest przeliczany jako
+ * {@code limit * gradient + sqrt(limit)}, gdzie {@code gradient = tolerancja * długoterminowa średnia / średnia
+ * z okna}, ograniczony do przedziału 0,5-1. Dopóki czas obsługi nie rośnie ponad tolerancję, limit powoli rośnie
+ * (o pierwiastek z limitu); gdy rośnie, bo żądania czekają na pulę połączeń lub procesor, limit maleje
+ * proporcjonalnie do wzrostu. Limit nie rośnie, gdy nie jest wykorzystywany nawet w połowie. Żądania ponad limit
+ * są odrzucane od razu, zamiast czekać w kolejce.
+ */
+final class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_WINDOWS = 20;
+
+    private final RateLimitProperties.Concurrency properties;
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder windowRttNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    private volatile double limit;
+    private volatile long windowStart;
+    private double longRttNanos;
+
+    AdaptiveConcurrencyLimiter(RateLimitProperties.Concurrency properties, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.windowNanos = properties.window().toNanos();
+        this.nanoClock = nanoClock;
+        this.limit = properties.initialLimit();
+        this.windowStart = nanoClock.getAsLong();
+    }
+
+    /**
+     * Zajmuje miejsce dla żądania, jeśli limit na to pozwala.
+     *
+     * @return zajęte miejsce, które należy przekazać do {@link #release(Permit)}, albo {@code null}, jeśli żądanie
+     * powinno zostać odrzucone
+     */
+    @Nullable
+    Permit tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > (int) limit) {
+            inFlight.decrementAndGet();
+            return null;
+        }
+        if (current > peakInFlight.get()) {
+            peakInFlight.accumulateAndGet(current, Math::max);
+        }
+        return new Permit(nanoClock.getAsLong());
+    }
+
+    /**
+     * Zwalnia miejsce zajęte przez {@link #tryAcquire()} i zapisuje czas obsługi żądania.
+     */
+    void release(Permit permit) {
+        inFlight.decrementAndGet();
+        long now = nanoClock.getAsLong();
+        windowRttNanos.add(now - permit.startedAt());
+        windowSamples.increment();
+        if (now - windowStart >= windowNanos && updating.compareAndSet(false, true)) {
+            try {
+                windowStart = now;
+                long samples = windowSamples.sumThenReset();
+                long rttNanos = windowRttNanos.sumThenReset();
+                int peak = peakInFlight.getAndSet(inFlight.get());
+                if (samples >= properties.minWindowSamples()) {
+                    update((double) rttNanos / samples, peak);
+                }
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    private void update(double shortRttNanos, int peak) {
+        longRttNanos = longRttNanos == 0 ? shortRttNanos : longRttNanos + (shortRttNanos - longRttNanos) / LONG_WINDOWS;
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, properties.rttTolerance() * longRttNanos / shortRttNanos));
+        if (gradient == 1.0 && peak < current / 2) {
+            return;
+        }
+        double proposed = current * gradient + Math.sqrt(current);
+        double smoothed = current * (1 - properties.smoothing()) + proposed * properties.smoothing();
+        limit = Math.max(properties.minLimit(), Math.min(properties.maxLimit(), smoothed));
+    }
+
+    /**
+     * Miejsce zajęte przez żądanie.
+     *
+     * @param startedAt odczyt zegara przy rozpoczęciu obsługi; może być ujemny, jak {@link System#nanoTime()}
+     */
+    record Permit(long startedAt) {
+    }
+}
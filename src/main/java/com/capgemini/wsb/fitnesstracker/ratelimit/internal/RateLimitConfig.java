@@ -0,0 +1,55 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Rejestruje {@link RateLimitFilter} dla {@code /v1/trainings} i {@code /v1/users}. Wyłączana przez
+ * {@code rate-limit.enabled=false}.
+ * <p>
+ * Metryki: {@code ratelimit.rejected} (z tagiem {@code reason}: {@code client_rate} lub {@code concurrency}),
+ * {@code ratelimit.clients}, {@code ratelimit.concurrency.limit} i {@code ratelimit.concurrency.in.flight}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+class RateLimitConfig {
+
+    @Bean
+    TokenBuckets tokenBuckets(RateLimitProperties properties, TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        long origin = System.nanoTime();
+        TokenBuckets tokenBuckets = new TokenBuckets(properties.requestsPerSecond(), properties.burst(),
+                properties.maxClients(), properties.maxClientsPerAddress(), () -> (System.nanoTime() - origin) / 1_000_000);
+        taskScheduler.scheduleWithFixedDelay(tokenBuckets::sweep, properties.sweepInterval());
+        Gauge.builder("ratelimit.clients", tokenBuckets, TokenBuckets::clients).register(meterRegistry);
+        return tokenBuckets;
+    }
+
+    @Bean
+    FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimitProperties properties,
+                                                            TokenBuckets tokenBuckets,
+                                                            MeterRegistry meterRegistry) {
+        AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+        if (properties.concurrency().enabled()) {
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(properties.concurrency(), System::nanoTime);
+            Gauge.builder("ratelimit.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::limit)
+                    .register(meterRegistry);
+            Gauge.builder("ratelimit.concurrency.in.flight", concurrencyLimiter, AdaptiveConcurrencyLimiter::inFlight)
+                    .register(meterRegistry);
+        }
+        RateLimitFilter filter = new RateLimitFilter(tokenBuckets, concurrencyLimiter, properties,
+                meterRegistry.counter("ratelimit.rejected", "reason", "client_rate"),
+                meterRegistry.counter("ratelimit.rejected", "reason", "concurrency"));
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/v1/trainings/*", "/v1/users/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,105 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import io.micrometer.core.instrument.Counter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * Odrzuca żądania z kodem 429 i nagłówkiem {@code Retry-After}, zanim trafią do kontrolerów: najpierw gdy klient
+ * wyczerpał swój kubełek żetonów, potem gdy aplikacja osiągnęła adaptacyjny limit równoległych żądań. Kubełki
+ * kluczowane są adresem klienta, a nagłówek identyfikatora klienta rozróżnia tylko klientów za tym adresem.
+ * Żądania strumieniowe (ślad treningu, strumień zdarzeń) zużywają żeton klienta, ale nie zajmują miejsca
+ * w limicie równoległych żądań i nie wpływają na jego czas obsługi.
+ */
+class RateLimitFilter extends OncePerRequestFilter {
+
+    private final TokenBuckets tokenBuckets;
+    @Nullable
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final String clientHeader;
+    private final List<String> concurrencyExcludedPaths;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final long concurrencyRetryAfterSeconds;
+    private final Counter clientRateRejected;
+    private final Counter concurrencyRejected;
+
+    RateLimitFilter(TokenBuckets tokenBuckets,
+                    @Nullable AdaptiveConcurrencyLimiter concurrencyLimiter,
+                    RateLimitProperties properties,
+                    Counter clientRateRejected,
+                    Counter concurrencyRejected) {
+        this.tokenBuckets = tokenBuckets;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.clientHeader = properties.clientHeader();
+        this.concurrencyExcludedPaths = properties.concurrency().excludedPaths();
+        this.concurrencyRetryAfterSeconds = Math.max(1, properties.concurrency().retryAfter().toSeconds());
+        this.clientRateRejected = clientRateRejected;
+        this.concurrencyRejected = concurrencyRejected;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long waitMillis = tokenBuckets.tryAcquire(address(request), clientId(request));
+        if (waitMillis > 0) {
+            clientRateRejected.increment();
+            reject(response, (waitMillis + 999) / 1000, "Client rate limit exceeded");
+            return;
+        }
+        if (concurrencyLimiter == null || isConcurrencyExcluded(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire();
+        if (permit == null) {
+            concurrencyRejected.increment();
+            reject(response, concurrencyRetryAfterSeconds, "Server is overloaded");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            concurrencyLimiter.release(permit);
+        }
+    }
+
+    private boolean isConcurrencyExcluded(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : concurrencyExcludedPaths) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Klucz limitu, którego klient nie może dowolnie zmieniać: zalogowany użytkownik albo adres IP.
+     */
+    private static String address(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal == null ? request.getRemoteAddr() : "principal:" + principal.getName();
+    }
+
+    @Nullable
+    private String clientId(HttpServletRequest request) {
+        String client = request.getHeader(clientHeader);
+        return client == null || client.isBlank() ? null : client;
+    }
+
+    private static void reject(HttpServletResponse response, long retryAfterSeconds, String message) throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), message);
+    }
+}
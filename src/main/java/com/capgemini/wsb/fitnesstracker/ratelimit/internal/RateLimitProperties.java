@@ -0,0 +1,64 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguracja ograniczania ruchu do {@code /v1/trainings} i {@code /v1/users}.
+ *
+ * @param enabled              czy filtr ograniczający ruch jest włączony
+ * @param clientHeader         nagłówek rozróżniający klientów API za jednym adresem IP; limit liczony jest zawsze
+ *                             per adres (lub zalogowanego użytkownika), a nagłówek wydziela w nim osobne kubełki
+ * @param requestsPerSecond    stałe tempo żądań jednego klienta
+ * @param burst                liczba żądań, które klient może wykonać naraz po okresie bezczynności
+ *                             (co najwyżej {@value TokenBuckets#MAX_BURST})
+ * @param maxClients           liczba śledzonych adresów, powyżej której nowe adresy dzielą jeden wspólny kubełek
+ * @param maxClientsPerAddress liczba klientów z własnym kubełkiem za jednym adresem; kolejni dzielą kubełek
+ *                             adresu
+ * @param sweepInterval        odstęp między usuwaniem kubełków klientów bezczynnych na tyle długo, że są pełne
+ * @param concurrency          adaptacyjny limit równoległych żądań wspólny dla wszystkich klientów
+ */
+@ConfigurationProperties(prefix = "rate-limit")
+record RateLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("X-Client-Id") String clientHeader,
+        @DefaultValue("20") double requestsPerSecond,
+        @DefaultValue("40") int burst,
+        @DefaultValue("100000") int maxClients,
+        @DefaultValue("16") int maxClientsPerAddress,
+        @DefaultValue("1m") Duration sweepInterval,
+        @DefaultValue Concurrency concurrency
+) {
+
+    /**
+     * @param enabled          czy limit równoległych żądań jest włączony
+     * @param initialLimit     limit przy starcie aplikacji
+     * @param minLimit         dolna granica limitu
+     * @param maxLimit         górna granica limitu
+     * @param window           okno, z którego uśrednia się czas obsługi przed każdą korektą limitu
+     * @param minWindowSamples minimalna liczba żądań w oknie, przy której limit jest korygowany
+     * @param rttTolerance     dopuszczalny wzrost czasu obsługi względem długoterminowej średniej, zanim limit
+     *                         zacznie maleć
+     * @param smoothing        waga nowej wartości limitu przy korekcie (0-1)
+     * @param retryAfter       wartość nagłówka {@code Retry-After} przy odrzuceniu z powodu przeciążenia
+     * @param excludedPaths    wzorce ścieżek (Ant) strumieniowych punktów końcowych pomijanych przez ten limit;
+     *                         czas ich obsługi zależy od długości strumienia, nie od obciążenia, i zaniżałby limit
+     *                         pozostałych żądań
+     */
+    record Concurrency(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("100") int initialLimit,
+            @DefaultValue("8") int minLimit,
+            @DefaultValue("1000") int maxLimit,
+            @DefaultValue("100ms") Duration window,
+            @DefaultValue("10") int minWindowSamples,
+            @DefaultValue("1.5") double rttTolerance,
+            @DefaultValue("0.2") double smoothing,
+            @DefaultValue("1s") Duration retryAfter,
+            @DefaultValue({"/v1/users/*/trainings/stream", "/v1/trainings/*/track/**"}) List<String> excludedPaths
+    ) {
+    }
+}
@@ -0,0 +1,154 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Kubełki żetonów per adres klienta z leniwym uzupełnianiem.
+ * <p>
+ * Stan kubełka (czas ostatniego uzupełnienia w milisekundach i liczba żetonów w 1/{@value #UNITS_PER_TOKEN}
+ * żetonu) mieści się w jednym {@link AtomicLong}, więc pobranie żetonu to odczyt i jedno {@code compareAndSet}, bez
+ * blokad i bez wątku uzupełniającego - żetony za czas, który upłynął, dolicza pierwsze żądanie po przerwie.
+ * Kubełki trzyma {@link ConcurrentHashMap}, której kubełki haszujące zastępują ręczne paskowanie; blokada
+ * występuje tylko przy pierwszym żądaniu nowego klienta. Kubełki bezczynne na tyle długo, że są pełne, usuwa
+ * {@link #sweep()} - kubełek utworzony ponownie jest od nich nieodróżnialny.
+ * <p>
+ * Kluczem jest adres, którego klient nie wybiera sam. Identyfikator klienta podany w żądaniu rozróżnia tylko
+ * klientów za jednym adresem: każdy adres ma co najwyżej {@code maxClientsPerAddress} własnych kubełków klientów,
+ * a kolejni klienci z tego adresu dzielą kubełek adresu. Zmiana identyfikatora przy każdym żądaniu nie daje więc
+ * nowych żetonów ponad ten limit ani nie zapełnia {@code maxClients}, spychając innych do wspólnego kubełka.
+ */
+final class TokenBuckets {
+
+    static final int MAX_BURST = (1 << 23) / 1024 - 1;
+
+    private static final int UNITS_PER_TOKEN = 1024;
+    private static final int UNIT_BITS = 23;
+    private static final long UNIT_MASK = (1L << UNIT_BITS) - 1;
+    private static final String OVERFLOW_CLIENT = "";
+
+    private final ConcurrentHashMap<String, Address> addresses = new ConcurrentHashMap<>();
+    private final long capacity;
+    private final double unitsPerMilli;
+    private final long fullAfterMillis;
+    private final int maxClients;
+    private final int maxClientsPerAddress;
+    private final LongSupplier clock;
+
+    /**
+     * @param maxClients           liczba śledzonych adresów, powyżej której nowe adresy dzielą jeden kubełek
+     * @param maxClientsPerAddress liczba klientów z własnym kubełkiem za jednym adresem
+     * @param clock                zegar monotoniczny w milisekundach, liczony od wartości nieujemnej
+     */
+    TokenBuckets(double requestsPerSecond, int burst, int maxClients, int maxClientsPerAddress, LongSupplier clock) {
+        if (burst < 1 || burst > MAX_BURST) {
+            throw new IllegalArgumentException("Burst must be between 1 and " + MAX_BURST);
+        }
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive");
+        }
+        this.capacity = (long) burst * UNITS_PER_TOKEN;
+        this.unitsPerMilli = requestsPerSecond * UNITS_PER_TOKEN / 1000;
+        this.fullAfterMillis = (long) Math.ceil(capacity / unitsPerMilli);
+        this.maxClients = maxClients;
+        this.maxClientsPerAddress = maxClientsPerAddress;
+        this.clock = clock;
+    }
+
+    /**
+     * Pobiera żeton z kubełka klienta.
+     *
+     * @param address adres klienta (lub zalogowany użytkownik)
+     * @param client  identyfikator klienta podany w żądaniu lub {@code null}
+     * @return {@code 0}, jeśli żeton został pobrany, w przeciwnym wypadku liczba milisekund do uzupełnienia żetonu
+     */
+    long tryAcquire(String address, @Nullable String client) {
+        AtomicLong bucket = bucket(address, client);
+        while (true) {
+            long state = bucket.get();
+            long now = clock.getAsLong();
+            long last = state >>> UNIT_BITS;
+            long units = state & UNIT_MASK;
+            long added = (long) (Math.max(0, now - last) * unitsPerMilli);
+            long available = units + added;
+            long refilledAt;
+            if (available >= capacity) {
+                available = capacity;
+                refilledAt = now;
+            } else {
+                // Przesuwa czas tylko o tyle, ile zajęło doliczenie całych jednostek, żeby przy częstych żądaniach
+                // i wolnym uzupełnianiu nie gubić ułamków.
+                refilledAt = last + (long) (added / unitsPerMilli);
+            }
+            if (available < UNITS_PER_TOKEN) {
+                return Math.max(1, (long) Math.ceil((UNITS_PER_TOKEN - available) / unitsPerMilli));
+            }
+            if (bucket.compareAndSet(state, refilledAt << UNIT_BITS | (available - UNITS_PER_TOKEN))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Usuwa kubełki, które od ostatniego żądania zdążyły się w pełni uzupełnić.
+     *
+     * @return liczba usuniętych kubełków
+     */
+    int sweep() {
+        long now = clock.getAsLong();
+        int before = clients();
+        for (Address address : addresses.values()) {
+            address.clients().values().removeIf(bucket -> isFull(bucket, now));
+        }
+        addresses.values().removeIf(address -> address.clients().isEmpty() && isFull(address.shared(), now));
+        return before - clients();
+    }
+
+    /**
+     * @return liczba kubełków - adresów i klientów za nimi
+     */
+    int clients() {
+        int clients = addresses.size();
+        for (Address address : addresses.values()) {
+            clients += address.clients().size();
+        }
+        return clients;
+    }
+
+    private boolean isFull(AtomicLong bucket, long now) {
+        return now - (bucket.get() >>> UNIT_BITS) >= fullAfterMillis;
+    }
+
+    private AtomicLong bucket(String address, @Nullable String client) {
+        Address entry = addresses.get(address);
+        if (entry == null) {
+            String key = addresses.size() < maxClients ? address : OVERFLOW_CLIENT;
+            entry = addresses.computeIfAbsent(key, ignored -> new Address(newBucket(), new ConcurrentHashMap<>()));
+        }
+        if (client == null) {
+            return entry.shared();
+        }
+        AtomicLong bucket = entry.clients().get(client);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (entry.clients().size() >= maxClientsPerAddress) {
+            return entry.shared();
+        }
+        return entry.clients().computeIfAbsent(client, ignored -> newBucket());
+    }
+
+    private AtomicLong newBucket() {
+        return new AtomicLong(clock.getAsLong() << UNIT_BITS | capacity);
+    }
+
+    /**
+     * @param shared  kubełek żądań bez identyfikatora klienta i klientów ponad limit na adres
+     * @param clients kubełki klientów rozróżnionych identyfikatorem
+     */
+    private record Address(AtomicLong shared, ConcurrentHashMap<String, AtomicLong> clients) {
+    }
+}
@@ -0,0 +1,16 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+
+/**
+ * Exception indicating that a snapshot file is not a valid snapshot or is corrupted (checksum mismatch).
+ * Will resolve to the {@link org.springframework.http.HttpStatus#BAD_REQUEST}.
+ */
+@SuppressWarnings("squid:S110")
+class InvalidSnapshotException extends BusinessException {
+
+    InvalidSnapshotException(String message) {
+        super(message);
+    }
+
+}
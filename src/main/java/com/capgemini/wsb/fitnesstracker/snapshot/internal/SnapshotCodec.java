@@ -0,0 +1,346 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.VarInts;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Kodowanie binarnego snapshotu użytkowników, treningów i śladów usuniętych treningów (wersja {@value #VERSION}).
+ * <pre>
+ * nagłówek: magic, wersja, czas utworzenia, słownik typów aktywności (liczba, nazwy)
+ * bloki:    typ (1 - użytkownicy, 2 - treningi, 3 - ślady usunięć, 0 - koniec), liczba wierszy, długość danych,
+ *           długość danych skompresowanych, CRC32C danych skompresowanych, dane skompresowane (Deflate)
+ * </pre>
+ * Wszystkie bloki użytkowników poprzedzają bloki treningów. Wewnątrz bloku ID i czasy rozpoczęcia zapisane są
+ * jako różnice względem poprzedniego wiersza, a typ aktywności jako indeks w słowniku z nagłówka - snapshot
+ * pozostaje poprawny po zmianie kolejności wartości {@link ActivityType}. Napisy poprzedzone są długością.
+ * <p>
+ * Wersja 2 dodała wersje wierszy, kalorie treningów, numery zmian ({@code change_seq}) i blok śladów usunięć.
+ * Snapshot w wersji 1 nadal można odtworzyć - brakujące kolumny dostają wartości domyślne.
+ */
+final class SnapshotCodec {
+
+    static final int MAGIC = 0x4654534E;
+    static final int VERSION = 2;
+    static final int FIRST_VERSION = 1;
+    static final byte END_BLOCK = 0;
+    static final byte USERS_BLOCK = 1;
+    static final byte TRAININGS_BLOCK = 2;
+    static final byte TOMBSTONES_BLOCK = 3;
+    static final int BLOCK_HEADER_SIZE = 1 + 4 * Integer.BYTES;
+
+    private static final int FINGERPRINT_BYTES = 16;
+
+    private SnapshotCodec() {
+    }
+
+    record FileHeader(int version, int[] activityTypeOrdinals) {
+    }
+
+    record UserRow(long id, String firstName, String lastName, LocalDate birthdate, String email, long version) {
+    }
+
+    /**
+     * @param changeSeq numer zmiany lub {@code null} dla snapshotu w wersji 1
+     */
+    record TrainingRow(long id, @Nullable Long userId, long startTime, long endTime, int activityType,
+                       double distance, double averageSpeed, @Nullable String fingerprint, @Nullable Integer calories,
+                       @Nullable Integer caloriesModel, long version, @Nullable Long changeSeq) {
+    }
+
+    /**
+     * @param deletedAtMicros czas usunięcia w mikrosekundach od epoki
+     */
+    record TombstoneRow(long trainingId, long userId, long changeSeq, long deletedAtMicros) {
+    }
+
+    record BlockHeader(byte type, int rows, int rawLength, int compressedLength, int checksum) {
+    }
+
+    static ByteBuffer encodeFileHeader(long createdAt) {
+        ActivityType[] activityTypes = ActivityType.values();
+        ByteBuffer header = ByteBuffer.allocate(64 + activityTypes.length * 64);
+        header.putInt(MAGIC).putInt(VERSION).putLong(createdAt);
+        VarInts.writeUnsigned(header, activityTypes.length);
+        for (ActivityType activityType : activityTypes) {
+            writeString(header, activityType.name());
+        }
+        return header.flip();
+    }
+
+    /**
+     * Czyta nagłówek pliku: wersję i słownik typów aktywności (indeks w snapshocie na obecny
+     * {@link ActivityType#ordinal()}).
+     */
+    static FileHeader readFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer fixed = readFully(channel, 2 * Integer.BYTES + Long.BYTES);
+        if (fixed.getInt() != MAGIC) {
+            throw new InvalidSnapshotException("Not a snapshot file");
+        }
+        int version = fixed.getInt();
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new InvalidSnapshotException("Unsupported snapshot version " + version);
+        }
+        long dictionaryStart = channel.position();
+        ByteBuffer dictionary = ByteBuffer.allocate(4096);
+        channel.read(dictionary);
+        dictionary.flip();
+        int[] ordinals = new int[(int) VarInts.readUnsigned(dictionary)];
+        for (int i = 0; i < ordinals.length; i++) {
+            String name = readString(dictionary);
+            try {
+                ordinals[i] = ActivityType.valueOf(name).ordinal();
+            } catch (IllegalArgumentException e) {
+                throw new InvalidSnapshotException("Unknown activity type in snapshot: " + name);
+            }
+        }
+        channel.position(dictionaryStart + dictionary.position());
+        return new FileHeader(version, ordinals);
+    }
+
+    static ByteBuffer encodeUsers(List<UserRow> users) {
+        int capacity = 0;
+        for (UserRow user : users) {
+            capacity += 4 * VarInts.MAX_LENGTH + maxStringSize(user.firstName()) + maxStringSize(user.lastName())
+                    + maxStringSize(user.email());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        long previousId = 0;
+        long previousBirthdate = 0;
+        for (UserRow user : users) {
+            VarInts.writeSigned(buffer, user.id() - previousId);
+            writeString(buffer, user.firstName());
+            writeString(buffer, user.lastName());
+            VarInts.writeSigned(buffer, user.birthdate().toEpochDay() - previousBirthdate);
+            writeString(buffer, user.email());
+            VarInts.writeUnsigned(buffer, user.version());
+            previousId = user.id();
+            previousBirthdate = user.birthdate().toEpochDay();
+        }
+        return buffer.flip();
+    }
+
+    static List<UserRow> decodeUsers(ByteBuffer buffer, int rows, int version) {
+        List<UserRow> users = new ArrayList<>(rows);
+        long id = 0;
+        long birthdate = 0;
+        for (int i = 0; i < rows; i++) {
+            id += VarInts.readSigned(buffer);
+            String firstName = readString(buffer);
+            String lastName = readString(buffer);
+            birthdate += VarInts.readSigned(buffer);
+            String email = readString(buffer);
+            long rowVersion = version >= 2 ? VarInts.readUnsigned(buffer) : 0;
+            users.add(new UserRow(id, firstName, lastName, LocalDate.ofEpochDay(birthdate), email, rowVersion));
+        }
+        return users;
+    }
+
+    static ByteBuffer encodeTrainings(List<TrainingRow> trainings) {
+        ByteBuffer buffer = ByteBuffer.allocate(trainings.size() * (9 * VarInts.MAX_LENGTH + 2 * Double.BYTES + 1 + FINGERPRINT_BYTES));
+        long previousId = 0;
+        long previousStart = 0;
+        for (TrainingRow training : trainings) {
+            VarInts.writeSigned(buffer, training.id() - previousId);
+            VarInts.writeUnsigned(buffer, training.userId() == null ? 0 : training.userId() + 1);
+            VarInts.writeSigned(buffer, training.startTime() - previousStart);
+            VarInts.writeSigned(buffer, training.endTime() - training.startTime());
+            VarInts.writeUnsigned(buffer, training.activityType());
+            buffer.putDouble(training.distance());
+            buffer.putDouble(training.averageSpeed());
+            if (training.fingerprint() == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1).put(HexFormat.of().parseHex(training.fingerprint()));
+            }
+            writeOptional(buffer, training.calories());
+            writeOptional(buffer, training.caloriesModel());
+            VarInts.writeUnsigned(buffer, training.version());
+            VarInts.writeUnsigned(buffer, training.changeSeq() == null ? 0 : training.changeSeq() + 1);
+            previousId = training.id();
+            previousStart = training.startTime();
+        }
+        return buffer.flip();
+    }
+
+    static List<TrainingRow> decodeTrainings(ByteBuffer buffer, int rows, FileHeader fileHeader) {
+        List<TrainingRow> trainings = new ArrayList<>(rows);
+        long id = 0;
+        long startTime = 0;
+        byte[] fingerprint = new byte[FINGERPRINT_BYTES];
+        for (int i = 0; i < rows; i++) {
+            id += VarInts.readSigned(buffer);
+            long userId = VarInts.readUnsigned(buffer);
+            startTime += VarInts.readSigned(buffer);
+            long endTime = startTime + VarInts.readSigned(buffer);
+            int activityType = fileHeader.activityTypeOrdinals()[(int) VarInts.readUnsigned(buffer)];
+            double distance = buffer.getDouble();
+            double averageSpeed = buffer.getDouble();
+            String fingerprintHex = null;
+            if (buffer.get() != 0) {
+                buffer.get(fingerprint);
+                fingerprintHex = HexFormat.of().formatHex(fingerprint);
+            }
+            Integer calories = null;
+            Integer caloriesModel = null;
+            long version = 0;
+            Long changeSeq = null;
+            if (fileHeader.version() >= 2) {
+                calories = readOptional(buffer);
+                caloriesModel = readOptional(buffer);
+                version = VarInts.readUnsigned(buffer);
+                long storedChangeSeq = VarInts.readUnsigned(buffer);
+                changeSeq = storedChangeSeq == 0 ? null : storedChangeSeq - 1;
+            }
+            trainings.add(new TrainingRow(id, userId == 0 ? null : userId - 1, startTime, endTime, activityType,
+                    distance, averageSpeed, fingerprintHex, calories, caloriesModel, version, changeSeq));
+        }
+        return trainings;
+    }
+
+    static ByteBuffer encodeTombstones(List<TombstoneRow> tombstones) {
+        ByteBuffer buffer = ByteBuffer.allocate(tombstones.size() * 4 * VarInts.MAX_LENGTH);
+        long previousId = 0;
+        for (TombstoneRow tombstone : tombstones) {
+            VarInts.writeSigned(buffer, tombstone.trainingId() - previousId);
+            VarInts.writeUnsigned(buffer, tombstone.userId());
+            VarInts.writeUnsigned(buffer, tombstone.changeSeq());
+            VarInts.writeUnsigned(buffer, tombstone.deletedAtMicros());
+            previousId = tombstone.trainingId();
+        }
+        return buffer.flip();
+    }
+
+    static List<TombstoneRow> decodeTombstones(ByteBuffer buffer, int rows) {
+        List<TombstoneRow> tombstones = new ArrayList<>(rows);
+        long trainingId = 0;
+        for (int i = 0; i < rows; i++) {
+            trainingId += VarInts.readSigned(buffer);
+            tombstones.add(new TombstoneRow(trainingId, VarInts.readUnsigned(buffer), VarInts.readUnsigned(buffer),
+                    VarInts.readUnsigned(buffer)));
+        }
+        return tombstones;
+    }
+
+    /**
+     * Kompresuje dane bloku i poprzedza je nagłówkiem bloku z sumą kontrolną.
+     */
+    static ByteBuffer compressBlock(byte type, int rows, ByteBuffer raw) {
+        int rawLength = raw.remaining();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] compressed;
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteBuffer output = ByteBuffer.allocate(rawLength + rawLength / 100 + 64);
+            while (!deflater.finished()) {
+                if (!output.hasRemaining()) {
+                    output = ByteBuffer.allocate(output.capacity() * 2).put(output.flip());
+                }
+                deflater.deflate(output);
+            }
+            compressed = Arrays.copyOf(output.array(), output.position());
+        } finally {
+            deflater.end();
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(compressed);
+        return ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressed.length)
+                .put(type)
+                .putInt(rows)
+                .putInt(rawLength)
+                .putInt(compressed.length)
+                .putInt((int) checksum.getValue())
+                .put(compressed)
+                .flip();
+    }
+
+    static ByteBuffer endBlock() {
+        return ByteBuffer.allocate(BLOCK_HEADER_SIZE).put(END_BLOCK).putInt(0).putInt(0).putInt(0).putInt(0).flip();
+    }
+
+    static BlockHeader readBlockHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, BLOCK_HEADER_SIZE);
+        return new BlockHeader(header.get(), header.getInt(), header.getInt(), header.getInt(), header.getInt());
+    }
+
+    /**
+     * Sprawdza sumę kontrolną i rozpakowuje dane bloku.
+     */
+    static ByteBuffer decompressBlock(BlockHeader header, ByteBuffer compressed) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(compressed.duplicate());
+        if ((int) checksum.getValue() != header.checksum()) {
+            throw new InvalidSnapshotException("Snapshot block checksum mismatch");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteBuffer raw = ByteBuffer.allocate(header.rawLength());
+            while (raw.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(raw) == 0 && inflater.needsInput()) {
+                    throw new InvalidSnapshotException("Truncated snapshot block");
+                }
+            }
+            return raw.flip();
+        } catch (DataFormatException e) {
+            throw new InvalidSnapshotException("Corrupted snapshot block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new InvalidSnapshotException("Unexpected end of snapshot file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Zapisuje nieujemną liczbę lub jej brak jako {@code 0}.
+     */
+    private static void writeOptional(ByteBuffer buffer, @Nullable Integer value) {
+        VarInts.writeUnsigned(buffer, value == null ? 0 : value + 1L);
+    }
+
+    @Nullable
+    private static Integer readOptional(ByteBuffer buffer) {
+        long value = VarInts.readUnsigned(buffer);
+        return value == 0 ? null : (int) (value - 1);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarInts.writeUnsigned(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = (int) VarInts.readUnsigned(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int maxStringSize(String value) {
+        return VarInts.MAX_LENGTH + 3 * value.length();
+    }
+}
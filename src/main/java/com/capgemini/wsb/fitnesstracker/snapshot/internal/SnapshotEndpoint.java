@@ -0,0 +1,36 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotService.SnapshotSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Endpoint actuatora {@code snapshot} uruchamiający zrzut ({@code dump}) lub odtworzenie ({@code restore})
+ * binarnego snapshotu. Nazwa pliku przekazywana jest w polu {@code path} i rozwiązywana względem
+ * {@link SnapshotProperties#directory()}.
+ * <p>
+ * Zrzut nadpisuje plik, a odtworzenie zastępuje zawartość bazy, więc endpoint dostępny jest wyłącznie przez JMX
+ * (dla operatora) - nigdy przez HTTP.
+ */
+@Component
+@JmxEndpoint(id = "snapshot")
+@RequiredArgsConstructor
+class SnapshotEndpoint {
+
+    private final SnapshotService snapshotService;
+    private final SnapshotProperties properties;
+
+    @WriteOperation
+    public SnapshotSummary run(@Selector String action, String path) throws IOException, InterruptedException {
+        return switch (action) {
+            case "dump" -> snapshotService.dump(properties.resolve(path));
+            case "restore" -> snapshotService.restore(properties.resolve(path));
+            default -> throw new IllegalArgumentException("Unknown snapshot action: " + action);
+        };
+    }
+}
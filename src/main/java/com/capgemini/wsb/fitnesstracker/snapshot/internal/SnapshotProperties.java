@@ -0,0 +1,45 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+/**
+ * Konfiguracja zrzutu i odtwarzania binarnego snapshotu użytkowników i treningów.
+ *
+ * @param directory      katalog, w którym zapisywane są i z którego odtwarzane są pliki snapshotów
+ * @param blockRows      liczba wierszy w jednym bloku snapshotu (i w jednym wsadzie {@code INSERT} przy odtwarzaniu)
+ * @param restoreThreads liczba wątków dekodujących i zapisujących bloki przy odtwarzaniu (0 - liczba procesorów)
+ */
+@ConfigurationProperties(prefix = "snapshot")
+record SnapshotProperties(
+        @DefaultValue("data/snapshots") Path directory,
+        @DefaultValue("10000") int blockRows,
+        @DefaultValue("0") int restoreThreads
+) {
+
+    int effectiveRestoreThreads() {
+        return restoreThreads > 0 ? restoreThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param file ścieżka pliku względem {@link #directory()}
+     * @return ścieżka pliku w katalogu snapshotów
+     * @throws BusinessException jeśli ścieżka jest niepoprawna lub po normalizacji wskazuje poza katalog snapshotów
+     */
+    Path resolve(String file) {
+        Path base = directory.toAbsolutePath().normalize();
+        try {
+            Path resolved = base.resolve(file).normalize();
+            if (resolved.startsWith(base) && !resolved.equals(base)) {
+                return resolved;
+            }
+        } catch (InvalidPathException e) {
+            // Zgłaszane niżej jak każda inna niedozwolona ścieżka.
+        }
+        throw new BusinessException("Snapshot path must point to a file inside " + base + ": " + file);
+    }
+}
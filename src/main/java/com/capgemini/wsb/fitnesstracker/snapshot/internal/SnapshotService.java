@@ -0,0 +1,296 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotCodec.BlockHeader;
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotCodec.FileHeader;
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotCodec.TombstoneRow;
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotCodec.TrainingRow;
+import com.capgemini.wsb.fitnesstracker.snapshot.internal.SnapshotCodec.UserRow;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Zrzut tabel {@code users}, {@code trainings} i {@code training_tombstones} do binarnego snapshotu ({@link SnapshotCodec}) i jego odtwarzanie.
+ * <p>
+ * Zrzut czyta tabele porcjami po ID (keyset pagination) i zapisuje skompresowane bloki przez {@link FileChannel}.
+ * Porcje czytane są w osobnych transakcjach, więc zrzut wykonany przy równoległych zapisach nie jest spójny
+ * w jednym punkcie czasu - należy go wykonywać przy wstrzymanym ruchu lub na replice.
+ * Odtwarzanie czyta bloki jednym wątkiem, a dekompresję, dekodowanie i wsadowy {@code INSERT} (jedna transakcja
+ * na blok) wykonuje równolegle pula wątków. Bloki treningów zapisywane są dopiero po wszystkich blokach
+ * użytkowników, bo treningi wskazują na użytkowników kluczem obcym.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+class SnapshotService {
+
+    private static final String CHANGE_SEQUENCE = "training_change_seq";
+    private static final String LIVE_USER =
+            "(user_id IS NULL OR user_id NOT IN (SELECT deleted.id FROM users deleted WHERE deleted.deleted_at IS NOT NULL))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final SnapshotProperties properties;
+
+    /**
+     * Zapisuje użytkowników, treningi i ślady usuniętych treningów do pliku snapshotu. Użytkownicy oznaczeni jako
+     * usunięci (oczekujący na usunięcie danych) i ich treningi są pomijani - snapshot odpowiada stanowi po
+     * dokończeniu ich usuwania, więc odtworzenie ich nie przywraca.
+     * <p>
+     * Snapshot zapisywany jest do pliku tymczasowego w tym samym katalogu i dopiero po zapisaniu na dysk zastępuje
+     * plik docelowy, więc przerwany zrzut nie niszczy poprzedniego snapshotu.
+     *
+     * @param path ścieżka pliku (zastępowany, jeśli istnieje)
+     * @return podsumowanie zrzutu
+     */
+    SnapshotSummary dump(Path path) throws IOException {
+        long startedAt = System.nanoTime();
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            SnapshotSummary summary = dumpTo(temporary, path, startedAt);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Dumped snapshot {}", summary);
+            return summary;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private SnapshotSummary dumpTo(Path temporary, Path path, long startedAt) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, SnapshotCodec.encodeFileHeader(System.currentTimeMillis()));
+            long users = dumpBlocks(channel, SnapshotCodec.USERS_BLOCK, """
+                            SELECT id, first_name, last_name, birthdate, email, version FROM users
+                            WHERE id > ? AND deleted_at IS NULL ORDER BY id LIMIT ?""",
+                    (resultSet, rowNum) -> new UserRow(resultSet.getLong("id"), resultSet.getString("first_name"),
+                            resultSet.getString("last_name"), resultSet.getObject("birthdate", LocalDate.class),
+                            resultSet.getString("email"), resultSet.getLong("version")),
+                    UserRow::id, SnapshotCodec::encodeUsers);
+            long trainings = dumpBlocks(channel, SnapshotCodec.TRAININGS_BLOCK, """
+                            SELECT id, user_id, start_time, end_time, activity_type, distance, average_speed, fingerprint,
+                                   calories, calories_model, version, change_seq
+                            FROM trainings WHERE id > ? AND %s ORDER BY id LIMIT ?""".formatted(LIVE_USER),
+                    (resultSet, rowNum) -> new TrainingRow(resultSet.getLong("id"),
+                            resultSet.getObject("user_id", Long.class),
+                            resultSet.getTimestamp("start_time").getTime(), resultSet.getTimestamp("end_time").getTime(),
+                            resultSet.getInt("activity_type"), resultSet.getDouble("distance"),
+                            resultSet.getDouble("average_speed"), resultSet.getString("fingerprint"),
+                            resultSet.getObject("calories", Integer.class), resultSet.getObject("calories_model", Integer.class),
+                            resultSet.getLong("version"), resultSet.getLong("change_seq")),
+                    TrainingRow::id, SnapshotCodec::encodeTrainings);
+            dumpBlocks(channel, SnapshotCodec.TOMBSTONES_BLOCK, """
+                            SELECT training_id, user_id, change_seq, deleted_at FROM training_tombstones
+                            WHERE training_id > ? AND %s ORDER BY training_id LIMIT ?""".formatted(LIVE_USER),
+                    (resultSet, rowNum) -> new TombstoneRow(resultSet.getLong("training_id"), resultSet.getLong("user_id"),
+                            resultSet.getLong("change_seq"),
+                            ChronoUnit.MICROS.between(Instant.EPOCH, resultSet.getTimestamp("deleted_at").toInstant())),
+                    TombstoneRow::trainingId, SnapshotCodec::encodeTombstones);
+
+            writeFully(channel, SnapshotCodec.endBlock());
+            channel.force(true);
+            return SnapshotSummary.of(path, users, trainings, channel.size(), startedAt);
+        }
+    }
+
+    /**
+     * Zapisuje wiersze tabeli blokami, czytając je porcjami po kluczu (keyset pagination).
+     *
+     * @return liczba zapisanych wierszy
+     */
+    private <R> long dumpBlocks(FileChannel channel, byte type, String query, RowMapper<R> rowMapper,
+                                ToLongFunction<R> key, Function<List<R>, ByteBuffer> encoder) throws IOException {
+        long rows = 0;
+        long lastKey = Long.MIN_VALUE;
+        List<R> block;
+        do {
+            block = jdbcTemplate.query(query, rowMapper, lastKey, properties.blockRows());
+            if (!block.isEmpty()) {
+                writeFully(channel, SnapshotCodec.compressBlock(type, block.size(), encoder.apply(block)));
+                lastKey = key.applyAsLong(block.get(block.size() - 1));
+                rows += block.size();
+            }
+        } while (block.size() == properties.blockRows());
+        return rows;
+    }
+
+    /**
+     * Odtwarza użytkowników, treningi i ślady usuniętych treningów z pliku snapshotu. Tabele muszą być puste;
+     * ID, wersje i numery zmian zachowują wartości ze snapshotu, a liczniki kolumn ID i sekwencja numerów zmian
+     * są ustawiane za największą odtworzoną wartością. Token synchronizacji wydany po zrzucie wskazuje wtedy numer
+     * większy niż bieżący, więc klient dostaje pełną synchronizację zamiast zmian względem innego stanu bazy.
+     *
+     * @param path ścieżka pliku snapshotu
+     * @return podsumowanie odtwarzania
+     * @throws InvalidSnapshotException jeśli plik nie jest poprawnym snapshotem
+     * @throws BusinessException        jeśli tabele nie są puste
+     */
+    SnapshotSummary restore(Path path) throws IOException, InterruptedException {
+        if (count("users") > 0 || count("trainings") > 0 || count("training_tombstones") > 0) {
+            throw new BusinessException("Snapshot can only be restored into empty users, trainings and training_tombstones tables");
+        }
+        long startedAt = System.nanoTime();
+        int threads = properties.effectiveRestoreThreads();
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-restore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Ogranicza liczbę bloków wczytanych do pamięci, a jeszcze niezapisanych.
+        Semaphore inFlight = new Semaphore(2 * threads);
+        long users = 0;
+        long trainings = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            FileHeader fileHeader = SnapshotCodec.readFileHeader(channel);
+            List<Future<?>> pending = new ArrayList<>();
+            boolean usersWritten = false;
+            while (true) {
+                BlockHeader header = SnapshotCodec.readBlockHeader(channel);
+                if (header.type() == SnapshotCodec.END_BLOCK) {
+                    break;
+                }
+                ByteBuffer compressed = SnapshotCodec.readFully(channel, header.compressedLength());
+                if (header.type() == SnapshotCodec.USERS_BLOCK) {
+                    users += header.rows();
+                } else if (header.type() == SnapshotCodec.TRAININGS_BLOCK) {
+                    if (!usersWritten) {
+                        awaitAll(pending);
+                        usersWritten = true;
+                    }
+                    trainings += header.rows();
+                } else if (header.type() != SnapshotCodec.TOMBSTONES_BLOCK) {
+                    throw new InvalidSnapshotException("Unknown snapshot block type " + header.type());
+                }
+                inFlight.acquire();
+                pending.add(decoders.submit(() -> {
+                    try {
+                        restoreBlock(header, compressed, fileHeader);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            awaitAll(pending);
+            restartIdentity("users");
+            restartIdentity("trainings");
+            restartChangeSequence();
+            SnapshotSummary summary = SnapshotSummary.of(path, users, trainings, channel.size(), startedAt);
+            log.info("Restored snapshot {}", summary);
+            return summary;
+        } finally {
+            decoders.shutdownNow();
+            // Wiersze zapisane z pominięciem Hibernate - cache drugiego poziomu może być nieaktualny.
+            entityManagerFactory.getCache().evictAll();
+        }
+    }
+
+    private void restoreBlock(BlockHeader header, ByteBuffer compressed, FileHeader fileHeader) {
+        ByteBuffer raw = SnapshotCodec.decompressBlock(header, compressed);
+        if (header.type() == SnapshotCodec.USERS_BLOCK) {
+            List<Object[]> rows = SnapshotCodec.decodeUsers(raw, header.rows(), fileHeader.version()).stream()
+                    .map(user -> new Object[]{user.id(), user.firstName(), user.lastName(), user.birthdate(), user.email(),
+                            user.version()})
+                    .toList();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "INSERT INTO users (id, first_name, last_name, birthdate, email, version) VALUES (?, ?, ?, ?, ?, ?)",
+                    rows));
+        } else if (header.type() == SnapshotCodec.TRAININGS_BLOCK) {
+            List<Object[]> rows = SnapshotCodec.decodeTrainings(raw, header.rows(), fileHeader).stream()
+                    .map(training -> new Object[]{training.id(), training.userId(), new Timestamp(training.startTime()),
+                            new Timestamp(training.endTime()), training.activityType(), training.distance(),
+                            training.averageSpeed(), training.fingerprint(), training.calories(), training.caloriesModel(),
+                            training.version(), training.changeSeq()})
+                    .toList();
+            // Snapshot w wersji 1 nie ma numerów zmian - wiersz dostaje kolejny numer z sekwencji.
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate("""
+                    INSERT INTO trainings (id, user_id, start_time, end_time, activity_type, distance, average_speed,
+                                           fingerprint, calories, calories_model, version, change_seq)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, NEXT VALUE FOR %s))""".formatted(CHANGE_SEQUENCE),
+                    rows));
+        } else {
+            List<Object[]> rows = SnapshotCodec.decodeTombstones(raw, header.rows()).stream()
+                    .map(tombstone -> new Object[]{tombstone.trainingId(), tombstone.userId(), tombstone.changeSeq(),
+                            Timestamp.from(Instant.EPOCH.plus(tombstone.deletedAtMicros(), ChronoUnit.MICROS))})
+                    .toList();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate("""
+                    INSERT INTO training_tombstones (training_id, user_id, change_seq, deleted_at)
+                    VALUES (?, ?, ?, ?)""", rows));
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> pending) throws InterruptedException {
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            pending.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Snapshot restore failed", e.getCause());
+        }
+        pending.clear();
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private void restartIdentity(String table) {
+        long next = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table, Long.class);
+        jdbcTemplate.execute("ALTER TABLE %s ALTER COLUMN id RESTART WITH %d".formatted(table, next));
+    }
+
+    private void restartChangeSequence() {
+        long next = jdbcTemplate.queryForObject("""
+                SELECT GREATEST(COALESCE((SELECT MAX(change_seq) FROM trainings), 0),
+                                COALESCE((SELECT MAX(change_seq) FROM training_tombstones), 0)) + 1""", Long.class);
+        jdbcTemplate.execute("ALTER SEQUENCE %s RESTART WITH %d".formatted(CHANGE_SEQUENCE, next));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Podsumowanie zrzutu lub odtwarzania: liczba wierszy, rozmiar pliku, czas i przepustowość.
+     */
+    record SnapshotSummary(String path, long users, long trainings, long bytes, long millis, long rowsPerSecond) {
+
+        static SnapshotSummary of(Path path, long users, long trainings, long bytes, long startedAtNanos) {
+            long millis = Math.max(1, (System.nanoTime() - startedAtNanos) / 1_000_000);
+            return new SnapshotSummary(path.toString(), users, trainings, bytes, millis, (users + trainings) * 1000 / millis);
+        }
+    }
+}
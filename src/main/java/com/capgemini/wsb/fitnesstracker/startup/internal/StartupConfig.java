@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.startup.internal;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+
+@Configuration
+@EnableConfigurationProperties(StartupReportProperties.class)
+class StartupConfig {
+
+    /**
+     * Przy {@code spring.main.lazy-initialization=true} (profil {@code fast-startup}) zostawia zachłanne beany,
+     * które same uruchamiają pracę w tle: zadania {@link Scheduled} są rejestrowane dopiero przy tworzeniu beana,
+     * a metody {@link PostConstruct} startują wątki i wczytują stan (archiwum, szkice, rozkłady).
+     */
+    @Bean
+    static LazyInitializationExcludeFilter backgroundJobsLazyInitializationExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null
+                && (hasAnnotatedMethod(beanType, Scheduled.class) || hasAnnotatedMethod(beanType, PostConstruct.class));
+    }
+
+    private static boolean hasAnnotatedMethod(Class<?> type, Class<? extends Annotation> annotation) {
+        return Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(type))
+                .anyMatch(method -> AnnotatedElementUtils.hasAnnotation(method, annotation));
+    }
+}
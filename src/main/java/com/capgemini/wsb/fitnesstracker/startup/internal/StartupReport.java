@@ -0,0 +1,85 @@
+package com.capgemini.wsb.fitnesstracker.startup.internal;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline.TimelineEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Wypisuje po starcie aplikacji podział czasu startu na fazy, na podstawie kroków zarejestrowanych przez
+ * {@link BufferingApplicationStartup} (ustawiany w {@code FitnessTracker#main}).
+ * <p>
+ * Raport zawiera czas od uruchomienia JVM, najdłuższe fazy (kroki o tej samej nazwie są sumowane; czas kroku
+ * obejmuje kroki zagnieżdżone) oraz najwolniej tworzone beany. Pełna oś czasu dostępna jest przez
+ * {@code /actuator/startup}, dlatego raport nie opróżnia bufora.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+class StartupReport {
+
+    private static final String BEAN_INSTANTIATION = "spring.beans.instantiate";
+
+    private final ApplicationStartup applicationStartup;
+    private final StartupReportProperties properties;
+
+    @EventListener
+    void onApplicationReady(ApplicationReadyEvent event) {
+        if (!properties.enabled() || !(applicationStartup instanceof BufferingApplicationStartup buffering)) {
+            return;
+        }
+        List<TimelineEvent> events = buffering.getBufferedTimeline().getEvents();
+        Map<String, PhaseTotal> phases = new TreeMap<>();
+        for (TimelineEvent timelineEvent : events) {
+            String name = timelineEvent.getStartupStep().getName();
+            if (!name.equals(BEAN_INSTANTIATION)) {
+                phases.merge(name, new PhaseTotal(name, 1, timelineEvent.getDuration()), PhaseTotal::plus);
+            }
+        }
+        String slowestPhases = phases.values().stream()
+                .sorted(Comparator.comparing(PhaseTotal::duration).reversed())
+                .limit(properties.top())
+                .map(phase -> "\n  %6d ms  %s (x%d)".formatted(phase.duration().toMillis(), phase.name(), phase.count()))
+                .collect(Collectors.joining());
+        String slowestBeans = events.stream()
+                .filter(timelineEvent -> timelineEvent.getStartupStep().getName().equals(BEAN_INSTANTIATION))
+                .sorted(Comparator.comparing(TimelineEvent::getDuration).reversed())
+                .limit(properties.top())
+                .map(timelineEvent -> "\n  %6d ms  %s".formatted(timelineEvent.getDuration().toMillis(),
+                        tag(timelineEvent.getStartupStep(), "beanName")))
+                .collect(Collectors.joining());
+        log.info("Application ready in {} ms ({} ms since JVM start, {} startup steps recorded)"
+                        + "\nSlowest phases:{}\nSlowest bean instantiations:{}",
+                event.getTimeTaken().toMillis(), ManagementFactory.getRuntimeMXBean().getUptime(), events.size(),
+                slowestPhases, slowestBeans);
+    }
+
+    private static String tag(StartupStep step, String key) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (tag.getKey().equals(key)) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+
+    private record PhaseTotal(String name, int count, Duration duration) {
+
+        PhaseTotal plus(PhaseTotal other) {
+            return new PhaseTotal(name, count + other.count, duration.plus(other.duration));
+        }
+    }
+}
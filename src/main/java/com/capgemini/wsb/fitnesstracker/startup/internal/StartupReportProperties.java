@@ -0,0 +1,18 @@
+package com.capgemini.wsb.fitnesstracker.startup.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Konfiguracja raportu z przebiegu startu aplikacji.
+ *
+ * @param enabled czy raport ma być wypisywany po starcie
+ * @param top     liczba najdłuższych faz i najwolniej tworzonych beanów w raporcie
+ */
+@ConfigurationProperties(prefix = "startup.report")
+record StartupReportProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10") int top
+) {
+
+}
@@ -0,0 +1,53 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Szkic HyperLogLog użytkowników aktywnych danego dnia (UTC) w danym typie aktywności - suma szkiców scalonych
+ * przez wszystkie instancje aplikacji.
+ */
+@Entity
+@Table(name = "active_user_sketches", indexes = {
+        @Index(name = "uk_active_user_sketches_day_activity", columnList = "activity_day, activity_type", unique = true)
+})
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(exclude = "registers")
+public class ActiveUserSketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "activity_day", nullable = false)
+    private LocalDate day;
+
+    @Enumerated(EnumType.ORDINAL)
+    @Column(name = "activity_type", nullable = false)
+    private ActivityType activityType;
+
+    @Column(name = "registers", nullable = false, length = HyperLogLog.REGISTERS)
+    private byte[] registers;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    ActiveUserSketch(LocalDate day, ActivityType activityType, byte[] registers) {
+        this.day = day;
+        this.activityType = activityType;
+        update(registers);
+    }
+
+    void update(byte[] registers) {
+        this.registers = registers;
+        this.updatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,36 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+interface ActiveUserSketchRepository extends JpaRepository<ActiveUserSketch, Long> {
+
+    /**
+     * Pobiera szkic z blokadą wiersza, aby scalanie szkiców z kilku instancji się nie nadpisywało.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from ActiveUserSketch s where s.day = :day and s.activityType = :activityType")
+    Optional<ActiveUserSketch> findForUpdate(@Param("day") LocalDate day, @Param("activityType") ActivityType activityType);
+
+    /**
+     * @param from         pierwszy dzień (włącznie)
+     * @param to           ostatni dzień (włącznie)
+     * @param activityType typ aktywności lub {@code null} dla wszystkich typów
+     * @return szkice z podanego zakresu dni
+     */
+    @Query("""
+            select s from ActiveUserSketch s
+            where s.day between :from and :to and (:activityType is null or s.activityType = :activityType)
+            """)
+    List<ActiveUserSketch> findInRange(@Param("from") LocalDate from,
+                                       @Param("to") LocalDate to,
+                                       @Param("activityType") ActivityType activityType);
+}
@@ -0,0 +1,221 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Przybliżone liczenie aktywnych użytkowników (DAU/MAU) na podstawie szkiców {@link HyperLogLog} - jednego na
+ * dzień (UTC, wg początku treningu) i typ aktywności.
+ * <p>
+ * Zapis treningu dodaje użytkownika do lokalnego szkicu w pamięci. Co {@link ActiveUsersProperties#flushInterval()}
+ * lokalne szkice są scalane ze szkicami w tabeli {@code active_user_sketches} (pod blokadą wiersza). Scalanie to
+ * maksimum rejestrów, więc jest idempotentne - ponowne scalenie tego samego szkicu, np. po błędzie lub przez kilka
+ * instancji, nie zawyża wyniku. Zapytanie łączy szkice z bazy z lokalnymi, więc koszt zależy od liczby dni
+ * i typów aktywności w zakresie, a nie od liczby treningów.
+ * <p>
+ * Przy pierwszym uruchomieniu (pusta tabela szkiców) szkice budowane są z tabeli {@code trainings}. Zmiana dnia lub
+ * typu aktywności przy aktualizacji treningu nie usuwa użytkownika ze starego szkicu.
+ */
+@Component
+@Slf4j
+class ActiveUsers {
+
+    private final ActiveUserSketchRepository sketchRepository;
+    private final ActiveUsersProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ConcurrentMap<SketchKey, HyperLogLog> pending = new ConcurrentHashMap<>();
+
+    ActiveUsers(ActiveUserSketchRepository sketchRepository,
+                ActiveUsersProperties properties,
+                TransactionTemplate transactionTemplate,
+                JdbcTemplate jdbcTemplate,
+                TaskScheduler taskScheduler) {
+        this.sketchRepository = sketchRepository;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = taskScheduler;
+    }
+
+    @PostConstruct
+    void schedule() {
+        taskScheduler.scheduleWithFixedDelay(this::flushQuietly, Instant.now().plus(properties.flushInterval()),
+                properties.flushInterval());
+    }
+
+    @PreDestroy
+    void close() {
+        flushQuietly();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void seedOnStartup() {
+        if (sketchRepository.count() == 0) {
+            seed();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        Training training = event.training();
+        if (training.getUser() != null) {
+            add(new SketchKey(dayOf(training.getStartTime().getTime()), training.getActivityType()),
+                    training.getUser().getId(), pending);
+        }
+    }
+
+    /**
+     * Szacuje liczbę różnych użytkowników z treningami rozpoczętymi w podanym zakresie dni.
+     *
+     * @param from         pierwszy dzień (włącznie)
+     * @param to           ostatni dzień (włącznie)
+     * @param activityType typ aktywności lub {@code null} dla wszystkich typów
+     * @param exact        czy dodatkowo policzyć dokładną wartość zapytaniem {@code COUNT(DISTINCT user_id)}
+     *                     (do porównania kosztu i błędu)
+     * @return oszacowanie, jego błąd względny i czas wyliczenia
+     * @throws BusinessException jeśli zakres jest pusty lub dłuższy niż {@link ActiveUsersProperties#maxRangeDays()}
+     */
+    ActiveUsersDto count(LocalDate from, LocalDate to, @Nullable ActivityType activityType, boolean exact) {
+        if (to.isBefore(from)) {
+            throw new BusinessException("Range end %s is before its start %s".formatted(to, from));
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= properties.maxRangeDays()) {
+            throw new BusinessException("Range cannot be longer than %d days".formatted(properties.maxRangeDays()));
+        }
+        long startedAt = System.nanoTime();
+        HyperLogLog union = new HyperLogLog();
+        sketchRepository.findInRange(from, to, activityType)
+                .forEach(sketch -> union.merge(HyperLogLog.fromBytes(sketch.getRegisters())));
+        pending.forEach((key, sketch) -> {
+            if (!key.day().isBefore(from) && !key.day().isAfter(to)
+                    && (activityType == null || activityType == key.activityType())) {
+                union.merge(sketch);
+            }
+        });
+        long estimate = union.estimate();
+        double approximateMillis = (System.nanoTime() - startedAt) / 1e6;
+        if (!exact) {
+            return new ActiveUsersDto(from, to, activityType, estimate, HyperLogLog.RELATIVE_STANDARD_ERROR,
+                    approximateMillis, null, null);
+        }
+        startedAt = System.nanoTime();
+        long exactCount = countExact(from, to, activityType);
+        return new ActiveUsersDto(from, to, activityType, estimate, HyperLogLog.RELATIVE_STANDARD_ERROR,
+                approximateMillis, exactCount, (System.nanoTime() - startedAt) / 1e6);
+    }
+
+    /**
+     * Scala lokalne szkice ze szkicami w bazie.
+     */
+    synchronized void flush() {
+        for (SketchKey key : pending.keySet()) {
+            // Po usunięciu z mapy nikt nie dopisze już użytkownika do tego szkicu (add() działa w compute()).
+            HyperLogLog sketch = pending.remove(key);
+            if (sketch == null) {
+                continue;
+            }
+            try {
+                mergeIntoStore(key, sketch);
+            } catch (RuntimeException e) {
+                pending.merge(key, sketch, HyperLogLog::merge);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Buduje szkice ze wszystkich treningów w tabeli {@code trainings} i scala je ze szkicami w bazie.
+     */
+    void seed() {
+        Map<SketchKey, HyperLogLog> seeded = new HashMap<>();
+        ActivityType[] activityTypes = ActivityType.values();
+        long[] lastId = {Long.MIN_VALUE};
+        int[] rows = new int[1];
+        long trainings = 0;
+        do {
+            rows[0] = 0;
+            jdbcTemplate.query("""
+                            SELECT id, user_id, start_time, activity_type FROM trainings
+                            WHERE id > ? AND user_id IS NOT NULL ORDER BY id LIMIT ?""",
+                    resultSet -> {
+                        add(new SketchKey(dayOf(resultSet.getTimestamp("start_time").getTime()),
+                                activityTypes[resultSet.getInt("activity_type")]), resultSet.getLong("user_id"), seeded);
+                        lastId[0] = resultSet.getLong("id");
+                        rows[0]++;
+                    },
+                    lastId[0], properties.seedBatchSize());
+            trainings += rows[0];
+        } while (rows[0] == properties.seedBatchSize());
+        seeded.forEach(this::mergeIntoStore);
+        log.info("Seeded {} active user sketches from {} trainings", seeded.size(), trainings);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush active user sketches, will retry", e);
+        }
+    }
+
+    private void mergeIntoStore(SketchKey key, HyperLogLog sketch) {
+        transactionTemplate.executeWithoutResult(status -> sketchRepository.findForUpdate(key.day(), key.activityType())
+                .ifPresentOrElse(
+                        stored -> stored.update(HyperLogLog.fromBytes(stored.getRegisters()).merge(sketch).toBytes()),
+                        () -> sketchRepository.save(new ActiveUserSketch(key.day(), key.activityType(), sketch.toBytes()))));
+    }
+
+    private long countExact(LocalDate from, LocalDate to, @Nullable ActivityType activityType) {
+        Timestamp start = Timestamp.from(from.atStartOfDay(ZoneOffset.UTC).toInstant());
+        Timestamp end = Timestamp.from(to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        if (activityType == null) {
+            return jdbcTemplate.queryForObject(
+                    "SELECT COUNT(DISTINCT user_id) FROM trainings WHERE start_time >= ? AND start_time < ?",
+                    Long.class, start, end);
+        }
+        return jdbcTemplate.queryForObject("""
+                        SELECT COUNT(DISTINCT user_id) FROM trainings
+                        WHERE start_time >= ? AND start_time < ? AND activity_type = ?""",
+                Long.class, start, end, activityType.ordinal());
+    }
+
+    private static void add(SketchKey key, long userId, Map<SketchKey, HyperLogLog> sketches) {
+        sketches.compute(key, (ignored, sketch) -> {
+            HyperLogLog target = sketch != null ? sketch : new HyperLogLog();
+            target.add(userId);
+            return target;
+        });
+    }
+
+    private static LocalDate dayOf(long epochMillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private record SketchKey(LocalDate day, ActivityType activityType) {
+    }
+}
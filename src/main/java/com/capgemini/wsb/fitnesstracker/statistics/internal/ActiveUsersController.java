@@ -0,0 +1,38 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.lang.Nullable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/v1/stats")
+@RequiredArgsConstructor
+class ActiveUsersController {
+
+    private final ActiveUsers activeUsers;
+
+    /**
+     * Pobierz przybliżoną liczbę aktywnych użytkowników (np. DAU dla jednego dnia, MAU dla miesiąca)
+     *
+     * @param from         pierwszy dzień (włącznie)
+     * @param to           ostatni dzień (włącznie)
+     * @param activityType typ aktywności, domyślnie wszystkie
+     * @param exact        czy dodatkowo policzyć dokładną wartość (kosztowne, do porównania)
+     * @return oszacowanie z błędem względnym
+     */
+    @GetMapping("/active-users")
+    public ActiveUsersDto getActiveUsers(
+            @RequestParam("from") @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate from,
+            @RequestParam("to") @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate to,
+            @RequestParam(value = "activityType", required = false) @Nullable ActivityType activityType,
+            @RequestParam(value = "exact", defaultValue = "false") boolean exact) {
+        return activeUsers.count(from, to, activityType, exact);
+    }
+}
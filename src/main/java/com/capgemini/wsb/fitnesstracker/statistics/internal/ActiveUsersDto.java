@@ -0,0 +1,30 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDate;
+
+/**
+ * Przybliżona liczba aktywnych użytkowników w zakresie dni.
+ *
+ * @param from                  pierwszy dzień (włącznie)
+ * @param to                    ostatni dzień (włącznie)
+ * @param activityType          typ aktywności lub {@code null} dla wszystkich typów
+ * @param estimate              oszacowana liczba różnych użytkowników
+ * @param relativeStandardError względny błąd standardowy oszacowania
+ * @param approximateMillis     czas wyliczenia oszacowania
+ * @param exact                 dokładna liczba użytkowników (tylko na żądanie)
+ * @param exactMillis           czas wyliczenia dokładnej liczby (tylko na żądanie)
+ */
+record ActiveUsersDto(
+        LocalDate from,
+        LocalDate to,
+        @Nullable ActivityType activityType,
+        long estimate,
+        double relativeStandardError,
+        double approximateMillis,
+        @Nullable Long exact,
+        @Nullable Double exactMillis
+) {
+}
@@ -0,0 +1,22 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja przybliżonego liczenia aktywnych użytkowników.
+ *
+ * @param flushInterval odstęp między zapisami lokalnych szkiców do bazy
+ * @param seedBatchSize liczba treningów czytanych w jednej porcji przy pierwszym budowaniu szkiców
+ * @param maxRangeDays  maksymalna liczba dni w jednym zapytaniu
+ */
+@ConfigurationProperties(prefix = "statistics.active-users")
+record ActiveUsersProperties(
+        @DefaultValue("1m") Duration flushInterval,
+        @DefaultValue("10000") int seedBatchSize,
+        @DefaultValue("1096") int maxRangeDays
+) {
+
+}
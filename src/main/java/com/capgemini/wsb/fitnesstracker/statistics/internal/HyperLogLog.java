@@ -0,0 +1,97 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+/**
+ * Szkic HyperLogLog do przybliżonego liczenia różnych użytkowników.
+ * <p>
+ * Szkic ma {@value #REGISTERS} rejestrów po jednym bajcie (precyzja {@value #PRECISION}), więc zajmuje zawsze
+ * 4 KiB niezależnie od liczby użytkowników. Względny błąd standardowy oszacowania wynosi
+ * {@code 1.04 / sqrt(m)} = {@value #RELATIVE_STANDARD_ERROR} (ok. 1,6%); w 95% przypadków błąd nie przekracza
+ * dwukrotności tej wartości. Dla małych liczności (do ok. {@code 2.5 * m}) stosowane jest liczenie liniowe,
+ * które jest tam dokładniejsze. Skrót 64-bitowy sprawia, że korekta dla dużych liczności nie jest potrzebna.
+ * <p>
+ * Szkice łączy się przez maksimum rejestrów ({@link #merge(HyperLogLog)}); połączenie szkiców z kilku dni
+ * lub typów aktywności daje szkic sumy zbiorów, a wielokrotne dodanie tego samego użytkownika niczego nie zmienia.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 12;
+    static final int REGISTERS = 1 << PRECISION;
+    static final double RELATIVE_STANDARD_ERROR = 0.01625;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    HyperLogLog() {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length != REGISTERS) {
+            throw new IllegalArgumentException("Invalid HyperLogLog sketch size " + bytes.length);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    synchronized byte[] toBytes() {
+        return registers.clone();
+    }
+
+    synchronized void add(long userId) {
+        long hash = mix(userId);
+        int register = (int) (hash >>> (Long.SIZE - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    synchronized HyperLogLog merge(HyperLogLog other) {
+        byte[] otherRegisters = other.toBytes();
+        for (int i = 0; i < REGISTERS; i++) {
+            if (otherRegisters[i] > registers[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+        return this;
+    }
+
+    synchronized boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Mieszanie bitów ze SplitMix64 - kolejne ID użytkowników dają równomiernie rozłożone skróty.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,24 @@
+package com.capgemini.wsb.fitnesstracker.track.api;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * A single sample of a training track.
+ *
+ * @param time      sample time
+ * @param latitude  latitude in degrees (stored with 1e-7 degree precision)
+ * @param longitude longitude in degrees (stored with 1e-7 degree precision)
+ * @param elevation elevation in meters (stored with 0.1 m precision), if known
+ * @param heartRate heart rate in beats per minute, if known
+ * @param cadence   cadence in revolutions or steps per minute, if known
+ */
+public record TrackPoint(Instant time,
+                         double latitude,
+                         double longitude,
+                         @Nullable Double elevation,
+                         @Nullable Integer heartRate,
+                         @Nullable Integer cadence) {
+
+}
@@ -0,0 +1,19 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import java.util.List;
+
+/**
+ * Uproszczony ślad treningu do rysowania na mapie.
+ *
+ * @param level            poziom szczegółowości (0 - pełny ślad)
+ * @param toleranceMeters  tolerancja uproszczenia w metrach
+ * @param sourcePointCount liczba punktów pełnego śladu
+ * @param coordinates      punkty jako pary {@code [długość, szerokość]}, w kolejności jak w GeoJSON
+ */
+record SimplifiedTrackDto(
+        int level,
+        double toleranceMeters,
+        int sourcePointCount,
+        List<double[]> coordinates
+) {
+}
@@ -0,0 +1,9 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+/**
+ * Zdarzenie publikowane po dopisaniu punktów do śladu treningu.
+ *
+ * @param trainingId ID treningu
+ */
+record TrackAppendedEvent(Long trainingId) {
+}
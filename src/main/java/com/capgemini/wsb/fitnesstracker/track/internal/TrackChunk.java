@@ -0,0 +1,58 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Fragment śladu treningu: do {@link TrackProperties#chunkPoints()} kolejnych punktów zakodowanych w jednym
+ * bloku ({@link TrackChunkCodec}). Trening wskazywany jest przez samo ID, bez klucza obcego, bo treningi mogą
+ * znajdować się w shardach lub archiwum.
+ */
+@Entity
+@Table(name = "track_chunks", indexes = {
+        @Index(name = "uk_track_chunks_training_seq", columnList = "training_id, seq", unique = true),
+        @Index(name = "idx_track_chunks_training_time", columnList = "training_id, first_time, last_time")
+})
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(exclude = "data")
+public class TrackChunk {
+
+    static final int MAX_DATA_LENGTH = 4 * 1024 * 1024;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "training_id", nullable = false)
+    private Long trainingId;
+
+    @Column(name = "seq", nullable = false)
+    private int seq;
+
+    @Column(name = "first_time", nullable = false)
+    private Instant firstTime;
+
+    @Column(name = "last_time", nullable = false)
+    private Instant lastTime;
+
+    @Column(name = "point_count", nullable = false)
+    private int pointCount;
+
+    @Column(name = "data", nullable = false, length = MAX_DATA_LENGTH)
+    private byte[] data;
+
+    TrackChunk(Long trainingId, int seq, Instant firstTime, Instant lastTime, int pointCount, byte[] data) {
+        this.trainingId = trainingId;
+        this.seq = seq;
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+        this.pointCount = pointCount;
+        this.data = data;
+    }
+}
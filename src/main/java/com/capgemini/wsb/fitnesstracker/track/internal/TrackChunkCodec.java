@@ -0,0 +1,97 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.VarInts;
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Kodowanie punktów śladu we fragmencie. Każdy punkt zapisany jest jako bajt flag (które z pól opcjonalnych są
+ * obecne), a następnie różnice względem poprzedniego punktu w kodowaniu {@link VarInts} (ZigZag): czas
+ * w milisekundach, szerokość i długość geograficzna w 1e-7 stopnia, wysokość w decymetrach, tętno i kadencja.
+ * Przy próbkowaniu co sekundę większość różnic mieści się w jednym-dwóch bajtach.
+ */
+final class TrackChunkCodec {
+
+    static final int MAX_POINT_BYTES = 1 + 6 * VarInts.MAX_LENGTH;
+
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double ELEVATION_SCALE = 10;
+    private static final int HAS_ELEVATION = 1;
+    private static final int HAS_HEART_RATE = 2;
+    private static final int HAS_CADENCE = 4;
+
+    private TrackChunkCodec() {
+    }
+
+    static byte[] encode(List<TrackPoint> points) {
+        ByteBuffer buffer = ByteBuffer.allocate(points.size() * MAX_POINT_BYTES);
+        long time = 0;
+        long latitude = 0;
+        long longitude = 0;
+        long elevation = 0;
+        long heartRate = 0;
+        long cadence = 0;
+        for (TrackPoint point : points) {
+            int flags = (point.elevation() != null ? HAS_ELEVATION : 0)
+                    | (point.heartRate() != null ? HAS_HEART_RATE : 0)
+                    | (point.cadence() != null ? HAS_CADENCE : 0);
+            buffer.put((byte) flags);
+            time = writeDelta(buffer, time, point.time().toEpochMilli());
+            latitude = writeDelta(buffer, latitude, Math.round(point.latitude() * COORDINATE_SCALE));
+            longitude = writeDelta(buffer, longitude, Math.round(point.longitude() * COORDINATE_SCALE));
+            if (point.elevation() != null) {
+                elevation = writeDelta(buffer, elevation, Math.round(point.elevation() * ELEVATION_SCALE));
+            }
+            if (point.heartRate() != null) {
+                heartRate = writeDelta(buffer, heartRate, point.heartRate());
+            }
+            if (point.cadence() != null) {
+                cadence = writeDelta(buffer, cadence, point.cadence());
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static void decode(byte[] data, int count, Consumer<TrackPoint> consumer) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long time = 0;
+        long latitude = 0;
+        long longitude = 0;
+        long elevation = 0;
+        long heartRate = 0;
+        long cadence = 0;
+        for (int i = 0; i < count; i++) {
+            int flags = buffer.get();
+            time += VarInts.readSigned(buffer);
+            latitude += VarInts.readSigned(buffer);
+            longitude += VarInts.readSigned(buffer);
+            Double pointElevation = null;
+            Integer pointHeartRate = null;
+            Integer pointCadence = null;
+            if ((flags & HAS_ELEVATION) != 0) {
+                elevation += VarInts.readSigned(buffer);
+                pointElevation = elevation / ELEVATION_SCALE;
+            }
+            if ((flags & HAS_HEART_RATE) != 0) {
+                heartRate += VarInts.readSigned(buffer);
+                pointHeartRate = (int) heartRate;
+            }
+            if ((flags & HAS_CADENCE) != 0) {
+                cadence += VarInts.readSigned(buffer);
+                pointCadence = (int) cadence;
+            }
+            consumer.accept(new TrackPoint(Instant.ofEpochMilli(time), latitude / COORDINATE_SCALE,
+                    longitude / COORDINATE_SCALE, pointElevation, pointHeartRate, pointCadence));
+        }
+    }
+
+    private static long writeDelta(ByteBuffer buffer, long previous, long value) {
+        VarInts.writeSigned(buffer, value - previous);
+        return value;
+    }
+}
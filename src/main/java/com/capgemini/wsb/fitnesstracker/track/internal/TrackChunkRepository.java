@@ -0,0 +1,55 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+interface TrackChunkRepository extends JpaRepository<TrackChunk, Long> {
+
+    Optional<TrackChunk> findFirstByTrainingIdOrderBySeqDesc(Long trainingId);
+
+    /**
+     * Pobiera pierwszy fragment śladu, blokując go do końca transakcji. Usunięcie śladu czeka na zwolnienie
+     * blokady, a transakcja czekająca na blokadę usuwanego śladu nie znajdzie fragmentu.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<TrackChunk> findFirstByTrainingIdOrderBySeqAsc(Long trainingId);
+
+    /**
+     * Pobiera kolejną porcję fragmentów śladu, które mogą zawierać punkty z podanego przedziału czasu,
+     * stronicując po numerze fragmentu.
+     *
+     * @param trainingId ID treningu
+     * @param from       początek przedziału (włącznie)
+     * @param to         koniec przedziału (wyłącznie)
+     * @param afterSeq   numer ostatniego fragmentu z poprzedniej porcji
+     * @param limit      rozmiar porcji
+     * @return fragmenty posortowane po numerze
+     */
+    @Query("""
+            select c from TrackChunk c
+            where c.trainingId = :trainingId and c.lastTime >= :from and c.firstTime < :to and c.seq > :afterSeq
+            order by c.seq
+            """)
+    List<TrackChunk> findChunksInRange(@Param("trainingId") Long trainingId,
+                                       @Param("from") Instant from,
+                                       @Param("to") Instant to,
+                                       @Param("afterSeq") int afterSeq,
+                                       Limit limit);
+
+    @Query("select coalesce(sum(c.pointCount), 0) from TrackChunk c where c.trainingId = :trainingId")
+    long countPoints(@Param("trainingId") Long trainingId);
+
+    @Modifying
+    @Query("delete from TrackChunk c where c.trainingId in :trainingIds")
+    int deleteByTrainingIdIn(@Param("trainingIds") Collection<Long> trainingIds);
+}
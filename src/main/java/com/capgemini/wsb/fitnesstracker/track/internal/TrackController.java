@@ -0,0 +1,96 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+/**
+ * REST kontroler do zapisu i odczytu śladu treningu (punkty GPS i dane z czujników) w formacie NDJSON -
+ * jeden punkt w formacie JSON na linię.
+ */
+@RestController
+@RequestMapping("/v1/trainings/{trainingId}/track")
+@RequiredArgsConstructor
+class TrackController {
+
+    private final TrackService trackService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Dopisz punkty do śladu treningu. Treść żądania jest czytana strumieniowo.
+     *
+     * @param trainingId ID treningu
+     * @param body       punkty w formacie NDJSON, uporządkowane po czasie
+     * @return podsumowanie zapisu
+     */
+    @PostMapping(value = "/points", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<TrackService.TrackUploadSummary> uploadPoints(@PathVariable("trainingId") Long trainingId,
+                                                                        InputStream body) throws IOException {
+        try (MappingIterator<TrackPoint> points = objectMapper.readerFor(TrackPoint.class).readValues(body)) {
+            return new ResponseEntity<>(trackService.append(trainingId, points), HttpStatus.CREATED);
+        }
+    }
+
+    /**
+     * Pobierz ślad treningu uproszczony do rysowania na mapie przy podanym zoomie.
+     *
+     * @param trainingId ID treningu
+     * @param zoom       poziom przybliżenia mapy (0-30), domyślnie najdokładniejszy poziom
+     * @return uproszczony ślad
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getSimplifiedTrack(@PathVariable("trainingId") Long trainingId,
+                                                     @RequestParam(value = "zoom", required = false) Integer zoom)
+            throws IOException {
+        long startedAt = System.nanoTime();
+        SimplifiedTrackDto track = trackService.getSimplifiedTrack(trainingId, zoom);
+        byte[] payload = objectMapper.writeValueAsBytes(track);
+        trackService.recordSimplifiedTrackServed(track.level(), payload.length, System.nanoTime() - startedAt);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(payload);
+    }
+
+    /**
+     * Pobierz punkty śladu treningu z podanego przedziału czasu. Odpowiedź jest wysyłana strumieniowo.
+     *
+     * @param trainingId ID treningu
+     * @param from       początek przedziału (włącznie), domyślnie początek śladu
+     * @param to         koniec przedziału (wyłącznie), domyślnie koniec śladu
+     * @return punkty w formacie NDJSON
+     */
+    @GetMapping(value = "/points", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> readPoints(
+            @PathVariable("trainingId") Long trainingId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        trackService.ensureTrainingExists(trainingId);
+        Instant rangeFrom = from != null ? from : Instant.MIN;
+        Instant rangeTo = to != null ? to : Instant.MAX;
+        StreamingResponseBody body = output -> {
+            try (SequenceWriter writer = objectMapper.writerFor(TrackPoint.class)
+                    .withRootValueSeparator("\n")
+                    .writeValues(output)) {
+                trackService.read(trainingId, rangeFrom, rangeTo, point -> {
+                    try {
+                        writer.write(point);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
@@ -0,0 +1,60 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Uproszczona wersja śladu treningu (poziom szczegółowości) do rysowania na mapie. Punkty zakodowane są tak samo
+ * jak we fragmentach śladu ({@link TrackChunkCodec}).
+ */
+@Entity
+@Table(name = "track_levels", indexes = {
+        @Index(name = "uk_track_levels_training_level", columnList = "training_id, level", unique = true)
+})
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(exclude = "data")
+public class TrackLevel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "training_id", nullable = false)
+    private Long trainingId;
+
+    @Column(name = "level", nullable = false)
+    private int level;
+
+    @Column(name = "tolerance_meters", nullable = false)
+    private double toleranceMeters;
+
+    @Column(name = "point_count", nullable = false)
+    private int pointCount;
+
+    @Column(name = "source_point_count", nullable = false)
+    private int sourcePointCount;
+
+    /**
+     * Szerokość geograficzna pierwszego punktu - wyznacza skalę mapy przy wyborze poziomu bez czytania punktów.
+     */
+    @Column(name = "latitude", nullable = false)
+    private double latitude;
+
+    @Column(name = "data", nullable = false, length = TrackChunk.MAX_DATA_LENGTH)
+    private byte[] data;
+
+    TrackLevel(Long trainingId, int level, double toleranceMeters, int pointCount, int sourcePointCount, double latitude,
+               byte[] data) {
+        this.trainingId = trainingId;
+        this.level = level;
+        this.toleranceMeters = toleranceMeters;
+        this.pointCount = pointCount;
+        this.sourcePointCount = sourcePointCount;
+        this.latitude = latitude;
+        this.data = data;
+    }
+}
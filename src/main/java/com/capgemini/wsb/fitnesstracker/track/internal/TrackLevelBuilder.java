@@ -0,0 +1,126 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wylicza w tle uproszczone poziomy szczegółowości śladu ({@link TrackLevel}) po każdym dopisaniu punktów.
+ * <p>
+ * Ślady różnych treningów przeliczane są równolegle na osobnej puli wątków. Dla jednego treningu działa najwyżej
+ * jedno przeliczenie naraz: dopisanie punktów w trakcie przeliczania oznacza trening jako nieaktualny i po
+ * zakończeniu przeliczenie jest powtarzane, więc kolejne wysyłki tego samego śladu są łączone. Do czasu
+ * zakończenia przeliczenia odczyt zwraca poprzednie poziomy. Każdy poziom upraszczany jest z pełnego śladu,
+ * więc błędy kolejnych uproszczeń się nie sumują.
+ * <p>
+ * Poziomy zapisywane są w transakcji blokującej pierwszy fragment śladu. Jeśli ślad został w międzyczasie usunięty
+ * razem z treningiem, poziomy nie są zapisywane.
+ * <p>
+ * Metryka {@code track.levels.build} mierzy czas przeliczenia jednego śladu.
+ */
+@Component
+@Slf4j
+class TrackLevelBuilder {
+
+    private final TrackService trackService;
+    private final TrackChunkRepository chunkRepository;
+    private final TrackLevelRepository levelRepository;
+    private final TrackProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer buildTimer;
+    private final ExecutorService executor;
+    /**
+     * Treningi zlecone do przeliczenia; {@code true} - punkty dopisane po rozpoczęciu bieżącego przeliczenia.
+     */
+    private final ConcurrentMap<Long, Boolean> scheduled = new ConcurrentHashMap<>();
+
+    TrackLevelBuilder(TrackService trackService,
+                      TrackChunkRepository chunkRepository,
+                      TrackLevelRepository levelRepository,
+                      TrackProperties properties,
+                      TransactionTemplate transactionTemplate,
+                      MeterRegistry meterRegistry) {
+        this.trackService = trackService;
+        this.chunkRepository = chunkRepository;
+        this.levelRepository = levelRepository;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.buildTimer = meterRegistry.timer("track.levels.build");
+        this.executor = Executors.newFixedThreadPool(properties.effectiveLevelThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "track-levels");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    @EventListener
+    void onTrackAppended(TrackAppendedEvent event) {
+        Long trainingId = event.trainingId();
+        if (scheduled.put(trainingId, Boolean.TRUE) == null) {
+            executor.execute(() -> rebuildUntilCurrent(trainingId));
+        }
+    }
+
+    private void rebuildUntilCurrent(Long trainingId) {
+        do {
+            scheduled.put(trainingId, Boolean.FALSE);
+            try {
+                buildTimer.record(() -> rebuild(trainingId));
+            } catch (RuntimeException e) {
+                log.warn("Failed to build track levels for training {}", trainingId, e);
+            }
+        } while (!scheduled.remove(trainingId, Boolean.FALSE));
+    }
+
+    private void rebuild(Long trainingId) {
+        List<TrackPoint> points = new ArrayList<>();
+        trackService.read(trainingId, Instant.MIN, Instant.MAX, points::add);
+        if (points.isEmpty()) {
+            log.debug("Track of training {} was deleted, skipping track levels", trainingId);
+            return;
+        }
+        List<TrackLevel> levels = new ArrayList<>();
+        List<Double> tolerances = properties.levelToleranceMeters();
+        for (int i = 0; i < tolerances.size(); i++) {
+            List<TrackPoint> simplified = TrackSimplifier.simplify(points, tolerances.get(i));
+            byte[] data = TrackChunkCodec.encode(simplified);
+            if (data.length > TrackChunk.MAX_DATA_LENGTH) {
+                log.warn("Track level {} of training {} has {} bytes and is skipped", i + 1, trainingId, data.length);
+                continue;
+            }
+            levels.add(new TrackLevel(trainingId, i + 1, tolerances.get(i), simplified.size(), points.size(),
+                    points.get(0).latitude(), data));
+        }
+        boolean saved = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (chunkRepository.findFirstByTrainingIdOrderBySeqAsc(trainingId).isEmpty()) {
+                return false;
+            }
+            levelRepository.deleteByTrainingId(trainingId);
+            levelRepository.saveAll(levels);
+            return true;
+        }));
+        if (!saved) {
+            log.debug("Track of training {} was deleted, skipping track levels", trainingId);
+            return;
+        }
+        log.debug("Built {} track levels for training {} from {} points", levels.size(), trainingId, points.size());
+    }
+}
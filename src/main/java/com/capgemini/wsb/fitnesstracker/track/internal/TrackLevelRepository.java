@@ -0,0 +1,49 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+interface TrackLevelRepository extends JpaRepository<TrackLevel, Long> {
+
+    List<TrackLevel> findByTrainingIdOrderByLevel(Long trainingId);
+
+    /**
+     * Pobiera opis poziomów śladu bez zakodowanych punktów.
+     */
+    List<TrackLevelSummary> findSummariesByTrainingIdOrderByLevel(Long trainingId);
+
+    @Query("select l.data from TrackLevel l where l.id = :id")
+    Optional<byte[]> findDataById(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from TrackLevel l where l.trainingId = :trainingId")
+    void deleteByTrainingId(@Param("trainingId") Long trainingId);
+
+    @Modifying
+    @Query("delete from TrackLevel l where l.trainingId in :trainingIds")
+    void deleteByTrainingIdIn(@Param("trainingIds") Collection<Long> trainingIds);
+
+    /**
+     * Poziom śladu bez zakodowanych punktów ({@link TrackLevel}).
+     */
+    interface TrackLevelSummary {
+
+        Long getId();
+
+        int getLevel();
+
+        double getToleranceMeters();
+
+        int getPointCount();
+
+        int getSourcePointCount();
+
+        double getLatitude();
+    }
+}
@@ -0,0 +1,38 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Konfiguracja przechowywania śladów treningów.
+ *
+ * @param chunkPoints          maksymalna liczba punktów w jednym fragmencie śladu
+ * @param readPageChunks       liczba fragmentów pobieranych z bazy naraz przy strumieniowym odczycie
+ * @param levelToleranceMeters tolerancje uproszczenia kolejnych poziomów szczegółowości śladu (w metrach)
+ * @param levelThreads         liczba wątków wyliczających poziomy szczegółowości (0 - liczba procesorów)
+ */
+@ConfigurationProperties(prefix = "track")
+record TrackProperties(
+        @DefaultValue("1024") int chunkPoints,
+        @DefaultValue("16") int readPageChunks,
+        @DefaultValue({"2", "8", "32", "128", "512"}) List<Double> levelToleranceMeters,
+        @DefaultValue("0") int levelThreads
+) {
+
+    TrackProperties {
+        if (chunkPoints < 1 || (long) chunkPoints * TrackChunkCodec.MAX_POINT_BYTES > TrackChunk.MAX_DATA_LENGTH) {
+            throw new IllegalArgumentException("track.chunk-points must be between 1 and %d"
+                    .formatted(TrackChunk.MAX_DATA_LENGTH / TrackChunkCodec.MAX_POINT_BYTES));
+        }
+        if (levelToleranceMeters.stream().anyMatch(tolerance -> !(tolerance > 0))) {
+            throw new IllegalArgumentException("track.level-tolerance-meters must be positive");
+        }
+        levelToleranceMeters = levelToleranceMeters.stream().sorted().toList();
+    }
+
+    int effectiveLevelThreads() {
+        return levelThreads > 0 ? levelThreads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,316 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.exception.api.VersionConflictException;
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+import com.capgemini.wsb.fitnesstracker.track.internal.TrackLevelRepository.TrackLevelSummary;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingNotFoundException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingsDeletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Zapis i odczyt śladów treningów. Punkty grupowane są we fragmenty po {@link TrackProperties#chunkPoints()}
+ * i zapisywane jako jeden wiersz na fragment zamiast jednego wiersza na punkt.
+ * <p>
+ * Metryki: {@code track.points.ingested} i {@code track.points.read} (przepustowość zapisu i odczytu) oraz
+ * {@code track.chunk.bytes.per.point} (rozmiar zakodowanego punktu). Dla uproszczonych śladów
+ * ({@link #getSimplifiedTrack(Long, Integer)}) {@code track.levels.payload} i {@code track.levels.requests}
+ * mierzą rozmiar odpowiedzi i czas jej przygotowania, z tagiem {@code level}.
+ */
+@Service
+@Slf4j
+class TrackService {
+
+    /**
+     * Rozdzielczość mapy w rzucie Web Mercator na równiku przy zoomie 0 (metry na piksel kafelka 256 px).
+     */
+    private static final double EQUATOR_METERS_PER_PIXEL = 156_543.03392;
+    private static final int MAX_ZOOM = 30;
+
+    private final TrackChunkRepository chunkRepository;
+    private final TrackLevelRepository levelRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final TrackProperties properties;
+    private final TrainingService trainingService;
+    private final TrackTrainingLocks trainingLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter pointsIngested;
+    private final Counter pointsRead;
+    private final DistributionSummary bytesPerPoint;
+
+    TrackService(TrackChunkRepository chunkRepository,
+                 TrackLevelRepository levelRepository,
+                 TrackProperties properties,
+                 TrainingService trainingService,
+                 TrackTrainingLocks trainingLocks,
+                 TransactionTemplate transactionTemplate,
+                 ApplicationEventPublisher eventPublisher,
+                 MeterRegistry meterRegistry) {
+        this.chunkRepository = chunkRepository;
+        this.levelRepository = levelRepository;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.trainingService = trainingService;
+        this.trainingLocks = trainingLocks;
+        this.transactionTemplate = transactionTemplate;
+        this.pointsIngested = meterRegistry.counter("track.points.ingested");
+        this.pointsRead = meterRegistry.counter("track.points.read");
+        this.bytesPerPoint = DistributionSummary.builder("track.chunk.bytes.per.point")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @throws TrainingNotFoundException jeśli trening nie istnieje
+     */
+    void ensureTrainingExists(Long trainingId) {
+        trainingService.getTrainingById(trainingId).orElseThrow(() -> new TrainingNotFoundException(trainingId));
+    }
+
+    /**
+     * Dopisuje punkty na końcu śladu treningu. Punkty czytane są strumieniowo do fragmentu o rozmiarze
+     * {@link TrackProperties#chunkPoints()} bez żadnej blokady, a każdy pełny fragment zapisywany jest w osobnej
+     * transakcji pod blokadą treningu ({@link TrackTrainingLocks}) - wolny klient nie wstrzymuje innych zapisów
+     * śladu. Przerwany zapis zostawia fragmenty zapisane do tej pory; równoległe wysyłki tego samego śladu mogą się
+     * przeplatać fragmentami, a ta, której fragment nie jest już późniejszy niż ostatni zapisany, jest przerywana.
+     * Czas punktów zapisywany jest z dokładnością do milisekundy i z tą dokładnością sprawdzana jest kolejność.
+     *
+     * @param trainingId ID treningu
+     * @param points     punkty uporządkowane rosnąco po czasie, późniejsze niż ostatni zapisany punkt
+     * @return podsumowanie zapisu
+     * @throws TrainingNotFoundException jeśli trening nie istnieje albo został usunięty w trakcie zapisu
+     * @throws BusinessException         jeśli punkty nie są uporządkowane po czasie lub mają błędne współrzędne
+     * @throws VersionConflictException  jeśli ślad treningu dopisywany jest równolegle na innej instancji
+     */
+    TrackUploadSummary append(Long trainingId, Iterator<TrackPoint> points) {
+        ensureTrainingExists(trainingId);
+        Instant previousTime = Instant.MIN;
+        List<TrackPoint> chunk = new ArrayList<>(properties.chunkPoints());
+        long pointCount = 0;
+        long bytes = 0;
+        int chunks = 0;
+        while (points.hasNext()) {
+            TrackPoint point = points.next();
+            previousTime = validate(point, previousTime);
+            chunk.add(point);
+            if (chunk.size() == properties.chunkPoints()) {
+                bytes += appendChunk(trainingId, chunk);
+                pointCount += chunk.size();
+                chunks++;
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            bytes += appendChunk(trainingId, chunk);
+            pointCount += chunk.size();
+            chunks++;
+        }
+        if (pointCount > 0) {
+            eventPublisher.publishEvent(new TrackAppendedEvent(trainingId));
+        }
+        log.debug("Appended {} track points in {} chunks ({} bytes) to training {}", pointCount, chunks, bytes, trainingId);
+        return new TrackUploadSummary(pointCount, chunks, bytes);
+    }
+
+    /**
+     * Zapisuje fragment za ostatnim zapisanym fragmentem. Fragmenty nie mają klucza obcego do treningu (trening może
+     * być zarchiwizowany albo w shardzie), więc istnienie treningu sprawdzane jest ponownie w transakcji zapisu, po
+     * zablokowaniu pierwszego fragmentu - usunięcie śladu razem z treningiem czeka wtedy na zatwierdzenie zapisu
+     * i usuwa także zapisany fragment.
+     *
+     * @return rozmiar zakodowanych punktów w bajtach
+     */
+    private long appendChunk(Long trainingId, List<TrackPoint> points) {
+        Long bytes = trainingLocks.withTrainingLock(trainingId, () -> transactionTemplate.execute(status -> {
+            chunkRepository.findFirstByTrainingIdOrderBySeqAsc(trainingId);
+            ensureTrainingExists(trainingId);
+            TrackChunk last = chunkRepository.findFirstByTrainingIdOrderBySeqDesc(trainingId).orElse(null);
+            if (last != null) {
+                validate(points.get(0), last.getLastTime().truncatedTo(ChronoUnit.MILLIS));
+            }
+            return saveChunk(trainingId, last == null ? 0 : last.getSeq() + 1, points);
+        }));
+        return bytes;
+    }
+
+    /**
+     * Odczytuje strumieniowo punkty śladu z przedziału {@code [from, to)}. Z bazy pobierane są tylko fragmenty
+     * nachodzące na przedział, po {@link TrackProperties#readPageChunks()} naraz.
+     */
+    void read(Long trainingId, Instant from, Instant to, Consumer<TrackPoint> consumer) {
+        int afterSeq = -1;
+        List<TrackChunk> page;
+        do {
+            page = chunkRepository.findChunksInRange(trainingId, from, to, afterSeq, Limit.of(properties.readPageChunks()));
+            for (TrackChunk chunk : page) {
+                TrackChunkCodec.decode(chunk.getData(), chunk.getPointCount(), point -> {
+                    if (!point.time().isBefore(from) && point.time().isBefore(to)) {
+                        pointsRead.increment();
+                        consumer.accept(point);
+                    }
+                });
+                afterSeq = chunk.getSeq();
+            }
+        } while (page.size() == properties.readPageChunks());
+    }
+
+    /**
+     * Zwraca najmniej szczegółowy poziom śladu, który przy podanym zoomie mapy nie odbiega od pełnego śladu
+     * o więcej niż jeden piksel. Bez zoomu lub przy zoomie większym niż obsługiwany przez najdokładniejszy poziom
+     * zwracany jest najdokładniejszy poziom. Dopóki poziomy nie zostaną wyliczone, zwracany jest pełny ślad.
+     * Poziom wybierany jest po ich opisie, a z bazy czytane są punkty tylko wybranego poziomu.
+     *
+     * @param trainingId ID treningu
+     * @param zoom       poziom przybliżenia mapy (jak w kafelkach Web Mercator, 0 - cały świat)
+     * @return uproszczony ślad
+     * @throws TrainingNotFoundException jeśli trening nie istnieje
+     * @throws BusinessException         jeśli zoom jest spoza zakresu 0-{@value #MAX_ZOOM}
+     */
+    SimplifiedTrackDto getSimplifiedTrack(Long trainingId, @Nullable Integer zoom) {
+        if (zoom != null && (zoom < 0 || zoom > MAX_ZOOM)) {
+            throw new BusinessException("Zoom must be between 0 and " + MAX_ZOOM);
+        }
+        ensureTrainingExists(trainingId);
+        List<TrackLevelSummary> levels = levelRepository.findSummariesByTrainingIdOrderByLevel(trainingId);
+        if (levels.isEmpty()) {
+            return fullTrack(trainingId);
+        }
+        TrackLevelSummary selected = levels.get(0);
+        if (zoom != null) {
+            double metersPerPixel = metersPerPixel(selected.getLatitude(), zoom);
+            for (TrackLevelSummary level : levels) {
+                if (level.getToleranceMeters() <= metersPerPixel) {
+                    selected = level;
+                }
+            }
+        }
+        byte[] data = levelRepository.findDataById(selected.getId()).orElse(null);
+        if (data == null) {
+            // Poziomy przeliczone w międzyczasie od nowa albo usunięte razem ze śladem.
+            return fullTrack(trainingId);
+        }
+        List<double[]> coordinates = new ArrayList<>(selected.getPointCount());
+        TrackChunkCodec.decode(data, selected.getPointCount(), point -> coordinates.add(coordinates(point)));
+        return new SimplifiedTrackDto(selected.getLevel(), selected.getToleranceMeters(), selected.getSourcePointCount(),
+                coordinates);
+    }
+
+    private SimplifiedTrackDto fullTrack(Long trainingId) {
+        List<double[]> coordinates = new ArrayList<>();
+        read(trainingId, Instant.MIN, Instant.MAX, point -> coordinates.add(coordinates(point)));
+        return new SimplifiedTrackDto(0, 0, coordinates.size(), coordinates);
+    }
+
+    /**
+     * Rejestruje rozmiar i czas przygotowania odpowiedzi z uproszczonym śladem.
+     */
+    void recordSimplifiedTrackServed(int level, int payloadBytes, long nanos) {
+        String levelTag = Integer.toString(level);
+        DistributionSummary.builder("track.levels.payload")
+                .baseUnit("bytes")
+                .tag("level", levelTag)
+                .register(meterRegistry)
+                .record(payloadBytes);
+        Timer.builder("track.levels.requests")
+                .tag("level", levelTag)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Usuwa ślady i poziomy uproszczeń usuwanych treningów w tej samej transakcji co treningi. Fragmenty usuwane są
+     * przed poziomami: trwające przeliczenie poziomów ({@link TrackLevelBuilder}) trzyma blokadę fragmentu, więc
+     * usunięcie czeka na jego zatwierdzenie i usuwa także zapisane przez nie poziomy.
+     */
+    @EventListener
+    void onTrainingsDeleted(TrainingsDeletedEvent event) {
+        int chunks = chunkRepository.deleteByTrainingIdIn(event.trainingIds());
+        levelRepository.deleteByTrainingIdIn(event.trainingIds());
+        log.debug("Deleted {} track chunks of {} trainings of user {}", chunks, event.trainingIds().size(), event.userId());
+    }
+
+    private static double metersPerPixel(double latitude, int zoom) {
+        return EQUATOR_METERS_PER_PIXEL * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom);
+    }
+
+    private static double[] coordinates(TrackPoint point) {
+        return new double[]{point.longitude(), point.latitude()};
+    }
+
+    private long saveChunk(Long trainingId, int seq, List<TrackPoint> points) {
+        byte[] data = TrackChunkCodec.encode(points);
+        try {
+            chunkRepository.save(new TrackChunk(trainingId, seq, points.get(0).time().truncatedTo(ChronoUnit.MILLIS),
+                    points.get(points.size() - 1).time().truncatedTo(ChronoUnit.MILLIS), points.size(), data));
+        } catch (DataIntegrityViolationException e) {
+            if (isSeqViolatedBy(e)) {
+                throw new VersionConflictException("Track of training with ID=%s was appended concurrently".formatted(trainingId));
+            }
+            throw e;
+        }
+        pointsIngested.increment(points.size());
+        bytesPerPoint.record((double) data.length / points.size());
+        return data.length;
+    }
+
+    /**
+     * Sprawdza, czy zapis naruszył unikalny indeks {@code uk_track_chunks_training_seq}.
+     */
+    private static boolean isSeqViolatedBy(DataIntegrityViolationException e) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && violation.getConstraintName() != null
+                && violation.getConstraintName().toLowerCase().contains("uk_track_chunks_training_seq");
+    }
+
+    /**
+     * @return czas punktu z dokładnością, z jaką jest zapisywany ({@link TrackChunkCodec})
+     */
+    private static Instant validate(TrackPoint point, Instant previousTime) {
+        if (point.time() == null) {
+            throw new BusinessException("Track point time is required");
+        }
+        Instant time = point.time().truncatedTo(ChronoUnit.MILLIS);
+        if (!time.isAfter(previousTime)) {
+            throw new BusinessException("Track points must be ordered by time: %s is not after %s"
+                    .formatted(time, previousTime));
+        }
+        if (Math.abs(point.latitude()) > 90 || Math.abs(point.longitude()) > 180) {
+            throw new BusinessException("Invalid track point coordinates: %s, %s"
+                    .formatted(point.latitude(), point.longitude()));
+        }
+        return time;
+    }
+
+    /**
+     * Podsumowanie zapisu śladu.
+     *
+     * @param points liczba zapisanych punktów
+     * @param chunks liczba zapisanych fragmentów
+     * @param bytes  rozmiar zakodowanych punktów w bajtach
+     */
+    record TrackUploadSummary(long points, int chunks, long bytes) {
+    }
+}
@@ -0,0 +1,85 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Upraszczanie śladu algorytmem Douglasa-Peuckera. Odległości liczone są w metrach w rzucie równoodległościowym
+ * wokół pierwszego punktu śladu - dla tras o długości kilkuset kilometrów błąd jest pomijalny przy tolerancjach
+ * używanych do rysowania mapy. Implementacja jest iteracyjna, więc długie ślady nie przepełniają stosu.
+ */
+final class TrackSimplifier {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * @param points          punkty śladu
+     * @param toleranceMeters maksymalna odległość pominiętego punktu od uproszczonej linii
+     * @return podzbiór punktów zawierający pierwszy i ostatni punkt
+     */
+    static List<TrackPoint> simplify(List<TrackPoint> points, double toleranceMeters) {
+        int size = points.size();
+        if (size < 3) {
+            return List.copyOf(points);
+        }
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double metersPerDegree = EARTH_RADIUS_METERS * Math.PI / 180;
+        double longitudeScale = Math.cos(Math.toRadians(points.get(0).latitude())) * metersPerDegree;
+        for (int i = 0; i < size; i++) {
+            x[i] = points.get(i).longitude() * longitudeScale;
+            y[i] = points.get(i).latitude() * metersPerDegree;
+        }
+
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, size - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest > 0 && maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                ranges.push(new int[]{first, farthest});
+                ranges.push(new int[]{farthest, last});
+            }
+        }
+
+        List<TrackPoint> simplified = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                simplified.add(points.get(i));
+            }
+        }
+        return simplified;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,50 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Zestaw blokad paskowych (striped locks) dla zapisów śladu jednego treningu.
+ * Zapisy fragmentów śladu tego samego treningu są serializowane, dzięki czemu odczyt ostatniego fragmentu
+ * i zapis kolejnego wykonują się atomowo. Zapisy różnych treningów blokują się tylko przy kolizji paska.
+ * <p>
+ * Blokada działa w obrębie jednej instancji aplikacji.
+ */
+@Component
+class TrackTrainingLocks {
+
+    private static final int STRIPES = 1024;
+
+    private final Lock[] locks = new Lock[STRIPES];
+
+    TrackTrainingLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Wykonuje akcję trzymając blokadę paska przypisanego do treningu.
+     *
+     * @param trainingId ID treningu
+     * @param action     akcja do wykonania
+     * @return wynik akcji
+     */
+    <T> T withTrainingLock(Long trainingId, Supplier<T> action) {
+        Lock lock = locks[stripe(trainingId)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int stripe(Long trainingId) {
+        int hash = Long.hashCode(trainingId);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,27 @@
+package com.capgemini.wsb.fitnesstracker.training.api;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception indicating that an identical {@link Training} (same user, start, end, activity and distance) was already recorded.
+ * Will resolve to the {@link HttpStatus#CONFLICT} if handled by the Spring's exception handler.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+@SuppressWarnings("squid:S110")
+public class DuplicateTrainingException extends BusinessException {
+
+    private DuplicateTrainingException(String message) {
+        super(message);
+    }
+
+    public DuplicateTrainingException() {
+        this("Identical training was already recorded");
+    }
+
+    public DuplicateTrainingException(Long existingTrainingId) {
+        this("Identical training was already recorded with ID=%s".formatted(existingTrainingId));
+    }
+
+}
@@ -2,16 +2,29 @@ package com.capgemini.wsb.fitnesstracker.training.api;
 
 import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Date;
 
 @Entity
-@Table(name = "trainings")
+@Table(name = "trainings", indexes = {
+        @Index(name = "idx_trainings_user_start_end", columnList = "user_id, start_time, end_time"),
+        @Index(name = "idx_trainings_type_start", columnList = "activity_type, start_time"),
+        @Index(name = "idx_trainings_start", columnList = "start_time"),
+        @Index(name = "uk_trainings_fingerprint", columnList = "fingerprint", unique = true)
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "trainings")
+@DynamicUpdate
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
@@ -41,6 +54,37 @@ public class Training {
     @Column(name = "average_speed")
     private double averageSpeed;
 
+    /**
+     * Skrót treści treningu (użytkownik, początek, koniec, aktywność, dystans) wykorzystywany do wykrywania
+     * duplikatów wysyłanych ponownie przez urządzenia. Ustawiany przez serwis przy zapisie.
+     */
+    @JsonIgnore
+    @Column(name = "fingerprint", length = 32)
+    private String fingerprint;
+
+    /**
+     * Szacowana liczba spalonych kalorii (kcal). Wyliczana przez serwis przy zapisie i przeliczana w tle po zmianie
+     * współczynników modelu; {@code null}, jeśli trening nie został jeszcze oszacowany.
+     */
+    @Column(name = "calories")
+    private Integer calories;
+
+    /**
+     * Wersja modelu, którym oszacowano {@link #calories}.
+     */
+    @JsonIgnore
+    @Column(name = "calories_model")
+    private Integer caloriesModel;
+
+    /**
+     * Wersja wiersza, zwiększana przy każdej zmianie przez Hibernate. Zapis z nieaktualną wersją kończy się
+     * {@link jakarta.persistence.OptimisticLockException}.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private long version;
+
     public Training(
             final User user,
             final Date startTime,
@@ -72,4 +116,36 @@ public class Training {
         this.distance = distance;
         this.averageSpeed = averageSpeed;
     }
+
+    /**
+     * Zmienia dane treningu. Użytkownik treningu się nie zmienia.
+     */
+    public void update(
+            final Date startTime,
+            final Date endTime,
+            final ActivityType activityType,
+            final double distance,
+            final double averageSpeed) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.activityType = activityType;
+        this.distance = distance;
+        this.averageSpeed = averageSpeed;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public void setCalories(Integer calories, Integer caloriesModel) {
+        this.calories = calories;
+        this.caloriesModel = caloriesModel;
+    }
+
+    /**
+     * Ustawia wersję treningu odczytanego z pominięciem Hibernate (np. z shardów).
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.capgemini.wsb.fitnesstracker.training.api;
+
+/**
+ * Event published when a new {@link Training} has been saved.
+ * Listeners interested only in committed data should use {@code @TransactionalEventListener}.
+ *
+ * @param training the created training
+ */
+public record TrainingCreatedEvent(Training training) {
+
+}
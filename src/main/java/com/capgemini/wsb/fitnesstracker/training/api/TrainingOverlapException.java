@@ -0,0 +1,23 @@
+package com.capgemini.wsb.fitnesstracker.training.api;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception indicating that the {@link Training} overlaps in time with another training of the same user.
+ * Will resolve to the {@link HttpStatus#CONFLICT} if handled by the Spring's exception handler.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+@SuppressWarnings("squid:S110")
+public class TrainingOverlapException extends BusinessException {
+
+    private TrainingOverlapException(String message) {
+        super(message);
+    }
+
+    public TrainingOverlapException(Long conflictingTrainingId) {
+        this("Training overlaps with training with ID=%s".formatted(conflictingTrainingId));
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.capgemini.wsb.fitnesstracker.training.api;
+
+/**
+ * Set-based removal of all trainings of a deleted user, in chunks small enough to keep each transaction short.
+ */
+public interface TrainingPurger {
+
+    /**
+     * Counts trainings of the user that are still stored.
+     *
+     * @param userId ID of the user
+     * @return number of the user's trainings
+     */
+    long countByUser(Long userId);
+
+    /**
+     * Deletes up to {@code limit} trainings of the user, together with the data that belongs to them, in the current
+     * transaction or in a new one if none is active.
+     *
+     * @param userId ID of the user
+     * @param limit  maximum number of trainings to delete
+     * @return number of deleted trainings; {@code 0} once the user has no trainings left
+     */
+    int deleteChunk(Long userId, int limit);
+
+    /**
+     * Evicts cached trainings of the user, so that a user marked as deleted stops seeing them before they are purged.
+     * Cached entities and query results are not re-checked against the user's deletion mark.
+     *
+     * @param userId ID of the user
+     */
+    void evictCached(Long userId);
+}
@@ -1,5 +1,6 @@
 package com.capgemini.wsb.fitnesstracker.training.api;
 
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
 
 import java.util.Date;
@@ -11,6 +12,14 @@ public interface TrainingService {
 
     Training createTraining(Training training);
 
+    Training updateTraining(Training training);
+
+    List<Training> findAllTrainings();
+
+    List<Training> getTrainingsByUser(User user);
+
+    List<Training> getTrainingsByType(ActivityType activityType);
+
     List<Training> getTrainingsFinishedAfter(Date dateTime);
 
     Optional<Training>  getTrainingById(Long trainingId);
@@ -0,0 +1,15 @@
+package com.capgemini.wsb.fitnesstracker.training.api;
+
+import java.util.List;
+
+/**
+ * Event published inside the transaction that deletes a chunk of trainings of a deleted user, before the rows
+ * are removed. Listeners removing data that belongs to these trainings should use a plain {@code @EventListener},
+ * so that their changes commit together with the deletion.
+ *
+ * @param userId      owner of the deleted trainings
+ * @param trainingIds IDs of the deleted trainings
+ */
+public record TrainingsDeletedEvent(Long userId, List<Long> trainingIds) {
+
+}
@@ -0,0 +1,145 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingCaloriesProperties.MetCoefficients;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Szacowanie kalorii spalonych podczas treningu na podstawie współczynnika MET (Metabolic Equivalent of Task):
+ * <pre>
+ * kcal = MET(aktywność, prędkość) * masa [kg] * czas [h] * współczynnik wieku
+ * </pre>
+ * 1 MET przyjmowany jest jako 1 kcal/kg/h. Współczynnik wieku to stosunek spoczynkowej przemiany materii
+ * z równania Mifflina-St Jeora (wzrost 170 cm, średnia stałych dla obu płci) do 1 MET przez dobę, więc starsi
+ * użytkownicy spalają przy tej samej aktywności nieco mniej. Prędkość to średnia prędkość treningu lub, jeśli
+ * nie jest podana, dystans podzielony przez czas.
+ * <p>
+ * {@link #modelVersion()} to skrót wszystkich współczynników - zmiana konfiguracji zmienia wersję, po czym
+ * {@link CaloriesRecomputeJob} przelicza zapisane treningi.
+ */
+@Component
+class CalorieEstimator {
+
+    /**
+     * Zwiększana przy zmianie samego wzoru, aby wymusić przeliczenie przy niezmienionych współczynnikach.
+     */
+    private static final int FORMULA_REVISION = 1;
+    private static final int UNKNOWN_BIRTHDATE = Integer.MIN_VALUE;
+    private static final double REFERENCE_HEIGHT_CM = 170;
+    private static final double MIFFLIN_ST_JEOR_SEX_CONSTANT = -78;
+    private static final double MILLIS_PER_HOUR = 3_600_000d;
+
+    static final Map<ActivityType, MetCoefficients> DEFAULT_MET = defaultMet();
+
+    private final double referenceWeightKg;
+    private final double[] base;
+    private final double[] perKmh;
+    private final double[] min;
+    private final int modelVersion;
+
+    CalorieEstimator(TrainingCaloriesProperties properties) {
+        Map<ActivityType, MetCoefficients> met = new EnumMap<>(DEFAULT_MET);
+        met.putAll(properties.met());
+        ActivityType[] activityTypes = ActivityType.values();
+        this.referenceWeightKg = properties.referenceWeightKg();
+        this.base = new double[activityTypes.length];
+        this.perKmh = new double[activityTypes.length];
+        this.min = new double[activityTypes.length];
+        for (ActivityType activityType : activityTypes) {
+            MetCoefficients coefficients = met.get(activityType);
+            base[activityType.ordinal()] = coefficients.base();
+            perKmh[activityType.ordinal()] = coefficients.perKmh();
+            min[activityType.ordinal()] = coefficients.min();
+        }
+        this.modelVersion = 31 * (31 * (31 * (31 * FORMULA_REVISION + Double.hashCode(referenceWeightKg))
+                + Arrays.hashCode(base)) + Arrays.hashCode(perKmh)) + Arrays.hashCode(min);
+    }
+
+    int modelVersion() {
+        return modelVersion;
+    }
+
+    /**
+     * @param training trening z ustawionym typem aktywności i czasem trwania
+     * @return szacowana liczba spalonych kalorii (kcal)
+     */
+    int estimate(Training training) {
+        long startMillis = training.getStartTime().getTime();
+        int birthEpochDay = training.getUser() == null || training.getUser().getBirthdate() == null
+                ? UNKNOWN_BIRTHDATE
+                : (int) training.getUser().getBirthdate().toEpochDay();
+        return estimate(training.getActivityType().ordinal(), startMillis, training.getEndTime().getTime() - startMillis,
+                training.getDistance(), training.getAverageSpeed(), birthEpochDay);
+    }
+
+    /**
+     * Szacuje kalorie dla wierszy {@code [from, to)} porcji zapisanej w tablicach typów prostych.
+     */
+    void estimate(CalorieBatch batch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            batch.calories()[i] = estimate(batch.activityTypes()[i], batch.startMillis()[i], batch.durationMillis()[i],
+                    batch.distances()[i], batch.averageSpeeds()[i], batch.birthEpochDays()[i]);
+        }
+    }
+
+    private int estimate(int activityType, long startMillis, long durationMillis, double distance, double averageSpeed,
+                         int birthEpochDay) {
+        if (durationMillis <= 0) {
+            return 0;
+        }
+        double hours = durationMillis / MILLIS_PER_HOUR;
+        double speed = averageSpeed > 0 ? averageSpeed : distance / hours;
+        double met = Math.max(min[activityType], base[activityType] + perKmh[activityType] * speed);
+        return (int) Math.round(met * referenceWeightKg * hours * ageFactor(startMillis, birthEpochDay));
+    }
+
+    private double ageFactor(long startMillis, int birthEpochDay) {
+        if (birthEpochDay == UNKNOWN_BIRTHDATE) {
+            return 1;
+        }
+        LocalDate trainingDate = LocalDate.ofInstant(Instant.ofEpochMilli(startMillis), ZoneOffset.UTC);
+        long age = Math.max(0, ChronoUnit.YEARS.between(LocalDate.ofEpochDay(birthEpochDay), trainingDate));
+        double restingKcalPerDay = 10 * referenceWeightKg + 6.25 * REFERENCE_HEIGHT_CM - 5 * age + MIFFLIN_ST_JEOR_SEX_CONSTANT;
+        return Math.max(0.5, Math.min(1.5, restingKcalPerDay / (referenceWeightKg * 24)));
+    }
+
+    /**
+     * Wartości orientacyjne z Compendium of Physical Activities, przybliżone liniowo względem prędkości.
+     */
+    private static Map<ActivityType, MetCoefficients> defaultMet() {
+        Map<ActivityType, MetCoefficients> met = new EnumMap<>(ActivityType.class);
+        met.put(ActivityType.RUNNING, new MetCoefficients(0, 1.0, 6.0));
+        met.put(ActivityType.CYCLING, new MetCoefficients(0, 0.4, 4.0));
+        met.put(ActivityType.WALKING, new MetCoefficients(0, 0.7, 2.0));
+        met.put(ActivityType.SWIMMING, new MetCoefficients(4.0, 1.5, 6.0));
+        met.put(ActivityType.TENNIS, new MetCoefficients(7.3, 0, 7.3));
+        return Map.copyOf(met);
+    }
+
+    /**
+     * Porcja treningów do przeliczenia w układzie kolumnowym.
+     */
+    record CalorieBatch(long[] ids, long[] userIds, int[] activityTypes, long[] startMillis, long[] durationMillis,
+                        double[] distances, double[] averageSpeeds, int[] birthEpochDays, int[] previousCalories,
+                        int[] calories) {
+
+        static final long NO_USER = 0;
+
+        static CalorieBatch allocate(int size) {
+            return new CalorieBatch(new long[size], new long[size], new int[size], new long[size], new long[size],
+                    new double[size], new double[size], new int[size], new int[size], new int[size]);
+        }
+
+        void setUnknownBirthdate(int row) {
+            birthEpochDays[row] = UNKNOWN_BIRTHDATE;
+        }
+    }
+}
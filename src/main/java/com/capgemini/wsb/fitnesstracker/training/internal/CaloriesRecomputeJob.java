@@ -0,0 +1,287 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.CalorieEstimator.CalorieBatch;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Przelicza kalorie zapisanych treningów oszacowanych inną wersją modelu niż bieżąca
+ * ({@link CalorieEstimator#modelVersion()}), np. po zmianie współczynników MET.
+ * <p>
+ * Treningi czytane są porcjami po ID do tablic typów prostych ({@link CalorieBatch}), liczone równolegle
+ * w puli fork/join i zapisywane wsadowym {@code UPDATE}, razem ze zmianą sumy kalorii w statystykach użytkowników.
+ * Porcja zapisywana jest w transakcjach obejmujących treningi najwyżej
+ * {@link TrainingCaloriesProperties#recomputeUsersPerTransaction()} użytkowników. Trening, którego wersja modelu jest już bieżąca (np. zaktualizowany w międzyczasie
+ * przez API), jest pomijany przy zapisie. Postęp wynika z samej kolumny {@code calories_model}, więc przerwane
+ * przeliczanie jest wznawiane przy następnym uruchomieniu od pierwszego nieprzeliczonego treningu. Porcja zapisywana
+ * jest pod blokadami użytkowników zapisywanych treningów ({@link TrainingUserLocks}), jak inne zapisy treningów, aby numery
+ * zmian synchronizacji przyrostowej ({@link TrainingChanges}) były zatwierdzane w kolejności nadania. Zmienione
+ * treningi publikowane są jako {@link TrainingCaloriesRecomputedEvent}, żeby dziennik zdarzeń znał nowe kalorie.
+ * <p>
+ * Aby nie zagłodzić ruchu online, przeliczanie działa na osobnym wątku, liczy porcję na
+ * {@link TrainingCaloriesProperties#effectiveRecomputeParallelism()} wątkach i po każdej porcji czeka tak, aby nie
+ * przekroczyć {@link TrainingCaloriesProperties#recomputeRowsPerSecond()}. Liczbę przeliczonych treningów
+ * pokazuje metryka {@code training.calories.recomputed}.
+ */
+@Component
+@Slf4j
+class CaloriesRecomputeJob {
+
+    private static final int FORK_THRESHOLD = 1024;
+
+    private final TrainingCaloriesProperties properties;
+    private final CalorieEstimator estimator;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ShardedTrainingStore shardedStore;
+    private final TrainingUserLocks userLocks;
+    private final StatisticsCalories statisticsCalories;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter recomputed;
+    private final ScheduledExecutorService executor;
+
+    CaloriesRecomputeJob(TrainingCaloriesProperties properties,
+                         CalorieEstimator estimator,
+                         JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         EntityManagerFactory entityManagerFactory,
+                         ShardedTrainingStore shardedStore,
+                         TrainingUserLocks userLocks,
+                         StatisticsCalories statisticsCalories,
+                         ApplicationEventPublisher eventPublisher,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.estimator = estimator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.shardedStore = shardedStore;
+        this.userLocks = userLocks;
+        this.statisticsCalories = statisticsCalories;
+        this.eventPublisher = eventPublisher;
+        this.recomputed = meterRegistry.counter("training.calories.recomputed");
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "calories-recompute");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Przeliczanie czyta treningi z bazy głównej razem z datą urodzenia użytkownika, więc nie obejmuje shardów -
+     * przy shardowaniu musi zostać wyłączone, zamiast pomijać treningi bez ostrzeżenia.
+     */
+    @PostConstruct
+    void schedule() {
+        if (properties.recomputeEnabled() && shardedStore.enabled()) {
+            throw new IllegalStateException(
+                    "Calories recomputation does not support training sharding, set training.calories.recompute-enabled=false");
+        }
+        if (properties.recomputeEnabled()) {
+            long interval = properties.recomputeInterval().toMillis();
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    recompute();
+                } catch (RuntimeException e) {
+                    log.warn("Calories recomputation failed, will resume on next run", e);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return liczba przeliczonych treningów
+     */
+    synchronized long recompute() {
+        int model = estimator.modelVersion();
+        ForkJoinPool pool = new ForkJoinPool(properties.effectiveRecomputeParallelism());
+        long total = 0;
+        try {
+            CalorieBatch batch = CalorieBatch.allocate(properties.recomputeBatchSize());
+            long lastId = Long.MIN_VALUE;
+            int rows;
+            do {
+                long startedAt = System.nanoTime();
+                rows = load(batch, lastId, model);
+                if (rows == 0) {
+                    break;
+                }
+                pool.invoke(new EstimateTask(estimator, batch, 0, rows));
+                total += save(batch, rows, model);
+                lastId = batch.ids()[rows - 1];
+                throttle(rows, startedAt);
+            } while (rows == batch.ids().length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+        if (total > 0) {
+            log.info("Recomputed calories of {} trainings with model {}", total, model);
+        }
+        return total;
+    }
+
+    /**
+     * Wczytuje kolejną porcję treningów do przeliczenia bezpośrednio do tablic porcji.
+     *
+     * @return liczba wczytanych treningów
+     */
+    private int load(CalorieBatch batch, long afterId, int model) {
+        int[] rows = {0};
+        jdbcTemplate.query("""
+                        SELECT t.id, t.user_id, t.activity_type, t.start_time, t.end_time, t.distance, t.average_speed,
+                               t.calories, u.birthdate
+                        FROM trainings t LEFT JOIN users u ON u.id = t.user_id
+                        WHERE t.id > ? AND (t.calories_model IS NULL OR t.calories_model <> ?)
+                        ORDER BY t.id LIMIT ?""",
+                resultSet -> {
+                    int i = rows[0]++;
+                    long startMillis = resultSet.getTimestamp("start_time").getTime();
+                    batch.ids()[i] = resultSet.getLong("id");
+                    batch.userIds()[i] = resultSet.getLong("user_id");
+                    batch.activityTypes()[i] = resultSet.getInt("activity_type");
+                    batch.startMillis()[i] = startMillis;
+                    batch.durationMillis()[i] = resultSet.getTimestamp("end_time").getTime() - startMillis;
+                    batch.distances()[i] = resultSet.getDouble("distance");
+                    batch.averageSpeeds()[i] = resultSet.getDouble("average_speed");
+                    batch.previousCalories()[i] = resultSet.getInt("calories");
+                    Date birthdate = resultSet.getDate("birthdate");
+                    if (birthdate != null) {
+                        batch.birthEpochDays()[i] = (int) birthdate.toLocalDate().toEpochDay();
+                    } else {
+                        batch.setUnknownBirthdate(i);
+                    }
+                },
+                afterId, model, batch.ids().length);
+        return rows[0];
+    }
+
+    /**
+     * Zapisuje porcję grupami treningów najwyżej {@link TrainingCaloriesProperties#recomputeUsersPerTransaction()}
+     * użytkowników, każdą w osobnej transakcji pod blokadami tylko jej użytkowników - porcja z treningami wielu
+     * użytkowników nie wstrzymuje ich zapisów przez API na czas zapisu całej porcji.
+     */
+    private int save(CalorieBatch batch, int rows, int model) {
+        Map<Long, List<Integer>> rowsByUser = new LinkedHashMap<>();
+        for (int i = 0; i < rows; i++) {
+            rowsByUser.computeIfAbsent(batch.userIds()[i], userId -> new ArrayList<>()).add(i);
+        }
+        List<Long> userIds = new ArrayList<>(rowsByUser.keySet());
+        int usersPerTransaction = properties.recomputeUsersPerTransaction();
+        int saved = 0;
+        for (int from = 0; from < userIds.size(); from += usersPerTransaction) {
+            saved += saveUsers(batch, model, userIds.subList(from, Math.min(from + usersPerTransaction, userIds.size())),
+                    rowsByUser);
+        }
+        entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class).evictQueryRegion(TrainingRepository.QUERY_CACHE_REGION);
+        recomputed.increment(saved);
+        return saved;
+    }
+
+    private int saveUsers(CalorieBatch batch, int model, List<Long> userIds, Map<Long, List<Integer>> rowsByUser) {
+        Set<Long> lockedUsers = userIds.stream()
+                .filter(userId -> userId != CalorieBatch.NO_USER)
+                .collect(Collectors.toSet());
+        List<Integer> rows = userIds.stream().flatMap(userId -> rowsByUser.get(userId).stream()).toList();
+        List<Long> updatedIds = userLocks.withUserLocks(lockedUsers, () -> transactionTemplate.execute(status -> {
+            int[] counts = jdbcTemplate.batchUpdate("""
+                            UPDATE trainings SET calories = ?, calories_model = ?
+                            WHERE id = ? AND (calories_model IS NULL OR calories_model <> ?)""",
+                    rows.stream().map(i -> new Object[]{batch.calories()[i], model, batch.ids()[i], model}).toList());
+            Map<Long, Integer> deltas = new HashMap<>();
+            List<Long> updated = new ArrayList<>();
+            List<TrainingEvent> events = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (int j = 0; j < counts.length; j++) {
+                int i = rows.get(j);
+                if (counts[j] > 0) {
+                    updated.add(batch.ids()[i]);
+                    events.add(updatedEvent(batch, i, now));
+                    if (batch.userIds()[i] != CalorieBatch.NO_USER) {
+                        deltas.merge(batch.userIds()[i], batch.calories()[i] - batch.previousCalories()[i], Integer::sum);
+                    }
+                }
+            }
+            deltas.forEach(statisticsCalories::add);
+            if (!events.isEmpty()) {
+                eventPublisher.publishEvent(new TrainingCaloriesRecomputedEvent(events));
+            }
+            return updated;
+        }));
+        // Wiersze zmienione z pominięciem Hibernate - cache drugiego poziomu może zawierać poprzednie kalorie.
+        updatedIds.forEach(id -> entityManagerFactory.getCache().evict(Training.class, id));
+        return updatedIds.size();
+    }
+
+    private static TrainingEvent updatedEvent(CalorieBatch batch, int i, long now) {
+        long userId = batch.userIds()[i];
+        return new TrainingEvent(TrainingEvent.Type.UPDATED, batch.ids()[i], userId == CalorieBatch.NO_USER ? null : userId,
+                now, batch.startMillis()[i], batch.startMillis()[i] + batch.durationMillis()[i],
+                ActivityType.values()[batch.activityTypes()[i]], batch.distances()[i], batch.averageSpeeds()[i],
+                batch.calories()[i]);
+    }
+
+    private void throttle(int rows, long startedAt) throws InterruptedException {
+        long minimumNanos = TimeUnit.SECONDS.toNanos(rows) / properties.recomputeRowsPerSecond();
+        long remainingNanos = minimumNanos - (System.nanoTime() - startedAt);
+        if (remainingNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(remainingNanos);
+        }
+    }
+
+    private static final class EstimateTask extends RecursiveAction {
+
+        private final CalorieEstimator estimator;
+        private final CalorieBatch batch;
+        private final int from;
+        private final int to;
+
+        private EstimateTask(CalorieEstimator estimator, CalorieBatch batch, int from, int to) {
+            this.estimator = estimator;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FORK_THRESHOLD) {
+                estimator.estimate(batch, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EstimateTask(estimator, batch, from, middle), new EstimateTask(estimator, batch, middle, to));
+        }
+    }
+}
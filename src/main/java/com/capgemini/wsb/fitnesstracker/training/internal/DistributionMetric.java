@@ -0,0 +1,38 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+/**
+ * Miary treningu, dla których utrzymywane są rozkłady ({@link TrainingDistributions}).
+ */
+public enum DistributionMetric {
+
+    /**
+     * Średnia prędkość w km/h, z dokładnością do 0,01.
+     */
+    AVERAGE_SPEED(0.01),
+    /**
+     * Dystans w km, z dokładnością do 0,01.
+     */
+    DISTANCE(0.01),
+    /**
+     * Czas trwania w sekundach.
+     */
+    DURATION(1);
+
+    private final double unit;
+
+    DistributionMetric(double unit) {
+        this.unit = unit;
+    }
+
+    double unit() {
+        return unit;
+    }
+
+    double measure(TrainingMeasures measures) {
+        return switch (this) {
+            case AVERAGE_SPEED -> measures.averageSpeed();
+            case DISTANCE -> measures.distance();
+            case DURATION -> measures.durationSeconds();
+        };
+    }
+}
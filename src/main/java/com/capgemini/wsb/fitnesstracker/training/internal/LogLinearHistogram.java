@@ -0,0 +1,188 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.VarInts;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram o stałym rozmiarze z kubełkami log-liniowymi (jak w HdrHistogram). Wartość zamieniana jest na liczbę
+ * całkowitą jednostek ({@code unit}); wartości poniżej {@value #SUB_BUCKETS} mają własne kubełki, a każdy kolejny
+ * przedział {@code [2^e, 2^(e+1))} dzielony jest na {@value #SUB_BUCKETS} równych kubełków. Błąd względny granic
+ * kubełka nie przekracza więc 1/{@value #SUB_BUCKETS}, a histogram zajmuje zawsze {@value #BUCKETS} liczników.
+ * <p>
+ * Liczniki są atomowe, więc zapis z wielu wątków nie wymaga blokad. Histogramy o tej samej jednostce łączy się
+ * przez dodanie liczników ({@link #merge(long[], long[])}), niezależnie od kolejności zapisów - dzięki temu można
+ * je sumować między instancjami aplikacji. Kwantyle i pozycja wartości liczone są w czasie stałym względem liczby
+ * zapisanych wartości (jedno przejście po {@value #BUCKETS} licznikach).
+ */
+final class LogLinearHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final long MAX_UNITS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final double unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    LogLinearHistogram(double unit) {
+        this.unit = unit;
+    }
+
+    double unit() {
+        return unit;
+    }
+
+    /**
+     * Dodaje (lub przy ujemnym {@code count} odejmuje) wystąpienia wartości.
+     */
+    void record(double value, long count) {
+        counts.addAndGet(bucketOf(value, unit), count);
+    }
+
+    long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Zwraca liczniki i zeruje histogram. Zapisy wykonywane równolegle trafiają w całości albo do zwróconych
+     * liczników, albo do histogramu.
+     */
+    long[] drain() {
+        long[] drained = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            drained[i] = counts.getAndSet(i, 0);
+        }
+        return drained;
+    }
+
+    /**
+     * Przywraca liczniki zwrócone przez {@link #drain()}, np. gdy nie udało się ich zapisać.
+     */
+    void restore(long[] drained) {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (drained[i] != 0) {
+                counts.addAndGet(i, drained[i]);
+            }
+        }
+    }
+
+    static int bucketOf(double value, double unit) {
+        long units = Math.min(MAX_UNITS, Math.max(0, Math.round(value / unit)));
+        if (units < SUB_BUCKETS) {
+            return (int) units;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(units);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (units >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return dolna granica kubełka (włącznie) w jednostkach histogramu
+     */
+    static long lowerBoundUnits(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    /**
+     * @return górna granica kubełka (wyłącznie) w jednostkach histogramu
+     */
+    static long upperBoundUnits(int bucket) {
+        return bucket + 1 < BUCKETS ? lowerBoundUnits(bucket + 1) : MAX_UNITS + 1;
+    }
+
+    static long[] merge(long[] target, long[] source) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target[i] += source[i];
+        }
+        return target;
+    }
+
+    /**
+     * Liczniki ujemne (po odjęciu wartości, których dodanie nie zostało jeszcze scalone) traktowane są jak zero.
+     */
+    static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += Math.max(0, count);
+        }
+        return total;
+    }
+
+    /**
+     * @param quantile kwantyl z przedziału {@code [0, 1]}
+     * @return środek kubełka zawierającego kwantyl, w jednostkach histogramu, lub {@code -1} dla pustego histogramu
+     */
+    static double quantileUnits(long[] counts, double quantile) {
+        long total = total(counts);
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += Math.max(0, counts[i]);
+            if (seen >= rank) {
+                return (lowerBoundUnits(i) + upperBoundUnits(i) - 1) / 2.0;
+            }
+        }
+        return (lowerBoundUnits(BUCKETS - 1) + MAX_UNITS) / 2.0;
+    }
+
+    /**
+     * @return odsetek wartości mniejszych od podanego kubełka plus połowa wartości w tym kubełku, z przedziału
+     * {@code [0, 1]}
+     */
+    static double percentileRank(long[] counts, int bucket) {
+        long total = total(counts);
+        if (total == 0) {
+            return 0;
+        }
+        long below = 0;
+        for (int i = 0; i < bucket; i++) {
+            below += Math.max(0, counts[i]);
+        }
+        return (below + Math.max(0, counts[bucket]) / 2.0) / total;
+    }
+
+    /**
+     * Koduje liczniki ze znakiem: ujemny licznik (usunięcie scalone przed dodaniem z innej instancji) musi zostać
+     * w stanie scalonym, inaczej późniejsze dodanie policzyłoby wartość podwójnie. Układ zapisywany jest jako ujemna
+     * liczba kubełków - dane w starszym układzie, z licznikami bez znaku, nie zostaną odczytane błędnie.
+     */
+    static byte[] encode(long[] counts) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUCKETS * VarInts.MAX_LENGTH + VarInts.MAX_LENGTH);
+        VarInts.writeSigned(buffer, -BUCKETS);
+        for (long count : counts) {
+            VarInts.writeSigned(buffer, count);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static long[] decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long layout = VarInts.readSigned(buffer);
+        if (layout != -BUCKETS) {
+            throw new IllegalArgumentException("Unsupported histogram layout %d".formatted(layout));
+        }
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = VarInts.readSigned(buffer);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,111 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtr Blooma dla odcisków treningów, podzielony na niezależne segmenty (shardy).
+ * <p>
+ * Każdy odcisk trafia do jednego segmentu, a bity ustawiane są operacjami CAS na {@link AtomicLongArray},
+ * więc zapis i odczyt nie wymagają blokad. Odciski są już wynikiem funkcji skrótu, dlatego kolejne pozycje bitów
+ * wyznaczane są podwójnym haszowaniem z dwóch 64-bitowych połówek odcisku.
+ */
+final class ShardedBloomFilter {
+
+    private final AtomicLongArray[] shards;
+    private final long bitsPerShard;
+    private final int hashFunctions;
+    private final long capacity;
+    private final AtomicLong insertions = new AtomicLong();
+
+    private ShardedBloomFilter(int shardCount, long bitsPerShard, int hashFunctions, long capacity) {
+        this.shards = new AtomicLongArray[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new AtomicLongArray((int) ((bitsPerShard + 63) / 64));
+        }
+        this.bitsPerShard = bitsPerShard;
+        this.hashFunctions = hashFunctions;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Tworzy filtr o rozmiarze dobranym do oczekiwanej liczby elementów i prawdopodobieństwa fałszywego trafienia.
+     *
+     * @param capacity                  oczekiwana liczba elementów
+     * @param falsePositiveProbability  docelowe prawdopodobieństwo fałszywego trafienia
+     * @param shardCount                liczba segmentów (potęga dwójki)
+     * @return nowy, pusty filtr
+     */
+    static ShardedBloomFilter create(long capacity, double falsePositiveProbability, int shardCount) {
+        if (Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two");
+        }
+        long totalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        long bitsPerShard = Math.max(64, (totalBits + shardCount - 1) / shardCount);
+        int hashFunctions = Math.max(1, (int) Math.round((double) totalBits / capacity * Math.log(2)));
+        return new ShardedBloomFilter(shardCount, bitsPerShard, hashFunctions, capacity);
+    }
+
+    void put(String fingerprint) {
+        long[] hashes = hashes(fingerprint);
+        AtomicLongArray shard = shardFor(hashes[1]);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bitIndex(hashes, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = shard.get(word);
+            while ((current & mask) == 0 && !shard.compareAndSet(word, current, current | mask)) {
+                current = shard.get(word);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    boolean mightContain(String fingerprint) {
+        long[] hashes = hashes(fingerprint);
+        AtomicLongArray shard = shardFor(hashes[1]);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bitIndex(hashes, i);
+            if ((shard.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    long insertions() {
+        return insertions.get();
+    }
+
+    /**
+     * @return oczekiwane prawdopodobieństwo fałszywego trafienia przy bieżącej liczbie elementów
+     */
+    double expectedFalsePositiveProbability() {
+        double bits = (double) bitsPerShard * shards.length;
+        return Math.pow(1 - Math.exp(-hashFunctions * insertions.get() / bits), hashFunctions);
+    }
+
+    private AtomicLongArray shardFor(long hash) {
+        return shards[(int) (hash >>> 40) & (shards.length - 1)];
+    }
+
+    private long bitIndex(long[] hashes, int i) {
+        return Math.floorMod(hashes[0] + i * hashes[1], bitsPerShard);
+    }
+
+    private static long[] hashes(String fingerprint) {
+        byte[] bytes = HexFormat.of().parseHex(fingerprint);
+        long first = 0;
+        long second = 0;
+        for (int i = 0; i < 8; i++) {
+            first = (first << 8) | (bytes[i] & 0xFF);
+            second = (second << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return new long[]{first, second | 1};
+    }
+}
@@ -0,0 +1,775 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.VersionConflictException;
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingNotFoundException;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.internal.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Przechowywanie treningów w wielu bazach danych (shardach) wybieranych na podstawie skrótu ID użytkownika.
+ * <p>
+ * Zapytania dotyczące jednego użytkownika trafiają do jednego sharda. Zapytania przekrojowe
+ * ({@link #findFinishedAfter(Date)}, {@link #findByType(ActivityType)}) wykonywane są równolegle na wszystkich
+ * shardach, a posortowane po {@code end_time} wyniki łączone są scaleniem k-drogowym.
+ * <p>
+ * Resharding ({@link #reshard(int)}) odbywa się bez zatrzymywania aplikacji: na czas migracji nowe treningi trafiają
+ * już do sharda z nowego układu, a odczyty użytkownika sprawdzają shard ze starego i z nowego układu. Każdy trening
+ * przenoszony jest pod blokadą użytkownika ({@link TrainingUserLocks}), tak jak jego zapisy i usuwanie, więc
+ * równoległa zmiana nie zostanie nadpisana starszą kopią. Użytkownicy pozostają w bazie głównej.
+ * <p>
+ * Wiersze w shardach mają te same gwarancje co w bazie głównej: kalorie, wersję wiersza sprawdzaną przy zmianie
+ * ({@link #update(Training)}) i numer zmiany synchronizacji przyrostowej ({@link TrainingChanges}) nadawany z sekwencji
+ * bazy głównej przy każdym zapisie. Przenoszony trening zachowuje wersję i numer zmiany.
+ * <p>
+ * Układ shardów (liczba aktywnych i docelowych shardów oraz numer wersji) zapisywany jest w tabeli
+ * {@code training_shard_layout} pierwszego sharda. Po restarcie układ odczytywany jest z tej tabeli, a nie
+ * z konfiguracji, a pozostałe instancje odświeżają go co {@link TrainingShardingProperties#layoutRefresh()}.
+ * <p>
+ * Zmiana układu jest dwufazowa. Najpierw zapisywany jest układ przejściowy (zapisy do nowego sharda, odczyty z obu).
+ * Każda instancja po jego odczytaniu czeka na zakończenie zapisów kierowanych starym układem i potwierdza wersję
+ * w tabeli {@code training_shard_instances}. Przenoszenie treningów zaczyna się dopiero, gdy potwierdzą ją wszystkie
+ * działające instancje - instancję, która nie odświeżała układu dłużej niż trzy okresy odświeżania, uznaje się
+ * za zatrzymaną. Bez tego instancja ze starym układem mogłaby zapisać trening do sharda, który migracja już przejrzała.
+ */
+@Component
+@Slf4j
+class ShardedTrainingStore {
+
+    private static final String COLUMNS = """
+            id, user_id, start_time, end_time, activity_type, distance, average_speed, fingerprint, calories, calories_model,
+            version, change_seq""";
+    private static final String UPDATE_ROW = """
+            UPDATE trainings SET start_time = ?, end_time = ?, activity_type = ?, distance = ?, average_speed = ?,
+            fingerprint = ?, calories = ?, calories_model = ?, version = ?, change_seq = ? WHERE id = ? AND user_id = ?""";
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final Duration LAYOUT_ACK_POLL = Duration.ofMillis(100);
+    private static final ActivityType[] ACTIVITY_TYPES = ActivityType.values();
+    private static final RowMapper<ShardRow> ROW_MAPPER = (resultSet, rowNum) -> new ShardRow(
+            resultSet.getLong("id"),
+            resultSet.getLong("user_id"),
+            new Date(resultSet.getTimestamp("start_time").getTime()),
+            new Date(resultSet.getTimestamp("end_time").getTime()),
+            ACTIVITY_TYPES[resultSet.getInt("activity_type")],
+            resultSet.getDouble("distance"),
+            resultSet.getDouble("average_speed"),
+            resultSet.getString("fingerprint"),
+            resultSet.getObject("calories", Integer.class),
+            resultSet.getObject("calories_model", Integer.class),
+            resultSet.getLong("version"),
+            resultSet.getLong("change_seq"));
+
+    private final boolean enabled;
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final TrainingUserLocks userLocks;
+    private final TrainingIdGenerator idGenerator;
+    private final ExecutorService executor;
+    private final TaskScheduler taskScheduler;
+    private final TrainingShardingProperties properties;
+    private final ReentrantLock layoutLock = new ReentrantLock();
+    private final ReentrantReadWriteLock routingLock = new ReentrantReadWriteLock();
+
+    private volatile int activeShards;
+    private volatile int targetShards;
+    private volatile long layoutVersion;
+
+    ShardedTrainingStore(TrainingShardingProperties properties, UserRepository userRepository, TrainingUserLocks userLocks,
+                         TaskScheduler taskScheduler, JdbcTemplate jdbcTemplate) {
+        this.enabled = properties.enabled();
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = taskScheduler;
+        this.userRepository = userRepository;
+        this.userLocks = userLocks;
+        this.idGenerator = new TrainingIdGenerator(properties.nodeId());
+        for (TrainingShardingProperties.Shard shard : properties.shards()) {
+            DataSource dataSource = DataSourceBuilder.create()
+                    .url(shard.url())
+                    .username(shard.username())
+                    .password(shard.password())
+                    .build();
+            dataSources.add(dataSource);
+            shards.add(new JdbcTemplate(dataSource));
+        }
+        if (enabled && shards.isEmpty()) {
+            throw new IllegalStateException("Training sharding is enabled but no shards are configured");
+        }
+        int configuredShards = properties.activeShards() > 0 ? properties.activeShards() : shards.size();
+        this.activeShards = configuredShards;
+        this.targetShards = configuredShards;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, shards.size()), runnable -> {
+            Thread thread = new Thread(runnable, "training-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            shards.forEach(ShardedTrainingStore::createSchema);
+            layoutShard().execute("""
+                    CREATE TABLE IF NOT EXISTS training_shard_layout (
+                        id INTEGER PRIMARY KEY,
+                        active_shards INTEGER NOT NULL,
+                        target_shards INTEGER NOT NULL
+                    )""");
+            layoutShard().execute("ALTER TABLE training_shard_layout ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+            layoutShard().execute("""
+                    CREATE TABLE IF NOT EXISTS training_shard_instances (
+                        node_id INTEGER PRIMARY KEY,
+                        layout_version BIGINT NOT NULL,
+                        seen_at TIMESTAMP NOT NULL
+                    )""");
+            layoutShard().update("""
+                            INSERT INTO training_shard_layout (id, active_shards, target_shards)
+                            SELECT 1, ?, ? WHERE NOT EXISTS (SELECT 1 FROM training_shard_layout WHERE id = 1)""",
+                    configuredShards, configuredShards);
+            loadLayout();
+            acknowledgeLayout();
+            if (activeShards != configuredShards) {
+                log.warn("Using stored layout of {} training shards instead of configured {}", activeShards, configuredShards);
+            }
+            if (targetShards != activeShards) {
+                log.warn("Resharding from {} to {} training shards was interrupted, run it again to finish",
+                        activeShards, targetShards);
+            }
+        }
+    }
+
+    @PostConstruct
+    void schedule() {
+        if (enabled) {
+            taskScheduler.scheduleWithFixedDelay(this::refreshLayout,
+                    Instant.now().plus(properties.layoutRefresh()), properties.layoutRefresh());
+        }
+    }
+
+    @PreDestroy
+    void close() throws Exception {
+        executor.shutdownNow();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    int activeShards() {
+        return activeShards;
+    }
+
+    /**
+     * Wyznacza shard dla użytkownika przy danej liczbie shardów.
+     */
+    static int shardFor(long userId, int shardCount) {
+        long hash = userId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) shardCount);
+    }
+
+    Training insert(Training training) {
+        ShardRow row = ShardRow.of(idGenerator.nextId(), training, 0, nextChangeSeq());
+        return routed(() -> {
+            JdbcTemplate shard = shards.get(shardFor(training.getUser().getId(), targetShards));
+            try {
+                insertRow(shard, row);
+            } catch (DuplicateKeyException e) {
+                throw new DuplicateTrainingException();
+            }
+            return row.toTraining(training.getUser());
+        });
+    }
+
+    /**
+     * Zapisuje zmieniony trening, jeśli wiersz ma nadal wersję odczytaną razem z treningiem.
+     *
+     * @throws TrainingNotFoundException jeśli trening nie istnieje
+     * @throws VersionConflictException  jeśli trening zmieniono od odczytu (np. na innej instancji)
+     */
+    Training update(Training training) {
+        ShardRow row = ShardRow.of(training.getId(), training, training.getVersion() + 1, nextChangeSeq());
+        return routed(() -> {
+            int updated = 0;
+            for (int shardIndex : shardsOf(training.getUser().getId())) {
+                try {
+                    updated += updateRow(shards.get(shardIndex), row, training.getVersion());
+                } catch (DuplicateKeyException e) {
+                    throw new DuplicateTrainingException();
+                }
+            }
+            if (updated == 0 && findById(training.getId()).isPresent()) {
+                throw new VersionConflictException("Training with ID=%s was modified concurrently".formatted(training.getId()));
+            }
+            if (updated == 0) {
+                throw new TrainingNotFoundException(training.getId());
+            }
+            return row.toTraining(training.getUser());
+        });
+    }
+
+    /**
+     * Wyszukuje trening użytkownika o podanym odcisku treści w shardach, w których mogą być jego treningi.
+     */
+    Optional<Long> findIdByFingerprint(long userId, String fingerprint) {
+        return shardsOf(userId).stream()
+                .flatMap(shardIndex -> shards.get(shardIndex).queryForList(
+                        "SELECT id FROM trainings WHERE fingerprint = ?", Long.class, fingerprint).stream())
+                .findFirst();
+    }
+
+    /**
+     * Zwraca do {@code limit} treningów użytkownika zmienionych po podanym numerze zmiany, posortowanych po numerze.
+     */
+    List<ShardRow> findChangedSince(long userId, long changeSeq, int limit) {
+        List<ShardRow> rows = new ArrayList<>();
+        for (int shardIndex : shardsOf(userId)) {
+            rows.addAll(shards.get(shardIndex).query(
+                    "SELECT " + COLUMNS + " FROM trainings WHERE user_id = ? AND change_seq > ? ORDER BY change_seq LIMIT ?",
+                    ROW_MAPPER, userId, changeSeq, limit));
+        }
+        return distinct(rows).stream()
+                .sorted(Comparator.comparingLong(ShardRow::changeSeq))
+                .limit(limit)
+                .toList();
+    }
+
+    long maxChangeSeq(long userId) {
+        return shardsOf(userId).stream()
+                .mapToLong(shardIndex -> shards.get(shardIndex).queryForObject(
+                        "SELECT COALESCE(MAX(change_seq), 0) FROM trainings WHERE user_id = ?", Long.class, userId))
+                .max()
+                .orElse(0);
+    }
+
+    private long nextChangeSeq() {
+        return jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + TrainingChanges.SEQUENCE, Long.class);
+    }
+
+    /**
+     * Zapis wybierający shard według układu. Zmiana układu na tej instancji czeka na zakończenie takich zapisów,
+     * więc po jej potwierdzeniu żaden zapis nie trafia do sharda według poprzedniego układu.
+     */
+    private <T> T routed(Supplier<T> write) {
+        routingLock.readLock().lock();
+        try {
+            return write.get();
+        } finally {
+            routingLock.readLock().unlock();
+        }
+    }
+
+    Optional<Training> findById(long trainingId) {
+        return hydrate(scatter(shard -> shard.query("SELECT " + COLUMNS + " FROM trainings WHERE id = ?", ROW_MAPPER, trainingId)))
+                .stream()
+                .findFirst();
+    }
+
+    List<Training> findByUser(User user) {
+        List<ShardRow> rows = new ArrayList<>();
+        for (int shardIndex : shardsOf(user.getId())) {
+            rows.addAll(shards.get(shardIndex).query(
+                    "SELECT " + COLUMNS + " FROM trainings WHERE user_id = ? ORDER BY start_time", ROW_MAPPER, user.getId()));
+        }
+        return distinct(rows).stream()
+                .sorted(Comparator.comparing(ShardRow::startTime))
+                .map(row -> row.toTraining(user))
+                .toList();
+    }
+
+    Optional<Training> findLatestStartedBefore(User user, Date before, Long excludedId) {
+        return shardsOf(user.getId()).stream()
+                .flatMap(shardIndex -> shards.get(shardIndex).query("""
+                                SELECT %s FROM trainings WHERE user_id = ? AND start_time < ? AND id <> ?
+                                ORDER BY start_time DESC, end_time DESC LIMIT 1""".formatted(COLUMNS),
+                        ROW_MAPPER, user.getId(), new Timestamp(before.getTime()), excludedId == null ? -1 : excludedId).stream())
+                .max(Comparator.comparing(ShardRow::startTime).thenComparing(ShardRow::endTime))
+                .map(row -> row.toTraining(user));
+    }
+
+    List<Training> findAll() {
+        return hydrate(scatter(shard -> shard.query("SELECT " + COLUMNS + " FROM trainings ORDER BY end_time", ROW_MAPPER)));
+    }
+
+    List<Training> findFinishedAfter(Date date) {
+        return hydrate(scatter(shard -> shard.query(
+                "SELECT " + COLUMNS + " FROM trainings WHERE end_time > ? ORDER BY end_time",
+                ROW_MAPPER, new Timestamp(date.getTime()))));
+    }
+
+    List<Training> findByType(ActivityType type) {
+        return hydrate(scatter(shard -> shard.query(
+                "SELECT " + COLUMNS + " FROM trainings WHERE activity_type = ? ORDER BY end_time",
+                ROW_MAPPER, type.ordinal())));
+    }
+
+    /**
+     * Strona wyszukiwania: filtry i kursor są warunkami zapytania, każdy shard zwraca co najwyżej {@code limit}
+     * najnowszych treningów, a wyniki są łączone i obcinane do limitu. Zapytanie z użytkownikiem trafia tylko do
+     * jego shardów.
+     */
+    List<Training> search(TrainingSearchCriteria criteria, @Nullable TrainingSearchCursor after, int limit) {
+        Set<Long> skippedUsers = new LinkedHashSet<>();
+        while (true) {
+            List<ShardRow> rows = newest(criteria, after, skippedUsers, limit);
+            Map<Long, User> users = userRepository.findAllById(rows.stream().map(ShardRow::userId).collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(User::getId, Function.identity()));
+            List<Long> deletedUsers = rows.stream()
+                    .map(ShardRow::userId)
+                    .filter(userId -> !users.containsKey(userId))
+                    .distinct()
+                    .toList();
+            if (deletedUsers.isEmpty()) {
+                return rows.stream().map(row -> row.toTraining(users.get(row.userId()))).toList();
+            }
+            // Treningi usuwanego użytkownika zajęłyby miejsca na stronie - szukamy ponownie bez nich.
+            skippedUsers.addAll(deletedUsers);
+        }
+    }
+
+    private List<ShardRow> newest(TrainingSearchCriteria criteria, @Nullable TrainingSearchCursor after,
+                                  Set<Long> skippedUsers, int limit) {
+        StringBuilder where = new StringBuilder("1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        addCondition(where, parameters, "user_id = ?", criteria.userId());
+        addCondition(where, parameters, "activity_type = ?",
+                criteria.activityType() == null ? null : criteria.activityType().ordinal());
+        addCondition(where, parameters, "start_time >= ?",
+                criteria.from() == null ? null : new Timestamp(criteria.from().getTime()));
+        addCondition(where, parameters, "start_time < ?",
+                criteria.to() == null ? null : new Timestamp(criteria.to().getTime()));
+        addCondition(where, parameters, "distance >= ?", criteria.minDistance());
+        addCondition(where, parameters, "distance < ?", criteria.maxDistance());
+        addCondition(where, parameters, "average_speed >= ?", criteria.minSpeed());
+        addCondition(where, parameters, "average_speed < ?", criteria.maxSpeed());
+        if (after != null) {
+            Timestamp cursorStart = new Timestamp(after.startTime());
+            where.append(" AND (start_time < ? OR start_time = ? AND id < ?)");
+            parameters.addAll(List.of(cursorStart, cursorStart, after.id()));
+        }
+        for (Long userId : skippedUsers) {
+            addCondition(where, parameters, "user_id <> ?", userId);
+        }
+        parameters.add(limit);
+        String sql = "SELECT %s FROM trainings WHERE %s ORDER BY start_time DESC, id DESC LIMIT ?".formatted(COLUMNS, where);
+        Object[] arguments = parameters.toArray();
+        List<List<ShardRow>> results = criteria.userId() == null
+                ? scatter(shard -> shard.query(sql, ROW_MAPPER, arguments))
+                : shardsOf(criteria.userId()).stream().map(shardIndex -> shards.get(shardIndex).query(sql, ROW_MAPPER, arguments)).toList();
+        return distinct(results.stream().flatMap(List::stream).toList()).stream()
+                .sorted(Comparator.comparing(ShardRow::startTime).thenComparingLong(ShardRow::id).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private static void addCondition(StringBuilder where, List<Object> parameters, String condition, @Nullable Object value) {
+        if (value != null) {
+            where.append(" AND ").append(condition);
+            parameters.add(value);
+        }
+    }
+
+    long countByUser(long userId) {
+        return shardsOf(userId).stream()
+                .mapToLong(shardIndex -> shards.get(shardIndex).queryForObject(
+                        "SELECT COUNT(*) FROM trainings WHERE user_id = ?", Long.class, userId))
+                .sum();
+    }
+
+    /**
+     * Usuwa do {@code limit} treningów użytkownika z shardów, w których mogą się znajdować.
+     *
+     * @return usunięte wiersze
+     */
+    List<ShardRow> deleteUserChunk(long userId, int limit) {
+        return userLocks.withUserLock(userId, () -> routed(() -> {
+            List<ShardRow> deleted = new ArrayList<>();
+            for (int shardIndex : shardsOf(userId)) {
+                if (deleted.size() >= limit) {
+                    break;
+                }
+                JdbcTemplate shard = shards.get(shardIndex);
+                List<ShardRow> rows = shard.query("SELECT " + COLUMNS + " FROM trainings WHERE user_id = ? ORDER BY id LIMIT ?",
+                        ROW_MAPPER, userId, limit - deleted.size());
+                if (!rows.isEmpty()) {
+                    shard.batchUpdate("DELETE FROM trainings WHERE id = ?",
+                            rows.stream().map(row -> new Object[]{row.id()}).toList());
+                    deleted.addAll(rows);
+                }
+            }
+            return distinct(deleted);
+        }));
+    }
+
+    /**
+     * Zmienia liczbę shardów, przenosząc treningi użytkowników, których shard się zmienia. Przenoszenie zaczyna się
+     * po potwierdzeniu układu przejściowego przez wszystkie działające instancje, odbywa się porcjami, a każdy trening
+     * (ponowny odczyt, wstawienie w nowym shardzie, usunięcie ze starego) przenoszony jest pod blokadą użytkownika.
+     * Aplikacja obsługuje w tym czasie ruch.
+     *
+     * @param shardCount nowa liczba shardów (nie większa niż liczba skonfigurowanych baz)
+     * @return liczba przeniesionych treningów
+     * @throws IllegalStateException jeśli instancje nie potwierdziły układu w czasie
+     *                               {@link TrainingShardingProperties#layoutAckTimeout()} - układ przejściowy zostaje
+     *                               zapisany, a resharding można ponowić
+     */
+    long reshard(int shardCount) {
+        if (shardCount < 1 || shardCount > shards.size()) {
+            throw new IllegalArgumentException("Shard count must be between 1 and %d".formatted(shards.size()));
+        }
+        layoutLock.lock();
+        try {
+            return migrate(shardCount);
+        } finally {
+            layoutLock.unlock();
+        }
+    }
+
+    private long migrate(int shardCount) {
+        loadLayout();
+        if (targetShards != activeShards && targetShards != shardCount) {
+            throw new IllegalStateException("Resharding from %d to %d shards was interrupted, finish it before changing to %d"
+                    .formatted(activeShards, targetShards, shardCount));
+        }
+        int previous = activeShards;
+        // Układ docelowy zapisywany jest przed przeniesieniem pierwszego treningu, aby po restarcie i na innych
+        // instancjach odczyty sprawdzały oba shardy.
+        saveLayout(previous, shardCount);
+        loadLayout();
+        acknowledgeLayout();
+        awaitAcknowledged(layoutVersion);
+        long moved = 0;
+        // Przerwany resharding mógł zostawić treningi w dowolnym shardzie - przeglądane są wszystkie.
+        for (int source = 0; source < shards.size(); source++) {
+            moved += migrateShard(source, shardCount);
+        }
+        saveLayout(shardCount, shardCount);
+        loadLayout();
+        acknowledgeLayout();
+        log.info("Resharded trainings from {} to {} shards, moved {} trainings", previous, shardCount, moved);
+        return moved;
+    }
+
+    /**
+     * Odczytuje układ shardów zmieniony przez resharding na innej instancji i potwierdza jego wersję. Odczyt jest
+     * pomijany, gdy resharding trwa na tej instancji - układ jest wtedy aktualny.
+     */
+    void refreshLayout() {
+        if (layoutLock.tryLock()) {
+            try {
+                loadLayout();
+            } finally {
+                layoutLock.unlock();
+            }
+        }
+        acknowledgeLayout();
+    }
+
+    private void loadLayout() {
+        Map<String, Object> layout = layoutShard().queryForMap(
+                "SELECT active_shards, target_shards, version FROM training_shard_layout WHERE id = 1");
+        int storedActive = ((Number) layout.get("active_shards")).intValue();
+        int storedTarget = ((Number) layout.get("target_shards")).intValue();
+        long storedVersion = ((Number) layout.get("version")).longValue();
+        if (Math.max(storedActive, storedTarget) > shards.size()) {
+            throw new IllegalStateException("Stored training shard layout uses %d shards, but only %d are configured"
+                    .formatted(Math.max(storedActive, storedTarget), shards.size()));
+        }
+        if (storedVersion == layoutVersion && storedActive == activeShards && storedTarget == targetShards) {
+            return;
+        }
+        // Zmiana czeka na zapisy kierowane poprzednim układem - po jej zakończeniu można potwierdzić nową wersję.
+        routingLock.writeLock().lock();
+        try {
+            targetShards = storedTarget;
+            activeShards = storedActive;
+            layoutVersion = storedVersion;
+        } finally {
+            routingLock.writeLock().unlock();
+        }
+    }
+
+    private void saveLayout(int active, int target) {
+        layoutShard().update(
+                "UPDATE training_shard_layout SET active_shards = ?, target_shards = ?, version = version + 1 WHERE id = 1",
+                active, target);
+    }
+
+    private void acknowledgeLayout() {
+        layoutShard().update("MERGE INTO training_shard_instances (node_id, layout_version, seen_at) KEY (node_id) VALUES (?, ?, ?)",
+                properties.nodeId(), layoutVersion, Timestamp.from(Instant.now()));
+    }
+
+    /**
+     * Czeka, aż wszystkie działające instancje potwierdzą wersję układu.
+     */
+    private void awaitAcknowledged(long version) {
+        long deadline = System.nanoTime() + properties.layoutAckTimeout().toNanos();
+        while (true) {
+            Timestamp aliveSince = Timestamp.from(Instant.now().minus(properties.layoutRefresh().multipliedBy(3)));
+            List<Integer> pending = layoutShard().queryForList(
+                    "SELECT node_id FROM training_shard_instances WHERE layout_version < ? AND seen_at > ? ORDER BY node_id",
+                    Integer.class, version, aliveSince);
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Training shard layout %d was not acknowledged by instances %s"
+                        .formatted(version, pending));
+            }
+            LockSupport.parkNanos(LAYOUT_ACK_POLL.toNanos());
+        }
+    }
+
+    private JdbcTemplate layoutShard() {
+        return shards.get(0);
+    }
+
+    private long migrateShard(int source, int shardCount) {
+        JdbcTemplate sourceShard = shards.get(source);
+        long moved = 0;
+        long lastId = Long.MIN_VALUE;
+        List<ShardRow> batch;
+        do {
+            batch = sourceShard.query("SELECT " + COLUMNS + " FROM trainings WHERE id > ? ORDER BY id LIMIT ?",
+                    ROW_MAPPER, lastId, MIGRATION_BATCH_SIZE);
+            for (ShardRow row : batch) {
+                lastId = row.id();
+                int target = shardFor(row.userId(), shardCount);
+                if (target != source && moveRow(source, target, row)) {
+                    moved++;
+                }
+            }
+        } while (batch.size() == MIGRATION_BATCH_SIZE);
+        return moved;
+    }
+
+    /**
+     * Przenosi trening pod blokadą użytkownika. Wiersz odczytywany jest ponownie, bo od odczytu porcji mógł zostać
+     * zmieniony lub usunięty.
+     *
+     * @return czy trening został przeniesiony
+     */
+    private boolean moveRow(int source, int target, ShardRow candidate) {
+        JdbcTemplate sourceShard = shards.get(source);
+        JdbcTemplate targetShard = shards.get(target);
+        return userLocks.withUserLock(candidate.userId(), () -> {
+            List<ShardRow> current = sourceShard.query("SELECT " + COLUMNS + " FROM trainings WHERE id = ?",
+                    ROW_MAPPER, candidate.id());
+            if (current.isEmpty()) {
+                return false;
+            }
+            ShardRow row = current.get(0);
+            try {
+                insertRow(targetShard, row);
+            } catch (DuplicateKeyException e) {
+                // Kopia z przerwanej migracji - zastępowana aktualną wersją.
+                if (replaceRow(targetShard, row) == 0) {
+                    log.warn("Training {} conflicts with another training in shard {}, left in shard {}",
+                            row.id(), target, source);
+                    return false;
+                }
+            }
+            sourceShard.update("DELETE FROM trainings WHERE id = ?", row.id());
+            return true;
+        });
+    }
+
+    private Set<Integer> shardsOf(long userId) {
+        Set<Integer> candidates = new LinkedHashSet<>();
+        candidates.add(shardFor(userId, targetShards));
+        candidates.add(shardFor(userId, activeShards));
+        return candidates;
+    }
+
+    private List<List<ShardRow>> scatter(Function<JdbcTemplate, List<ShardRow>> query) {
+        int shardCount = Math.max(activeShards, targetShards);
+        List<CompletableFuture<List<ShardRow>>> futures = IntStream.range(0, shardCount)
+                .mapToObj(shardIndex -> CompletableFuture.supplyAsync(supplier(query, shards.get(shardIndex)), executor))
+                .toList();
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static Supplier<List<ShardRow>> supplier(Function<JdbcTemplate, List<ShardRow>> query, JdbcTemplate shard) {
+        return () -> query.apply(shard);
+    }
+
+    /**
+     * Scala posortowane po {@code end_time} wyniki z shardów w jedną posortowaną listę (scalanie k-drogowe).
+     */
+    static List<ShardRow> mergeByEndTime(List<List<ShardRow>> sortedResults) {
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(
+                Comparator.comparing((PeekingIterator iterator) -> iterator.peek().endTime())
+                        .thenComparingLong(iterator -> iterator.peek().id()));
+        sortedResults.stream()
+                .filter(rows -> !rows.isEmpty())
+                .map(rows -> new PeekingIterator(rows.iterator()))
+                .forEach(heads::add);
+        List<ShardRow> merged = new ArrayList<>();
+        while (!heads.isEmpty()) {
+            PeekingIterator head = heads.poll();
+            merged.add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private List<Training> hydrate(List<List<ShardRow>> sortedResults) {
+        List<ShardRow> rows = distinct(mergeByEndTime(sortedResults));
+        Map<Long, User> users = userRepository.findAllById(rows.stream().map(ShardRow::userId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        // Treningi usuwanego użytkownika (niewidocznego w users) czekają na usunięcie - pomijamy je.
+        return rows.stream()
+                .filter(row -> users.containsKey(row.userId()))
+                .map(row -> row.toTraining(users.get(row.userId())))
+                .toList();
+    }
+
+    /**
+     * Podczas reshardingu trening może chwilowo istnieć w dwóch shardach - zostawiamy pierwsze wystąpienie.
+     */
+    private static List<ShardRow> distinct(List<ShardRow> rows) {
+        Map<Long, ShardRow> unique = new LinkedHashMap<>();
+        rows.forEach(row -> unique.putIfAbsent(row.id(), row));
+        return new ArrayList<>(unique.values());
+    }
+
+    private static void insertRow(JdbcTemplate shard, ShardRow row) {
+        shard.update("INSERT INTO trainings (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                row.id(), row.userId(), new Timestamp(row.startTime().getTime()), new Timestamp(row.endTime().getTime()),
+                row.activityType().ordinal(), row.distance(), row.averageSpeed(), row.fingerprint(), row.calories(),
+                row.caloriesModel(), row.version(), row.changeSeq());
+    }
+
+    private static int updateRow(JdbcTemplate shard, ShardRow row, long expectedVersion) {
+        List<Object> arguments = updateArguments(row);
+        arguments.add(expectedVersion);
+        return shard.update(UPDATE_ROW + " AND version = ?", arguments.toArray());
+    }
+
+    /**
+     * Nadpisuje kopię treningu bez sprawdzania wersji - używane przy przenoszeniu między shardami.
+     */
+    private static int replaceRow(JdbcTemplate shard, ShardRow row) {
+        return shard.update(UPDATE_ROW, updateArguments(row).toArray());
+    }
+
+    private static List<Object> updateArguments(ShardRow row) {
+        return new ArrayList<>(Arrays.asList(new Timestamp(row.startTime().getTime()), new Timestamp(row.endTime().getTime()),
+                row.activityType().ordinal(), row.distance(), row.averageSpeed(), row.fingerprint(), row.calories(),
+                row.caloriesModel(), row.version(), row.changeSeq(), row.id(), row.userId()));
+    }
+
+    private static void createSchema(JdbcTemplate shard) {
+        shard.execute("""
+                CREATE TABLE IF NOT EXISTS trainings (
+                    id BIGINT PRIMARY KEY,
+                    user_id BIGINT NOT NULL,
+                    start_time TIMESTAMP NOT NULL,
+                    end_time TIMESTAMP NOT NULL,
+                    activity_type INTEGER NOT NULL,
+                    distance DOUBLE PRECISION,
+                    average_speed DOUBLE PRECISION,
+                    fingerprint VARCHAR(32),
+                    CONSTRAINT uk_trainings_fingerprint UNIQUE (fingerprint)
+                )""");
+        // Kolumny dodawane także do shardów utworzonych przed ich wprowadzeniem.
+        shard.execute("ALTER TABLE trainings ADD COLUMN IF NOT EXISTS calories INTEGER");
+        shard.execute("ALTER TABLE trainings ADD COLUMN IF NOT EXISTS calories_model INTEGER");
+        shard.execute("ALTER TABLE trainings ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL");
+        shard.execute("ALTER TABLE trainings ADD COLUMN IF NOT EXISTS change_seq BIGINT DEFAULT 0 NOT NULL");
+        shard.execute("CREATE INDEX IF NOT EXISTS idx_trainings_user_start_end ON trainings (user_id, start_time, end_time)");
+        shard.execute("CREATE INDEX IF NOT EXISTS idx_trainings_end_time ON trainings (end_time)");
+        shard.execute("CREATE INDEX IF NOT EXISTS idx_trainings_user_change ON trainings (user_id, change_seq)");
+    }
+
+    record ShardRow(long id, long userId, Date startTime, Date endTime, ActivityType activityType,
+                    double distance, double averageSpeed, String fingerprint, @Nullable Integer calories,
+                    @Nullable Integer caloriesModel, long version, long changeSeq) {
+
+        static ShardRow of(long id, Training training, long version, long changeSeq) {
+            return new ShardRow(id, training.getUser().getId(), training.getStartTime(), training.getEndTime(),
+                    training.getActivityType(), training.getDistance(), training.getAverageSpeed(), training.getFingerprint(),
+                    training.getCalories(), training.getCaloriesModel(), version, changeSeq);
+        }
+
+        Training toTraining(User user) {
+            Training training = new Training(id, user, startTime, endTime, activityType, distance, averageSpeed);
+            training.setFingerprint(fingerprint);
+            training.setCalories(calories, caloriesModel);
+            training.setVersion(version);
+            return training;
+        }
+    }
+
+    private static final class PeekingIterator implements Iterator<ShardRow> {
+
+        private final Iterator<ShardRow> delegate;
+        private ShardRow next;
+
+        private PeekingIterator(Iterator<ShardRow> delegate) {
+            this.delegate = delegate;
+            this.next = delegate.next();
+        }
+
+        ShardRow peek() {
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ShardRow next() {
+            ShardRow current = next;
+            next = delegate.hasNext() ? delegate.next() : null;
+            return current;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.statistics.api.Statistics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Zmienia sumę spalonych kalorii w statystykach użytkownika (jeśli statystyki istnieją) o różnicę kalorii jego
+ * treningów. Wiersz zmieniany jest jednym {@code UPDATE}, który zwraca ID zmienionych statystyk (tabela
+ * {@code FINAL TABLE} H2), a po zatwierdzeniu transakcji z cache drugiego poziomu usuwane są tylko te statystyki -
+ * zapytanie {@code update} JPQL unieważniłoby cały region statystyk.
+ * <p>
+ * Wywoływane w transakcji zapisu treningu.
+ */
+@Component
+@RequiredArgsConstructor
+class StatisticsCalories {
+
+    private final EntityManager entityManager;
+    private final EntityManagerFactory entityManagerFactory;
+
+    void add(Long userId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        List<Long> statisticsIds = entityManager.createNativeQuery("""
+                        SELECT id FROM FINAL TABLE (
+                            UPDATE statistics SET total_calories_burned = total_calories_burned + ?1 WHERE user_id = ?2)""",
+                        Long.class)
+                .setParameter(1, delta)
+                .setParameter(2, userId)
+                .getResultList();
+        if (statisticsIds.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                statisticsIds.forEach(id -> entityManagerFactory.getCache().evict(Statistics.class, id));
+            }
+        });
+    }
+}
@@ -0,0 +1,371 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingOverlapException;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.internal.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Archiwum starych treningów przechowywane w plikach segmentów ({@link TrainingSegment}), po jednym lub kilka
+ * na miesiąc rozpoczęcia treningu. Segmenty są niezmienne - każde uruchomienie archiwizacji dopisuje nowe pliki.
+ * <p>
+ * Ten sam trening może trafić do dwóch segmentów, jeśli archiwizacja przerwana przed usunięciem wierszy z bazy
+ * zapisała go w wersji bez sprawdzania archiwum. Odczyty zwracają go wtedy raz.
+ * <p>
+ * Treningi usuniętych użytkowników trafiają na listę {@code training_archive_purges} ({@link #markPurged}) i od
+ * zatwierdzenia transakcji są pomijane przez odczyty. {@link #compact()} przepisuje zawierające je segmenty bez nich.
+ * <p>
+ * Czas odczytu archiwum mierzy metryka {@code training.archive.reads}, a jego rozmiar metryki
+ * {@code training.archive.rows} i {@code training.archive.bytes}.
+ */
+@Component
+@Slf4j
+class TrainingArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Comparator<ArchivedTraining> NEWEST_FIRST =
+            Comparator.comparingLong(ArchivedTraining::startTime).thenComparingLong(ArchivedTraining::id).reversed();
+
+    private final TrainingArchiveProperties properties;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final List<TrainingSegment> segments = new CopyOnWriteArrayList<>();
+    private final Set<Long> purged = ConcurrentHashMap.newKeySet();
+    private final AtomicLong segmentSequence = new AtomicLong();
+    private final Timer userReads;
+    private final Timer scanReads;
+
+    TrainingArchive(TrainingArchiveProperties properties, UserRepository userRepository, JdbcTemplate jdbcTemplate,
+                    MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.userReads = meterRegistry.timer("training.archive.reads", "query", "user");
+        this.scanReads = meterRegistry.timer("training.archive.reads", "query", "scan");
+        Gauge.builder("training.archive.rows", segments,
+                        archived -> archived.stream().mapToLong(TrainingSegment::rowCount).sum())
+                .register(meterRegistry);
+        Gauge.builder("training.archive.bytes", segments,
+                        archived -> archived.stream().mapToLong(TrainingSegment::sizeInBytes).sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadSegments() throws IOException {
+        if (!properties.enabled()) {
+            return;
+        }
+        Files.createDirectories(properties.directory());
+        try (Stream<Path> files = Files.list(properties.directory())) {
+            for (Path file : files.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                segments.add(TrainingSegment.open(file));
+            }
+        }
+        purged.addAll(jdbcTemplate.queryForList("SELECT training_id FROM training_archive_purges", Long.class));
+        log.info("Loaded {} training archive segments from {} ({} trainings waiting for compaction)",
+                segments.size(), properties.directory(), purged.size());
+    }
+
+    boolean enabled() {
+        return properties.enabled();
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * Zapisuje treningi z jednego miesiąca jako nowy segment i udostępnia go do odczytu.
+     *
+     * @param month    miesiąc rozpoczęcia treningów
+     * @param archived treningi do zapisania
+     * @return zapisany segment
+     */
+    TrainingSegment append(YearMonth month, List<ArchivedTraining> archived) throws IOException {
+        String fileName = "trainings-%s-%d-%d%s".formatted(
+                month, System.currentTimeMillis(), segmentSequence.incrementAndGet(), SEGMENT_SUFFIX);
+        TrainingSegment segment = TrainingSegment.write(properties.directory().resolve(fileName), archived);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Zwraca ID spośród podanych treningów, które są już w archiwum. Każdy użytkownik wyszukiwany jest w rzadkim
+     * indeksie tylko tych segmentów, których zakres czasów zakończenia obejmuje sprawdzane treningi.
+     */
+    Set<Long> findArchivedIds(Collection<ArchivedTraining> candidates) {
+        if (segments.isEmpty() || candidates.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> candidateIds = candidates.stream().map(ArchivedTraining::id).collect(Collectors.toSet());
+        long minEndTime = candidates.stream().mapToLong(ArchivedTraining::endTime).min().orElseThrow();
+        long maxEndTime = candidates.stream().mapToLong(ArchivedTraining::endTime).max().orElseThrow();
+        List<TrainingSegment> overlapping = segments.stream()
+                .filter(segment -> segment.maxEndTime() >= minEndTime && segment.minEndTime() <= maxEndTime)
+                .toList();
+        Set<Long> archivedIds = new HashSet<>();
+        candidates.stream().map(ArchivedTraining::userId).distinct().forEach(userId -> overlapping.forEach(segment ->
+                segment.findByUser(userId).stream()
+                        .map(ArchivedTraining::id)
+                        .filter(candidateIds::contains)
+                        .forEach(archivedIds::add)));
+        return archivedIds;
+    }
+
+    /**
+     * Sprawdza nowy lub zmieniony trening względem zarchiwizowanych treningów użytkownika. Przeglądane są tylko
+     * segmenty z treningami zakończonymi po jego rozpoczęciu, więc trening nowszy niż archiwum nie czyta segmentów.
+     *
+     * @throws DuplicateTrainingException jeśli identyczny trening jest w archiwum
+     * @throws TrainingOverlapException   jeśli trening nakłada się na zarchiwizowany trening użytkownika
+     */
+    void ensureNoConflict(Training training) {
+        long startTime = training.getStartTime().getTime();
+        long endTime = training.getEndTime().getTime();
+        segments.stream()
+                .filter(segment -> segment.maxEndTime() > startTime)
+                .flatMap(segment -> segment.findByUser(training.getUser().getId()).stream())
+                .filter(archived -> !Long.valueOf(archived.id()).equals(training.getId()))
+                .filter(archived -> archived.startTime() < endTime && archived.endTime() > startTime)
+                .findFirst()
+                .ifPresent(archived -> {
+                    if (TrainingFingerprint.of(archived.toTraining(training.getUser())).equals(training.getFingerprint())) {
+                        throw new DuplicateTrainingException(archived.id());
+                    }
+                    throw new TrainingOverlapException(archived.id());
+                });
+    }
+
+    List<Training> findByUser(User user) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> seen = new HashSet<>();
+        return userReads.record(() -> segments.stream()
+                .flatMap(segment -> segment.findByUser(user.getId()).stream())
+                .filter(archived -> !purged.contains(archived.id()) && seen.add(archived.id()))
+                .map(archived -> archived.toTraining(user))
+                .toList());
+    }
+
+    /**
+     * Zwraca co najwyżej {@code limit} zarchiwizowanych treningów użytkownika, których nie ma jeszcze na liście
+     * do usunięcia.
+     */
+    List<ArchivedTraining> findUnpurgedByUser(long userId, int limit) {
+        Set<Long> seen = new HashSet<>();
+        return segments.stream()
+                .flatMap(segment -> segment.findByUser(userId).stream())
+                .filter(archived -> !purged.contains(archived.id()) && seen.add(archived.id()))
+                .limit(limit)
+                .toList();
+    }
+
+    long countUnpurgedByUser(long userId) {
+        return segments.stream()
+                .flatMap(segment -> segment.findByUser(userId).stream())
+                .map(ArchivedTraining::id)
+                .filter(id -> !purged.contains(id))
+                .distinct()
+                .count();
+    }
+
+    /**
+     * Dopisuje treningi do listy do usunięcia w bieżącej transakcji. Odczyty pomijają je od jej zatwierdzenia,
+     * a z plików znikają przy najbliższym {@link #compact()}.
+     */
+    void markPurged(long userId, List<Long> trainingIds) {
+        jdbcTemplate.batchUpdate("INSERT INTO training_archive_purges (training_id, user_id) VALUES (?, ?)",
+                trainingIds.stream().map(trainingId -> new Object[]{trainingId, userId}).toList());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                purged.addAll(trainingIds);
+            }
+        });
+    }
+
+    /**
+     * Przepisuje segmenty z treningami z listy do usunięcia bez tych treningów i czyści listę. Nowy segment
+     * zastępuje stary, zanim stary plik zostanie usunięty, a lista jest czyszczona na końcu - przerwane przepisywanie
+     * zostawia najwyżej zdublowane treningi, które odczyty zwracają raz, albo pomijane treningi do ponownego przepisania.
+     *
+     * @return liczba przepisanych segmentów
+     */
+    synchronized int compact() throws IOException {
+        Set<Long> compacted = Set.copyOf(purged);
+        if (compacted.isEmpty()) {
+            return 0;
+        }
+        int rewritten = 0;
+        for (TrainingSegment segment : List.copyOf(segments)) {
+            List<ArchivedTraining> rows = segment.findAll();
+            List<ArchivedTraining> remaining = rows.stream().filter(row -> !compacted.contains(row.id())).toList();
+            if (remaining.size() == rows.size()) {
+                continue;
+            }
+            if (remaining.isEmpty()) {
+                segments.remove(segment);
+            } else {
+                segments.set(segments.indexOf(segment), TrainingSegment.write(compactedPath(segment), remaining));
+            }
+            Files.delete(segment.path());
+            rewritten++;
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM training_archive_purges WHERE training_id = ?",
+                compacted.stream().map(trainingId -> new Object[]{trainingId}).toList());
+        purged.removeAll(compacted);
+        log.info("Compacted {} training archive segments without {} purged trainings", rewritten, compacted.size());
+        return rewritten;
+    }
+
+    private Path compactedPath(TrainingSegment segment) {
+        String fileName = segment.path().getFileName().toString().replaceFirst(
+                "(-c\\d+-\\d+)?\\" + SEGMENT_SUFFIX + "$",
+                "-c%d-%d%s".formatted(System.currentTimeMillis(), segmentSequence.incrementAndGet(), SEGMENT_SUFFIX));
+        return segment.path().resolveSibling(fileName);
+    }
+
+    List<Training> findFinishedAfter(Date date) {
+        return scan(segment -> segment.findFinishedAfter(date.getTime()));
+    }
+
+    List<Training> findByType(ActivityType activityType) {
+        return scan(segment -> segment.findAll().stream()
+                .filter(archived -> archived.activityType() == activityType)
+                .toList());
+    }
+
+    List<Training> findAll() {
+        return scan(TrainingSegment::findAll);
+    }
+
+    /**
+     * Zwraca zarchiwizowane treningi jako wiersze segmentów, bez wczytywania ich użytkowników - również treningi
+     * użytkowników oznaczonych jako usunięci, jeszcze przed ich usunięciem z archiwum.
+     */
+    List<ArchivedTraining> findAllRows() {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> seen = new HashSet<>();
+        return scanReads.record(() -> segments.stream()
+                .flatMap(segment -> segment.findAll().stream())
+                .filter(training -> !purged.contains(training.id()) && seen.add(training.id()))
+                .toList());
+    }
+
+    /**
+     * Zwraca co najwyżej {@code limit} najnowszych (po {@code (startTime, id)} malejąco) treningów spełniających
+     * filtry i położonych za kursorem. Czytane są tylko treningi użytkownika z filtra albo bloki segmentów
+     * z treningami zakończonymi nie wcześniej niż {@code minStartTime} - trening rozpoczęty po tej chwili nie mógł
+     * się zakończyć przed nią. W pamięci trzymanych jest najwyżej {@code limit} treningów naraz.
+     *
+     * @param minStartTime najwcześniejszy początek zwracanych treningów
+     */
+    List<Training> search(TrainingSearchCriteria criteria, @Nullable TrainingSearchCursor after, long minStartTime,
+                          int limit) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        return scanReads.record(() -> {
+            Set<Long> skippedUsers = new HashSet<>();
+            while (true) {
+                PriorityQueue<ArchivedTraining> newest = new PriorityQueue<>(limit + 1, NEWEST_FIRST.reversed());
+                Set<Long> newestIds = new HashSet<>();
+                Consumer<ArchivedTraining> collector = archived -> {
+                    if (archived.startTime() >= minStartTime
+                            && !purged.contains(archived.id())
+                            && !newestIds.contains(archived.id())
+                            && criteria.matches(archived.userId(), archived.activityType(), archived.startTime(),
+                            archived.distance(), archived.averageSpeed())
+                            && (after == null || after.isAfter(archived.startTime(), archived.id()))
+                            && !skippedUsers.contains(archived.userId())) {
+                        newest.add(archived);
+                        newestIds.add(archived.id());
+                        if (newest.size() > limit) {
+                            newestIds.remove(newest.poll().id());
+                        }
+                    }
+                };
+                for (TrainingSegment segment : segments) {
+                    if (criteria.userId() != null) {
+                        segment.findByUser(criteria.userId()).forEach(collector);
+                    } else {
+                        segment.forEachFinishedSince(minStartTime, collector);
+                    }
+                }
+                List<ArchivedTraining> found = newest.stream().sorted(NEWEST_FIRST).toList();
+                Map<Long, User> users = users(found);
+                List<Long> deletedUsers = found.stream()
+                        .map(ArchivedTraining::userId)
+                        .filter(userId -> !users.containsKey(userId))
+                        .distinct()
+                        .toList();
+                if (deletedUsers.isEmpty()) {
+                    return found.stream().map(training -> training.toTraining(users.get(training.userId()))).toList();
+                }
+                // Treningi usuniętych użytkowników zajęłyby miejsca na stronie - szukamy ponownie bez nich.
+                skippedUsers.addAll(deletedUsers);
+            }
+        });
+    }
+
+    private List<Training> scan(Function<TrainingSegment, List<ArchivedTraining>> query) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        return scanReads.record(() -> {
+            Set<Long> seen = new HashSet<>();
+            List<ArchivedTraining> archived = segments.stream()
+                    .flatMap(segment -> query.apply(segment).stream())
+                    .filter(training -> !purged.contains(training.id()) && seen.add(training.id()))
+                    .toList();
+            Map<Long, User> users = users(archived);
+            // Treningi użytkowników oznaczonych jako usunięci, jeszcze przed ich usunięciem z archiwum.
+            return archived.stream()
+                    .filter(training -> users.containsKey(training.userId()))
+                    .map(training -> training.toTraining(users.get(training.userId())))
+                    .toList();
+        });
+    }
+
+    private Map<Long, User> users(Collection<ArchivedTraining> archived) {
+        return userRepository.findAllById(archived.stream().map(ArchivedTraining::userId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+}
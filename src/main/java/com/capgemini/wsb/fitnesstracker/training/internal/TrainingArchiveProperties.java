@@ -0,0 +1,27 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Konfiguracja archiwizacji starych treningów do plików segmentów.
+ *
+ * @param enabled   czy archiwizacja i odczyt archiwum są włączone
+ * @param directory katalog z plikami segmentów
+ * @param coldAfter wiek (liczony od zakończenia), po którym trening przenoszony jest do archiwum
+ * @param interval  odstęp między kolejnymi uruchomieniami archiwizacji
+ * @param batchSize liczba treningów przenoszonych w jednej porcji
+ */
+@ConfigurationProperties(prefix = "training.archive")
+record TrainingArchiveProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("data/training-archive") Path directory,
+        @DefaultValue("365d") Duration coldAfter,
+        @DefaultValue("1d") Duration interval,
+        @DefaultValue("50000") int batchSize
+) {
+
+}
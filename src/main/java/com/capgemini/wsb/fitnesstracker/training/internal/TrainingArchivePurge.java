@@ -0,0 +1,30 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Zarchiwizowany trening usuniętego użytkownika, który czeka na przepisanie zawierającego go segmentu. Do tego czasu
+ * odczyty archiwum go pomijają; po przepisaniu segmentów ({@link TrainingArchive#compact()}) wiersz jest usuwany.
+ * <p>
+ * Tabela jest obsługiwana zapytaniami JDBC w {@link TrainingArchive}; encja opisuje jej schemat.
+ */
+@Entity
+@Table(name = "training_archive_purges", indexes = @Index(name = "idx_training_archive_purges_user", columnList = "user_id"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+class TrainingArchivePurge {
+
+    @Id
+    @Column(name = "training_id")
+    private Long trainingId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+}
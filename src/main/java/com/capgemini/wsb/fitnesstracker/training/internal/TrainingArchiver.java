@@ -0,0 +1,91 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Zadanie przenoszące treningi starsze niż {@link TrainingArchiveProperties#coldAfter()} z tabeli {@code trainings}
+ * do archiwum segmentów.
+ * <p>
+ * Każda porcja jest najpierw zapisywana na dysk, a dopiero potem usuwana z bazy. Przerwanie pomiędzy tymi krokami
+ * zostawia trening w obu miejscach; odczyty pomijają wtedy kopię z archiwum. Kolejne uruchomienie nie zapisuje
+ * ponownie treningów, które są już w archiwum - usuwa je jedynie z bazy - więc powtórzenie porcji nie tworzy
+ * duplikatów w segmentach.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+class TrainingArchiver {
+
+    private final TrainingArchiveProperties properties;
+    private final TrainingArchive archive;
+    private final TrainingRepository trainingRepository;
+    private final ShardedTrainingStore shardedStore;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+
+    @PostConstruct
+    void schedule() {
+        if (properties.enabled() && !shardedStore.enabled()) {
+            taskScheduler.scheduleWithFixedDelay(this::archiveColdTrainings,
+                    Instant.now().plus(properties.interval()), properties.interval());
+        }
+    }
+
+    /**
+     * @return liczba przeniesionych treningów
+     */
+    long archiveColdTrainings() {
+        Date before = new Date(System.currentTimeMillis() - properties.coldAfter().toMillis());
+        long archived = 0;
+        long bytes = 0;
+        List<Training> batch;
+        do {
+            batch = trainingRepository.findFinishedBefore(before, Limit.of(properties.batchSize()));
+            List<ArchivedTraining> candidates = batch.stream().map(ArchivedTraining::of).toList();
+            Set<Long> alreadyArchived = archive.findArchivedIds(candidates);
+            if (!alreadyArchived.isEmpty()) {
+                log.info("Skipping {} trainings already archived by an interrupted run", alreadyArchived.size());
+            }
+            Map<YearMonth, List<ArchivedTraining>> byMonth = candidates.stream()
+                    .filter(training -> !alreadyArchived.contains(training.id()))
+                    .collect(Collectors.groupingBy(
+                            training -> YearMonth.from(Instant.ofEpochMilli(training.startTime()).atOffset(ZoneOffset.UTC)),
+                            TreeMap::new,
+                            Collectors.toList()));
+            for (Map.Entry<YearMonth, List<ArchivedTraining>> month : byMonth.entrySet()) {
+                try {
+                    bytes += archive.append(month.getKey(), month.getValue()).sizeInBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot write training archive segment for " + month.getKey(), e);
+                }
+            }
+            List<Long> ids = batch.stream().map(Training::getId).toList();
+            transactionTemplate.executeWithoutResult(status -> trainingRepository.deleteAllByIdInBatch(ids));
+            archived += batch.size();
+        } while (batch.size() == properties.batchSize());
+        if (archived > 0) {
+            log.info("Archived {} trainings finished before {} into {} bytes of segments", archived, before, bytes);
+        }
+        return archived;
+    }
+}
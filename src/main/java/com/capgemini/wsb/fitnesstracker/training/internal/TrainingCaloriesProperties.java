@@ -0,0 +1,45 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Konfiguracja szacowania kalorii spalonych podczas treningów.
+ *
+ * @param referenceWeightKg     masa ciała przyjmowana w obliczeniach (użytkownik nie podaje swojej masy)
+ * @param met                   współczynniki MET nadpisujące domyślne wartości dla wybranych typów aktywności
+ * @param recomputeEnabled      czy przeliczać w tle treningi oszacowane inną wersją modelu
+ * @param recomputeInterval     odstęp między kolejnymi sprawdzeniami, czy są treningi do przeliczenia
+ * @param recomputeBatchSize    liczba treningów czytanych i zapisywanych w jednej porcji
+ * @param recomputeRowsPerSecond maksymalna liczba przeliczanych treningów na sekundę
+ * @param recomputeParallelism  liczba wątków liczących porcję (0 - połowa procesorów)
+ * @param recomputeUsersPerTransaction maksymalna liczba użytkowników, których treningi zapisywane są w jednej
+ *                              transakcji (pod ich blokadami)
+ */
+@ConfigurationProperties(prefix = "training.calories")
+record TrainingCaloriesProperties(
+        @DefaultValue("70") double referenceWeightKg,
+        @DefaultValue Map<ActivityType, MetCoefficients> met,
+        @DefaultValue("true") boolean recomputeEnabled,
+        @DefaultValue("1h") Duration recomputeInterval,
+        @DefaultValue("10000") int recomputeBatchSize,
+        @DefaultValue("20000") int recomputeRowsPerSecond,
+        @DefaultValue("0") int recomputeParallelism,
+        @DefaultValue("100") int recomputeUsersPerTransaction
+) {
+
+    int effectiveRecomputeParallelism() {
+        return recomputeParallelism > 0
+                ? recomputeParallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    /**
+     * Współczynniki MET aktywności: {@code max(min, base + perKmh * prędkość w km/h)}.
+     */
+    record MetCoefficients(double base, double perKmh, double min) {
+    }
+}
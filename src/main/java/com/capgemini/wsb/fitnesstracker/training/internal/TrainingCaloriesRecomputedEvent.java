@@ -0,0 +1,13 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+
+import java.util.List;
+
+/**
+ * Zdarzenie publikowane po zapisaniu przeliczonych kalorii grupy treningów ({@link CaloriesRecomputeJob}).
+ *
+ * @param updated stan zmienionych treningów po przeliczeniu, jako zdarzenia {@link TrainingEvent.Type#UPDATED}
+ */
+record TrainingCaloriesRecomputedEvent(List<TrainingEvent> updated) {
+}
@@ -0,0 +1,28 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+
+/**
+ * Token synchronizacji przyrostowej: numer ostatniej zmiany znanej klientowi i czas wydania tokenu, zapisywany jako
+ * {@code <changeSeq>_<issuedAt w ms>}. Czas wydania pozwala rozpoznać token starszy niż retencja śladów usunięć.
+ */
+record TrainingChangeToken(long changeSeq, long issuedAt) {
+
+    /**
+     * @throws BusinessException jeśli token ma niepoprawny format
+     */
+    static TrainingChangeToken parse(String token) {
+        int separator = token.indexOf('_');
+        try {
+            return new TrainingChangeToken(Long.parseLong(token.substring(0, separator)),
+                    Long.parseLong(token.substring(separator + 1)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new BusinessException("Invalid change token: " + token);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return changeSeq + "_" + issuedAt;
+    }
+}
@@ -0,0 +1,247 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Synchronizacja przyrostowa treningów użytkownika dla klientów offline.
+ * <p>
+ * Każdy wiersz {@code trainings} ma numer zmiany {@code change_seq} z globalnej sekwencji
+ * {@code training_change_seq}, nadawany przez bazę przy każdym {@code INSERT} i {@code UPDATE} - także przy zmianach
+ * wykonywanych z pominięciem Hibernate (np. przeliczanie kalorii). Usunięcie treningu zostawia ślad
+ * ({@link TrainingTombstone}) z numerem z tej samej sekwencji. Zmiany od tokenu czytane są indeksami
+ * {@code (user_id, change_seq)} obu tabel, więc koszt zapytania zależy od liczby zmian, a nie treningów.
+ * <p>
+ * Wszystkie zapisy treningów jednego użytkownika - także zadania wsadowe, jak przeliczanie kalorii
+ * ({@link CaloriesRecomputeJob}) - wykonywane są pod jego blokadą ({@link TrainingUserLocks}) trzymaną do
+ * zatwierdzenia transakcji, więc numery zmian użytkownika są zatwierdzane w kolejności nadania i klient nie odczyta
+ * numeru większego niż zmiana, która nie została jeszcze zatwierdzona.
+ * <p>
+ * Pełną synchronizację (wszystkie treningi, także z archiwum) dostaje klient bez tokenu, z tokenem starszym niż
+ * retencja śladów (mógł przegapić usunięcia) albo z numerem większym niż bieżąca wartość sekwencji (baza została
+ * odtworzona). Przy włączonym shardingu numery zmian z tej samej sekwencji nadaje {@link ShardedTrainingStore} przy
+ * zapisie do sharda, a zmiany czytane są z shardów użytkownika; ślady usunięć pozostają w bazie głównej.
+ */
+@Component
+@Slf4j
+class TrainingChanges implements SmartInitializingSingleton {
+
+    static final String SEQUENCE = "training_change_seq";
+
+    private final TrainingChangesProperties properties;
+    private final TrainingServiceImpl trainingService;
+    private final TrainingRepository trainingRepository;
+    private final ShardedTrainingStore shardedStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TaskScheduler taskScheduler;
+    private final Counter deltaResponses;
+    private final Counter fullResyncResponses;
+    private final Counter purgedTombstones;
+
+    TrainingChanges(TrainingChangesProperties properties,
+                    TrainingServiceImpl trainingService,
+                    TrainingRepository trainingRepository,
+                    ShardedTrainingStore shardedStore,
+                    JdbcTemplate jdbcTemplate,
+                    NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                    TransactionTemplate transactionTemplate,
+                    TaskScheduler taskScheduler,
+                    MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.trainingService = trainingService;
+        this.trainingRepository = trainingRepository;
+        this.shardedStore = shardedStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.taskScheduler = taskScheduler;
+        this.deltaResponses = meterRegistry.counter("training.changes.responses", "type", "delta");
+        this.fullResyncResponses = meterRegistry.counter("training.changes.responses", "type", "full");
+        this.purgedTombstones = meterRegistry.counter("training.changes.tombstones.purged");
+    }
+
+    @PostConstruct
+    void schedule() {
+        taskScheduler.scheduleWithFixedDelay(this::purgeTombstonesQuietly,
+                Instant.now().plus(properties.tombstonePurgeInterval()), properties.tombstonePurgeInterval());
+    }
+
+    /**
+     * Schemat tworzony jest po utworzeniu tabel przez Hibernate, ale przed uruchomieniem serwera WWW, więc żadne
+     * żądanie nie trafi na tabelę bez kolumny numeru zmiany.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        createSchema();
+    }
+
+    /**
+     * Dodaje do tabeli tworzonej przez Hibernate kolumnę numeru zmiany i jej indeks. Istniejące wiersze dostają
+     * kolejne numery z sekwencji.
+     */
+    void createSchema() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + SEQUENCE);
+        jdbcTemplate.execute("""
+                ALTER TABLE trainings ADD COLUMN IF NOT EXISTS change_seq BIGINT
+                DEFAULT NEXT VALUE FOR %1$s ON UPDATE NEXT VALUE FOR %1$s NOT NULL""".formatted(SEQUENCE));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_trainings_user_change ON trainings (user_id, change_seq)");
+    }
+
+    /**
+     * @param user  użytkownik
+     * @param since token z poprzedniej odpowiedzi lub {@code null} dla pierwszej synchronizacji
+     * @param limit największa liczba zmian w odpowiedzi lub {@code null} dla domyślnej
+     * @return zmiany od tokenu albo pełna lista treningów
+     * @throws BusinessException jeśli token jest niepoprawny lub limit jest spoza zakresu
+     */
+    TrainingChangesDto changes(User user, @Nullable String since, @Nullable Integer limit) {
+        int pageSize = limit == null ? properties.defaultLimit() : limit;
+        if (pageSize < 1 || pageSize > properties.maxLimit()) {
+            throw new BusinessException("limit must be between 1 and " + properties.maxLimit());
+        }
+        TrainingChangeToken token = since == null ? null : TrainingChangeToken.parse(since);
+        long now = System.currentTimeMillis();
+        if (token == null || token.issuedAt() < now - properties.tombstoneRetention().toMillis()) {
+            return fullResync(user, now);
+        }
+        return readOnlyTransaction.execute(status -> token.changeSeq() > currentSequenceValue()
+                ? fullResync(user, now)
+                : delta(user, token, pageSize, now));
+    }
+
+    private TrainingChangesDto delta(User user, TrainingChangeToken token, int limit, long now) {
+        Long userId = user.getId();
+        long since = token.changeSeq();
+        // Jeden wiersz ponad limit z każdej tabeli mówi, czy są kolejne zmiany.
+        List<ShardedTrainingStore.ShardRow> shardRows = shardedStore.enabled()
+                ? shardedStore.findChangedSince(userId, since, limit + 1)
+                : List.of();
+        List<Change> changes = new ArrayList<>(shardedStore.enabled()
+                ? shardRows.stream().map(row -> new Change(row.changeSeq(), row.id(), false)).toList()
+                : jdbcTemplate.query("""
+                                SELECT id, change_seq FROM trainings WHERE user_id = ? AND change_seq > ?
+                                ORDER BY change_seq LIMIT ?""",
+                        (resultSet, row) -> new Change(resultSet.getLong("change_seq"), resultSet.getLong("id"), false),
+                        userId, since, limit + 1));
+        changes.addAll(jdbcTemplate.query("""
+                        SELECT training_id, change_seq FROM training_tombstones WHERE user_id = ? AND change_seq > ?
+                        ORDER BY change_seq LIMIT ?""",
+                (resultSet, row) -> new Change(resultSet.getLong("change_seq"), resultSet.getLong("training_id"), true),
+                userId, since, limit + 1));
+        changes.sort(Comparator.comparingLong(Change::changeSeq));
+        boolean hasMore = changes.size() > limit;
+        List<Change> page = hasMore ? changes.subList(0, limit) : changes;
+
+        List<Long> changedIds = page.stream().filter(change -> !change.deleted()).map(Change::trainingId).toList();
+        Map<Long, Training> changed = shardedStore.enabled()
+                ? shardRows.stream().collect(Collectors.toMap(ShardedTrainingStore.ShardRow::id, row -> row.toTraining(user)))
+                : trainingRepository.findAllById(changedIds).stream()
+                        .collect(Collectors.toMap(Training::getId, Function.identity()));
+        // Trening usunięty między zapytaniami pomijany - jego ślad przyjdzie z następnym tokenem.
+        List<Training> trainings = changedIds.stream().map(changed::get).filter(Objects::nonNull).toList();
+        List<Long> deleted = page.stream().filter(Change::deleted).map(Change::trainingId).toList();
+        long nextSeq = page.isEmpty() ? since : page.get(page.size() - 1).changeSeq();
+        // Dopóki klient nie odebrał wszystkich zmian, token zachowuje czas wydania pierwszego tokenu - ślady usunięć
+        // dalszych stron mogą zostać usunięte liczonym od niego terminem retencji.
+        long issuedAt = hasMore ? token.issuedAt() : now;
+        deltaResponses.increment();
+        return new TrainingChangesDto(trainings, deleted, false, hasMore, new TrainingChangeToken(nextSeq, issuedAt).toString());
+    }
+
+    private TrainingChangesDto fullResync(User user, long now) {
+        fullResyncResponses.increment();
+        // Numer odczytany przed listą: zmiana zatwierdzona pomiędzy zostanie wysłana ponownie, a nie pominięta.
+        return readOnlyTransaction.execute(status -> {
+            long horizon = jdbcTemplate.queryForObject("""
+                    SELECT GREATEST(
+                        COALESCE((SELECT MAX(change_seq) FROM trainings WHERE user_id = ?), 0),
+                        COALESCE((SELECT MAX(change_seq) FROM training_tombstones WHERE user_id = ?), 0))""",
+                    Long.class, user.getId(), user.getId());
+            if (shardedStore.enabled()) {
+                horizon = Math.max(horizon, shardedStore.maxChangeSeq(user.getId()));
+            }
+            return new TrainingChangesDto(trainingService.getTrainingsByUser(user), List.of(), true, false,
+                    new TrainingChangeToken(horizon, now).toString());
+        });
+    }
+
+    /**
+     * Zapisuje ślady usuwanych treningów. Wywoływane w transakcji usuwającej, przed usunięciem wierszy.
+     */
+    void recordTombstones(Long userId, List<Long> trainingIds) {
+        namedParameterJdbcTemplate.update("""
+                        INSERT INTO training_tombstones (training_id, user_id, change_seq, deleted_at)
+                        SELECT id, user_id, NEXT VALUE FOR %s, :deletedAt FROM trainings
+                        WHERE user_id = :userId AND id IN (:ids)""".formatted(SEQUENCE),
+                Map.of("userId", userId, "ids", trainingIds, "deletedAt", Timestamp.from(Instant.now())));
+    }
+
+    /**
+     * Zapisuje ślady treningów usuniętych spoza tabeli {@code trainings} (z shardów albo z archiwum). Wywoływane
+     * w transakcji bazy głównej.
+     */
+    void recordTombstonesById(Long userId, List<Long> trainingIds) {
+        Timestamp deletedAt = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO training_tombstones (training_id, user_id, change_seq, deleted_at)
+                        VALUES (?, ?, NEXT VALUE FOR %s, ?)""".formatted(SEQUENCE),
+                trainingIds.stream().map(trainingId -> new Object[]{trainingId, userId, deletedAt}).toList());
+    }
+
+    /**
+     * Usuwa ślady starsze niż retencja. Klient z tokenem sprzed tego czasu dostaje pełną synchronizację.
+     *
+     * @return liczba usuniętych śladów
+     */
+    int purgeTombstones() {
+        int purged = jdbcTemplate.update("DELETE FROM training_tombstones WHERE deleted_at < ?",
+                Timestamp.from(Instant.now().minus(properties.tombstoneRetention())));
+        purgedTombstones.increment(purged);
+        if (purged > 0) {
+            log.info("Purged {} training tombstones older than {}", purged, properties.tombstoneRetention());
+        }
+        return purged;
+    }
+
+    private void purgeTombstonesQuietly() {
+        try {
+            purgeTombstones();
+        } catch (RuntimeException e) {
+            log.warn("Failed to purge training tombstones, will retry", e);
+        }
+    }
+
+    private long currentSequenceValue() {
+        return jdbcTemplate.queryForObject(
+                "SELECT BASE_VALUE - 1 FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?",
+                Long.class, SEQUENCE.toUpperCase());
+    }
+
+    private record Change(long changeSeq, long trainingId, boolean deleted) {
+    }
+}
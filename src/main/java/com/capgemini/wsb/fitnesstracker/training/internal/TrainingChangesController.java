@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST kontroler synchronizacji przyrostowej treningów użytkownika dla klientów offline.
+ */
+@RestController
+@RequestMapping("/v1/users/{userId}/trainings")
+@RequiredArgsConstructor
+class TrainingChangesController {
+
+    private final TrainingChanges trainingChanges;
+    private final UserService userService;
+
+    /**
+     * Pobierz treningi utworzone, zmienione lub usunięte od poprzedniej synchronizacji.
+     * Bez tokenu (oraz z tokenem starszym niż retencja śladów usunięć) zwracane są wszystkie treningi
+     * z {@code fullResync = true}.
+     *
+     * @param userId ID użytkownika
+     * @param since  {@code nextToken} z poprzedniej odpowiedzi
+     * @param limit  największa liczba zmian w odpowiedzi
+     * @return zmiany i token następnej synchronizacji
+     */
+    @GetMapping("/changes")
+    public TrainingChangesDto getChanges(@PathVariable("userId") Long userId,
+                                         @RequestParam(required = false) String since,
+                                         @RequestParam(required = false) Integer limit) {
+        return trainingChanges.changes(userService.getUserById(userId), since, limit);
+    }
+}
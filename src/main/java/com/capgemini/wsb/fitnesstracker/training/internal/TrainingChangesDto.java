@@ -0,0 +1,25 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+
+import java.util.List;
+
+/**
+ * Zmiany treningów użytkownika od tokenu przekazanego przez klienta.
+ *
+ * @param trainings  treningi utworzone lub zmienione od tokenu, w kolejności zmian; przy pełnej synchronizacji
+ *                   wszystkie treningi użytkownika
+ * @param deleted    ID treningów usuniętych od tokenu
+ * @param fullResync {@code true}, jeśli klient ma zastąpić swoją kopię listą {@code trainings} (brak tokenu,
+ *                   token starszy niż retencja śladów usunięć albo zmiany niedostępne w bieżącym trybie przechowywania)
+ * @param hasMore    czy są kolejne zmiany - klient powinien od razu zapytać ponownie z {@code nextToken}
+ * @param nextToken  token do następnego zapytania
+ */
+record TrainingChangesDto(
+        List<Training> trainings,
+        List<Long> deleted,
+        boolean fullResync,
+        boolean hasMore,
+        String nextToken
+) {
+}
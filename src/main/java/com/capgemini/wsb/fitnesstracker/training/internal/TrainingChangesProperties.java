@@ -0,0 +1,25 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja synchronizacji przyrostowej treningów ({@code GET /v1/users/{id}/trainings/changes}).
+ *
+ * @param defaultLimit           liczba zmian w odpowiedzi, gdy klient jej nie podał
+ * @param maxLimit               największa dopuszczalna liczba zmian w odpowiedzi
+ * @param tombstoneRetention     czas przechowywania śladów usuniętych treningów; token starszy niż ten czas
+ *                               wymusza pełną synchronizację
+ * @param tombstonePurgeInterval odstęp między kolejnymi usunięciami przeterminowanych śladów
+ */
+@ConfigurationProperties(prefix = "training.changes")
+record TrainingChangesProperties(
+        @DefaultValue("500") int defaultLimit,
+        @DefaultValue("5000") int maxLimit,
+        @DefaultValue("30d") Duration tombstoneRetention,
+        @DefaultValue("1h") Duration tombstonePurgeInterval
+) {
+
+}
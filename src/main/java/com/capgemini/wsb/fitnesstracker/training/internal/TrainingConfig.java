@@ -0,0 +1,25 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties({TrainingStreamProperties.class, TrainingDedupProperties.class, TrainingShardingProperties.class,
+        TrainingArchiveProperties.class, TrainingCaloriesProperties.class,
+        TrainingDistributionProperties.class, TrainingReadCoalescingProperties.class,
+        TrainingSearchProperties.class, TrainingIngestionProperties.class,
+        TrainingChangesProperties.class})
+class TrainingConfig {
+
+    @Bean
+    SingleFlight<Long, List<Training>> userTrainingsSingleFlight(TrainingReadCoalescingProperties properties,
+                                                                 MeterRegistry meterRegistry) {
+        return new SingleFlight<>("training.by.user", properties.ttl(), properties.maxKeys(), meterRegistry);
+    }
+}
@@ -1,19 +1,26 @@
 package com.capgemini.wsb.fitnesstracker.training.internal;
 
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.common.api.SparseFieldset;
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
 import com.capgemini.wsb.fitnesstracker.training.api.Training;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
 import com.capgemini.wsb.fitnesstracker.user.api.UserService;
 import com.capgemini.wsb.fitnesstracker.user.internal.UserMapper;
 import com.capgemini.wsb.fitnesstracker.user.internal.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -21,11 +28,13 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class TrainingController {
     private final TrainingServiceImpl trainingService;
-    private final TrainingRepository trainingRepository;
     private final TrainingMapper trainingMapper;
     private final UserService userService;
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final ObjectMapper objectMapper;
+    private final TrainingProjections trainingProjections;
+    private final TrainingSearch trainingSearch;
 
     /**
      * Pobierz wszystkie treningi
@@ -34,13 +43,25 @@ public class TrainingController {
      */
     @GetMapping
     public List<Training> getAllTrainings() {
-        List<Training> allTrainings = trainingRepository.findAll();
+        List<Training> allTrainings = trainingService.findAllTrainings();
         if (allTrainings.isEmpty()) {
             throw new RuntimeException("Brak znalezionych treningów");
         }
         return allTrainings;
     }
 
+    /**
+     * Pobierz wybrane pola wszystkich treningów
+     *
+     * @param fields Pola oddzielone przecinkami: id, user, userId, startTime, endTime, activityType, distance,
+     *               averageSpeed, calories, version
+     * @return Lista treningów zawierających tylko żądane pola
+     */
+    @GetMapping(params = "fields")
+    public List<Map<String, Object>> getAllTrainings(@RequestParam String fields) {
+        return trainingProjections.findAll(SparseFieldset.parse(fields, TrainingProjections.FIELDS, TrainingProjections.FIELDS));
+    }
+
     /**
      * Dodaj nowy trening
      *
@@ -69,7 +90,7 @@ public class TrainingController {
      */
     @GetMapping("/finished/{afterTime}")
     public List<Training> getFinishedTrainings(@PathVariable("afterTime") @DateTimeFormat(pattern = "yyyy-MM-dd") Date afterTime) {
-        return trainingRepository.getTrainingsFinishedAfter(afterTime);
+        return trainingService.getTrainingsFinishedAfter(afterTime);
     }
 
     /**
@@ -81,7 +102,46 @@ public class TrainingController {
     @GetMapping("/activityType")
     public List<Training> getTrainingsByActivityType(@RequestParam("activityType") String activityType) {
         ActivityType activity = ActivityType.valueOf(activityType.toUpperCase());
-        return trainingRepository.getTrainingsByType(activity);
+        return trainingService.getTrainingsByType(activity);
+    }
+
+    /**
+     * Wyszukaj treningi według dowolnej kombinacji filtrów. Wymagany jest co najmniej jeden z filtrów userId,
+     * activityType, from, to; wyniki są stronicowane od najpóźniej rozpoczętego treningu.
+     *
+     * @param userId       ID użytkownika
+     * @param activityType Typ aktywności
+     * @param from         Najwcześniejszy początek treningu (ISO 8601, np. 2024-03-01T00:00:00Z)
+     * @param to           Początek treningu przed tą chwilą (ISO 8601)
+     * @param minDistance  Najmniejszy dystans
+     * @param maxDistance  Dystans mniejszy niż ta wartość
+     * @param minSpeed     Najmniejsza średnia prędkość
+     * @param maxSpeed     Średnia prędkość mniejsza niż ta wartość
+     * @param cursor       Kursor następnej strony z poprzedniej odpowiedzi
+     * @param limit        Rozmiar strony
+     * @return Strona znalezionych treningów
+     */
+    @GetMapping("/search")
+    public TrainingSearchResultDto searchTrainings(@RequestParam(required = false) Long userId,
+                                                   @RequestParam(required = false) String activityType,
+                                                   @RequestParam(required = false) Instant from,
+                                                   @RequestParam(required = false) Instant to,
+                                                   @RequestParam(required = false) Double minDistance,
+                                                   @RequestParam(required = false) Double maxDistance,
+                                                   @RequestParam(required = false) Double minSpeed,
+                                                   @RequestParam(required = false) Double maxSpeed,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer limit) {
+        ActivityType activity = null;
+        if (activityType != null) {
+            try {
+                activity = ActivityType.valueOf(activityType.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("Unknown activity type: " + activityType);
+            }
+        }
+        return trainingSearch.search(new TrainingSearchCriteria(userId, activity, from == null ? null : Date.from(from),
+                to == null ? null : Date.from(to), minDistance, maxDistance, minSpeed, maxSpeed), cursor, limit);
     }
 
     /**
@@ -97,13 +157,25 @@ public class TrainingController {
         if (existingTrainingOptional.isPresent()) {
             Training existingTraining = existingTrainingOptional.get();
             User user = existingTraining.getUser();
-            Training updatedTraining = trainingMapper.toEntity(trainingDto, id, user);
-            trainingRepository.updateTraining(updatedTraining);
+            Training updatedTraining = trainingService.updateTraining(trainingMapper.toEntity(trainingDto, id, user));
             return new ResponseEntity<>(updatedTraining, HttpStatus.OK);
         }
         return new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Zmień wybrane pola treningu (JSON Merge Patch)
+     *
+     * @param id    ID treningu
+     * @param patch Zmienione pola: startTime, endTime, activityType, distance, averageSpeed oraz opcjonalnie version
+     *              - wersja treningu, na podstawie której przygotowano zmianę
+     * @return Zaktualizowany trening; 409, jeśli wersja nie jest aktualna
+     */
+    @PatchMapping(value = "/{trainingId}", consumes = MergePatch.MEDIA_TYPE)
+    public Training patchTraining(@PathVariable("trainingId") Long id, @RequestBody JsonNode patch) {
+        return trainingService.patchTraining(id, TrainingPatch.of(MergePatch.of(patch, objectMapper, TrainingPatch.FIELDS)));
+    }
+
     /**
      * Pobierz treningi według ID użytkownika
      *
@@ -115,7 +187,7 @@ public class TrainingController {
         Optional<User> userOptional = userRepository.findById(userId);
         if (userOptional.isPresent()) {
             User user = userOptional.get();
-            List<Training> userTrainings = trainingRepository.getTrainingsByUser(user);
+            List<Training> userTrainings = trainingService.getTrainingsByUser(user);
             return new ResponseEntity<>(userTrainings, HttpStatus.OK);
         }
         throw new RuntimeException("Nie znaleziono użytkownika");
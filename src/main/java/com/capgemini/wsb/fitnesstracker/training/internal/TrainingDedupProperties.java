@@ -0,0 +1,22 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Konfiguracja filtra duplikatów treningów.
+ *
+ * @param enabled                  czy filtr Blooma ma być używany; bez niego każdy zapis sprawdza indeks w bazie
+ * @param falsePositiveProbability docelowe prawdopodobieństwo fałszywego trafienia filtra
+ * @param minCapacity              minimalna liczba elementów, dla której budowany jest filtr
+ * @param shards                   liczba segmentów filtra (potęga dwójki)
+ */
+@ConfigurationProperties(prefix = "training.dedup")
+record TrainingDedupProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("0.01") double falsePositiveProbability,
+        @DefaultValue("100000") long minCapacity,
+        @DefaultValue("16") int shards
+) {
+
+}
@@ -0,0 +1,46 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingNotFoundException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST kontroler rozkładów miar treningów (np. "Twoja średnia prędkość jest w 20% najlepszych").
+ */
+@RestController
+@RequestMapping("/v1/trainings")
+@RequiredArgsConstructor
+class TrainingDistributionController {
+
+    private final TrainingDistributions distributions;
+    private final TrainingService trainingService;
+
+    /**
+     * Pobierz rozkład miary treningów danego typu aktywności
+     *
+     * @param activityType typ aktywności
+     * @param metric       miara: {@code AVERAGE_SPEED}, {@code DISTANCE} lub {@code DURATION}
+     * @return kwantyle i liczności kubełków
+     */
+    @GetMapping("/distribution")
+    public TrainingDistributionDto getDistribution(@RequestParam("activityType") ActivityType activityType,
+                                                   @RequestParam("metric") DistributionMetric metric) {
+        return distributions.describe(activityType, metric);
+    }
+
+    /**
+     * Pobierz pozycję treningu w rozkładzie miary treningów tego samego typu aktywności
+     *
+     * @param trainingId ID treningu
+     * @param metric     miara: {@code AVERAGE_SPEED}, {@code DISTANCE} lub {@code DURATION}
+     * @return percentyl treningu
+     */
+    @GetMapping("/{trainingId}/rank")
+    public TrainingRankDto getRank(@PathVariable("trainingId") Long trainingId,
+                                   @RequestParam("metric") DistributionMetric metric) {
+        return trainingService.getTrainingById(trainingId)
+                .map(training -> distributions.rank(trainingId, TrainingMeasures.of(training), metric))
+                .orElseThrow(() -> new TrainingNotFoundException(trainingId));
+    }
+}
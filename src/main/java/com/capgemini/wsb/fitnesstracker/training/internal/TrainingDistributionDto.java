@@ -0,0 +1,30 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rozkład miary treningów jednego typu aktywności.
+ *
+ * @param activityType typ aktywności
+ * @param metric       miara
+ * @param count        liczba treningów
+ * @param quantiles    wybrane kwantyle ({@code p50} - mediana), {@code null} przy braku treningów
+ * @param buckets      niepuste kubełki histogramu, rosnąco
+ */
+record TrainingDistributionDto(
+        ActivityType activityType,
+        DistributionMetric metric,
+        long count,
+        Map<String, Double> quantiles,
+        List<Bucket> buckets
+) {
+
+    /**
+     * @param from  dolna granica (włącznie)
+     * @param to    górna granica (wyłącznie)
+     * @param count liczba treningów
+     */
+    record Bucket(double from, double to, long count) {
+    }
+}
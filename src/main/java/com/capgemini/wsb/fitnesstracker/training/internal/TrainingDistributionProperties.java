@@ -0,0 +1,20 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja rozkładów miar treningów.
+ *
+ * @param flushInterval odstęp między zapisami lokalnych zmian histogramów do bazy i odczytami zmian z innych instancji
+ * @param seedBatchSize liczba treningów czytanych w jednej porcji przy pierwszym budowaniu histogramów
+ */
+@ConfigurationProperties(prefix = "training.distribution")
+record TrainingDistributionProperties(
+        @DefaultValue("1m") Duration flushInterval,
+        @DefaultValue("10000") int seedBatchSize
+) {
+
+}
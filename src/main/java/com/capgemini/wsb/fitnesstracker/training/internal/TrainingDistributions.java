@@ -0,0 +1,248 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rozkłady średniej prędkości, dystansu i czasu trwania treningów dla każdego typu aktywności
+ * ({@link LogLinearHistogram}), aktualizowane przy każdym zapisie treningu.
+ * <p>
+ * Każda instancja aplikacji zbiera lokalne zmiany w pamięci i co {@link TrainingDistributionProperties#flushInterval()}
+ * scala je z histogramami w tabeli {@code training_histograms} (pod blokadą wiersza), po czym wczytuje histogramy
+ * scalone także przez pozostałe instancje. Odpowiedź łączy histogram z bazy z lokalnymi zmianami, więc zmiany
+ * z innych instancji widoczne są z opóźnieniem do jednego okresu. Zmiany niescalone przed awarią instancji
+ * są tracone - rozkłady służą do porównań i nie muszą być dokładne.
+ * <p>
+ * Przy pierwszym uruchomieniu (pusta tabela histogramów) histogramy budowane są z tabeli {@code trainings}.
+ * Treningi przeniesione wcześniej do archiwum lub zapisane w shardach nie są wtedy uwzględniane.
+ */
+@Component
+@Slf4j
+class TrainingDistributions {
+
+    private static final double[] QUANTILES = {0.1, 0.25, 0.5, 0.75, 0.8, 0.9, 0.99};
+
+    private final TrainingHistogramRepository histogramRepository;
+    private final TrainingDistributionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ShardedTrainingStore shardedStore;
+    private final Map<String, LogLinearHistogram> local = new HashMap<>();
+
+    private volatile Map<String, long[]> persisted = Map.of();
+
+    TrainingDistributions(TrainingHistogramRepository histogramRepository,
+                          TrainingDistributionProperties properties,
+                          TransactionTemplate transactionTemplate,
+                          JdbcTemplate jdbcTemplate,
+                          TaskScheduler taskScheduler,
+                          ShardedTrainingStore shardedStore) {
+        this.histogramRepository = histogramRepository;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskScheduler = taskScheduler;
+        this.shardedStore = shardedStore;
+        for (ActivityType activityType : ActivityType.values()) {
+            for (DistributionMetric metric : DistributionMetric.values()) {
+                local.put(name(activityType, metric), new LogLinearHistogram(metric.unit()));
+            }
+        }
+    }
+
+    @PostConstruct
+    void schedule() {
+        taskScheduler.scheduleWithFixedDelay(this::flushQuietly, Instant.now().plus(properties.flushInterval()),
+                properties.flushInterval());
+    }
+
+    @PreDestroy
+    void close() {
+        flushQuietly();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void seedOnStartup() {
+        if (histogramRepository.count() == 0 && !shardedStore.enabled()) {
+            seed();
+        }
+        refresh();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        record(TrainingMeasures.of(event.training()), 1);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingUpdated(TrainingUpdatedEvent event) {
+        record(event.previous(), -1);
+        record(TrainingMeasures.of(event.training()), 1);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingsPurged(TrainingsPurgedEvent event) {
+        event.removed().forEach(measures -> record(measures, -1));
+    }
+
+    /**
+     * Opisuje rozkład miary dla typu aktywności: liczbę treningów, wybrane kwantyle i niepuste kubełki.
+     * Wartości kwantyli to środki kubełków, więc ich błąd względny nie przekracza 1/{@value LogLinearHistogram#SUB_BUCKETS}.
+     */
+    TrainingDistributionDto describe(ActivityType activityType, DistributionMetric metric) {
+        long[] counts = counts(activityType, metric);
+        double unit = metric.unit();
+        Map<String, Double> quantiles = new LinkedHashMap<>();
+        long total = LogLinearHistogram.total(counts);
+        for (double quantile : QUANTILES) {
+            quantiles.put("p" + Math.round(quantile * 100),
+                    total == 0 ? null : LogLinearHistogram.quantileUnits(counts, quantile) * unit);
+        }
+        List<TrainingDistributionDto.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.add(new TrainingDistributionDto.Bucket(LogLinearHistogram.lowerBoundUnits(i) * unit,
+                        LogLinearHistogram.upperBoundUnits(i) * unit, counts[i]));
+            }
+        }
+        return new TrainingDistributionDto(activityType, metric, total, quantiles, buckets);
+    }
+
+    /**
+     * @return odsetek treningów tego samego typu z mniejszą wartością miary (w procentach, 0-100)
+     */
+    TrainingRankDto rank(Long trainingId, TrainingMeasures measures, DistributionMetric metric) {
+        long[] counts = counts(measures.activityType(), metric);
+        double value = metric.measure(measures);
+        int bucket = LogLinearHistogram.bucketOf(value, metric.unit());
+        return new TrainingRankDto(trainingId, measures.activityType(), metric, value,
+                LogLinearHistogram.percentileRank(counts, bucket) * 100, LogLinearHistogram.total(counts));
+    }
+
+    /**
+     * Scala lokalne zmiany z histogramami w bazie i wczytuje histogramy scalone przez wszystkie instancje.
+     */
+    synchronized void flush() {
+        local.forEach((name, histogram) -> {
+            long[] delta = histogram.drain();
+            if (isZero(delta)) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> histogramRepository.findForUpdate(name).ifPresentOrElse(
+                        row -> row.update(LogLinearHistogram.encode(
+                                LogLinearHistogram.merge(LogLinearHistogram.decode(row.getCounts()), delta))),
+                        () -> histogramRepository.save(new TrainingHistogram(name, LogLinearHistogram.encode(delta)))));
+            } catch (RuntimeException e) {
+                histogram.restore(delta);
+                throw e;
+            }
+        });
+        refresh();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush training histograms, will retry", e);
+        }
+    }
+
+    private void record(TrainingMeasures measures, long count) {
+        for (DistributionMetric metric : DistributionMetric.values()) {
+            local.get(name(measures.activityType(), metric)).record(metric.measure(measures), count);
+        }
+    }
+
+    private long[] counts(ActivityType activityType, DistributionMetric metric) {
+        String name = name(activityType, metric);
+        long[] counts = local.get(name).snapshot();
+        long[] stored = persisted.get(name);
+        return stored == null ? counts : LogLinearHistogram.merge(counts, stored);
+    }
+
+    private void refresh() {
+        Map<String, long[]> loaded = new HashMap<>();
+        histogramRepository.findAll().forEach(row -> loaded.put(row.getName(), LogLinearHistogram.decode(row.getCounts())));
+        persisted = loaded;
+    }
+
+    /**
+     * Buduje histogramy z treningów zapisanych do tej pory. Treningi o ID większym niż odczytane na początku
+     * są pomijane, bo ich zapis trafił już do lokalnych histogramów.
+     */
+    private void seed() {
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM trainings", Long.class);
+        if (maxId == null) {
+            return;
+        }
+        Map<String, LogLinearHistogram> seeded = new HashMap<>();
+        local.forEach((name, histogram) -> seeded.put(name, new LogLinearHistogram(histogram.unit())));
+        ActivityType[] activityTypes = ActivityType.values();
+        long[] lastId = {Long.MIN_VALUE};
+        int[] rows = new int[1];
+        long seededTrainings = 0;
+        do {
+            rows[0] = 0;
+            jdbcTemplate.query("""
+                            SELECT id, activity_type, start_time, end_time, distance, average_speed FROM trainings
+                            WHERE id > ? AND id <= ? ORDER BY id LIMIT ?""",
+                    resultSet -> {
+                        TrainingMeasures measures = TrainingMeasures.of(activityTypes[resultSet.getInt("activity_type")],
+                                resultSet.getTimestamp("start_time"), resultSet.getTimestamp("end_time"),
+                                resultSet.getDouble("distance"), resultSet.getDouble("average_speed"));
+                        for (DistributionMetric metric : DistributionMetric.values()) {
+                            seeded.get(name(measures.activityType(), metric)).record(metric.measure(measures), 1);
+                        }
+                        lastId[0] = resultSet.getLong("id");
+                        rows[0]++;
+                    },
+                    lastId[0], maxId, properties.seedBatchSize());
+            seededTrainings += rows[0];
+        } while (rows[0] == properties.seedBatchSize());
+        try {
+            Timestamp now = Timestamp.from(Instant.now());
+            List<Object[]> inserts = seeded.entrySet().stream()
+                    .map(entry -> new Object[]{entry.getKey(), LogLinearHistogram.encode(entry.getValue().snapshot()), now})
+                    .toList();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "INSERT INTO training_histograms (name, counts, updated_at) VALUES (?, ?, ?)", inserts));
+            log.info("Seeded training histograms from {} trainings", seededTrainings);
+        } catch (DataIntegrityViolationException e) {
+            log.info("Training histograms already seeded by another instance");
+        }
+    }
+
+    private static boolean isZero(long[] counts) {
+        for (long count : counts) {
+            if (count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String name(ActivityType activityType, DistributionMetric metric) {
+        return activityType.name() + "." + metric.name();
+    }
+}
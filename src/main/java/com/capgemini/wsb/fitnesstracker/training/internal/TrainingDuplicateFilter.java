@@ -0,0 +1,141 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wykrywa ponownie przesłane treningi na podstawie ich odcisku.
+ * <p>
+ * Przed unikalnym indeksem {@code uk_trainings_fingerprint} stoi filtr Blooma trzymany w pamięci. Jeśli filtr
+ * odpowiada "na pewno nowy", zapytanie do bazy jest pomijane; tylko prawdopodobne duplikaty są sprawdzane w indeksie.
+ * Filtr jest budowany przy starcie aplikacji na podstawie liczby odcisków w tabeli i przebudowywany w tle
+ * z dwukrotnie większą pojemnością, gdy liczba elementów przekroczy zakładaną. Na czas przebudowy nowe odciski
+ * są dopisywane do obu filtrów. Ewentualny odcisk pominięty podczas przebudowy nie psuje poprawności - duplikat
+ * zostanie wtedy odrzucony przez unikalny indeks.
+ * <p>
+ * Metryki {@code training.dedup.checks} (z tagiem {@code result}) pozwalają wyliczyć rzeczywisty odsetek fałszywych
+ * trafień: {@code false_positive / (false_positive + definitely_new)}.
+ */
+@Component
+@Slf4j
+class TrainingDuplicateFilter {
+
+    private static final int REBUILD_BATCH_SIZE = 10_000;
+
+    private final TrainingRepository trainingRepository;
+    private final TrainingDedupProperties properties;
+    private final TaskScheduler taskScheduler;
+    private final Counter definitelyNew;
+    private final Counter falsePositive;
+    private final Counter duplicate;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile ShardedBloomFilter filter;
+    private volatile ShardedBloomFilter nextFilter;
+
+    TrainingDuplicateFilter(TrainingRepository trainingRepository,
+                            TrainingDedupProperties properties,
+                            TaskScheduler taskScheduler,
+                            MeterRegistry meterRegistry) {
+        this.trainingRepository = trainingRepository;
+        this.properties = properties;
+        this.taskScheduler = taskScheduler;
+        this.definitelyNew = meterRegistry.counter("training.dedup.checks", "result", "definitely_new");
+        this.falsePositive = meterRegistry.counter("training.dedup.checks", "result", "false_positive");
+        this.duplicate = meterRegistry.counter("training.dedup.checks", "result", "duplicate");
+        Gauge.builder("training.dedup.filter.expected.fpp", this,
+                        dedupFilter -> dedupFilter.filter == null ? 0 : dedupFilter.filter.expectedFalsePositiveProbability())
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void buildOnStartup() {
+        if (properties.enabled()) {
+            try {
+                filter = rebuild(Math.max(properties.minCapacity(), 2 * trainingRepository.countByFingerprintIsNotNull()));
+            } finally {
+                nextFilter = null;
+            }
+        }
+    }
+
+    /**
+     * Sprawdza, czy trening o podanym odcisku został już zapisany.
+     *
+     * @param fingerprint odcisk treningu
+     * @throws DuplicateTrainingException jeśli trening o takim odcisku już istnieje
+     */
+    void ensureNotDuplicate(String fingerprint) {
+        ShardedBloomFilter current = filter;
+        if (current != null && !current.mightContain(fingerprint)) {
+            definitelyNew.increment();
+            return;
+        }
+        trainingRepository.findByFingerprint(fingerprint).ifPresentOrElse(existing -> {
+            duplicate.increment();
+            throw new DuplicateTrainingException(existing.getId());
+        }, () -> {
+            if (current != null) {
+                falsePositive.increment();
+            }
+        });
+    }
+
+    /**
+     * Dopisuje odcisk zapisanego treningu do filtra i w razie potrzeby zleca jego powiększenie.
+     *
+     * @param fingerprint odcisk zapisanego treningu
+     */
+    void register(String fingerprint) {
+        ShardedBloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        current.put(fingerprint);
+        ShardedBloomFilter next = nextFilter;
+        if (next != null) {
+            next.put(fingerprint);
+        }
+        if (current.insertions() > current.capacity() && rebuilding.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> resize(current.capacity() * 2), Instant.now());
+        }
+    }
+
+    private void resize(long capacity) {
+        try {
+            log.info("Resizing training duplicate filter to capacity {}", capacity);
+            filter = rebuild(capacity);
+        } finally {
+            nextFilter = null;
+            rebuilding.set(false);
+        }
+    }
+
+    private ShardedBloomFilter rebuild(long capacity) {
+        ShardedBloomFilter rebuilt = ShardedBloomFilter.create(capacity, properties.falsePositiveProbability(), properties.shards());
+        nextFilter = rebuilt;
+        long lastId = 0;
+        List<TrainingRepository.FingerprintView> batch;
+        do {
+            batch = trainingRepository.findFingerprintsAfter(lastId, Limit.of(REBUILD_BATCH_SIZE));
+            for (TrainingRepository.FingerprintView view : batch) {
+                rebuilt.put(view.getFingerprint());
+                lastId = view.getId();
+            }
+        } while (batch.size() == REBUILD_BATCH_SIZE);
+        log.info("Training duplicate filter built with {} fingerprints, capacity {}", rebuilt.insertions(), capacity);
+        return rebuilt;
+    }
+}
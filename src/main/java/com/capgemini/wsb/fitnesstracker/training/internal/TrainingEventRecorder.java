@@ -0,0 +1,44 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventLog;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * Zapisuje utworzenie, zmianę (także przeliczenie kalorii) i usunięcie treningów do {@link TrainingEventLog} po zatwierdzeniu transakcji.
+ * Utworzenia i zmiany treningów jednego użytkownika trafiają do dziennika w kolejności zatwierdzenia, bo
+ * zatwierdzenie i ten zapis wykonują się pod blokadą użytkownika ({@link TrainingUserLocks}).
+ */
+@Component
+@RequiredArgsConstructor
+class TrainingEventRecorder {
+
+    private final TrainingEventLog eventLog;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        eventLog.append(List.of(TrainingEvent.created(event.training())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingUpdated(TrainingUpdatedEvent event) {
+        eventLog.append(List.of(TrainingEvent.updated(event.training())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingCaloriesRecomputed(TrainingCaloriesRecomputedEvent event) {
+        eventLog.append(event.updated());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingsPurged(TrainingsPurgedEvent event) {
+        eventLog.append(event.trainingIds().stream()
+                .map(trainingId -> TrainingEvent.deleted(event.userId(), trainingId))
+                .toList());
+    }
+}
@@ -0,0 +1,49 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Wylicza odcisk treści treningu: 128 pierwszych bitów SHA-256 z ID użytkownika, czasu rozpoczęcia i zakończenia,
+ * typu aktywności oraz dystansu, zapisany szesnastkowo (32 znaki).
+ */
+final class TrainingFingerprint {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private TrainingFingerprint() {
+    }
+
+    static String of(Training training) {
+        ByteBuffer content = ByteBuffer.allocate(Long.BYTES * 4 + Integer.BYTES)
+                .putLong(training.getUser().getId())
+                .putLong(training.getStartTime().getTime())
+                .putLong(training.getEndTime().getTime())
+                .putInt(training.getActivityType().ordinal())
+                .putDouble(training.getDistance());
+        return HEX.formatHex(sha256(content.array()), 0, 16);
+    }
+
+    /**
+     * Sprawdza, czy zapis naruszył unikalny indeks odcisków {@code uk_trainings_fingerprint}.
+     */
+    static boolean isViolatedBy(DataIntegrityViolationException e) {
+        return e.getCause() instanceof ConstraintViolationException violation
+                && violation.getConstraintName() != null
+                && violation.getConstraintName().toLowerCase().contains("uk_trainings_fingerprint");
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
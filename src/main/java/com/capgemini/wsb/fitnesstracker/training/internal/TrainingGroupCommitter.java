@@ -0,0 +1,321 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingOverlapException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Zapis grupowy (group commit) nowych treningów, włączany przez {@code training.ingestion.mode=group-commit}.
+ * <p>
+ * Sprawdzony wstępnie trening trafia do ograniczonej kolejki, a jeden wątek zbiera z niej grupy - do
+ * {@link TrainingIngestionProperties#maxBatchSize()} treningów lub przez {@link TrainingIngestionProperties#maxDelay()}
+ * od przyjęcia pierwszego z nich - i zapisuje każdą grupę jedną transakcją, pod blokadami wszystkich jej
+ * użytkowników. Wywołujący czeka na zatwierdzenie transakcji z jego treningiem, więc potwierdzenie zapisu jest
+ * równie trwałe jak w trybie synchronicznym; zysk polega na jednym zatwierdzeniu zamiast jednego na trening.
+ * <p>
+ * Trening odrzucony przy sprawdzaniu (duplikat, nakładanie się) nie przerywa grupy - wywołujący dostaje wyjątek,
+ * a pozostałe treningi są zapisywane. Trening nakładający się na inny trening z tej samej grupy jest zapisywany
+ * osobno po niej, tak jak przy kolejnych zapisach synchronicznych. Jeśli nie powiedzie się cała transakcja
+ * (np. unikalny indeks odcisków odrzucił duplikat zapisany przez inną instancję), treningi grupy są zapisywane
+ * pojedynczo.
+ * <p>
+ * Pełna kolejka spowalnia przyjmowanie: zapis czeka na miejsce do {@link TrainingIngestionProperties#enqueueTimeout()},
+ * a potem kończy się {@link TrainingIngestionOverloadedException}. Przy zamykaniu aplikacji nowe treningi są
+ * odrzucane, a te już przyjęte - zapisywane. W trybie shardowanym zapis nie idzie przez JPA, więc tryb grupowy
+ * nie jest tam używany.
+ */
+@Component
+@Slf4j
+class TrainingGroupCommitter {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final TrainingIngestionProperties properties;
+    private final TrainingRepository trainingRepository;
+    private final TrainingUserLocks userLocks;
+    private final TrainingDuplicateFilter duplicateFilter;
+    private final CalorieEstimator calorieEstimator;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardedTrainingStore shardedStore;
+    private final TrainingArchive archive;
+    private final StatisticsCalories statisticsCalories;
+    private final BlockingQueue<PendingTraining> queue;
+    private final ExecutorService executor;
+    private final Counter commits;
+    private final Counter rejected;
+    private final DistributionSummary batchSize;
+
+    private volatile boolean running;
+
+    TrainingGroupCommitter(TrainingIngestionProperties properties,
+                           TrainingRepository trainingRepository,
+                           TrainingUserLocks userLocks,
+                           TrainingDuplicateFilter duplicateFilter,
+                           CalorieEstimator calorieEstimator,
+                           TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher,
+                           ShardedTrainingStore shardedStore,
+                           TrainingArchive archive,
+                           StatisticsCalories statisticsCalories,
+                           MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.trainingRepository = trainingRepository;
+        this.userLocks = userLocks;
+        this.duplicateFilter = duplicateFilter;
+        this.calorieEstimator = calorieEstimator;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.shardedStore = shardedStore;
+        this.archive = archive;
+        this.statisticsCalories = statisticsCalories;
+        this.queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "training-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.commits = meterRegistry.counter("training.ingestion.commits");
+        this.rejected = meterRegistry.counter("training.ingestion.rejected");
+        this.batchSize = DistributionSummary.builder("training.ingestion.batch.size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("training.ingestion.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled()) {
+            running = true;
+            executor.execute(this::commitLoop);
+            log.info("Training group commit enabled: up to {} trainings or {} per commit",
+                    properties.maxBatchSize(), properties.maxDelay());
+        }
+    }
+
+    /**
+     * Czeka na zapisanie treningów przyjętych do kolejki. Treningi zgłoszone w trakcie zamykania są odrzucane.
+     */
+    @PreDestroy
+    void close() throws InterruptedException {
+        if (!running) {
+            executor.shutdownNow();
+            return;
+        }
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(properties.shutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+            List<PendingTraining> abandoned = new ArrayList<>();
+            queue.drainTo(abandoned);
+            abandoned.forEach(pending -> pending.result().completeExceptionally(
+                    new TrainingIngestionOverloadedException("Training ingestion is shutting down")));
+            log.warn("Training group commit stopped with {} trainings not written", abandoned.size());
+        }
+    }
+
+    boolean enabled() {
+        return properties.mode() == TrainingIngestionProperties.Mode.GROUP_COMMIT && !shardedStore.enabled();
+    }
+
+    /**
+     * Przekazuje trening do zapisu grupowego i czeka na zatwierdzenie transakcji, w której został zapisany.
+     *
+     * @param training nowy trening z ustawionym odciskiem
+     * @return zapisany trening
+     * @throws DuplicateTrainingException           jeśli identyczny trening został już zapisany
+     * @throws TrainingOverlapException             jeśli trening nakłada się na inny trening użytkownika
+     * @throws TrainingIngestionOverloadedException jeśli kolejka jest pełna lub zapis nie został potwierdzony w czasie
+     */
+    Training submit(Training training) {
+        PendingTraining pending = new PendingTraining(training, new CompletableFuture<>());
+        try {
+            if (!running || !queue.offer(pending, properties.enqueueTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new TrainingIngestionOverloadedException("Training ingestion queue is full, retry later");
+            }
+            // Wątek zapisu mógł skończyć pracę między sprawdzeniem flagi a wstawieniem do kolejki.
+            if (!running && queue.remove(pending)) {
+                rejected.increment();
+                throw new TrainingIngestionOverloadedException("Training ingestion is shutting down");
+            }
+            return pending.result().get(properties.commitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrainingIngestionOverloadedException("Interrupted while waiting for the training to be written");
+        } catch (TimeoutException e) {
+            throw new TrainingIngestionOverloadedException("Training was queued, but its commit was not confirmed in time");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Training group commit failed", e.getCause());
+        }
+    }
+
+    private void commitLoop() {
+        List<PendingTraining> batch = new ArrayList<>(properties.maxBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTraining first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + properties.maxDelay().toNanos();
+                while (batch.size() < properties.maxBatchSize()) {
+                    if (queue.drainTo(batch, properties.maxBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingTraining next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result().completeExceptionally(
+                        new TrainingIngestionOverloadedException("Training ingestion is shutting down")));
+                return;
+            } catch (RuntimeException e) {
+                log.error("Training group commit failed", e);
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Zapisuje grupę treningów jedną transakcją. Każdy trening zgłoszony do grupy dostaje wynik: zapisany trening
+     * albo wyjątek.
+     */
+    private void commit(List<PendingTraining> batch) {
+        Set<Long> userIds = new HashSet<>();
+        batch.forEach(pending -> userIds.add(pending.training().getUser().getId()));
+        List<PendingTraining> deferred = new ArrayList<>();
+        List<Accepted> accepted;
+        try {
+            accepted = userLocks.withUserLocks(userIds, () -> transactionTemplate.execute(status -> write(batch, deferred)));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(translate(e));
+            } else {
+                log.warn("Group commit of {} trainings failed, writing them one by one", batch.size(), e);
+                batch.stream()
+                        .filter(pending -> !pending.result().isDone())
+                        .forEach(pending -> commit(List.of(pending)));
+            }
+            return;
+        }
+        commits.increment();
+        batchSize.record(accepted.size());
+        accepted.forEach(saved -> saved.pending().result().complete(saved.training()));
+        deferred.forEach(pending -> commit(List.of(pending)));
+    }
+
+    private List<Accepted> write(List<PendingTraining> batch, List<PendingTraining> deferred) {
+        Map<Long, List<Training>> acceptedByUser = new HashMap<>();
+        List<Accepted> accepted = new ArrayList<>(batch.size());
+        for (PendingTraining pending : batch) {
+            Training training = copyOf(pending.training());
+            List<Training> sameUser = acceptedByUser.computeIfAbsent(training.getUser().getId(), userId -> new ArrayList<>());
+            if (sameUser.stream().anyMatch(other -> overlaps(other, training))) {
+                deferred.add(pending);
+                continue;
+            }
+            try {
+                duplicateFilter.ensureNotDuplicate(training.getFingerprint());
+                ensureNoOverlap(training);
+            } catch (DuplicateTrainingException | TrainingOverlapException e) {
+                pending.result().completeExceptionally(e);
+                continue;
+            }
+            training.setCalories(calorieEstimator.estimate(training), calorieEstimator.modelVersion());
+            sameUser.add(training);
+            accepted.add(new Accepted(pending, training));
+        }
+        Map<Long, Integer> caloriesByUser = new HashMap<>();
+        for (Accepted saved : accepted) {
+            trainingRepository.save(saved.training());
+            caloriesByUser.merge(saved.training().getUser().getId(), saved.training().getCalories(), Integer::sum);
+        }
+        trainingRepository.flush();
+        caloriesByUser.forEach(statisticsCalories::add);
+        for (Accepted saved : accepted) {
+            duplicateFilter.register(saved.training().getFingerprint());
+            eventPublisher.publishEvent(new TrainingCreatedEvent(saved.training()));
+        }
+        return accepted;
+    }
+
+    private void ensureNoOverlap(Training training) {
+        archive.ensureNoConflict(training);
+        trainingRepository.findLatestStartedBefore(training.getUser().getId(), training.getEndTime(), null, Limit.of(1))
+                .stream()
+                .filter(previous -> previous.getEndTime().after(training.getStartTime()))
+                .findFirst()
+                .ifPresent(previous -> {
+                    throw new TrainingOverlapException(previous.getId());
+                });
+    }
+
+    private static boolean overlaps(Training first, Training second) {
+        return first.getStartTime().before(second.getEndTime()) && second.getStartTime().before(first.getEndTime())
+                || first.getFingerprint().equals(second.getFingerprint());
+    }
+
+    /**
+     * Po wycofaniu transakcji zapisywane encje mają już nadane ID, więc każda próba zapisu dostaje świeżą kopię.
+     */
+    private static Training copyOf(Training training) {
+        Training copy = new Training(training.getUser(), training.getStartTime(), training.getEndTime(),
+                training.getActivityType(), training.getDistance(), training.getAverageSpeed());
+        copy.setFingerprint(training.getFingerprint());
+        return copy;
+    }
+
+    private static RuntimeException translate(RuntimeException e) {
+        if (e instanceof DataIntegrityViolationException violation && TrainingFingerprint.isViolatedBy(violation)) {
+            return new DuplicateTrainingException();
+        }
+        return e;
+    }
+
+    private record PendingTraining(Training training, CompletableFuture<Training> result) {
+    }
+
+    private record Accepted(PendingTraining pending, Training training) {
+    }
+}
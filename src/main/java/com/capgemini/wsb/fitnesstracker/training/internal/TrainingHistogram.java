@@ -0,0 +1,41 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Utrwalony histogram rozkładu jednej miary dla jednego typu aktywności - suma liczników scalonych przez
+ * wszystkie instancje aplikacji ({@link LogLinearHistogram#encode(long[])}).
+ */
+@Entity
+@Table(name = "training_histograms")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(exclude = "counts")
+public class TrainingHistogram {
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "counts", nullable = false, length = 16 * 1024)
+    private byte[] counts;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    TrainingHistogram(String name, byte[] counts) {
+        this.name = name;
+        update(counts);
+    }
+
+    void update(byte[] counts) {
+        this.counts = counts;
+        this.updatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,19 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+interface TrainingHistogramRepository extends JpaRepository<TrainingHistogram, String> {
+
+    /**
+     * Pobiera histogram z blokadą wiersza, aby scalanie liczników z kilku instancji się nie nadpisywało.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select h from TrainingHistogram h where h.name = :name")
+    Optional<TrainingHistogram> findForUpdate(@Param("name") String name);
+}
@@ -0,0 +1,39 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+/**
+ * Generator globalnie unikalnych ID treningów dla trybu z shardami (schemat "snowflake"):
+ * 41 bitów milisekund od 2024-01-01, 10 bitów numeru instancji i 12 bitów licznika w ramach milisekundy.
+ * ID nie zależy od sharda, więc trening zachowuje je przy przenoszeniu między shardami.
+ */
+final class TrainingIdGenerator {
+
+    private static final long EPOCH = 1_704_067_200_000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private long lastMillis = -1;
+    private long sequence;
+
+    TrainingIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId >= (1 << NODE_BITS)) {
+            throw new IllegalArgumentException("Node id must be between 0 and %d".formatted((1 << NODE_BITS) - 1));
+        }
+        this.nodeId = nodeId;
+    }
+
+    synchronized long nextId() {
+        long now = Math.max(System.currentTimeMillis(), lastMillis);
+        if (now == lastMillis) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                now = lastMillis + 1;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = now;
+        return ((now - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+}
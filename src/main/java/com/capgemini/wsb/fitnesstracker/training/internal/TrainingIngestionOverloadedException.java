@@ -0,0 +1,20 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception indicating that a new training could not be queued for a group commit, or that its commit
+ * was not confirmed in time.
+ * Will resolve to the {@link HttpStatus#SERVICE_UNAVAILABLE}, so the client should retry later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+@SuppressWarnings("squid:S110")
+class TrainingIngestionOverloadedException extends BusinessException {
+
+    TrainingIngestionOverloadedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja zapisu nowych treningów.
+ *
+ * @param mode            tryb zapisu: każdy trening we własnej transakcji ({@code sync}) albo grupowo
+ *                        ({@code group-commit}, zob. {@link TrainingGroupCommitter})
+ * @param queueCapacity   pojemność kolejki treningów czekających na zapis grupowy
+ * @param maxBatchSize    największa liczba treningów zatwierdzanych jedną transakcją
+ * @param maxDelay        jak długo zbierać treningi do grupy od przyjęcia pierwszego z nich
+ * @param enqueueTimeout  jak długo czekać na miejsce w pełnej kolejce, zanim zapis zostanie odrzucony
+ * @param commitTimeout   jak długo wywołujący czeka na zatwierdzenie grupy z jego treningiem
+ * @param shutdownTimeout jak długo przy zamykaniu aplikacji czekać na zapisanie treningów z kolejki
+ */
+@ConfigurationProperties(prefix = "training.ingestion")
+record TrainingIngestionProperties(
+        @DefaultValue("sync") Mode mode,
+        @DefaultValue("10000") int queueCapacity,
+        @DefaultValue("500") int maxBatchSize,
+        @DefaultValue("5ms") Duration maxDelay,
+        @DefaultValue("100ms") Duration enqueueTimeout,
+        @DefaultValue("30s") Duration commitTimeout,
+        @DefaultValue("30s") Duration shutdownTimeout
+) {
+
+    enum Mode {
+        SYNC,
+        GROUP_COMMIT
+    }
+}
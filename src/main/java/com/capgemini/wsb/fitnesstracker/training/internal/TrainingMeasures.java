@@ -0,0 +1,20 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+
+import java.util.Date;
+
+/**
+ * Wartości treningu uwzględniane w rozkładach, niezależne od encji (np. stan sprzed aktualizacji).
+ */
+record TrainingMeasures(ActivityType activityType, double averageSpeed, double distance, long durationSeconds) {
+
+    static TrainingMeasures of(Training training) {
+        return of(training.getActivityType(), training.getStartTime(), training.getEndTime(), training.getDistance(),
+                training.getAverageSpeed());
+    }
+
+    static TrainingMeasures of(ActivityType activityType, Date startTime, Date endTime, double distance, double averageSpeed) {
+        return new TrainingMeasures(activityType, averageSpeed, distance, (endTime.getTime() - startTime.getTime()) / 1000);
+    }
+}
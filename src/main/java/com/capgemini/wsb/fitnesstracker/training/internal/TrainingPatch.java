@@ -0,0 +1,50 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import org.springframework.lang.Nullable;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Zmiana wybranych pól treningu ({@code PATCH /v1/trainings/{id}}). Pole {@code null} pozostaje bez zmian.
+ *
+ * @param version wersja treningu, na podstawie której przygotowano zmianę; {@code null} pomija sprawdzenie
+ */
+record TrainingPatch(@Nullable Date startTime,
+                     @Nullable Date endTime,
+                     @Nullable ActivityType activityType,
+                     @Nullable Double distance,
+                     @Nullable Double averageSpeed,
+                     @Nullable Long version) {
+
+    static final Set<String> FIELDS = Set.of("startTime", "endTime", "activityType", "distance", "averageSpeed", "version");
+
+    static TrainingPatch of(MergePatch patch) {
+        return new TrainingPatch(patch.get("startTime", Date.class), patch.get("endTime", Date.class),
+                patch.get("activityType", ActivityType.class), patch.get("distance", Double.class),
+                patch.get("averageSpeed", Double.class), patch.get("version", Long.class));
+    }
+
+    /**
+     * Zmiana wszystkich pól na wartości z podanego treningu, bez sprawdzania wersji ({@code PUT}).
+     */
+    static TrainingPatch replacing(Training training) {
+        return new TrainingPatch(training.getStartTime(), training.getEndTime(), training.getActivityType(),
+                training.getDistance(), training.getAverageSpeed(), null);
+    }
+
+    boolean changesTime() {
+        return startTime != null || endTime != null;
+    }
+
+    void applyTo(Training training) {
+        training.update(
+                startTime != null ? startTime : training.getStartTime(),
+                endTime != null ? endTime : training.getEndTime(),
+                activityType != null ? activityType : training.getActivityType(),
+                distance != null ? distance : training.getDistance(),
+                averageSpeed != null ? averageSpeed : training.getAverageSpeed());
+    }
+}
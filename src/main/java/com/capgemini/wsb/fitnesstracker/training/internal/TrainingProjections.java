@@ -0,0 +1,165 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Odczyt wybranych pól treningów ({@code ?fields=}). Zapytanie wybiera tylko kolumny żądanych pól; użytkownik
+ * jest zawsze dołączany, żeby pominąć treningi użytkowników oznaczonych jako usunięci.
+ * <p>
+ * Zarchiwizowane treningi są czytane z segmentów jako zwarte wiersze, a dane ich użytkowników - jednym zapytaniem
+ * o same kolumny użytkowników; oba źródła są łączone po ID. Przy włączonym shardingu pola wybierane są z treningów
+ * odczytanych z shardów ({@link TrainingServiceImpl#findAllTrainings()}).
+ */
+@Component
+@RequiredArgsConstructor
+class TrainingProjections {
+
+    static final List<String> FIELDS = List.of("id", "user", "userId", "startTime", "endTime", "activityType",
+            "distance", "averageSpeed", "calories", "version");
+
+    private static final List<String> USER_FIELDS = List.of("id", "firstName", "lastName", "birthdate", "email");
+
+    private static final Map<String, Function<Training, Object>> GETTERS = Map.of(
+            "id", Training::getId,
+            "user", training -> training.getUser() == null ? null : user(training.getUser()),
+            "userId", training -> training.getUser() == null ? null : training.getUser().getId(),
+            "startTime", Training::getStartTime,
+            "endTime", Training::getEndTime,
+            "activityType", Training::getActivityType,
+            "distance", Training::getDistance,
+            "averageSpeed", Training::getAverageSpeed,
+            "calories", Training::getCalories,
+            "version", Training::getVersion);
+
+    private final EntityManager entityManager;
+    private final ShardedTrainingStore shardedStore;
+    private final TrainingArchive archive;
+    private final TrainingServiceImpl trainingService;
+
+    /**
+     * @param fields pola z {@link #FIELDS}
+     * @return treningi posortowane po ID
+     */
+    @Transactional(readOnly = true)
+    List<Map<String, Object>> findAll(List<String> fields) {
+        if (shardedStore.enabled()) {
+            return trainingService.findAllTrainings().stream()
+                    .sorted(Comparator.comparing(Training::getId))
+                    .map(training -> {
+                        Map<String, Object> row = new LinkedHashMap<>();
+                        fields.forEach(field -> row.put(field, GETTERS.get(field).apply(training)));
+                        return row;
+                    })
+                    .toList();
+        }
+        // Trening zapisany w archiwum i jeszcze nieusunięty z bazy zwracany jest w wersji z bazy.
+        SortedMap<Long, Map<String, Object>> trainings = new TreeMap<>();
+        findArchived(fields).forEach(trainings::put);
+        findHot(fields).forEach(trainings::put);
+        return new ArrayList<>(trainings.values());
+    }
+
+    private Map<Long, Map<String, Object>> findHot(List<String> fields) {
+        List<String> columns = new ArrayList<>();
+        columns.add("t.id as trainingId");
+        for (String field : fields) {
+            switch (field) {
+                case "user" -> USER_FIELDS.forEach(userField -> columns.add("u.%s as user_%s".formatted(userField, userField)));
+                case "userId" -> columns.add("u.id as userId");
+                default -> columns.add("t.%s as %s".formatted(field, field));
+            }
+        }
+        List<Tuple> rows = entityManager.createQuery("select " + String.join(", ", columns)
+                + " from Training t join t.user u where u.deletedAt is null", Tuple.class).getResultList();
+        Map<Long, Map<String, Object>> trainings = new HashMap<>(rows.size());
+        for (Tuple tuple : rows) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                row.put(field, field.equals("user") ? user(tuple) : tuple.get(field));
+            }
+            trainings.put(tuple.get("trainingId", Long.class), row);
+        }
+        return trainings;
+    }
+
+    /**
+     * Treningi użytkowników oznaczonych jako usunięci są pomijane - zapytanie o użytkowników ich nie zwraca.
+     */
+    private Map<Long, Map<String, Object>> findArchived(List<String> fields) {
+        List<ArchivedTraining> archived = archive.findAllRows();
+        if (archived.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Map<String, Object>> users = new HashMap<>();
+        entityManager.createQuery("select " + USER_FIELDS.stream()
+                                .map(userField -> "u.%s as user_%s".formatted(userField, userField))
+                                .collect(Collectors.joining(", "))
+                                + " from User u where u.id in :ids", Tuple.class)
+                .setParameter("ids", archived.stream().map(ArchivedTraining::userId).collect(Collectors.toSet()))
+                .getResultList()
+                .forEach(tuple -> users.put(tuple.get("user_id", Long.class), user(tuple)));
+        Map<Long, Map<String, Object>> trainings = new HashMap<>(archived.size());
+        for (ArchivedTraining training : archived) {
+            Map<String, Object> user = users.get(training.userId());
+            if (user == null) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                row.put(field, switch (field) {
+                    case "id" -> training.id();
+                    case "user" -> user;
+                    case "userId" -> training.userId();
+                    case "startTime" -> new Date(training.startTime());
+                    case "endTime" -> new Date(training.endTime());
+                    case "activityType" -> training.activityType();
+                    case "distance" -> training.distance();
+                    case "averageSpeed" -> training.averageSpeed();
+                    // Archiwum nie przechowuje kalorii ani wersji - jak treningi zwracane z archiwum przez serwis.
+                    case "version" -> 0L;
+                    default -> null;
+                });
+            }
+            trainings.put(training.id(), row);
+        }
+        return trainings;
+    }
+
+    private static Map<String, Object> user(User user) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", user.getId());
+        row.put("firstName", user.getFirstName());
+        row.put("lastName", user.getLastName());
+        row.put("birthdate", user.getBirthdate());
+        row.put("email", user.getEmail());
+        return row;
+    }
+
+    private static Map<String, Object> user(Tuple tuple) {
+        if (tuple.get("user_id") == null) {
+            return null;
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        USER_FIELDS.forEach(field -> row.put(field, tuple.get("user_" + field)));
+        return row;
+    }
+}
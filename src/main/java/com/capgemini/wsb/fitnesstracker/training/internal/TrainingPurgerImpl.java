@@ -0,0 +1,163 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingPurger;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingsDeletedEvent;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Usuwa treningi usuniętego użytkownika porcjami: jedno zapytanie wybiera porcję ID, a jedno {@code DELETE ... IN}
+ * usuwa porcję. Przed usunięciem publikowane jest {@link TrainingsDeletedEvent}, aby dane zależne (np. ślady)
+ * zostały usunięte w tej samej transakcji, a w tej samej transakcji zapisywane są ślady usunięć dla synchronizacji
+ * przyrostowej ({@link TrainingChanges}). Po zatwierdzeniu transakcji odejmowane są wartości usuniętych treningów
+ * z rozkładów i czyszczone cache.
+ * <p>
+ * Po treningach z bazy usuwane są porcjami zarchiwizowane treningi użytkownika: trafiają na listę do usunięcia
+ * z segmentów ({@link TrainingArchive#markPurged}), a gdy żaden nie został, segmenty są przepisywane bez nich.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+class TrainingPurgerImpl implements TrainingPurger {
+
+    private static final ActivityType[] ACTIVITY_TYPES = ActivityType.values();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardedTrainingStore shardedStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManagerFactory entityManagerFactory;
+    private final SingleFlight<Long, List<Training>> userTrainingsSingleFlight;
+    private final TrainingChanges trainingChanges;
+    private final TrainingArchive archive;
+
+    @Override
+    public long countByUser(Long userId) {
+        long archived = archive.enabled() ? archive.countUnpurgedByUser(userId) : 0;
+        if (shardedStore.enabled()) {
+            return shardedStore.countByUser(userId) + archived;
+        }
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trainings WHERE user_id = ?", Long.class, userId)
+                + archived;
+    }
+
+    @Override
+    public int deleteChunk(Long userId, int limit) {
+        return transactionTemplate.execute(status -> {
+            int deleted = shardedStore.enabled()
+                    ? deleteShardedChunk(userId, limit)
+                    : deleteChunkInTransaction(userId, limit);
+            return deleted > 0 ? deleted : deleteArchivedChunk(userId, limit);
+        });
+    }
+
+    private int deleteChunkInTransaction(Long userId, int limit) {
+        List<Long> ids = new ArrayList<>(limit);
+        List<TrainingMeasures> removed = new ArrayList<>(limit);
+        jdbcTemplate.query("""
+                        SELECT id, activity_type, start_time, end_time, distance, average_speed FROM trainings
+                        WHERE user_id = ? ORDER BY id LIMIT ?""",
+                resultSet -> {
+                    ids.add(resultSet.getLong("id"));
+                    removed.add(TrainingMeasures.of(ACTIVITY_TYPES[resultSet.getInt("activity_type")],
+                            resultSet.getTimestamp("start_time"), resultSet.getTimestamp("end_time"),
+                            resultSet.getDouble("distance"), resultSet.getDouble("average_speed")));
+                },
+                userId, limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        eventPublisher.publishEvent(new TrainingsDeletedEvent(userId, ids));
+        trainingChanges.recordTombstones(userId, ids);
+        int deleted = namedParameterJdbcTemplate.update("DELETE FROM trainings WHERE user_id = :userId AND id IN (:ids)",
+                Map.of("userId", userId, "ids", ids));
+        eventPublisher.publishEvent(new TrainingsPurgedEvent(userId, ids, removed));
+        return deleted;
+    }
+
+    /**
+     * Treningi w shardach usuwane są poza transakcją bazy głównej, w której usuwane są dane zależne.
+     */
+    private int deleteShardedChunk(Long userId, int limit) {
+        List<ShardedTrainingStore.ShardRow> rows = shardedStore.deleteUserChunk(userId, limit);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = rows.stream().map(ShardedTrainingStore.ShardRow::id).toList();
+        eventPublisher.publishEvent(new TrainingsDeletedEvent(userId, ids));
+        trainingChanges.recordTombstonesById(userId, ids);
+        eventPublisher.publishEvent(new TrainingsPurgedEvent(userId, ids, rows.stream()
+                .map(row -> TrainingMeasures.of(row.activityType(), row.startTime(), row.endTime(), row.distance(),
+                        row.averageSpeed()))
+                .toList()));
+        return rows.size();
+    }
+
+    /**
+     * Segmenty są przepisywane dopiero, gdy wszystkie zarchiwizowane treningi użytkownika są na liście do usunięcia,
+     * więc każdy segment przepisywany jest raz na użytkownika, a nie raz na porcję.
+     */
+    private int deleteArchivedChunk(Long userId, int limit) {
+        if (!archive.enabled()) {
+            return 0;
+        }
+        List<ArchivedTraining> rows = archive.findUnpurgedByUser(userId, limit);
+        if (rows.isEmpty()) {
+            try {
+                archive.compact();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return 0;
+        }
+        List<Long> ids = rows.stream().map(ArchivedTraining::id).toList();
+        eventPublisher.publishEvent(new TrainingsDeletedEvent(userId, ids));
+        trainingChanges.recordTombstonesById(userId, ids);
+        archive.markPurged(userId, ids);
+        eventPublisher.publishEvent(new TrainingsPurgedEvent(userId, ids, rows.stream()
+                .map(row -> TrainingMeasures.of(row.activityType(), new Date(row.startTime()), new Date(row.endTime()),
+                        row.distance(), row.averageSpeed()))
+                .toList()));
+        return ids.size();
+    }
+
+    /**
+     * Identyfikatory treningów użytkownika nie są znane bez zapytania, więc usuwany jest cały region treningów.
+     */
+    @Override
+    public void evictCached(Long userId) {
+        entityManagerFactory.getCache().evict(Training.class);
+        entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class).evictQueryRegion(TrainingRepository.QUERY_CACHE_REGION);
+        userTrainingsSingleFlight.forget(userId);
+    }
+
+    /**
+     * Region zapytań nie jest tu czyszczony: {@link #evictCached} czyści go raz przy oznaczeniu użytkownika jako
+     * usuniętego, a zapytania zapisane później już pomijają jego treningi.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingsPurged(TrainingsPurgedEvent event) {
+        // Wiersze usunięte z pominięciem Hibernate - cache drugiego poziomu może być nieaktualny.
+        event.trainingIds().forEach(id -> entityManagerFactory.getCache().evict(Training.class, id));
+        userTrainingsSingleFlight.forget(event.userId());
+        log.debug("Purged {} trainings of user {}", event.trainingIds().size(), event.userId());
+    }
+}
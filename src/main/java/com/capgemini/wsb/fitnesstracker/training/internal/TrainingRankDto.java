@@ -0,0 +1,17 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+/**
+ * Pozycja treningu w rozkładzie miary treningów tego samego typu aktywności.
+ *
+ * @param percentile odsetek treningów z mniejszą wartością miary (0-100); 80 oznacza 20% najlepszych
+ * @param count      liczba treningów w rozkładzie
+ */
+record TrainingRankDto(
+        Long trainingId,
+        ActivityType activityType,
+        DistributionMetric metric,
+        double value,
+        double percentile,
+        long count
+) {
+}
@@ -0,0 +1,22 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja łączenia równoczesnych odczytów treningów tego samego użytkownika w jedno zapytanie.
+ *
+ * @param ttl     jak długo wynik zakończonego odczytu jest jeszcze zwracany kolejnym wywołaniom; {@code 0} - tylko
+ *                wywołaniom, które trafiły na trwający odczyt; zapis treningu przez serwis unieważnia wynik od razu,
+ *                pozostałe zmiany (archiwizacja, usunięcie użytkownika) stają się widoczne najpóźniej po tym czasie
+ * @param maxKeys maksymalna liczba jednocześnie śledzonych kluczy; {@code 0} wyłącza łączenie odczytów
+ */
+@ConfigurationProperties(prefix = "training.read-coalescing")
+record TrainingReadCoalescingProperties(
+        @DefaultValue("0s") Duration ttl,
+        @DefaultValue("10000") int maxKeys
+) {
+
+}
@@ -2,36 +2,120 @@ package com.capgemini.wsb.fitnesstracker.training.internal;
 
 import com.capgemini.wsb.fitnesstracker.training.api.Training;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
 
-public interface TrainingRepository extends JpaRepository<Training, Long> {
-    default List<Training> getTrainingsFinishedAfter(Date date)
-    {
-        return findAll().stream().filter(
-                training -> Objects.compare(training.getEndTime(), date, Comparator.naturalOrder()) > 0
-        ).collect(Collectors.toList());
-    }
+public interface TrainingRepository extends JpaRepository<Training, Long>, JpaSpecificationExecutor<Training> {
+    /**
+     * Region cache zapytań dla często wykonywanych odczytów treningów. Wyniki są unieważniane przez Hibernate
+     * przy każdym zapisie do tabeli {@code trainings}.
+     */
+    String QUERY_CACHE_REGION = "training-queries";
 
-    default List<Training> getTrainingsByType(ActivityType type)
-    {
-        return findAll().stream().filter(
-                training -> Objects.equals(training.getActivityType(), type)
-        ).collect(Collectors.toList());
-    }
+    /**
+     * Zwraca treningi użytkowników, którzy nie zostali oznaczeni jako usunięci. Treningi usuniętego użytkownika
+     * pozostają w tabeli do czasu usunięcia w tle, więc zapytania o treningi łączą je z użytkownikiem i sprawdzają
+     * {@code deletedAt}.
+     *
+     * @return treningi aktywnych użytkowników
+     */
+    @Query("select t from Training t join t.user u where u.deletedAt is null")
+    List<Training> findAllOfLiveUsers();
+
+    @Query("select t from Training t join t.user u where u.deletedAt is null and t.endTime > :date")
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)
+    })
+    List<Training> getTrainingsFinishedAfter(@Param("date") Date date);
+
+    @Query("select t from Training t join t.user u where u.deletedAt is null and t.activityType = :type")
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)
+    })
+    List<Training> getTrainingsByType(@Param("type") ActivityType type);
 
     default Training updateTraining(Training training)
     {
         return save(training);
     }
 
-    default List<Training> getTrainingsByUser(User user) {
-        return findAll().stream()
-                .filter(training -> Objects.equals(training.getUser(), user))
-                .collect(Collectors.toList());
+    @Query("select t from Training t join t.user u where u = :user and u.deletedAt is null")
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = QUERY_CACHE_REGION)
+    })
+    List<Training> getTrainingsByUser(@Param("user") User user);
+
+    /**
+     * Wyszukuje trening użytkownika, który rozpoczął się najpóźniej przed podaną chwilą, a spośród rozpoczętych
+     * w tej samej chwili - ten, który kończy się najpóźniej (krótszy lub zerowy trening nie może przesłonić
+     * nakładania się z dłuższym). Zapytanie korzysta z indeksu {@code (user_id, start_time, end_time)} i czyta
+     * pojedynczy wpis indeksu.
+     *
+     * @param userId     ID użytkownika
+     * @param before     chwila, przed którą trening musi się rozpocząć
+     * @param excludedId ID treningu pomijanego przy wyszukiwaniu (aktualizowany trening) lub {@code null}
+     * @param limit      limit wyników, zwykle {@code Limit.of(1)}
+     * @return lista z co najwyżej jednym treningiem
+     */
+    @Query("""
+            select t from Training t
+            where t.user.id = :userId and t.startTime < :before and (:excludedId is null or t.id <> :excludedId)
+            order by t.startTime desc, t.endTime desc
+            """)
+    List<Training> findLatestStartedBefore(@Param("userId") Long userId,
+                                           @Param("before") Date before,
+                                           @Param("excludedId") Long excludedId,
+                                           Limit limit);
+
+    /**
+     * Pobiera porcję treningów zakończonych przed podaną chwilą, do przeniesienia do archiwum.
+     *
+     * @param before chwila, przed którą trening musi się zakończyć
+     * @param limit  rozmiar porcji
+     * @return treningi posortowane po ID
+     */
+    @Query("select t from Training t join t.user u where u.deletedAt is null and t.endTime < :before order by t.id")
+    List<Training> findFinishedBefore(@Param("before") Date before, Limit limit);
+
+    /**
+     * Wyszukuje trening o podanym odcisku treści (indeks unikalny {@code uk_trainings_fingerprint}).
+     *
+     * @param fingerprint odcisk treningu
+     * @return trening o podanym odcisku lub {@link Optional#empty()}
+     */
+    Optional<Training> findByFingerprint(String fingerprint);
+
+    long countByFingerprintIsNotNull();
+
+    /**
+     * Pobiera kolejną porcję odcisków treningów, stronicując po ID (keyset pagination).
+     *
+     * @param afterId ID ostatniego treningu z poprzedniej porcji
+     * @param limit   rozmiar porcji
+     * @return odciski treningów o ID większym niż {@code afterId}, posortowane po ID
+     */
+    @Query("""
+            select t.id as id, t.fingerprint as fingerprint from Training t
+            where t.fingerprint is not null and t.id > :afterId
+            order by t.id
+            """)
+    List<FingerprintView> findFingerprintsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    interface FingerprintView {
+        Long getId();
+
+        String getFingerprint();
     }
 
 }
@@ -0,0 +1,88 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wyszukiwanie treningów według dowolnej kombinacji filtrów ({@link TrainingSearchCriteria}) jednym zapytaniem.
+ * Plan ({@link TrainingSearchPlan}) wybiera indeks, a wynik jest zawsze stronicowany kursorem po
+ * {@code (startTime, id)} malejąco, więc żadne zapytanie nie czyta nieograniczonej liczby wierszy.
+ * <p>
+ * Przy niepustym archiwum strona z tabeli łączona jest z najnowszymi pasującymi treningami archiwum, czytanymi
+ * tylko z zakresu, który może jeszcze trafić na stronę. Przy włączonym shardingu filtry i kursor są warunkami
+ * zapytania do każdego sharda, a wyniki shardów są łączone.
+ */
+@Component
+@RequiredArgsConstructor
+class TrainingSearch {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "startTime", "id");
+    private static final Comparator<Training> NEWEST_FIRST_ORDER =
+            Comparator.comparing((Training training) -> training.getStartTime().getTime())
+                    .thenComparing(Training::getId)
+                    .reversed();
+
+    private final TrainingRepository trainingRepository;
+    private final ShardedTrainingStore shardedStore;
+    private final TrainingArchive archive;
+    private final TrainingSearchProperties properties;
+
+    /**
+     * @param criteria filtry
+     * @param cursor   kursor z poprzedniej strony lub {@code null} dla pierwszej strony
+     * @param limit    rozmiar strony lub {@code null} dla domyślnego
+     * @return strona wyników
+     * @throws BusinessException jeśli żaden filtr nie jest pokryty indeksem, rozmiar strony jest spoza zakresu
+     *                           lub kursor jest niepoprawny
+     */
+    @Transactional(readOnly = true)
+    TrainingSearchResultDto search(TrainingSearchCriteria criteria, @Nullable String cursor, @Nullable Integer limit) {
+        int pageSize = limit == null ? properties.defaultLimit() : limit;
+        if (pageSize < 1 || pageSize > properties.maxLimit()) {
+            throw new BusinessException("limit must be between 1 and " + properties.maxLimit());
+        }
+        TrainingSearchPlan plan = TrainingSearchPlan.of(criteria);
+        TrainingSearchCursor after = cursor == null ? null : TrainingSearchCursor.parse(cursor);
+        // Jeden wiersz ponad stronę mówi, czy istnieje następna strona.
+        List<Training> found = shardedStore.enabled()
+                ? shardedStore.search(criteria, after, pageSize + 1)
+                : searchWithArchive(criteria, plan, after, pageSize + 1);
+        if (found.size() <= pageSize) {
+            return new TrainingSearchResultDto(found, null, plan.index());
+        }
+        List<Training> page = found.subList(0, pageSize);
+        return new TrainingSearchResultDto(List.copyOf(page), TrainingSearchCursor.after(page.get(pageSize - 1)).toString(),
+                plan.index());
+    }
+
+    private List<Training> searchWithArchive(TrainingSearchCriteria criteria, TrainingSearchPlan plan,
+                                             @Nullable TrainingSearchCursor after, int limit) {
+        List<Training> hot = trainingRepository.findBy(criteria.toSpecification(plan, after),
+                query -> query.sortBy(NEWEST_FIRST).limit(limit).all());
+        if (archive.isEmpty()) {
+            return hot;
+        }
+        // Gdy strona z tabeli jest pełna, archiwum może dodać do niej tylko treningi rozpoczęte nie wcześniej niż
+        // jej ostatni trening.
+        long minStartTime = Math.max(criteria.from() == null ? Long.MIN_VALUE : criteria.from().getTime(),
+                hot.size() == limit ? hot.get(limit - 1).getStartTime().getTime() : Long.MIN_VALUE);
+        Map<Long, Training> merged = new LinkedHashMap<>();
+        hot.forEach(training -> merged.put(training.getId(), training));
+        // Trening może chwilowo być i w tabeli, i w archiwum - wygrywa wersja z tabeli.
+        archive.search(criteria, after, minStartTime, limit).forEach(training -> merged.putIfAbsent(training.getId(), training));
+        return merged.values().stream()
+                .sorted(NEWEST_FIRST_ORDER)
+                .limit(limit)
+                .toList();
+    }
+}
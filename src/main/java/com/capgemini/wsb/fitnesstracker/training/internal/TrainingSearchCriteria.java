@@ -0,0 +1,132 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Filtry wyszukiwania treningów. Wszystkie filtry są opcjonalne i łączone koniunkcją; zakresy są domknięte
+ * z dołu i otwarte z góry ({@code from <= startTime < to}).
+ *
+ * @param userId       ID użytkownika
+ * @param activityType typ aktywności
+ * @param from         najwcześniejszy początek treningu
+ * @param to           początek treningu przed tą chwilą
+ * @param minDistance  najmniejszy dystans
+ * @param maxDistance  dystans mniejszy niż ta wartość
+ * @param minSpeed     najmniejsza średnia prędkość
+ * @param maxSpeed     średnia prędkość mniejsza niż ta wartość
+ */
+record TrainingSearchCriteria(
+        @Nullable Long userId,
+        @Nullable ActivityType activityType,
+        @Nullable Date from,
+        @Nullable Date to,
+        @Nullable Double minDistance,
+        @Nullable Double maxDistance,
+        @Nullable Double minSpeed,
+        @Nullable Double maxSpeed
+) {
+
+    TrainingSearchCriteria {
+        requireRange("from", from, "to", to);
+        requireRange("minDistance", minDistance, "maxDistance", maxDistance);
+        requireRange("minSpeed", minSpeed, "maxSpeed", maxSpeed);
+    }
+
+    boolean hasTimeRange() {
+        return from != null || to != null;
+    }
+
+    /**
+     * Buduje specyfikację zapytania. Predykaty kolumn indeksu wybranego przez plan są dodawane jako pierwsze,
+     * pozostałe filtry zawężają wynik odczytany przez indeks.
+     *
+     * @param plan   plan zapytania
+     * @param cursor pozycja, po której zaczyna się strona, lub {@code null} dla pierwszej strony
+     */
+    Specification<Training> toSpecification(TrainingSearchPlan plan, @Nullable TrainingSearchCursor cursor) {
+        return (root, query, builder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            // Treningi użytkowników oznaczonych jako usunięci czekają w tabeli na usunięcie w tle.
+            predicates.add(builder.isNull(root.join("user").get("deletedAt")));
+            switch (plan) {
+                case BY_USER -> {
+                    predicates.add(builder.equal(root.get("user").get("id"), userId));
+                    addTimeRange(root, builder, predicates);
+                    addActivityType(root, builder, predicates);
+                }
+                case BY_ACTIVITY_TYPE -> {
+                    addActivityType(root, builder, predicates);
+                    addTimeRange(root, builder, predicates);
+                }
+                case BY_START_TIME -> {
+                    addTimeRange(root, builder, predicates);
+                    addActivityType(root, builder, predicates);
+                }
+            }
+            addRange(root.get("distance"), minDistance, maxDistance, builder, predicates);
+            addRange(root.get("averageSpeed"), minSpeed, maxSpeed, builder, predicates);
+            if (cursor != null) {
+                Path<Date> startTime = root.get("startTime");
+                Date cursorStart = new Date(cursor.startTime());
+                predicates.add(builder.or(
+                        builder.lessThan(startTime, cursorStart),
+                        builder.and(builder.equal(startTime, cursorStart), builder.lessThan(root.get("id"), cursor.id()))));
+            }
+            return builder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Sprawdza trening w pamięci - dla treningów czytanych z archiwum.
+     */
+    boolean matches(long trainingUserId, ActivityType trainingActivityType, long startTime, double distance,
+                    double averageSpeed) {
+        return (userId == null || userId == trainingUserId)
+                && (activityType == null || activityType == trainingActivityType)
+                && inRange(startTime, from == null ? null : from.getTime(), to == null ? null : to.getTime())
+                && inRange(distance, minDistance, maxDistance)
+                && inRange(averageSpeed, minSpeed, maxSpeed);
+    }
+
+    private void addTimeRange(Root<Training> root, CriteriaBuilder builder, List<Predicate> predicates) {
+        addRange(root.get("startTime"), from, to, builder, predicates);
+    }
+
+    private void addActivityType(Root<Training> root, CriteriaBuilder builder, List<Predicate> predicates) {
+        if (activityType != null) {
+            predicates.add(builder.equal(root.get("activityType"), activityType));
+        }
+    }
+
+    private static <T extends Comparable<? super T>> void addRange(Path<T> path, @Nullable T min, @Nullable T max,
+                                                                   CriteriaBuilder builder, List<Predicate> predicates) {
+        if (min != null) {
+            predicates.add(builder.greaterThanOrEqualTo(path, min));
+        }
+        if (max != null) {
+            predicates.add(builder.lessThan(path, max));
+        }
+    }
+
+    private static <T extends Comparable<? super T>> boolean inRange(T value, @Nullable T min, @Nullable T max) {
+        return (min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) < 0);
+    }
+
+    private static <T extends Comparable<? super T>> void requireRange(String minName, @Nullable T min,
+                                                                       String maxName, @Nullable T max) {
+        if (min != null && max != null && min.compareTo(max) >= 0) {
+            throw new BusinessException("%s must be less than %s".formatted(minName, maxName));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+
+/**
+ * Pozycja ostatniego treningu strony wyników wyszukiwania (keyset pagination), zapisywana jako
+ * {@code <startTime w ms>_<id>}.
+ */
+record TrainingSearchCursor(long startTime, long id) {
+
+    static TrainingSearchCursor after(Training training) {
+        return new TrainingSearchCursor(training.getStartTime().getTime(), training.getId());
+    }
+
+    /**
+     * @throws BusinessException jeśli kursor ma niepoprawny format
+     */
+    static TrainingSearchCursor parse(String cursor) {
+        int separator = cursor.indexOf('_');
+        try {
+            return new TrainingSearchCursor(Long.parseLong(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new BusinessException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * @return czy trening o podanym początku i ID leży na kolejnych stronach
+     */
+    boolean isAfter(long trainingStart, long trainingId) {
+        return trainingStart < startTime || trainingStart == startTime && trainingId < id;
+    }
+
+    @Override
+    public String toString() {
+        return startTime + "_" + id;
+    }
+}
@@ -0,0 +1,50 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+
+/**
+ * Indeks, od którego zaczyna się wyszukiwanie treningów. Plan wybiera najbardziej selektywny predykat pokryty
+ * indeksem, w kolejności:
+ * <ol>
+ *     <li>użytkownik - {@code idx_trainings_user_start_end}, kilkadziesiąt-kilkaset treningów na użytkownika,
+ *     zakres czasu zawęża odczyt w tym samym indeksie,</li>
+ *     <li>typ aktywności - {@code idx_trainings_type_start}; sam typ wybiera ok. 1/5 tabeli, ale razem z zakresem
+ *     czasu indeks czyta tylko ten zakres,</li>
+ *     <li>zakres czasu rozpoczęcia - {@code idx_trainings_start}.</li>
+ * </ol>
+ * Dystans i prędkość nie są indeksowane i tylko zawężają wynik. Zapytanie bez żadnego indeksowanego predykatu
+ * czytałoby całą tabelę, dlatego jest odrzucane. Wszystkie plany zwracają treningi od najpóźniej rozpoczętego,
+ * czyli w kolejności drugiej kolumny indeksu.
+ */
+enum TrainingSearchPlan {
+
+    BY_USER("idx_trainings_user_start_end"),
+    BY_ACTIVITY_TYPE("idx_trainings_type_start"),
+    BY_START_TIME("idx_trainings_start");
+
+    private final String index;
+
+    TrainingSearchPlan(String index) {
+        this.index = index;
+    }
+
+    String index() {
+        return index;
+    }
+
+    /**
+     * @throws BusinessException jeśli żaden filtr nie jest pokryty indeksem
+     */
+    static TrainingSearchPlan of(TrainingSearchCriteria criteria) {
+        if (criteria.userId() != null) {
+            return BY_USER;
+        }
+        if (criteria.activityType() != null) {
+            return BY_ACTIVITY_TYPE;
+        }
+        if (criteria.hasTimeRange()) {
+            return BY_START_TIME;
+        }
+        throw new BusinessException("Search requires at least one of: userId, activityType, from, to");
+    }
+}
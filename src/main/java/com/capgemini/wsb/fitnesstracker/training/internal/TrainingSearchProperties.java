@@ -0,0 +1,18 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Konfiguracja wyszukiwania treningów.
+ *
+ * @param defaultLimit rozmiar strony, gdy klient go nie podał
+ * @param maxLimit     największy dopuszczalny rozmiar strony
+ */
+@ConfigurationProperties(prefix = "training.search")
+record TrainingSearchProperties(
+        @DefaultValue("50") int defaultLimit,
+        @DefaultValue("500") int maxLimit
+) {
+
+}
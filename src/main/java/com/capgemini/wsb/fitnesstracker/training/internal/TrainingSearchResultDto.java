@@ -0,0 +1,20 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * Strona wyników wyszukiwania treningów.
+ *
+ * @param trainings  treningi od najpóźniej rozpoczętego
+ * @param nextCursor kursor następnej strony lub {@code null}, jeśli to ostatnia strona
+ * @param index      indeks, od którego zaczęło się wyszukiwanie
+ */
+record TrainingSearchResultDto(
+        List<Training> trainings,
+        @Nullable String nextCursor,
+        String index
+) {
+}
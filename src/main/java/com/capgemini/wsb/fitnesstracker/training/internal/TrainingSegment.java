@@ -0,0 +1,317 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.VarInts;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Niezmienny, kolumnowy plik segmentu z zarchiwizowanymi treningami.
+ * <p>
+ * Wiersze posortowane są po {@code (user_id, start_time)} i podzielone na bloki po {@value #BLOCK_SIZE}. W bloku
+ * każda kolumna zapisana jest osobno: ID, ID użytkownika i czas rozpoczęcia jako różnice względem poprzedniego
+ * wiersza, czas trwania jako liczba, wszystkie w kodowaniu {@link VarInts}. Rzadki indeks na końcu pliku przechowuje
+ * dla każdego bloku zakres ID użytkowników i najpóźniejszy czas zakończenia, co pozwala pominąć bloki bez
+ * dekodowania. Plik jest mapowany do pamięci ({@link MappedByteBuffer}) i dekodowany bezpośrednio z mapowania.
+ * <pre>
+ * nagłówek: magic, wersja, liczba wierszy, liczba bloków, min end_time, max end_time, pozycja indeksu
+ * bloki:    7 x int (pozycje kolumn względem początku bloku), kolumny
+ * indeks:   dla każdego bloku: pierwszy user_id, ostatni user_id, max end_time, pozycja, liczba wierszy
+ * </pre>
+ */
+final class TrainingSegment {
+
+    static final int BLOCK_SIZE = 256;
+
+    private static final int MAGIC = 0x46544153;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 3 * Long.BYTES;
+    private static final int INDEX_ENTRY_SIZE = 3 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int COLUMN_COUNT = 7;
+    private static final ActivityType[] ACTIVITY_TYPES = ActivityType.values();
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final int blockCount;
+    private final long minEndTime;
+    private final long maxEndTime;
+    private final int indexOffset;
+
+    private TrainingSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a training segment file: " + path);
+        }
+        this.rowCount = buffer.getInt(8);
+        this.blockCount = buffer.getInt(12);
+        this.minEndTime = buffer.getLong(16);
+        this.maxEndTime = buffer.getLong(24);
+        this.indexOffset = (int) buffer.getLong(32);
+    }
+
+    /**
+     * Zapisuje treningi do nowego pliku segmentu. Plik jest najpierw zapisywany obok i utrwalany na dysku,
+     * a dopiero potem atomowo przenoszony pod docelową nazwę - czytelnik nigdy nie zobaczy niepełnego segmentu.
+     */
+    static TrainingSegment write(Path path, List<ArchivedTraining> trainings) throws IOException {
+        if (trainings.isEmpty()) {
+            throw new IllegalArgumentException("Segment must contain at least one training");
+        }
+        List<ArchivedTraining> sorted = trainings.stream()
+                .sorted(Comparator.comparingLong(ArchivedTraining::userId).thenComparingLong(ArchivedTraining::startTime))
+                .toList();
+        int blockCount = (sorted.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+        List<ByteBuffer> blocks = new ArrayList<>(blockCount);
+        long position = HEADER_SIZE;
+        for (int from = 0; from < sorted.size(); from += BLOCK_SIZE) {
+            List<ArchivedTraining> rows = sorted.subList(from, Math.min(from + BLOCK_SIZE, sorted.size()));
+            ByteBuffer block = encodeBlock(rows);
+            index.putLong(rows.get(0).userId())
+                    .putLong(rows.get(rows.size() - 1).userId())
+                    .putLong(rows.stream().mapToLong(ArchivedTraining::endTime).max().orElseThrow())
+                    .putInt((int) position)
+                    .putInt(rows.size());
+            position += block.remaining();
+            blocks.add(block);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(sorted.size())
+                .putInt(blockCount)
+                .putLong(sorted.stream().mapToLong(ArchivedTraining::endTime).min().orElseThrow())
+                .putLong(sorted.stream().mapToLong(ArchivedTraining::endTime).max().orElseThrow())
+                .putLong(position);
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header.flip());
+            for (ByteBuffer block : blocks) {
+                writeFully(channel, block);
+            }
+            writeFully(channel, index.flip());
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    static TrainingSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new TrainingSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    long minEndTime() {
+        return minEndTime;
+    }
+
+    long maxEndTime() {
+        return maxEndTime;
+    }
+
+    /**
+     * Zwraca treningi użytkownika. Bloki wyszukiwane są binarnie w rzadkim indeksie, więc dekodowane są tylko
+     * bloki zawierające danego użytkownika.
+     */
+    List<ArchivedTraining> findByUser(long userId) {
+        List<ArchivedTraining> result = new ArrayList<>();
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastUserId(middle) < userId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int block = low; block < blockCount && firstUserId(block) <= userId; block++) {
+            decodeBlock(block, row -> {
+                if (row.userId() == userId) {
+                    result.add(row);
+                }
+                return row.userId() <= userId;
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Zwraca treningi zakończone po podanej chwili, pomijając bloki, w których wszystkie treningi zakończyły się
+     * wcześniej.
+     */
+    List<ArchivedTraining> findFinishedAfter(long time) {
+        List<ArchivedTraining> result = new ArrayList<>();
+        if (time < Long.MAX_VALUE) {
+            forEachFinishedSince(time + 1, result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Przekazuje kolejno treningi zakończone nie wcześniej niż podana chwila, bez gromadzenia ich w pamięci.
+     * Bloki, w których wszystkie treningi zakończyły się wcześniej, są pomijane.
+     */
+    void forEachFinishedSince(long time, Consumer<ArchivedTraining> visitor) {
+        if (maxEndTime < time) {
+            return;
+        }
+        for (int block = 0; block < blockCount; block++) {
+            if (blockMaxEndTime(block) >= time) {
+                decodeBlock(block, row -> {
+                    if (row.endTime() >= time) {
+                        visitor.accept(row);
+                    }
+                    return true;
+                });
+            }
+        }
+    }
+
+    List<ArchivedTraining> findAll() {
+        return findFinishedAfter(Long.MIN_VALUE);
+    }
+
+    private long firstUserId(int block) {
+        return buffer.getLong(indexOffset + block * INDEX_ENTRY_SIZE);
+    }
+
+    private long lastUserId(int block) {
+        return buffer.getLong(indexOffset + block * INDEX_ENTRY_SIZE + Long.BYTES);
+    }
+
+    private long blockMaxEndTime(int block) {
+        return buffer.getLong(indexOffset + block * INDEX_ENTRY_SIZE + 2 * Long.BYTES);
+    }
+
+    /**
+     * Dekoduje wiersze bloku, czytając każdą kolumnę z własnego widoku ({@link ByteBuffer#duplicate()})
+     * tego samego mapowania - bez kopiowania danych.
+     *
+     * @param visitor wywoływany dla kolejnych wierszy; zwrócenie {@code false} kończy dekodowanie bloku
+     */
+    private void decodeBlock(int block, Predicate<ArchivedTraining> visitor) {
+        int entry = indexOffset + block * INDEX_ENTRY_SIZE + 3 * Long.BYTES;
+        int offset = buffer.getInt(entry);
+        int rows = buffer.getInt(entry + Integer.BYTES);
+        ByteBuffer ids = column(offset, 0);
+        ByteBuffer userIds = column(offset, 1);
+        ByteBuffer startTimes = column(offset, 2);
+        ByteBuffer durations = column(offset, 3);
+        ByteBuffer types = column(offset, 4);
+        ByteBuffer distances = column(offset, 5);
+        ByteBuffer speeds = column(offset, 6);
+        long id = 0;
+        long userId = 0;
+        long startTime = 0;
+        for (int row = 0; row < rows; row++) {
+            id += VarInts.readSigned(ids);
+            userId += VarInts.readUnsigned(userIds);
+            startTime += VarInts.readSigned(startTimes);
+            long endTime = startTime + VarInts.readUnsigned(durations);
+            ArchivedTraining training = new ArchivedTraining(id, userId, startTime, endTime,
+                    ACTIVITY_TYPES[types.get()], distances.getDouble(), speeds.getDouble());
+            if (!visitor.test(training)) {
+                return;
+            }
+        }
+    }
+
+    private ByteBuffer column(int blockOffset, int column) {
+        return buffer.duplicate().position(blockOffset + buffer.getInt(blockOffset + column * Integer.BYTES));
+    }
+
+    private static ByteBuffer encodeBlock(List<ArchivedTraining> rows) {
+        ByteBuffer[] columns = {
+                ByteBuffer.allocate(rows.size() * VarInts.MAX_LENGTH),
+                ByteBuffer.allocate(rows.size() * VarInts.MAX_LENGTH),
+                ByteBuffer.allocate(rows.size() * VarInts.MAX_LENGTH),
+                ByteBuffer.allocate(rows.size() * VarInts.MAX_LENGTH),
+                ByteBuffer.allocate(rows.size()),
+                ByteBuffer.allocate(rows.size() * Double.BYTES),
+                ByteBuffer.allocate(rows.size() * Double.BYTES)
+        };
+        ArchivedTraining previous = new ArchivedTraining(0, 0, 0, 0, null, 0, 0);
+        for (ArchivedTraining row : rows) {
+            VarInts.writeSigned(columns[0], row.id() - previous.id());
+            VarInts.writeUnsigned(columns[1], row.userId() - previous.userId());
+            VarInts.writeSigned(columns[2], row.startTime() - previous.startTime());
+            VarInts.writeUnsigned(columns[3], row.endTime() - row.startTime());
+            columns[4].put((byte) row.activityType().ordinal());
+            columns[5].putDouble(row.distance());
+            columns[6].putDouble(row.averageSpeed());
+            previous = row;
+        }
+        int size = COLUMN_COUNT * Integer.BYTES;
+        for (ByteBuffer column : columns) {
+            size += column.position();
+        }
+        ByteBuffer block = ByteBuffer.allocate(size);
+        int columnOffset = COLUMN_COUNT * Integer.BYTES;
+        for (ByteBuffer column : columns) {
+            block.putInt(columnOffset);
+            columnOffset += column.position();
+        }
+        for (ByteBuffer column : columns) {
+            block.put(column.flip());
+        }
+        return block.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Trening zapisany w segmencie archiwum; czasy w milisekundach od epoki.
+     */
+    record ArchivedTraining(long id, long userId, long startTime, long endTime, ActivityType activityType,
+                            double distance, double averageSpeed) {
+
+        static ArchivedTraining of(Training training) {
+            if (training.getEndTime().before(training.getStartTime())) {
+                throw new IllegalArgumentException("Training %s ends before it starts".formatted(training.getId()));
+            }
+            return new ArchivedTraining(training.getId(), training.getUser().getId(), training.getStartTime().getTime(),
+                    training.getEndTime().getTime(), training.getActivityType(), training.getDistance(),
+                    training.getAverageSpeed());
+        }
+
+        Training toTraining(User user) {
+            return new Training(id, user, new Date(startTime), new Date(endTime), activityType, distance, averageSpeed);
+        }
+    }
+}
@@ -1,12 +1,27 @@
 package com.capgemini.wsb.fitnesstracker.training.internal;
 
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
 import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.exception.api.VersionConflictException;
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingNotFoundException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingOverlapException;
 import com.capgemini.wsb.fitnesstracker.training.api.TrainingProvider;
 import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.lang.Nullable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
 
@@ -15,12 +30,34 @@ import java.util.*;
 @Slf4j
 public class TrainingServiceImpl implements TrainingProvider, TrainingService {
     private final TrainingRepository trainingRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TrainingUserLocks userLocks;
+    private final TrainingDuplicateFilter duplicateFilter;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardedTrainingStore shardedStore;
+    private final TrainingArchive archive;
+    private final StatisticsCalories statisticsCalories;
+    private final CalorieEstimator calorieEstimator;
+    private final SingleFlight<Long, List<Training>> userTrainingsSingleFlight;
+    private final TrainingGroupCommitter groupCommitter;
 
     @Override
     public Optional<User> getAllTrainings(final Long trainingId) {
         throw new UnsupportedOperationException("Not finished yet");
     }
 
+    /**
+     * Zapisuje nowy trening. Sprawdzenie nakładania się z innymi treningami użytkownika i zapis
+     * wykonywane są pod blokadą użytkownika, a transakcja jest zatwierdzana przed zwolnieniem blokady.
+     * W trybie {@code training.ingestion.mode=group-commit} zapis wykonuje {@link TrainingGroupCommitter}.
+     * Przy shardowaniu statystyki w bazie głównej zmieniane są po zapisie do sharda, w osobnej transakcji.
+     *
+     * @param training trening do zapisania
+     * @return zapisany trening
+     * @throws DuplicateTrainingException           jeśli identyczny trening został już zapisany
+     * @throws TrainingOverlapException             jeśli trening nakłada się na inny trening użytkownika
+     * @throws TrainingIngestionOverloadedException jeśli kolejka zapisu grupowego jest pełna
+     */
     @Override
     public Training createTraining(Training training)
     {
@@ -28,19 +65,292 @@ public class TrainingServiceImpl implements TrainingProvider, TrainingService {
         if (training.getId() != null) {
             throw new IllegalArgumentException("Training id is already set");
         }
-        return trainingRepository.save(training);
+        validateTimeRange(training);
+        training.setFingerprint(TrainingFingerprint.of(training));
+        Training created;
+        if (shardedStore.enabled()) {
+            created = userLocks.withUserLock(training.getUser().getId(), () -> {
+                shardedStore.findIdByFingerprint(training.getUser().getId(), training.getFingerprint())
+                        .ifPresent(existingId -> {
+                            throw new DuplicateTrainingException(existingId);
+                        });
+                ensureNoOverlap(training);
+                estimateCalories(training);
+                Training saved = shardedStore.insert(training);
+                addStatisticsCalories(saved.getUser().getId(), null, saved.getCalories());
+                eventPublisher.publishEvent(new TrainingCreatedEvent(saved));
+                return saved;
+            });
+        } else if (groupCommitter.enabled()) {
+            created = groupCommitter.submit(training);
+        } else {
+            created = userLocks.withUserLock(training.getUser().getId(), () -> transactionTemplate.execute(status -> {
+                duplicateFilter.ensureNotDuplicate(training.getFingerprint());
+                ensureNoOverlap(training);
+                estimateCalories(training);
+                Training saved = saveUnique(training);
+                statisticsCalories.add(saved.getUser().getId(), saved.getCalories());
+                eventPublisher.publishEvent(new TrainingCreatedEvent(saved));
+                return saved;
+            }));
+        }
+        userTrainingsSingleFlight.forget(training.getUser().getId());
+        return created;
     }
 
+    /**
+     * Aktualizuje istniejący trening, odrzucając zmiany, po których nakładałby się na inny trening użytkownika.
+     * Zapis bez sprawdzania wersji - wygrywa ostatnia zmiana.
+     *
+     * @param training trening z ustawionym ID
+     * @return zaktualizowany trening
+     * @throws TrainingNotFoundException  jeśli trening nie istnieje
+     * @throws DuplicateTrainingException jeśli po zmianie trening byłby identyczny z innym
+     * @throws TrainingOverlapException   jeśli trening nakłada się na inny trening użytkownika
+     */
     @Override
+    public Training updateTraining(Training training)
+    {
+        log.info("Updating training {}", training);
+        validateTimeRange(training);
+        return patch(training.getId(), training.getUser().getId(), TrainingPatch.replacing(training));
+    }
+
+    /**
+     * Zmienia wybrane pola treningu (JSON Merge Patch). Trening odczytywany jest w transakcji - zwykle z cache
+     * drugiego poziomu - a zmiana zapisywana jednym {@code UPDATE} obejmującym tylko zmienione kolumny, z warunkiem
+     * na wersję wiersza. Przy shardowaniu wersja sprawdzana jest warunkiem {@code UPDATE} w shardzie.
+     *
+     * @param trainingId ID treningu
+     * @param patch      zmiana
+     * @return zaktualizowany trening
+     * @throws TrainingNotFoundException  jeśli trening nie istnieje
+     * @throws VersionConflictException   jeśli podana wersja nie jest aktualna lub trening zmieniono równolegle
+     * @throws DuplicateTrainingException jeśli po zmianie trening byłby identyczny z innym
+     * @throws TrainingOverlapException   jeśli trening nakłada się na inny trening użytkownika
+     */
+    public Training patchTraining(Long trainingId, TrainingPatch patch) {
+        log.info("Patching training {} with {}", trainingId, patch);
+        Training current = getTrainingById(trainingId).orElseThrow(() -> new TrainingNotFoundException(trainingId));
+        return patch(trainingId, current.getUser().getId(), patch);
+    }
+
+    private Training patch(Long trainingId, Long userId, TrainingPatch patch) {
+        Training updated;
+        if (shardedStore.enabled()) {
+            updated = userLocks.withUserLock(userId, () -> {
+                Training training = shardedStore.findById(trainingId)
+                        .orElseThrow(() -> new TrainingNotFoundException(trainingId));
+                ensureVersion(training, patch.version());
+                TrainingMeasures previous = TrainingMeasures.of(training);
+                Integer previousCalories = training.getCalories();
+                prepareUpdate(training, patch);
+                estimateCalories(training);
+                Training saved = shardedStore.update(training);
+                addStatisticsCalories(userId, previousCalories, saved.getCalories());
+                eventPublisher.publishEvent(new TrainingUpdatedEvent(previous, saved));
+                return saved;
+            });
+        } else {
+            try {
+                updated = userLocks.withUserLock(userId, () -> transactionTemplate.execute(status -> {
+                    Training training = findOfLiveUser(trainingId)
+                            .orElseThrow(() -> new TrainingNotFoundException(trainingId));
+                    ensureVersion(training, patch.version());
+                    TrainingMeasures previous = TrainingMeasures.of(training);
+                    Integer previousCalories = training.getCalories();
+                    prepareUpdate(training, patch);
+                    estimateCalories(training);
+                    Training saved = saveUnique(training);
+                    addStatisticsCalories(userId, previousCalories, saved.getCalories());
+                    eventPublisher.publishEvent(new TrainingUpdatedEvent(previous, saved));
+                    return saved;
+                }));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                throw new VersionConflictException("Training with ID=%s was modified concurrently".formatted(trainingId));
+            }
+        }
+        userTrainingsSingleFlight.forget(userId);
+        return updated;
+    }
+
+    private void prepareUpdate(Training training, TrainingPatch patch) {
+        patch.applyTo(training);
+        validateTimeRange(training);
+        training.setFingerprint(TrainingFingerprint.of(training));
+        if (patch.changesTime()) {
+            ensureNoOverlap(training);
+        }
+    }
+
+    private static void ensureVersion(Training training, @Nullable Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != training.getVersion()) {
+            throw new VersionConflictException("Training with ID=%s has version %d, not %d"
+                    .formatted(training.getId(), training.getVersion(), expectedVersion));
+        }
+    }
+
+    /**
+     * Zmienia sumę kalorii w statystykach użytkownika o różnicę kalorii treningu. Przy zapisie do bazy głównej
+     * wywoływane w transakcji zapisu, przy shardowaniu - w osobnej transakcji po zapisie do sharda.
+     */
+    private void addStatisticsCalories(Long userId, @Nullable Integer previousCalories, @Nullable Integer calories) {
+        int delta = caloriesOrZero(calories) - caloriesOrZero(previousCalories);
+        if (delta != 0) {
+            transactionTemplate.executeWithoutResult(status -> statisticsCalories.add(userId, delta));
+        }
+    }
+
+    private static int caloriesOrZero(@Nullable Integer calories) {
+        return calories == null ? 0 : calories;
+    }
+
+    /**
+     * Treningi użytkownika nie nakładają się na siebie, więc posortowane po czasie rozpoczęcia mają też
+     * posortowane czasy zakończenia. Wystarczy zatem sprawdzić jeden trening - ostatni rozpoczęty przed końcem
+     * nowego, a przy równych początkach ten kończący się najpóźniej - co sprowadza się do jednego odczytu z indeksu
+     * zamiast przeglądania wszystkich treningów. Bez shardowania trening sprawdzany jest też względem archiwum,
+     * które zgłasza również identyczny zarchiwizowany trening jako duplikat.
+     */
+    private void ensureNoOverlap(Training training) {
+        if (!shardedStore.enabled()) {
+            archive.ensureNoConflict(training);
+        }
+        Optional<Training> latest = shardedStore.enabled()
+                ? shardedStore.findLatestStartedBefore(training.getUser(), training.getEndTime(), training.getId())
+                : trainingRepository.findLatestStartedBefore(
+                        training.getUser().getId(), training.getEndTime(), training.getId(), Limit.of(1)).stream().findFirst();
+        latest
+                .filter(previous -> previous.getEndTime().after(training.getStartTime()))
+                .ifPresent(previous -> {
+                    throw new TrainingOverlapException(previous.getId());
+                });
+    }
+
+    /**
+     * Zapisuje trening i rejestruje jego odcisk w filtrze duplikatów. Jeśli duplikat przeszedł przez filtr
+     * (np. zapis z innej instancji), naruszenie unikalnego indeksu zamieniane jest na {@link DuplicateTrainingException}.
+     */
+    private Training saveUnique(Training training) {
+        try {
+            Training saved = trainingRepository.saveAndFlush(training);
+            duplicateFilter.register(saved.getFingerprint());
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            if (TrainingFingerprint.isViolatedBy(e)) {
+                throw new DuplicateTrainingException();
+            }
+            throw e;
+        }
+    }
+
+    private void estimateCalories(Training training) {
+        training.setCalories(calorieEstimator.estimate(training), calorieEstimator.modelVersion());
+    }
+
+    private static void validateTimeRange(Training training) {
+        if (training.getStartTime() == null || training.getEndTime() == null) {
+            throw new BusinessException("Training start and end time are required");
+        }
+        if (training.getEndTime().before(training.getStartTime())) {
+            throw new BusinessException("Training cannot end before it starts");
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Training> findAllTrainings()
+    {
+        if (shardedStore.enabled()) {
+            return shardedStore.findAll();
+        }
+        return withArchived(archive.findAll(), trainingRepository.findAllOfLiveUsers());
+    }
+
+    /**
+     * Zwraca treningi użytkownika. Równoczesne wywołania dla tego samego użytkownika wykonują jeden odczyt i dzielą
+     * jego wynik (lub wyjątek), więc zwracana lista jest niemodyfikowalna. Wywołanie w trakcie transakcji czyta
+     * samodzielnie, żeby widzieć jej zmiany.
+     */
+    @Override
+    public List<Training> getTrainingsByUser(User user)
+    {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loadTrainingsByUser(user);
+        }
+        return userTrainingsSingleFlight.load(user.getId(), () -> {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            readOnly.setReadOnly(true);
+            return readOnly.execute(status -> loadTrainingsByUser(user));
+        });
+    }
+
+    private List<Training> loadTrainingsByUser(User user) {
+        if (shardedStore.enabled()) {
+            return List.copyOf(shardedStore.findByUser(user));
+        }
+        return List.copyOf(withArchived(archive.findByUser(user), trainingRepository.getTrainingsByUser(user)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Training> getTrainingsByType(ActivityType activityType)
+    {
+        if (shardedStore.enabled()) {
+            return shardedStore.findByType(activityType);
+        }
+        return withArchived(archive.findByType(activityType), trainingRepository.getTrainingsByType(activityType));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<Training> getTrainingsFinishedAfter(Date dateTime)
     {
-        return trainingRepository.getTrainingsFinishedAfter(dateTime);
+        if (shardedStore.enabled()) {
+            return shardedStore.findFinishedAfter(dateTime);
+        }
+        return withArchived(archive.findFinishedAfter(dateTime), trainingRepository.getTrainingsFinishedAfter(dateTime));
     }
 
+    /**
+     * Łączy treningi z archiwum z treningami z bazy. Trening obecny w obu miejscach (przerwana archiwizacja)
+     * zwracany jest tylko raz, w wersji z bazy. Archiwum nie przechowuje kalorii, więc treningi z archiwum
+     * są szacowane przy odczycie bieżącym modelem.
+     */
+    private List<Training> withArchived(List<Training> archived, List<Training> hot) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        archived.forEach(this::estimateCalories);
+        Set<Long> hotIds = new HashSet<>();
+        hot.forEach(training -> hotIds.add(training.getId()));
+        List<Training> merged = new ArrayList<>(archived.size() + hot.size());
+        archived.stream().filter(training -> !hotIds.contains(training.getId())).forEach(merged::add);
+        merged.addAll(hot);
+        return merged;
+    }
+
+    /**
+     * Zwraca trening z bazy (lub shardów). Archiwum nie jest tu przeszukiwane: zarchiwizowane treningi są
+     * niezmienne, więc nie można ich edytować ani usuwać pojedynczo, a segmenty są posortowane po użytkowniku -
+     * wyszukanie po samym ID wymagałoby dekodowania wszystkich segmentów przy każdym nieznanym ID. Zarchiwizowane
+     * treningi są dostępne przez odczyty po użytkowniku, typie, dacie zakończenia i wyszukiwanie.
+     */
     @Override
+    @Transactional(readOnly = true)
     public Optional<Training>  getTrainingById(Long trainingId)
     {
-        return trainingRepository.findById(trainingId);
+        return shardedStore.enabled() ? shardedStore.findById(trainingId) : findOfLiveUser(trainingId);
+    }
+
+    /**
+     * Odczyt po ID korzysta z cache encji, więc trening usuniętego użytkownika jest odfiltrowywany po odczycie.
+     * Restrykcja encji {@link User} pomija przy ładowaniu użytkownika oznaczonego jako usunięty - taki trening
+     * nie ma wtedy użytkownika.
+     */
+    private Optional<Training> findOfLiveUser(Long trainingId) {
+        return trainingRepository.findById(trainingId)
+                .filter(training -> training.getUser() != null && training.getUser().getDeletedAt() == null);
     }
 
     @Override
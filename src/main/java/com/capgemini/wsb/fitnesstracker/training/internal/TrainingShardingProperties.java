@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguracja podziału tabeli treningów na wiele baz danych (shardów) według ID użytkownika.
+ *
+ * @param enabled          czy treningi mają być przechowywane w shardach zamiast w bazie głównej
+ * @param shards           wszystkie dostępne bazy shardów
+ * @param activeShards     początkowa liczba shardów, między które rozkładane są treningi (0 - wszystkie); po pierwszym
+ *                         uruchomieniu obowiązuje układ zapisany w bazie i zmieniany przez resharding
+ * @param nodeId           numer instancji aplikacji (0-1023) używany przy generowaniu ID treningów i potwierdzaniu
+ *                         układu shardów
+ * @param layoutRefresh    co ile instancja odczytuje układ shardów zmieniony przez resharding na innej instancji
+ * @param layoutAckTimeout jak długo resharding czeka na potwierdzenie nowego układu przez pozostałe instancje
+ */
+@ConfigurationProperties(prefix = "training.sharding")
+record TrainingShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<Shard> shards,
+        @DefaultValue("0") int activeShards,
+        @DefaultValue("0") int nodeId,
+        @DefaultValue("5s") Duration layoutRefresh,
+        @DefaultValue("1m") Duration layoutAckTimeout
+) {
+
+    record Shard(String url, @Nullable String username, @Nullable String password) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.JmxEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Endpoint actuatora {@code trainingshards} do podglądu i zmiany liczby aktywnych shardów treningów.
+ * Zmiana (operacja {@code reshard} z polem {@code shards}) uruchamia resharding bez zatrzymywania aplikacji.
+ * <p>
+ * Resharding przenosi treningi wszystkich użytkowników, więc endpoint dostępny jest wyłącznie przez JMX
+ * (dla operatora) - nigdy przez HTTP.
+ */
+@Component
+@JmxEndpoint(id = "trainingshards")
+@ConditionalOnProperty(prefix = "training.sharding", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+class TrainingShardsEndpoint {
+
+    private final ShardedTrainingStore shardedStore;
+
+    @ReadOperation
+    public Map<String, Object> shards() {
+        return Map.of("activeShards", shardedStore.activeShards());
+    }
+
+    @WriteOperation
+    public Map<String, Object> reshard(int shards) {
+        long moved = shardedStore.reshard(shards);
+        return Map.of("activeShards", shardedStore.activeShards(), "movedTrainings", moved);
+    }
+}
@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * REST kontroler udostępniający strumień nowych treningów użytkownika (Server-Sent Events).
+ */
+@RestController
+@RequestMapping("/v1/users/{userId}/trainings")
+@RequiredArgsConstructor
+class TrainingStreamController {
+
+    private final TrainingStreamRegistry streamRegistry;
+    private final UserService userService;
+
+    /**
+     * Otwiera strumień SSE, do którego wysyłane są nowo zapisane treningi użytkownika.
+     * Klient wznawiający połączenie może przekazać nagłówek {@code Last-Event-ID}, aby otrzymać pominięte zdarzenia.
+     *
+     * @param userId      ID użytkownika
+     * @param lastEventId ID ostatniego odebranego zdarzenia
+     * @return emiter SSE
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTrainings(@PathVariable("userId") Long userId,
+                                      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        userService.getUserById(userId);
+        return streamRegistry.subscribe(userId, lastEventId);
+    }
+}
@@ -0,0 +1,19 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception indicating that no more training streams can be opened.
+ * Will resolve to the {@link HttpStatus#SERVICE_UNAVAILABLE}, so the client should retry later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+@SuppressWarnings("squid:S110")
+class TrainingStreamLimitExceededException extends BusinessException {
+
+    TrainingStreamLimitExceededException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja strumienia SSE z nowymi treningami użytkownika.
+ *
+ * @param maxConnections        maksymalna liczba otwartych połączeń w całej instancji
+ * @param maxConnectionsPerUser maksymalna liczba otwartych połączeń dla jednego użytkownika
+ * @param replayBufferSize      liczba ostatnich zdarzeń przechowywanych do wznowienia przez {@code Last-Event-ID}
+ * @param heartbeatInterval     odstęp między wiadomościami podtrzymującymi połączenie
+ * @param timeout               czas, po którym połączenie jest zamykane (klient powinien się połączyć ponownie)
+ * @param senderThreads         maksymalna liczba wątków wysyłających zdarzenia i wiadomości podtrzymujące; wątek
+ *                              zajęty jest tylko na czas opróżniania kolejki jednego subskrybenta
+ * @param subscriberQueueCapacity liczba zdarzeń czekających na wysłanie do jednego subskrybenta, po której
+ *                              przekroczeniu zaległe zdarzenia są odrzucane, a klient dostaje zdarzenie {@code resync}
+ * @param slowSendTimeout       czas zapisu jednego zdarzenia, po którego przekroczeniu klient jest rozłączany
+ */
+@ConfigurationProperties(prefix = "training.stream")
+record TrainingStreamProperties(
+        @DefaultValue("20000") int maxConnections,
+        @DefaultValue("5") int maxConnectionsPerUser,
+        @DefaultValue("10000") int replayBufferSize,
+        @DefaultValue("15s") Duration heartbeatInterval,
+        @DefaultValue("30m") Duration timeout,
+        @DefaultValue("32") int senderThreads,
+        @DefaultValue("256") int subscriberQueueCapacity,
+        @DefaultValue("5s") Duration slowSendTimeout
+) {
+
+}
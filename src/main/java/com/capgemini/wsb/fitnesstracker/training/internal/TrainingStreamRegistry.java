@@ -0,0 +1,319 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingCreatedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Rejestr subskrybentów strumienia SSE z nowymi treningami, pogrupowanych po ID użytkownika.
+ * <p>
+ * Połączenia są obsługiwane asynchronicznie przez kontener serwletów, więc otwarte połączenie nie zajmuje wątku.
+ * Zdarzenia i wiadomości podtrzymujące trafiają do kolejki subskrybenta, którą opróżnia zadanie puli wysyłającej
+ * ({@link TrainingStreamProperties#senderThreads()} wątków, tworzonych na czas wysyłki), a nie wątek, który zatwierdził
+ * transakcję, ani współdzielony {@code TaskScheduler}. Zapis do wolnego klienta blokuje więc tylko wątek jego
+ * kolejki, a klient, którego pojedynczy zapis trwa dłużej niż {@link TrainingStreamProperties#slowSendTimeout()},
+ * jest rozłączany i wznawia strumień po ponownym połączeniu.
+ * <p>
+ * Kolejka subskrybenta ma ograniczoną pojemność ({@link TrainingStreamProperties#subscriberQueueCapacity()}).
+ * Po jej przepełnieniu zaległe zdarzenia są odrzucane, a klient dostaje zdarzenie {@value #RESYNC_EVENT}, po którym
+ * musi pobrać pełną listę treningów.
+ * <p>
+ * Ostatnie zdarzenia trzymane są w buforze cyklicznym, z którego klient może wznowić strumień przekazując nagłówek
+ * {@code Last-Event-ID}. Bufor nie ma blokady: publikacja nadaje numer zdarzenia, zapisuje je w buforze, a dopiero
+ * potem dopisuje do kolejek zarejestrowanych subskrybentów. Nowy subskrybent jest rejestrowany przed odczytem
+ * bufora, więc zdarzenie, którego nie ma jeszcze w buforze, dostanie na żywo - do końca odtwarzania takie zdarzenia
+ * są odkładane i sortowane razem z odtworzonymi, aby żadne nie zostało wysłane dwa razy ani poza kolejnością.
+ * Zdarzenia jednego użytkownika publikowane są po kolei, bo zapisy jego treningów wykonywane są pod jego blokadą
+ * ({@link TrainingUserLocks}).
+ */
+@Component
+@Slf4j
+class TrainingStreamRegistry {
+
+    static final String TRAINING_EVENT = "training";
+    static final String RESYNC_EVENT = "resync";
+
+    private final TrainingStreamProperties properties;
+    private final ScheduledExecutorService heartbeats;
+    private final ThreadPoolExecutor senders;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<StreamedTraining> replayBuffer;
+
+    TrainingStreamRegistry(TrainingStreamProperties properties) {
+        this.properties = properties;
+        this.replayBuffer = new AtomicReferenceArray<>(properties.replayBufferSize());
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "training-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(properties.senderThreads(), properties.senderThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "training-stream-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders.allowCoreThreadTimeOut(true);
+    }
+
+    @PostConstruct
+    void startHeartbeat() {
+        long interval = properties.heartbeatInterval().toMillis();
+        heartbeats.scheduleAtFixedRate(() -> {
+            try {
+                subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(Subscriber::requestHeartbeat));
+            } catch (RuntimeException e) {
+                log.warn("Failed to schedule training stream heartbeats, will retry", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber -> subscriber.emitter().complete()));
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Rejestruje nowego subskrybenta dla użytkownika i odtwarza zdarzenia, których nie otrzymał.
+     *
+     * @param userId      ID użytkownika
+     * @param lastEventId ID ostatniego odebranego zdarzenia lub {@code null} dla nowego połączenia
+     * @return emiter SSE powiązany z połączeniem
+     * @throws TrainingStreamLimitExceededException jeśli przekroczono limit połączeń
+     */
+    SseEmitter subscribe(Long userId, Long lastEventId) {
+        if (connections.incrementAndGet() > properties.maxConnections()) {
+            connections.decrementAndGet();
+            throw new TrainingStreamLimitExceededException("Too many open training streams");
+        }
+        SseEmitter emitter = new SseEmitter(properties.timeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, lastEventId != null ? lastEventId : 0, lastEventId != null);
+        emitter.onCompletion(() -> unsubscribe(userId, subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unsubscribe(userId, subscriber));
+        boolean[] accepted = {false};
+        subscribers.compute(userId, (id, current) -> {
+            Set<Subscriber> userSubscribers = current != null ? current : ConcurrentHashMap.newKeySet();
+            if (userSubscribers.size() < properties.maxConnectionsPerUser()) {
+                accepted[0] = userSubscribers.add(subscriber);
+            }
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+        if (!accepted[0]) {
+            connections.decrementAndGet();
+            throw new TrainingStreamLimitExceededException("Too many open training streams for user ID=%s".formatted(userId));
+        }
+        if (lastEventId != null) {
+            replay(userId, lastEventId, subscriber);
+        }
+        return emitter;
+    }
+
+    int openConnections() {
+        return connections.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onTrainingCreated(TrainingCreatedEvent event) {
+        Training training = event.training();
+        if (training.getUser() == null || training.getUser().getId() == null) {
+            return;
+        }
+        Long userId = training.getUser().getId();
+        StreamedTraining streamed = new StreamedTraining(sequence.incrementAndGet(), userId, training);
+        replayBuffer.set(slot(streamed.eventId()), streamed);
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers != null) {
+            userSubscribers.forEach(subscriber -> subscriber.enqueue(streamed));
+        }
+    }
+
+    /**
+     * Odtwarza zdarzenia, których subskrybent nie otrzymał. Zdarzenie z numerem już nadanym, ale jeszcze niezapisane
+     * w buforze, trafi do subskrybenta na żywo; zdarzenie nadpisane w buforze nowszym oznacza lukę.
+     */
+    private void replay(Long userId, long lastEventId, Subscriber subscriber) {
+        long lastPublished = sequence.get();
+        boolean gap = lastEventId > lastPublished || lastPublished - lastEventId > replayBuffer.length();
+        List<StreamedTraining> replayed = new ArrayList<>();
+        for (long eventId = Math.max(lastEventId + 1, lastPublished - replayBuffer.length() + 1);
+             !gap && eventId <= lastPublished; eventId++) {
+            StreamedTraining streamed = replayBuffer.get(slot(eventId));
+            if (streamed != null && streamed.eventId() > eventId) {
+                gap = true;
+            } else if (streamed != null && streamed.eventId() == eventId && streamed.userId().equals(userId)) {
+                replayed.add(streamed);
+            }
+        }
+        // Część zdarzeń wypadła już z bufora - klient musi pobrać pełną listę treningów.
+        subscriber.finishReplay(replayed, gap);
+    }
+
+    private int slot(long eventId) {
+        return (int) (eventId % replayBuffer.length());
+    }
+
+    private void unsubscribe(Long userId, Subscriber subscriber) {
+        subscribers.computeIfPresent(userId, (id, userSubscribers) -> {
+            if (userSubscribers.remove(subscriber)) {
+                connections.decrementAndGet();
+            }
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+    }
+
+    private record StreamedTraining(long eventId, Long userId, Training training) {
+    }
+
+    /**
+     * Połączenie subskrybenta z ograniczoną kolejką zdarzeń do wysłania. Kolejkę opróżnia najwyżej jedno zadanie
+     * puli naraz, więc zdarzenia wysyłane są w kolejności dopisania; zdarzenia o ID nie większym niż ostatnio
+     * wysłane są pomijane.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Deque<StreamedTraining> queue = new ArrayDeque<>();
+        /**
+         * Zdarzenia otrzymane na żywo w trakcie odtwarzania; {@code null} po jego zakończeniu.
+         */
+        private TreeMap<Long, StreamedTraining> pendingReplay;
+        private boolean resync;
+        private boolean heartbeat;
+        private boolean draining;
+        /**
+         * Używane tylko przez zadanie opróżniające kolejkę.
+         */
+        private long lastSentEventId;
+
+        private Subscriber(SseEmitter emitter, long lastSentEventId, boolean replaying) {
+            this.emitter = emitter;
+            this.lastSentEventId = lastSentEventId;
+            this.pendingReplay = replaying ? new TreeMap<>() : null;
+        }
+
+        SseEmitter emitter() {
+            return emitter;
+        }
+
+        synchronized void enqueue(StreamedTraining streamed) {
+            if (pendingReplay != null) {
+                pendingReplay.put(streamed.eventId(), streamed);
+                return;
+            }
+            if (queue.size() >= properties.subscriberQueueCapacity()) {
+                log.debug("Training stream queue overflow, requesting resync");
+                queue.clear();
+                resync = true;
+            }
+            queue.addLast(streamed);
+            scheduleDrain();
+        }
+
+        synchronized void finishReplay(List<StreamedTraining> replayed, boolean gap) {
+            replayed.forEach(streamed -> pendingReplay.putIfAbsent(streamed.eventId(), streamed));
+            List<StreamedTraining> ordered = new ArrayList<>(pendingReplay.values());
+            pendingReplay = null;
+            resync = gap;
+            ordered.forEach(this::enqueue);
+            scheduleDrain();
+        }
+
+        synchronized void requestHeartbeat() {
+            heartbeat = true;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!draining && (resync || heartbeat || !queue.isEmpty())) {
+                draining = true;
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                SseEmitter.SseEventBuilder event;
+                synchronized (this) {
+                    StreamedTraining next = null;
+                    if (!resync) {
+                        next = queue.pollFirst();
+                        while (next != null && next.eventId() <= lastSentEventId) {
+                            next = queue.pollFirst();
+                        }
+                    }
+                    if (resync) {
+                        resync = false;
+                        event = SseEmitter.event().name(RESYNC_EVENT).data("");
+                    } else if (next != null) {
+                        lastSentEventId = next.eventId();
+                        event = SseEmitter.event()
+                                .id(String.valueOf(next.eventId()))
+                                .name(TRAINING_EVENT)
+                                .data(next.training(), MediaType.APPLICATION_JSON);
+                    } else if (heartbeat) {
+                        heartbeat = false;
+                        event = SseEmitter.event().comment("heartbeat");
+                    } else {
+                        draining = false;
+                        return;
+                    }
+                }
+                if (!send(event)) {
+                    synchronized (this) {
+                        queue.clear();
+                        draining = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder event) {
+            long startedAt = System.nanoTime();
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Closing broken training stream: {}", e.getMessage());
+                emitter.completeWithError(e);
+                return false;
+            }
+            if (System.nanoTime() - startedAt > properties.slowSendTimeout().toNanos()) {
+                log.debug("Closing slow training stream");
+                emitter.complete();
+                return false;
+            }
+            return true;
+        }
+    }
+}
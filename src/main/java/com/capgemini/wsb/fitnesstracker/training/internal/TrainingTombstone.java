@@ -0,0 +1,42 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Ślad usuniętego treningu dla synchronizacji przyrostowej ({@link TrainingChanges}). Numer zmiany pochodzi
+ * z tej samej sekwencji co {@code trainings.change_seq}, więc usunięcia i zmiany tworzą jeden uporządkowany strumień.
+ * Ślady starsze niż {@code training.changes.tombstone-retention} są usuwane.
+ * <p>
+ * Tabela jest obsługiwana zapytaniami JDBC w {@link TrainingChanges}; encja opisuje jej schemat.
+ */
+@Entity
+@Table(name = "training_tombstones", indexes = {
+        @Index(name = "idx_training_tombstones_user_change", columnList = "user_id, change_seq"),
+        @Index(name = "idx_training_tombstones_deleted_at", columnList = "deleted_at")
+})
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+class TrainingTombstone {
+
+    @Id
+    @Column(name = "training_id")
+    private Long trainingId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "change_seq", nullable = false)
+    private long changeSeq;
+
+    @Column(name = "deleted_at", nullable = false)
+    private Instant deletedAt;
+}
@@ -0,0 +1,12 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+
+/**
+ * Zdarzenie publikowane po aktualizacji treningu.
+ *
+ * @param previous wartości treningu sprzed aktualizacji
+ * @param training zaktualizowany trening
+ */
+record TrainingUpdatedEvent(TrainingMeasures previous, Training training) {
+}
@@ -0,0 +1,75 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Zestaw blokad paskowych (striped locks) dla zapisów treningów jednego użytkownika.
+ * Zapisy treningów tego samego użytkownika są serializowane, dzięki czemu sprawdzenie nakładania się
+ * treningów i zapis wykonują się atomowo. Zapisy różnych użytkowników blokują się tylko przy kolizji paska.
+ * <p>
+ * Blokada działa w obrębie jednej instancji aplikacji.
+ */
+@Component
+class TrainingUserLocks {
+
+    private static final int STRIPES = 1024;
+
+    private final Lock[] locks = new Lock[STRIPES];
+
+    TrainingUserLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Wykonuje akcję trzymając blokadę paska przypisanego do użytkownika.
+     *
+     * @param userId ID użytkownika
+     * @param action akcja do wykonania
+     * @return wynik akcji
+     */
+    <T> T withUserLock(Long userId, Supplier<T> action) {
+        Lock lock = locks[stripe(userId)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wykonuje akcję trzymając blokady pasków wszystkich podanych użytkowników. Paski blokowane są w rosnącej
+     * kolejności, a pozostałe zapisy trzymają najwyżej jedną blokadę, więc nie dochodzi do zakleszczenia.
+     *
+     * @param userIds ID użytkowników
+     * @param action  akcja do wykonania
+     * @return wynik akcji
+     */
+    <T> T withUserLocks(Collection<Long> userIds, Supplier<T> action) {
+        int[] stripes = userIds.stream().mapToInt(TrainingUserLocks::stripe).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    private static int stripe(Long userId) {
+        int hash = Long.hashCode(userId);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,13 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import java.util.List;
+
+/**
+ * Zdarzenie publikowane po usunięciu porcji treningów usuwanego użytkownika.
+ *
+ * @param userId      właściciel usuniętych treningów
+ * @param trainingIds ID usuniętych treningów
+ * @param removed     wartości usuniętych treningów
+ */
+record TrainingsPurgedEvent(Long userId, List<Long> trainingIds, List<TrainingMeasures> removed) {
+}
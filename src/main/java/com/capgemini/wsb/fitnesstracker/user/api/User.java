@@ -6,15 +6,26 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SQLRestriction;
 
+import java.time.Instant;
 import java.time.LocalDate;
 
 /**
  * Encja reprezentująca użytkownika w aplikacji fitness tracker.
+ * Przechowywana w cache drugiego poziomu (region {@code users}), bo jest dociągana do każdego treningu.
  */
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = @Index(name = "idx_users_deleted_at", columnList = "deleted_at"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@DynamicUpdate
+@SQLRestriction("deleted_at IS NULL")
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
@@ -37,6 +48,18 @@ public class User {
     @Column(nullable = false, unique = true)
     private String email;
 
+    @Column(name = "deleted_at")
+    @Nullable
+    private Instant deletedAt;
+
+    /**
+     * Wersja wiersza, zwiększana przy każdej zmianie przez Hibernate (optymistyczne blokowanie).
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private long version;
+
     public User(String firstName, String lastName, LocalDate birthdate, String email) {
         this.firstName = firstName;
         this.lastName = lastName;
@@ -44,6 +67,14 @@ public class User {
         this.email = email;
     }
 
+    /**
+     * Oznacza użytkownika jako usuniętego. Od zatwierdzenia zmiany użytkownik i jego treningi nie są zwracane
+     * przez zapytania, a ich dane usuwane są w tle.
+     */
+    public void markDeleted(Instant deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
@@ -7,6 +7,7 @@ import java.time.LocalDate;
 
 public record UserDto(@Nullable Long id, String firstName, String lastName,
                       @JsonFormat(pattern = "yyyy-MM-dd") LocalDate birthdate,
-                      String email) {
+                      String email,
+                      @Nullable Long version) {
 
 }
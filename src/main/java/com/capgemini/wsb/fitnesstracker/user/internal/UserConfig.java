@@ -0,0 +1,19 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
+import com.capgemini.wsb.fitnesstracker.user.api.UserDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({UserReadCoalescingProperties.class, UserImportProperties.class,
+        UserDeletionProperties.class})
+class UserConfig {
+
+    @Bean
+    SingleFlight<Long, UserDto> userByIdSingleFlight(UserReadCoalescingProperties properties, MeterRegistry meterRegistry) {
+        return new SingleFlight<>("user.by.id", properties.ttl(), properties.maxKeys(), meterRegistry);
+    }
+}
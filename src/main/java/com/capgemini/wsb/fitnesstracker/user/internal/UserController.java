@@ -1,15 +1,23 @@
 package com.capgemini.wsb.fitnesstracker.user.internal;
 
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.common.api.SparseFieldset;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
 import com.capgemini.wsb.fitnesstracker.user.api.UserDto;
 import com.capgemini.wsb.fitnesstracker.user.api.UserNotFoundException;
-import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -20,35 +28,37 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 class UserController {
 
-    private final UserService userService;
+    private static final List<String> SIMPLE_FIELDS = List.of("id", "email");
+
+    private final UserServiceImpl userService;
     private final UserMapper userMapper;
+    private final UserImporter userImporter;
+    private final ObjectMapper objectMapper;
+    private final UserDeletionRepository deletionRepository;
+    private final UserProjections userProjections;
 
     /**
-     * Pobiera wszystkich użytkowników.
+     * Pobiera wszystkich użytkowników. Parametr {@code fields} ogranicza zwracane pola (i kolumny czytane z bazy).
      *
-     * @return ResponseEntity zawierające listę UserDto.
+     * @param fields pola oddzielone przecinkami: id, firstName, lastName, birthdate, email, version (domyślnie wszystkie).
+     * @return ResponseEntity zawierające listę użytkowników z żądanymi polami.
      */
     @GetMapping
-    public ResponseEntity<List<UserDto>> getAllUsers() {
-        List<UserDto> users = userService.getAllUsers()
-                .stream()
-                .map(userMapper::toDto)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<Map<String, Object>>> getAllUsers(@RequestParam(required = false) @Nullable String fields) {
+        return ResponseEntity.ok(userProjections.findAll(
+                SparseFieldset.parse(fields, UserProjections.FIELDS, UserProjections.FIELDS)));
     }
 
     /**
-     * Pobiera wszystkich użytkowników w uproszczonym formacie.
+     * Pobiera wszystkich użytkowników w uproszczonym formacie (ID i e-mail).
      *
-     * @return ResponseEntity zawierające listę UserDto.
+     * @param fields pola oddzielone przecinkami, jak w {@link #getAllUsers(String)} (domyślnie id, email).
+     * @return ResponseEntity zawierające listę użytkowników z żądanymi polami.
      */
     @GetMapping("/simple")
-    public ResponseEntity<List<UserDto>> getAllSimpleUsers() {
-        List<UserDto> users = userService.getAllUsers()
-                .stream()
-                .map(userMapper::toDto)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<Map<String, Object>>> getAllSimpleUsers(@RequestParam(required = false) @Nullable String fields) {
+        return ResponseEntity.ok(userProjections.findAll(
+                SparseFieldset.parse(fields, UserProjections.FIELDS, SIMPLE_FIELDS)));
     }
 
     /**
@@ -60,8 +70,7 @@ class UserController {
     @GetMapping("/{id}")
     public ResponseEntity<UserDto> getUserById(@PathVariable Long id) {
         try {
-            UserDto userDto = userMapper.toDto(userService.getUserById(id));
-            return ResponseEntity.ok(userDto);
+            return ResponseEntity.ok(userService.findUserById(id));
         } catch (UserNotFoundException e) {
             return ResponseEntity.notFound().build();
         }
@@ -94,6 +103,29 @@ class UserController {
         return ResponseEntity.status(201).body(createdUser);
     }
 
+    /**
+     * Importuje użytkowników z tablicy JSON. Treść żądania jest czytana strumieniowo.
+     *
+     * @param body tablica obiektów w formacie UserDto (bez ID)
+     * @return ResponseEntity zawierające wynik każdego wiersza.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UserImportReport> importUsersFromJson(InputStream body) throws IOException {
+        return ResponseEntity.ok(userImporter.importUsers(UserImportParser.json(body, objectMapper)));
+    }
+
+    /**
+     * Importuje użytkowników z CSV z nagłówkiem {@code firstName,lastName,birthdate,email}. Treść żądania jest
+     * czytana strumieniowo.
+     *
+     * @param body dane w formacie CSV
+     * @return ResponseEntity zawierające wynik każdego wiersza.
+     */
+    @PostMapping(value = "/batch", consumes = "text/csv")
+    public ResponseEntity<UserImportReport> importUsersFromCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(userImporter.importUsers(UserImportParser.csv(body)));
+    }
+
     /**
      * Aktualizuje istniejącego użytkownika.
      *
@@ -112,7 +144,25 @@ class UserController {
     }
 
     /**
-     * Usuwa użytkownika po jego ID.
+     * Zmienia wybrane pola użytkownika (JSON Merge Patch).
+     *
+     * @param id    ID użytkownika do aktualizacji.
+     * @param patch zmienione pola: firstName, lastName, birthdate, email oraz opcjonalnie version - wersja
+     *              użytkownika, na podstawie której przygotowano zmianę.
+     * @return ResponseEntity zawierające zaktualizowany UserDto, 404, jeśli nie znaleziono, lub 409, jeśli wersja
+     * nie jest aktualna.
+     */
+    @PatchMapping(value = "/{id}", consumes = MergePatch.MEDIA_TYPE)
+    public ResponseEntity<UserDto> patchUser(@PathVariable Long id, @RequestBody JsonNode patch) {
+        try {
+            return ResponseEntity.ok(userService.patchUser(id, UserPatch.of(MergePatch.of(patch, objectMapper, UserPatch.FIELDS))));
+        } catch (UserNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Usuwa użytkownika po jego ID. Dane użytkownika usuwane są w tle - postęp zwraca {@code GET /{id}/deletion}.
      *
      * @param id ID użytkownika do usunięcia.
      * @return ResponseEntity ze statusem 204, jeśli operacja się powiodła, lub 404, jeśli nie znaleziono.
@@ -127,6 +177,17 @@ class UserController {
         }
     }
 
+    /**
+     * Pobiera postęp usuwania danych użytkownika.
+     *
+     * @param id ID usuniętego użytkownika.
+     * @return ResponseEntity zawierające postęp usuwania lub 404, jeśli użytkownik nie był usuwany.
+     */
+    @GetMapping("/{id}/deletion")
+    public ResponseEntity<UserDeletionDto> getUserDeletion(@PathVariable Long id) {
+        return ResponseEntity.of(deletionRepository.findById(id).map(UserDeletionDto::of));
+    }
+
     /**
      * Wyszukuje użytkowników po e-mailu.
      *
@@ -0,0 +1,48 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Postęp usuwania danych użytkownika oznaczonego jako usunięty. Wiersz bez {@code finished_at} oznacza usuwanie
+ * do dokończenia - także po restarcie aplikacji.
+ */
+@Entity
+@Table(name = "user_deletions")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+class UserDeletion {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "requested_at", nullable = false)
+    private Instant requestedAt;
+
+    @Column(name = "trainings_total", nullable = false)
+    private long trainingsTotal;
+
+    @Column(name = "trainings_deleted", nullable = false)
+    private long trainingsDeleted;
+
+    @Column(name = "finished_at")
+    @Nullable
+    private Instant finishedAt;
+
+    UserDeletion(Long userId, Instant requestedAt, long trainingsTotal) {
+        this.userId = userId;
+        this.requestedAt = requestedAt;
+        this.trainingsTotal = trainingsTotal;
+    }
+}
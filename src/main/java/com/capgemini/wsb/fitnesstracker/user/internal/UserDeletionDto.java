@@ -0,0 +1,17 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Postęp usuwania danych użytkownika.
+ */
+record UserDeletionDto(Long userId, Instant requestedAt, long trainingsTotal, long trainingsDeleted,
+                       @Nullable Instant finishedAt) {
+
+    static UserDeletionDto of(UserDeletion deletion) {
+        return new UserDeletionDto(deletion.getUserId(), deletion.getRequestedAt(), deletion.getTrainingsTotal(),
+                deletion.getTrainingsDeleted(), deletion.getFinishedAt());
+    }
+}
@@ -0,0 +1,22 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja usuwania danych usuniętych użytkowników ({@code DELETE /v1/users/{id}}).
+ *
+ * @param chunkSize          liczba treningów usuwanych w jednej transakcji
+ * @param pauseBetweenChunks przerwa między porcjami, ograniczająca obciążenie bazy
+ * @param pollInterval       co ile sprawdzać, czy zostały niedokończone usuwania (np. przerwane restartem)
+ */
+@ConfigurationProperties(prefix = "user.deletion")
+record UserDeletionProperties(
+        @DefaultValue("500") int chunkSize,
+        @DefaultValue("10ms") Duration pauseBetweenChunks,
+        @DefaultValue("30s") Duration pollInterval
+) {
+
+}
@@ -0,0 +1,23 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+interface UserDeletionRepository extends JpaRepository<UserDeletion, Long> {
+
+    @Query("select d.userId from UserDeletion d where d.finishedAt is null order by d.requestedAt")
+    List<Long> findUnfinishedUserIds();
+
+    @Modifying
+    @Query("update UserDeletion d set d.trainingsDeleted = d.trainingsDeleted + :deleted where d.userId = :userId")
+    void addTrainingsDeleted(@Param("userId") Long userId, @Param("deleted") long deleted);
+
+    @Modifying
+    @Query("update UserDeletion d set d.finishedAt = :finishedAt where d.userId = :userId")
+    void markFinished(@Param("userId") Long userId, @Param("finishedAt") Instant finishedAt);
+}
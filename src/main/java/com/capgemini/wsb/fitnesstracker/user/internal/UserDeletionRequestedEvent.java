@@ -0,0 +1,9 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+/**
+ * Zdarzenie publikowane po oznaczeniu użytkownika jako usuniętego.
+ *
+ * @param userId ID usuniętego użytkownika
+ */
+record UserDeletionRequestedEvent(Long userId) {
+}
@@ -0,0 +1,129 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.statistics.api.Statistics;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingPurger;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Usuwa w tle dane użytkowników oznaczonych jako usunięci. Treningi (razem z danymi zależnymi) usuwane są porcjami
+ * po {@link UserDeletionProperties#chunkSize()}, każda w osobnej krótkiej transakcji, z przerwą między porcjami.
+ * Na końcu usuwane są statystyki i wiersz użytkownika.
+ * <p>
+ * Usuwanie startuje po zatwierdzeniu żądania, a dodatkowo co {@link UserDeletionProperties#pollInterval()}
+ * sprawdzane są niedokończone usuwania (np. przerwane restartem). Każda porcja jest zapisywana z postępem
+ * w {@code user_deletions}, więc przerwane usuwanie jest wznawiane od miejsca przerwania.
+ */
+@Component
+@Slf4j
+class UserDeletionWorker {
+
+    private final UserDeletionRepository deletionRepository;
+    private final UserDeletionProperties properties;
+    private final TrainingPurger trainingPurger;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    UserDeletionWorker(UserDeletionRepository deletionRepository,
+                       UserDeletionProperties properties,
+                       TrainingPurger trainingPurger,
+                       JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       EntityManagerFactory entityManagerFactory) {
+        this.deletionRepository = deletionRepository;
+        this.properties = properties;
+        this.trainingPurger = trainingPurger;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void schedule() {
+        long interval = properties.pollInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::drainQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    void onDeletionRequested(UserDeletionRequestedEvent event) {
+        if (drainScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drainQuietly);
+        }
+    }
+
+    private void drainQuietly() {
+        drainScheduled.set(false);
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.warn("User deletion failed, will resume on next run", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Dokańcza wszystkie niedokończone usuwania.
+     */
+    void drain() throws InterruptedException {
+        List<Long> userIds = deletionRepository.findUnfinishedUserIds();
+        for (Long userId : userIds) {
+            purge(userId);
+        }
+    }
+
+    private void purge(Long userId) throws InterruptedException {
+        long startedAt = System.nanoTime();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> {
+                int chunk = trainingPurger.deleteChunk(userId, properties.chunkSize());
+                if (chunk > 0) {
+                    deletionRepository.addTrainingsDeleted(userId, chunk);
+                }
+                return chunk;
+            });
+            total += deleted;
+            if (deleted > 0 && !properties.pauseBetweenChunks().isZero()) {
+                Thread.sleep(properties.pauseBetweenChunks().toMillis());
+            }
+        } while (deleted > 0);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM statistics WHERE user_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+            deletionRepository.markFinished(userId, Instant.now());
+        });
+        // Wiersze usunięte z pominięciem Hibernate - cache drugiego poziomu może być nieaktualny.
+        entityManagerFactory.getCache().evict(Statistics.class);
+        entityManagerFactory.getCache().evict(User.class, userId);
+        log.info("Deleted user {} with {} trainings in {} ms", userId, total, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+}
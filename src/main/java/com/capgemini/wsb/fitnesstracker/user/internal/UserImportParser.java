@@ -0,0 +1,185 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.lang.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Strumieniowe czytanie wierszy importu użytkowników z tablicy JSON lub z CSV - w pamięci trzymany jest tylko
+ * bieżący wiersz. Błędy składni pliku zgłaszane są jako {@link BusinessException} w chwili dojścia do nich;
+ * importer zapisuje wtedy wiersze przeczytane wcześniej i zwraca raport z powodem przerwania. Brakujące lub niepoprawne wartości pól przechodzą dalej
+ * i są odrzucane przy walidacji pojedynczego wiersza.
+ */
+final class UserImportParser {
+
+    private static final String[] CSV_COLUMNS = {"firstname", "lastname", "birthdate", "email"};
+
+    private UserImportParser() {
+    }
+
+    /**
+     * Czyta tablicę JSON obiektów z polami {@code firstName}, {@code lastName}, {@code birthdate} i {@code email}.
+     */
+    static Iterator<UserImportRow> json(InputStream body, ObjectMapper objectMapper) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(body);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new BusinessException("User import must be a JSON array");
+        }
+        return new RowIterator() {
+
+            @Override
+            @Nullable
+            UserImportRow readRow(int row) throws IOException {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_ARRAY || token == null) {
+                    return null;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    return new UserImportRow(row, null, null, null, null);
+                }
+                JsonNode node = objectMapper.readTree(parser);
+                return new UserImportRow(row, text(node, "firstName"), text(node, "lastName"), text(node, "birthdate"),
+                        text(node, "email"));
+            }
+        };
+    }
+
+    /**
+     * Czyta CSV z nagłówkiem zawierającym kolumny {@code firstName}, {@code lastName}, {@code birthdate}
+     * i {@code email} w dowolnej kolejności. Wartości mogą być ujęte w cudzysłowy ({@code ""} wewnątrz oznacza
+     * cudzysłów), ale nie mogą zawierać znaków nowej linii.
+     */
+    static Iterator<UserImportRow> csv(InputStream body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            throw new BusinessException("CSV user import must start with a header line");
+        }
+        List<String> headerColumns = splitCsvLine(header.startsWith("\uFEFF") ? header.substring(1) : header);
+        int[] positions = new int[CSV_COLUMNS.length];
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            positions[i] = -1;
+            for (int column = 0; column < headerColumns.size(); column++) {
+                if (headerColumns.get(column).trim().toLowerCase(Locale.ROOT).equals(CSV_COLUMNS[i])) {
+                    positions[i] = column;
+                }
+            }
+            if (positions[i] < 0) {
+                throw new BusinessException("CSV user import header is missing column " + CSV_COLUMNS[i]);
+            }
+        }
+        return new RowIterator() {
+
+            @Override
+            @Nullable
+            UserImportRow readRow(int row) throws IOException {
+                String line;
+                do {
+                    line = reader.readLine();
+                } while (line != null && line.isBlank());
+                if (line == null) {
+                    return null;
+                }
+                List<String> values = splitCsvLine(line);
+                return new UserImportRow(row, value(values, positions[0]), value(values, positions[1]),
+                        value(values, positions[2]), value(values, positions[3]));
+            }
+        };
+    }
+
+    static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    @Nullable
+    private static String value(List<String> values, int position) {
+        return position < values.size() && !values.get(position).isEmpty() ? values.get(position) : null;
+    }
+
+    @Nullable
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private abstract static class RowIterator implements Iterator<UserImportRow> {
+
+        private int row;
+        @Nullable
+        private UserImportRow next;
+        private boolean finished;
+
+        @Nullable
+        abstract UserImportRow readRow(int row) throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                try {
+                    next = readRow(row + 1);
+                } catch (JsonProcessingException e) {
+                    throw new BusinessException("Malformed user import at row %d: %s".formatted(row + 1, e.getOriginalMessage()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (next == null) {
+                    finished = true;
+                } else {
+                    row++;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public UserImportRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            UserImportRow current = next;
+            next = null;
+            return current;
+        }
+    }
+}
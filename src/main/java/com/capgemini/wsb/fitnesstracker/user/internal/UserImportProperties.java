@@ -0,0 +1,18 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Konfiguracja importu użytkowników ({@code POST /v1/users/batch}).
+ *
+ * @param chunkSize liczba wierszy sprawdzanych jednym zapytaniem i zapisywanych w jednej transakcji
+ * @param maxRows   maksymalna liczba wierszy jednego importu
+ */
+@ConfigurationProperties(prefix = "user.import")
+record UserImportProperties(
+        @DefaultValue("1000") int chunkSize,
+        @DefaultValue("1000000") int maxRows
+) {
+
+}
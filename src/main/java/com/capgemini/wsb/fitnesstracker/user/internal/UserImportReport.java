@@ -0,0 +1,39 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * Wynik importu użytkowników: liczniki, czas i wynik każdego wiersza (w kolejności z pliku).
+ *
+ * @param error powód przerwania importu (limit wierszy, błąd składni pliku); wiersze przed nim są zapisane
+ */
+record UserImportReport(long created,
+                        long updated,
+                        long duplicates,
+                        long invalid,
+                        long millis,
+                        long rowsPerSecond,
+                        @Nullable String error,
+                        List<RowOutcome> rows) {
+
+    enum Outcome {
+        CREATED,
+        UPDATED,
+        /**
+         * Ten sam (znormalizowany) e-mail wystąpił wcześniej w tym samym imporcie - wiersz pominięto.
+         */
+        DUPLICATE_IN_BATCH,
+        INVALID
+    }
+
+    /**
+     * @param row     numer wiersza danych, liczony od 1
+     * @param email   znormalizowany e-mail
+     * @param id      ID utworzonego lub zaktualizowanego użytkownika
+     * @param message powód odrzucenia wiersza albo numer wiersza, który go powtarza
+     */
+    record RowOutcome(int row, @Nullable String email, Outcome outcome, @Nullable Long id, @Nullable String message) {
+    }
+}
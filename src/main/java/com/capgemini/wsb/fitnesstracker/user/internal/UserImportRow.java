@@ -0,0 +1,15 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Wiersz importu użytkowników w postaci przeczytanej z pliku, przed walidacją.
+ *
+ * @param row numer wiersza danych, liczony od 1
+ */
+record UserImportRow(int row,
+                     @Nullable String firstName,
+                     @Nullable String lastName,
+                     @Nullable String birthdate,
+                     @Nullable String email) {
+}
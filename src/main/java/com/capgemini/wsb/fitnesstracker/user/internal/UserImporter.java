@@ -0,0 +1,301 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.api.UserDto;
+import com.capgemini.wsb.fitnesstracker.user.internal.UserImportReport.Outcome;
+import com.capgemini.wsb.fitnesstracker.user.internal.UserImportReport.RowOutcome;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSourceUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Import dużej liczby użytkowników z ujednoliceniem po e-mailu.
+ * <p>
+ * Wiersze czytane są strumieniowo i przetwarzane porcjami. E-mail jest normalizowany (bez białych znaków na
+ * brzegach, małymi literami); powtórzenie e-maila w obrębie importu jest pomijane, a istniejący użytkownicy
+ * z porcji wyszukiwani są jednym zapytaniem {@code IN} po kolumnie wyliczanej {@code LOWER(TRIM(email))}
+ * z własnym indeksem - także ci zapisani wcześniej inną ścieżką z inną wielkością liter. Nowi użytkownicy są wstawiani, a istniejący aktualizowani
+ * (imię, nazwisko, data urodzenia) wsadowo przez JDBC, w jednej transakcji na porcję. Gdy równoległy import
+ * wstawi ten sam e-mail w trakcie, porcja jest wycofywana i powtarzana raz - wtedy trafia już na istniejącego
+ * użytkownika. Przekroczenie limitu wierszy lub błąd składni pliku przerywa import po zapisaniu wierszy
+ * przeczytanych wcześniej - raport zawiera ich wyniki i powód przerwania.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+class UserImporter {
+
+    private static final int MAX_EMAIL_LENGTH = 255;
+    private static final String NORMALIZED_EMAIL = "email_normalized";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final SingleFlight<Long, UserDto> userByIdSingleFlight;
+    private final UserImportProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Dodaje do tabeli tworzonej przez Hibernate kolumnę wyliczaną ze znormalizowanym e-mailem i jej indeks.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void createSchema() {
+        jdbcTemplate.getJdbcTemplate().execute("""
+                ALTER TABLE users ADD COLUMN IF NOT EXISTS %s VARCHAR(255)
+                GENERATED ALWAYS AS (LOWER(TRIM(email)))""".formatted(NORMALIZED_EMAIL));
+        jdbcTemplate.getJdbcTemplate().execute(
+                "CREATE INDEX IF NOT EXISTS idx_users_email_normalized ON users (%s)".formatted(NORMALIZED_EMAIL));
+    }
+
+    /**
+     * Importuje wiersze, zapisując porcję po porcji.
+     *
+     * @param rows wiersze importu w kolejności z pliku
+     * @return wynik każdego wiersza; gdy import przekracza maksymalną liczbę wierszy albo plik okazuje się
+     * niepoprawny w trakcie czytania, wiersze przeczytane do tego miejsca są zapisywane, a raport zawiera
+     * powód przerwania
+     */
+    UserImportReport importUsers(Iterator<UserImportRow> rows) {
+        long startedAt = System.nanoTime();
+        List<RowOutcome> outcomes = new ArrayList<>();
+        Map<String, Integer> firstRowByEmail = new HashMap<>();
+        List<ValidRow> chunk = new ArrayList<>(properties.chunkSize());
+        long[] counts = new long[Outcome.values().length];
+        String error = null;
+        while (error == null) {
+            UserImportRow row;
+            try {
+                if (!rows.hasNext()) {
+                    break;
+                }
+                row = rows.next();
+            } catch (BusinessException e) {
+                // Wcześniejsze porcje są już zatwierdzone - zamiast błędu całego żądania raport mówi, gdzie przerwano.
+                error = e.getMessage();
+                break;
+            }
+            if (row.row() > properties.maxRows()) {
+                error = "User import is limited to %d rows, rows after it were not imported".formatted(properties.maxRows());
+                break;
+            }
+            RowOutcome rejected = validate(row, firstRowByEmail);
+            if (rejected != null) {
+                outcomes.add(rejected);
+                counts[rejected.outcome().ordinal()]++;
+                continue;
+            }
+            // Miejsce w raporcie uzupełniane po zapisie porcji.
+            outcomes.add(null);
+            chunk.add(ValidRow.of(row, outcomes.size() - 1));
+            if (chunk.size() == properties.chunkSize()) {
+                saveChunk(chunk, outcomes, counts);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, outcomes, counts);
+        }
+        long millis = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+        UserImportReport report = new UserImportReport(counts[Outcome.CREATED.ordinal()], counts[Outcome.UPDATED.ordinal()],
+                counts[Outcome.DUPLICATE_IN_BATCH.ordinal()], counts[Outcome.INVALID.ordinal()], millis,
+                outcomes.size() * 1000L / millis, error, outcomes);
+        for (Outcome outcome : Outcome.values()) {
+            meterRegistry.counter("user.import.rows", "outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .increment(counts[outcome.ordinal()]);
+        }
+        log.info("Imported users: {} created, {} updated, {} duplicates, {} invalid in {} ms{}", report.created(),
+                report.updated(), report.duplicates(), report.invalid(), millis, error == null ? "" : ", stopped: " + error);
+        return report;
+    }
+
+    @Nullable
+    private static RowOutcome validate(UserImportRow row, Map<String, Integer> firstRowByEmail) {
+        if (row.email() == null || row.email().isBlank()) {
+            return invalid(row, null, "Email is required");
+        }
+        String email = normalizeEmail(row.email());
+        if (email.length() > MAX_EMAIL_LENGTH || email.indexOf('@') <= 0 || email.indexOf('@') != email.lastIndexOf('@')
+                || email.endsWith("@")) {
+            return invalid(row, email, "Email is not valid");
+        }
+        if (isBlank(row.firstName()) || isBlank(row.lastName())) {
+            return invalid(row, email, "First and last name are required");
+        }
+        if (row.birthdate() == null) {
+            return invalid(row, email, "Birthdate is required");
+        }
+        try {
+            LocalDate.parse(row.birthdate().trim());
+        } catch (DateTimeParseException e) {
+            return invalid(row, email, "Birthdate must be formatted as yyyy-MM-dd");
+        }
+        Integer firstRow = firstRowByEmail.putIfAbsent(email, row.row());
+        if (firstRow != null) {
+            return new RowOutcome(row.row(), email, Outcome.DUPLICATE_IN_BATCH, null, "Duplicate of row " + firstRow);
+        }
+        return null;
+    }
+
+    private void saveChunk(List<ValidRow> chunk, List<RowOutcome> outcomes, long[] counts) {
+        List<RowOutcome> saved;
+        try {
+            saved = transactionTemplate.execute(status -> upsert(chunk));
+        } catch (DuplicateKeyException e) {
+            log.debug("Concurrent insert of imported user, retrying chunk", e);
+            saved = transactionTemplate.execute(status -> upsert(chunk));
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            RowOutcome outcome = saved.get(i);
+            outcomes.set(chunk.get(i).reportIndex(), outcome);
+            counts[outcome.outcome().ordinal()]++;
+        }
+    }
+
+    /**
+     * Aktualizacje z pominięciem Hibernate - cache drugiego poziomu może zawierać poprzednie dane. Wpisy są
+     * usuwane dopiero po zatwierdzeniu porcji, żeby równoległy odczyt nie zapamiętał ich na nowo sprzed zapisu.
+     */
+    private void forgetAfterCommit(List<Long> updatedIds) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (Long id : updatedIds) {
+                    entityManagerFactory.getCache().evict(User.class, id);
+                    userByIdSingleFlight.forget(id);
+                }
+            }
+        });
+    }
+
+    private List<RowOutcome> upsert(List<ValidRow> chunk) {
+        Map<String, ExistingUser> existing = findUsersByEmail(chunk);
+        List<ExistingUser> existingUsers = new ArrayList<>(chunk.size());
+        List<Map<String, Object>> inserts = new ArrayList<>();
+        List<Map<String, Object>> updates = new ArrayList<>();
+        List<Long> updatedIds = new ArrayList<>();
+        for (ValidRow row : chunk) {
+            ExistingUser user = existing.get(row.email());
+            existingUsers.add(user);
+            if (user == null) {
+                inserts.add(row.parameters(null));
+            } else if (!user.deleted()) {
+                updates.add(row.parameters(user.id()));
+                updatedIds.add(user.id());
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE users SET first_name = :firstName, last_name = :lastName, birthdate = :birthdate,
+                    version = version + 1 WHERE id = :id""", SqlParameterSourceUtils.createBatch(updates));
+            forgetAfterCommit(updatedIds);
+        }
+        Map<String, Long> inserted = Map.of();
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO users (first_name, last_name, birthdate, email)
+                    VALUES (:firstName, :lastName, :birthdate, :email)""", SqlParameterSourceUtils.createBatch(inserts));
+            inserted = findIdsByEmail(inserts.stream().map(parameters -> (String) parameters.get("email")).toList());
+        }
+        List<RowOutcome> outcomes = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ValidRow row = chunk.get(i);
+            ExistingUser user = existingUsers.get(i);
+            if (user == null) {
+                outcomes.add(new RowOutcome(row.row(), row.email(), Outcome.CREATED, inserted.get(row.email()), null));
+            } else if (user.deleted()) {
+                // Adres usuwanego użytkownika pozostaje zajęty do zakończenia usuwania jego danych.
+                outcomes.add(new RowOutcome(row.row(), row.email(), Outcome.INVALID, null,
+                        "User with this email is being deleted"));
+            } else {
+                outcomes.add(new RowOutcome(row.row(), row.email(), Outcome.UPDATED, user.id(), null));
+            }
+        }
+        return outcomes;
+    }
+
+    private Map<String, ExistingUser> findUsersByEmail(List<ValidRow> chunk) {
+        Set<String> emails = new LinkedHashSet<>();
+        for (ValidRow row : chunk) {
+            emails.add(row.email());
+        }
+        Map<String, ExistingUser> users = new HashMap<>();
+        // Kilku użytkowników różniących się wielkością liter e-maila: wybierany nieusuwany, o najmniejszym ID.
+        jdbcTemplate.query("""
+                        SELECT id, %1$s, deleted_at FROM users WHERE %1$s IN (:emails)
+                        ORDER BY deleted_at NULLS FIRST, id""".formatted(NORMALIZED_EMAIL), Map.of("emails", emails),
+                resultSet -> {
+                    users.putIfAbsent(resultSet.getString(NORMALIZED_EMAIL),
+                            new ExistingUser(resultSet.getLong("id"), resultSet.getTimestamp("deleted_at") != null));
+                });
+        return users;
+    }
+
+    private Map<String, Long> findIdsByEmail(Collection<String> emails) {
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, email FROM users WHERE email IN (:emails)", Map.of("emails", emails),
+                resultSet -> {
+                    ids.put(resultSet.getString("email"), resultSet.getLong("id"));
+                });
+        return ids;
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(@Nullable String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static RowOutcome invalid(UserImportRow row, @Nullable String email, String message) {
+        return new RowOutcome(row.row(), email, Outcome.INVALID, null, message);
+    }
+
+    private record ExistingUser(long id, boolean deleted) {
+    }
+
+    private record ValidRow(int row, int reportIndex, String firstName, String lastName, LocalDate birthdate,
+                            String email) {
+
+        static ValidRow of(UserImportRow row, int reportIndex) {
+            return new ValidRow(row.row(), reportIndex, row.firstName().trim(), row.lastName().trim(),
+                    LocalDate.parse(row.birthdate().trim()), normalizeEmail(row.email()));
+        }
+
+        Map<String, Object> parameters(@Nullable Long id) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", id);
+            parameters.put("firstName", firstName);
+            parameters.put("lastName", lastName);
+            parameters.put("birthdate", Date.valueOf(birthdate));
+            parameters.put("email", email);
+            return parameters;
+        }
+    }
+}
@@ -25,7 +25,8 @@ public class UserMapper {
                 user.getFirstName(),
                 user.getLastName(),
                 user.getBirthdate(),
-                user.getEmail()
+                user.getEmail(),
+                user.getVersion()
         );
     }
 
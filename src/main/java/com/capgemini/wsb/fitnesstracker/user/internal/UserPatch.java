@@ -0,0 +1,42 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Zmiana wybranych pól użytkownika ({@code PATCH /v1/users/{id}}). Pole {@code null} pozostaje bez zmian.
+ *
+ * @param version wersja użytkownika, na podstawie której przygotowano zmianę; {@code null} pomija sprawdzenie
+ */
+record UserPatch(@Nullable String firstName,
+                 @Nullable String lastName,
+                 @Nullable LocalDate birthdate,
+                 @Nullable String email,
+                 @Nullable Long version) {
+
+    static final Set<String> FIELDS = Set.of("firstName", "lastName", "birthdate", "email", "version");
+
+    static UserPatch of(MergePatch patch) {
+        return new UserPatch(patch.get("firstName", String.class), patch.get("lastName", String.class),
+                patch.get("birthdate", LocalDate.class), patch.get("email", String.class), patch.get("version", Long.class));
+    }
+
+    void applyTo(User user) {
+        if (firstName != null) {
+            user.setFirstName(firstName);
+        }
+        if (lastName != null) {
+            user.setLastName(lastName);
+        }
+        if (birthdate != null) {
+            user.setBirthdate(birthdate);
+        }
+        if (email != null) {
+            user.setEmail(email);
+        }
+    }
+}
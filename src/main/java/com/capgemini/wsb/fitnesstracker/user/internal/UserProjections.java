@@ -0,0 +1,46 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Odczyt wybranych pól użytkowników ({@code ?fields=}). Zapytanie wybiera tylko kolumny żądanych pól,
+ * a wynik serializowany jest jako obiekty zawierające tylko te pola.
+ */
+@Component
+@RequiredArgsConstructor
+class UserProjections {
+
+    static final List<String> FIELDS = List.of("id", "firstName", "lastName", "birthdate", "email", "version");
+
+    private final EntityManager entityManager;
+
+    /**
+     * @param fields pola z {@link #FIELDS}
+     * @return użytkownicy posortowani po ID
+     */
+    @Transactional(readOnly = true)
+    List<Map<String, Object>> findAll(List<String> fields) {
+        String select = fields.stream().map(field -> "u." + field + " as " + field).collect(Collectors.joining(", "));
+        List<Tuple> rows = entityManager.createQuery("select " + select + " from User u order by u.id", Tuple.class)
+                .getResultList();
+        List<Map<String, Object>> users = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> user = new LinkedHashMap<>();
+            for (String field : fields) {
+                user.put(field, row.get(field));
+            }
+            users.add(user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,21 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Konfiguracja łączenia równoczesnych odczytów tego samego użytkownika po ID w jedno zapytanie.
+ *
+ * @param ttl     jak długo wynik zakończonego odczytu jest jeszcze zwracany kolejnym wywołaniom; {@code 0} - tylko
+ *                wywołaniom, które trafiły na trwający odczyt
+ * @param maxKeys maksymalna liczba jednocześnie śledzonych kluczy; {@code 0} wyłącza łączenie odczytów
+ */
+@ConfigurationProperties(prefix = "user.read-coalescing")
+record UserReadCoalescingProperties(
+        @DefaultValue("0s") Duration ttl,
+        @DefaultValue("10000") int maxKeys
+) {
+
+}
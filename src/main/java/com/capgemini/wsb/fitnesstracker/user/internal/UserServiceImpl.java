@@ -1,12 +1,22 @@
 package com.capgemini.wsb.fitnesstracker.user.internal;
 
+import com.capgemini.wsb.fitnesstracker.common.api.SingleFlight;
+import com.capgemini.wsb.fitnesstracker.exception.api.VersionConflictException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingPurger;
 import com.capgemini.wsb.fitnesstracker.user.api.User;
 import com.capgemini.wsb.fitnesstracker.user.api.UserDto;
 import com.capgemini.wsb.fitnesstracker.user.api.UserNotFoundException;
 import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,6 +30,11 @@ class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final SingleFlight<Long, UserDto> userByIdSingleFlight;
+    private final UserDeletionRepository deletionRepository;
+    private final TrainingPurger trainingPurger;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManagerFactory entityManagerFactory;
 
     /**
      * Pobiera wszystkich użytkowników.
@@ -27,6 +42,7 @@ class UserServiceImpl implements UserService {
      * @return lista wszystkich użytkowników.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
@@ -37,6 +53,7 @@ class UserServiceImpl implements UserService {
      * @return lista wszystkich użytkowników jako DTO.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<UserDto> findAllUsers() {
         return userRepository.findAll().stream()
                 .map(userMapper::toDto)
@@ -51,13 +68,15 @@ class UserServiceImpl implements UserService {
      * @throws UserNotFoundException jeśli użytkownik o podanym ID nie zostanie znaleziony.
      */
     @Override
+    @Transactional(readOnly = true)
     public User getUserById(Long id) throws UserNotFoundException {
         return userRepository.findById(id)
                 .orElseThrow(() -> new UserNotFoundException(id));
     }
 
     /**
-     * Pobiera użytkownika po jego ID jako DTO.
+     * Pobiera użytkownika po jego ID jako DTO. Równoczesne wywołania dla tego samego ID wykonują jedno zapytanie
+     * i dzielą jego wynik (lub wyjątek). Wywołanie w trakcie transakcji czyta samodzielnie, żeby widzieć jej zmiany.
      *
      * @param id ID użytkownika do pobrania.
      * @return użytkownik o podanym ID jako DTO.
@@ -65,6 +84,13 @@ class UserServiceImpl implements UserService {
      */
     @Override
     public UserDto findUserById(Long id) throws UserNotFoundException {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loadUserDto(id);
+        }
+        return userByIdSingleFlight.load(id, () -> loadUserDto(id));
+    }
+
+    private UserDto loadUserDto(Long id) {
         return userRepository.findById(id)
                 .map(userMapper::toDto)
                 .orElseThrow(() -> new UserNotFoundException(id));
@@ -94,20 +120,27 @@ class UserServiceImpl implements UserService {
     }
 
     /**
-     * Aktualizuje istniejącego użytkownika.
+     * Aktualizuje istniejącego użytkownika. Użytkownik odczytywany jest w transakcji (zwykle z cache drugiego
+     * poziomu), a zmiana zapisywana przy zatwierdzeniu jednym {@code UPDATE} zmienionych kolumn.
      *
      * @param id   ID użytkownika do aktualizacji.
      * @param user dane użytkownika do aktualizacji.
      * @return zaktualizowany użytkownik.
-     * @throws UserNotFoundException jeśli użytkownik o podanym ID nie zostanie znaleziony.
+     * @throws UserNotFoundException    jeśli użytkownik o podanym ID nie zostanie znaleziony.
+     * @throws VersionConflictException jeśli użytkownika zmieniono równolegle.
      */
     @Override
+    @Transactional
     public User updateUser(Long id, User user) throws UserNotFoundException {
-        if (!userRepository.existsById(id)) {
-            throw new UserNotFoundException(id);
-        }
-        user.setId(id);
-        return userRepository.save(user);
+        User existing = userRepository.findById(id)
+                .orElseThrow(() -> new UserNotFoundException(id));
+        existing.setFirstName(user.getFirstName());
+        existing.setLastName(user.getLastName());
+        existing.setBirthdate(user.getBirthdate());
+        existing.setEmail(user.getEmail());
+        flush(id);
+        forgetAfterCommit(id);
+        return existing;
     }
 
     /**
@@ -116,28 +149,98 @@ class UserServiceImpl implements UserService {
      * @param id   ID użytkownika do aktualizacji.
      * @param userDto dane użytkownika do aktualizacji jako DTO.
      * @return zaktualizowany użytkownik jako DTO.
-     * @throws UserNotFoundException jeśli użytkownik o podanym ID nie zostanie znaleziony.
+     * @throws UserNotFoundException    jeśli użytkownik o podanym ID nie zostanie znaleziony.
+     * @throws VersionConflictException jeśli użytkownika zmieniono równolegle.
      */
     @Override
+    @Transactional
     public UserDto updateUser(Long id, UserDto userDto) throws UserNotFoundException {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new UserNotFoundException(id));
         userMapper.updateEntityFromDto(userDto, user);
-        return userMapper.toDto(userRepository.save(user));
+        flush(id);
+        forgetAfterCommit(id);
+        return userMapper.toDto(user);
+    }
+
+    /**
+     * Zmienia wybrane pola użytkownika (JSON Merge Patch) jednym {@code UPDATE} zmienionych kolumn, z warunkiem
+     * na wersję wiersza.
+     *
+     * @param id    ID użytkownika do aktualizacji.
+     * @param patch zmiana.
+     * @return zaktualizowany użytkownik jako DTO.
+     * @throws UserNotFoundException    jeśli użytkownik o podanym ID nie zostanie znaleziony.
+     * @throws VersionConflictException jeśli podana wersja nie jest aktualna lub użytkownika zmieniono równolegle.
+     */
+    @Transactional
+    public UserDto patchUser(Long id, UserPatch patch) throws UserNotFoundException {
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new UserNotFoundException(id));
+        if (patch.version() != null && patch.version() != user.getVersion()) {
+            throw new VersionConflictException("User with ID=%s has version %d, not %d"
+                    .formatted(id, user.getVersion(), patch.version()));
+        }
+        patch.applyTo(user);
+        flush(id);
+        forgetAfterCommit(id);
+        return userMapper.toDto(user);
     }
 
     /**
-     * Usuwa użytkownika po jego ID.
+     * Zapisuje zmiany użytkownika jeszcze w metodzie serwisu, aby konflikt wersji nie ujawnił się dopiero przy
+     * zatwierdzeniu transakcji jako błąd 500.
+     *
+     * @param id ID zmienianego użytkownika.
+     * @throws VersionConflictException jeśli użytkownika zmieniono równolegle.
+     */
+    private void flush(Long id) {
+        try {
+            userRepository.flush();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new VersionConflictException("User with ID=%s was modified concurrently".formatted(id));
+        }
+    }
+
+    /**
+     * Zapomina trwający odczyt użytkownika dopiero po zatwierdzeniu zmiany. Odczyt rozpoczęty po wcześniejszym
+     * zapomnieniu, a przed zatwierdzeniem, zobaczyłby stan sprzed zmiany i podzieliłby się nim z kolejnymi
+     * wywołaniami.
+     *
+     * @param id ID zmienionego użytkownika.
+     */
+    private void forgetAfterCommit(Long id) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userByIdSingleFlight.forget(id);
+            }
+        });
+    }
+
+    /**
+     * Usuwa użytkownika po jego ID. Użytkownik i jego treningi przestają być widoczne od razu, a ich dane
+     * usuwane są w tle porcjami ({@link UserDeletionWorker}). Po zatwierdzeniu transakcji użytkownik i jego treningi
+     * usuwani są z cache drugiego poziomu, który nie uwzględnia oznaczenia usunięcia.
      *
      * @param id ID użytkownika do usunięcia.
      * @throws UserNotFoundException jeśli użytkownik o podanym ID nie zostanie znaleziony.
      */
     @Override
+    @Transactional
     public void deleteUser(Long id) throws UserNotFoundException {
-        if (!userRepository.existsById(id)) {
-            throw new UserNotFoundException(id);
-        }
-        userRepository.deleteById(id);
+        Instant now = Instant.now();
+        userRepository.findById(id).orElseThrow(() -> new UserNotFoundException(id)).markDeleted(now);
+        deletionRepository.save(new UserDeletion(id, now, trainingPurger.countByUser(id)));
+        eventPublisher.publishEvent(new UserDeletionRequestedEvent(id));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                entityManagerFactory.getCache().evict(User.class, id);
+                trainingPurger.evictCached(id);
+                userByIdSingleFlight.forget(id);
+            }
+        });
     }
 
     /**
@@ -147,6 +250,7 @@ class UserServiceImpl implements UserService {
      * @return lista użytkowników zawierających podany adres e-mail.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<User> searchUsersByEmail(String email) {
         return userRepository.findByEmailContainingIgnoreCase(email);
     }
@@ -158,6 +262,7 @@ class UserServiceImpl implements UserService {
      * @return lista użytkowników jako DTO.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<UserDto> searchUsersByAge(int age) {
         return userRepository.findByAgeGreaterThan(age).stream()
                 .map(userMapper::toDto)
@@ -171,6 +276,7 @@ class UserServiceImpl implements UserService {
      * @return lista użytkowników, których wiek jest większy niż podana wartość.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<User> searchUsersByAgeGreaterThan(int age) {
         return userRepository.findByAgeGreaterThan(age);
     }
@@ -182,6 +288,7 @@ class UserServiceImpl implements UserService {
      * @return lista użytkowników, którzy urodzili się przed podaną datą.
      */
     @Override
+    @Transactional(readOnly = true)
     public List<User> findUsersOlderThan(LocalDate date) {
         return userRepository.findByBirthdateBefore(date);
     }
@@ -0,0 +1,107 @@
+package com.capgemini.wsb.fitnesstracker.common.api;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @Test
+    void shouldShareOneLoad_betweenConcurrentCallers() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ZERO, 100, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = callConcurrently(() -> singleFlight.load("key", () -> {
+            loads.incrementAndGet();
+            awaitRelease(release);
+            return "value";
+        }));
+        await().until(() -> meterRegistry.counter("singleflight.calls", "name", "test", "result", "shared").count() == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.load("key", () -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    void shouldPropagateLeaderException_toAllWaitingCallers_withoutKeepingIt() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofMinutes(1), 100, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = callConcurrently(() -> singleFlight.load("key", () -> {
+            loads.incrementAndGet();
+            awaitRelease(release);
+            throw new IllegalStateException("Database unavailable");
+        }));
+        await().until(() -> meterRegistry.counter("singleflight.calls", "name", "test", "result", "shared").count() == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.load("key", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    void shouldKeepResultForTtl_untilForgotten() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofMinutes(1), 100, meterRegistry);
+
+        assertThat(singleFlight.load("key", () -> "first")).isEqualTo("first");
+        assertThat(singleFlight.load("key", () -> "second")).isEqualTo("first");
+        singleFlight.forget("key");
+
+        assertThat(singleFlight.load("key", () -> "third")).isEqualTo("third");
+    }
+
+    @Test
+    void shouldBypassCoalescing_whenKeyLimitIsReached() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", Duration.ofMinutes(1), 1, meterRegistry);
+        singleFlight.load("first", () -> "kept");
+
+        assertThat(singleFlight.load("second", () -> "direct")).isEqualTo("direct");
+        assertThat(singleFlight.load("second", () -> "direct again")).isEqualTo("direct again");
+        assertThat(meterRegistry.counter("singleflight.calls", "name", "test", "result", "bypassed").count()).isEqualTo(2);
+        assertThat(meterRegistry.get("singleflight.keys").gauge().value()).isEqualTo(1);
+    }
+
+    private List<Future<String>> callConcurrently(java.util.concurrent.Callable<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(call));
+        }
+        return results;
+    }
+
+    private static void awaitRelease(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.capgemini.wsb.fitnesstracker.datasource.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@IntegrationTest
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReadReplicaRoutingIntegrationTest.PRIMARY_URL,
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "datasource.routing.enabled=true",
+        "datasource.routing.replicas[0].url=" + ReadReplicaRoutingIntegrationTest.REPLICA_URL,
+        "datasource.routing.replicas[0].username=sa",
+        "datasource.routing.replicas[0].password=password",
+        "datasource.routing.lag-query=SELECT DATEDIFF('MILLISECOND', MAX(beat), CURRENT_TIMESTAMP) FROM replication_heartbeat",
+        "datasource.routing.max-lag=2s",
+        "datasource.routing.health-check-interval=1h"
+})
+@DirtiesContext
+class ReadReplicaRoutingIntegrationTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JpaRepository<User, Long> userRepository;
+
+    @Autowired
+    private ReplicaHealthMonitor replicaHealthMonitor;
+
+    @AfterEach
+    void cleanUpDB() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldReadFromReplica_whenServiceMethodIsReadOnly() throws Exception {
+        replicate(Instant.now());
+        User user = userService.createUser(generateUser());
+
+        assertThat(emails(userService.getAllUsers())).doesNotContain(user.getEmail());
+
+        replicate(Instant.now());
+
+        assertThat(emails(userService.getAllUsers())).contains(user.getEmail());
+    }
+
+    @Test
+    void shouldReadFromPrimary_whenRequestHasAlreadyWritten() throws Exception {
+        replicate(Instant.now());
+        List<String> emailsReadAfterWrite = new ArrayList<>();
+
+        new ReadYourWritesFilter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), (request, response) -> {
+            User user = userService.createUser(generateUser());
+            emailsReadAfterWrite.addAll(emails(userService.getAllUsers()));
+            assertThat(emailsReadAfterWrite).contains(user.getEmail());
+        });
+
+        assertThat(emailsReadAfterWrite).isNotEmpty();
+    }
+
+    @Test
+    void shouldReadFromPrimary_whenReplicaLagsBehind() throws Exception {
+        replicate(Instant.now().minusSeconds(10));
+        User user = userService.createUser(generateUser());
+
+        assertThat(replicaHealthMonitor.healthyReplicas()).isEmpty();
+        assertThat(emails(userService.getAllUsers())).contains(user.getEmail());
+    }
+
+    /**
+     * Zastępuje replikację: kopiuje całą bazę główną do repliki i zapisuje znacznik heartbeat z podanym czasem,
+     * na podstawie którego mierzone jest opóźnienie repliki.
+     */
+    private void replicate(Instant heartbeat) throws Exception {
+        Path script = Files.createTempFile("replication", ".sql");
+        try {
+            try (Connection primary = DriverManager.getConnection(PRIMARY_URL, "sa", "password");
+                 Statement statement = primary.createStatement()) {
+                statement.execute("SCRIPT TO '%s'".formatted(script));
+            }
+            try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "password");
+                 Statement statement = replica.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+                statement.execute("RUNSCRIPT FROM '%s'".formatted(script));
+                statement.execute("CREATE TABLE replication_heartbeat(beat TIMESTAMP)");
+                try (PreparedStatement insert = replica.prepareStatement("INSERT INTO replication_heartbeat VALUES (?)")) {
+                    insert.setTimestamp(1, Timestamp.from(heartbeat));
+                    insert.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Replication stand-in failed", e);
+        } finally {
+            Files.deleteIfExists(script);
+        }
+        replicaHealthMonitor.checkReplicas();
+    }
+
+    private static List<String> emails(List<User> users) {
+        return users.stream().map(User::getEmail).toList();
+    }
+
+    private static User generateUser() {
+        return new User(randomUUID().toString(), randomUUID().toString(), LocalDate.now(), randomUUID().toString());
+    }
+}
@@ -0,0 +1,166 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventProjection;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class FileTrainingEventLogTest {
+
+    @TempDir
+    private Path directory;
+
+    private final List<FileTrainingEventLog> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeLogs() throws IOException {
+        for (FileTrainingEventLog eventLog : opened) {
+            eventLog.close();
+        }
+    }
+
+    @Test
+    void shouldReplayFromAnyOffset_acrossSegmentsAndRestarts() throws Exception {
+        FileTrainingEventLog eventLog = open(DataSize.ofKilobytes(4), Duration.ofDays(7));
+        for (long trainingId = 0; trainingId < 500; trainingId++) {
+            eventLog.append(List.of(created(trainingId)));
+        }
+        eventLog.close();
+
+        FileTrainingEventLog reopened = open(DataSize.ofKilobytes(4), Duration.ofDays(7));
+        reopened.append(List.of(updated(7), updated(8)));
+
+        assertThat(reopened.status().segments()).isGreaterThan(5);
+        assertThat(reopened.status().nextOffset()).isEqualTo(502);
+        Recording recording = new Recording();
+        FileTrainingEventLog.ReplaySummary summary = reopened.replay(recording, 123);
+        assertThat(summary.events()).isEqualTo(502 - 123);
+        assertThat(summary.nextOffset()).isEqualTo(502);
+        assertThat(recording.offsets.get(0)).isEqualTo(123);
+        assertThat(recording.events.get(0)).isEqualTo(created(123));
+        assertThat(recording.events.get(recording.events.size() - 1)).isEqualTo(updated(8));
+    }
+
+    @Test
+    void shouldTruncateTornAndCorruptedTail_whenReopened() throws Exception {
+        FileTrainingEventLog eventLog = open(DataSize.ofMegabytes(1), Duration.ofDays(7));
+        for (long trainingId = 0; trainingId < 10; trainingId++) {
+            eventLog.append(List.of(created(trainingId)));
+        }
+        eventLog.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(EventLogSegment.SUFFIX)).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Uszkodzony ostatni pełny rekord i niepełny rekord za nim.
+            channel.write(ByteBuffer.wrap(new byte[]{42}), channel.size() - 3);
+            channel.write(ByteBuffer.wrap(new byte[EventLogSegment.RECORD_SIZE / 2]), channel.size());
+        }
+
+        FileTrainingEventLog reopened = open(DataSize.ofMegabytes(1), Duration.ofDays(7));
+        reopened.append(List.of(created(100)));
+
+        Recording recording = new Recording();
+        reopened.replay(recording, 0);
+        assertThat(recording.offsets).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertThat(recording.events.get(9)).isEqualTo(created(100));
+    }
+
+    @Test
+    void shouldKeepLatestEventOfEveryTraining_afterCompaction() throws Exception {
+        int trainings = 20_000;
+        int updates = 9;
+        FileTrainingEventLog eventLog = open(DataSize.ofMegabytes(1), Duration.ZERO);
+        for (long trainingId = 0; trainingId < trainings; trainingId++) {
+            eventLog.append(List.of(created(trainingId)));
+        }
+        for (int round = 0; round < updates; round++) {
+            for (long trainingId = 0; trainingId < trainings; trainingId++) {
+                eventLog.append(List.of(updated(trainingId)));
+            }
+        }
+        List<TrainingEvent> deletions = new ArrayList<>();
+        for (long trainingId = 0; trainingId < 1_000; trainingId++) {
+            deletions.add(TrainingEvent.deleted(1L, trainingId));
+        }
+        eventLog.append(deletions);
+        eventLog.append(List.of(updated(5_000)));
+
+        Recording beforeCompaction = new Recording();
+        FileTrainingEventLog.ReplaySummary fullReplay = eventLog.replay(beforeCompaction, 0);
+        FileTrainingEventLog.CompactionSummary compaction = eventLog.compact();
+        Recording afterCompaction = new Recording();
+        FileTrainingEventLog.ReplaySummary compactedReplay = eventLog.replay(afterCompaction, 0);
+
+        log.info("Replay of {} events took {} ms; {}; replay of {} events after compaction took {} ms",
+                fullReplay.events(), fullReplay.millis(), compaction, compactedReplay.events(), compactedReplay.millis());
+        assertThat(fullReplay.events()).isEqualTo((long) trainings * (updates + 1) + 1_000 + 1);
+        assertThat(compaction.bytesAfter()).isLessThan(compaction.bytesBefore() / 5);
+        // Zdarzenia usunięcia w segmencie aktywnym nie są kompaktowane, a usunięte treningi znikają z zamkniętych.
+        assertThat(afterCompaction.latest).hasSize(trainings);
+        assertThat(afterCompaction.latest.values().stream().filter(event -> event.type() == TrainingEvent.Type.DELETED))
+                .hasSize(1_000);
+        assertThat(afterCompaction.latest).containsAllEntriesOf(beforeCompaction.latest);
+        assertThat(afterCompaction.offsets).isSorted();
+        assertThat(compactedReplay.nextOffset()).isEqualTo(fullReplay.nextOffset());
+    }
+
+    private FileTrainingEventLog open(DataSize segmentSize, Duration tombstoneRetention) throws IOException {
+        FileTrainingEventLog eventLog = new FileTrainingEventLog(new TrainingEventLogProperties(true, directory,
+                segmentSize, Duration.ofMillis(200), Duration.ofDays(1), tombstoneRetention), new SimpleMeterRegistry());
+        eventLog.open();
+        opened.add(eventLog);
+        return eventLog;
+    }
+
+    private static TrainingEvent created(long trainingId) {
+        return new TrainingEvent(TrainingEvent.Type.CREATED, trainingId, trainingId % 100, 1_700_000_000_000L,
+                1_600_000_000_000L + trainingId, 1_600_000_360_000L + trainingId, ActivityType.RUNNING, 10.0, 12.5, 700);
+    }
+
+    private static TrainingEvent updated(long trainingId) {
+        return new TrainingEvent(TrainingEvent.Type.UPDATED, trainingId, trainingId % 100, 1_700_000_001_000L,
+                1_600_000_000_000L + trainingId, 1_600_000_720_000L + trainingId, ActivityType.CYCLING, 20.0, 25.0, null);
+    }
+
+    private static final class Recording implements TrainingEventProjection {
+
+        private final List<Long> offsets = new ArrayList<>();
+        private final List<TrainingEvent> events = new ArrayList<>();
+        private final Map<Long, TrainingEvent> latest = new HashMap<>();
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public void apply(long offset, TrainingEvent event) {
+            offsets.add(offset);
+            events.add(event);
+            latest.put(event.trainingId(), event);
+        }
+    }
+}
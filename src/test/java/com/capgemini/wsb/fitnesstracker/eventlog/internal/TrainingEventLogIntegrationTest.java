@@ -0,0 +1,113 @@
+package com.capgemini.wsb.fitnesstracker.eventlog.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEventProjection;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingPurger;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@DirtiesContext
+@Import(TrainingEventLogIntegrationTest.ProjectionConfig.class)
+class TrainingEventLogIntegrationTest extends IntegrationTestBase {
+
+    private static final long HOUR = 3_600_000L;
+
+    @TempDir
+    static Path eventLogDirectory;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private TrainingPurger trainingPurger;
+
+    @Autowired
+    private TrainingEventLogEndpoint endpoint;
+
+    @Autowired
+    private RecordingProjection projection;
+
+    @DynamicPropertySource
+    static void eventLogProperties(DynamicPropertyRegistry registry) {
+        registry.add("event-log.enabled", () -> "true");
+        registry.add("event-log.directory", eventLogDirectory::toString);
+    }
+
+    @Test
+    void shouldRecordCreateUpdateAndDelete_andReplayThemIntoRegisteredProjection() throws Exception {
+        long firstOffset = endpoint.status().nextOffset();
+        User user = existingUser(new User("Event", "Sourced", LocalDate.of(1990, 1, 1), "events@domain.com"));
+        Training created = trainingService.createTraining(new Training(user, new Date(10 * HOUR), new Date(11 * HOUR),
+                ActivityType.RUNNING, 10.0, 10.0));
+        trainingService.updateTraining(new Training(created.getId(), user, new Date(10 * HOUR), new Date(12 * HOUR),
+                ActivityType.RUNNING, 15.0, 7.5));
+        assertThat(trainingPurger.deleteChunk(user.getId(), 10)).isEqualTo(1);
+
+        FileTrainingEventLog.ReplaySummary summary = (FileTrainingEventLog.ReplaySummary)
+                endpoint.run("replay", RecordingProjection.NAME, firstOffset);
+
+        assertThat(summary.events()).isEqualTo(3);
+        assertThat(summary.nextOffset()).isEqualTo(firstOffset + 3);
+        assertThat(projection.events).extracting(TrainingEvent::type).containsExactly(
+                TrainingEvent.Type.CREATED, TrainingEvent.Type.UPDATED, TrainingEvent.Type.DELETED);
+        assertThat(projection.events).allSatisfy(event -> {
+            assertThat(event.trainingId()).isEqualTo(created.getId());
+            assertThat(event.userId()).isEqualTo(user.getId());
+        });
+        TrainingEvent updated = projection.events.get(1);
+        assertThat(updated.endTime()).isEqualTo(12 * HOUR);
+        assertThat(updated.distance()).isEqualTo(15.0);
+        assertThat(updated.activityType()).isEqualTo(ActivityType.RUNNING);
+        assertThat(updated.calories()).isNotNull();
+    }
+
+    @TestConfiguration
+    static class ProjectionConfig {
+
+        @Bean
+        RecordingProjection recordingProjection() {
+            return new RecordingProjection();
+        }
+    }
+
+    static class RecordingProjection implements TrainingEventProjection {
+
+        static final String NAME = "recording";
+
+        private final List<TrainingEvent> events = new ArrayList<>();
+
+        @Override
+        public String name() {
+            return NAME;
+        }
+
+        @Override
+        public void apply(long offset, TrainingEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.capgemini.wsb.fitnesstracker.idempotency.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc
+@SpringBootTest(properties = "rate-limit.enabled=false")
+class IdempotencyIntegrationTest extends IntegrationTestBase {
+
+    private static final int CALLERS = 8;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Autowired
+    private IdempotencyProperties properties;
+
+    @AfterEach
+    void deleteKeys() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys");
+        store.sweep();
+    }
+
+    @Test
+    void shouldReplayOriginalResponse_withoutCreatingAnotherUser() throws Exception {
+        String body = "{\"firstName\":\"Retry\",\"lastName\":\"Client\",\"birthdate\":\"1990-01-01\",\"email\":\"retry@domain.com\"}";
+
+        String created = mockMvc.perform(post("/v1/users").header("Idempotency-Key", "user-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER))
+                .andReturn().getResponse().getContentAsString();
+        String replayed = mockMvc.perform(post("/v1/users").header("Idempotency-Key", "user-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(replayed).isEqualTo(created);
+        assertThat(getAllUsers()).hasSize(1);
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "user-1")
+                        .contentType(MediaType.APPLICATION_JSON).content(body.replace("Retry", "Other")))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void shouldExecuteConcurrentDuplicatesOnce() throws Exception {
+        User user = existingUser(new User("Concurrent", "Retry", LocalDate.of(1990, 1, 1), "concurrent.retry@domain.com"));
+        String body = "{\"userId\":%d,\"startTime\":\"2024-01-01T10:00:00.000+00:00\",\"endTime\":\"2024-01-01T11:00:00.000+00:00\",\"activityType\":\"RUNNING\",\"distance\":10.0,\"averageSpeed\":10.0}"
+                .formatted(user.getId());
+        CyclicBarrier barrier = new CyclicBarrier(CALLERS);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<MockHttpServletResponse>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> {
+                    barrier.await();
+                    return mockMvc.perform(post("/v1/trainings").header("Idempotency-Key", "training-1")
+                            .contentType(MediaType.APPLICATION_JSON).content(body)).andReturn().getResponse();
+                }));
+            }
+            List<String> bodies = new ArrayList<>();
+            for (Future<MockHttpServletResponse> result : results) {
+                MockHttpServletResponse response = result.get(30, TimeUnit.SECONDS);
+                assertThat(response.getStatus()).isEqualTo(201);
+                bodies.add(response.getContentAsString());
+            }
+            assertThat(bodies).containsOnly(bodies.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(getAllTrainings()).hasSize(1);
+    }
+
+    @Test
+    void shouldExecuteAgain_whenFirstAttemptFailed() throws Exception {
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "failing")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"firstName\":"))
+                .andExpect(status().isBadRequest());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Long.class)).isZero();
+
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "failing")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"firstName\":\"Fixed\",\"lastName\":\"Client\",\"birthdate\":\"1990-01-01\",\"email\":\"fixed@domain.com\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void shouldRejectRequestLargerThanLimit_withoutStoringKey() throws Exception {
+        String body = "{\"firstName\":\"%s\",\"lastName\":\"Client\",\"birthdate\":\"1990-01-01\",\"email\":\"large@domain.com\"}"
+                .formatted("x".repeat(properties.maxRequestSize()));
+
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "large")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isPayloadTooLarge());
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Long.class)).isZero();
+        assertThat(getAllUsers()).isEmpty();
+    }
+
+    @Test
+    void shouldScopeKeyToClient() throws Exception {
+        String body = "{\"firstName\":\"First\",\"lastName\":\"Client\",\"birthdate\":\"1990-01-01\",\"email\":\"first@domain.com\"}";
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "shared").header("X-Client-Id", "first")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "shared").header("X-Client-Id", "second")
+                        .contentType(MediaType.APPLICATION_JSON).content(body.replace("first@", "second@")))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+        mockMvc.perform(post("/v1/users").header("Idempotency-Key", "shared").header("X-Client-Id", "first")
+                        .contentType(MediaType.APPLICATION_JSON).content(body.replace("first@", "third@"))
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.8");
+                            return request;
+                        }))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+        assertThat(getAllUsers()).hasSize(3);
+    }
+
+    @Test
+    void shouldIgnoreCompletionAndAbandon_whenLeaseWasTakenOver() throws Exception {
+        IdempotencyStore first = new IdempotencyStore(jdbcTemplate, namedParameterJdbcTemplate, properties);
+        IdempotencyStore second = new IdempotencyStore(jdbcTemplate, namedParameterJdbcTemplate, properties);
+        IdempotencyStore.Claim.Owner stale = (IdempotencyStore.Claim.Owner) first.claim("lease", "hash");
+        jdbcTemplate.update("UPDATE idempotency_keys SET expires_at = ?", Timestamp.from(Instant.now().minusSeconds(1)));
+        IdempotencyStore.Claim.Owner current = (IdempotencyStore.Claim.Owner) second.claim("lease", "hash");
+
+        first.complete(stale, 201, null, "stale".getBytes());
+        first.abandon(stale);
+        second.complete(current, 201, null, "current".getBytes());
+
+        assertThat(jdbcTemplate.queryForObject("SELECT body FROM idempotency_keys WHERE idempotency_key = 'lease'", byte[].class))
+                .isEqualTo("current".getBytes());
+        assertThat(first.memoryKeys()).isZero();
+    }
+
+    @Test
+    void shouldWaitForResponseStoredByOtherInstance() throws Exception {
+        IdempotencyStore first = new IdempotencyStore(jdbcTemplate, namedParameterJdbcTemplate, properties);
+        IdempotencyStore second = new IdempotencyStore(jdbcTemplate, namedParameterJdbcTemplate, properties);
+        IdempotencyStore.Claim.Owner owner = (IdempotencyStore.Claim.Owner) first.claim("other-instance", "hash");
+
+        CompletableFuture<IdempotencyStore.Claim> retry = CompletableFuture.supplyAsync(() -> {
+            try {
+                return second.claim("other-instance", "hash");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertThat(retry).isNotDone();
+        first.complete(owner, 201, null, "stored".getBytes());
+
+        assertThat(retry.get(5, TimeUnit.SECONDS)).isInstanceOfSatisfying(IdempotencyStore.Claim.Replay.class,
+                replay -> assertThat(replay.response().body()).isEqualTo("stored".getBytes()));
+    }
+
+    @Test
+    void shouldReleaseMemorySlot_whenClaimFails() {
+        IdempotencyStore broken = new IdempotencyStore(
+                new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:idempotency-without-table")),
+                namedParameterJdbcTemplate, properties);
+
+        assertThatThrownBy(() -> broken.claim("key", "hash")).isInstanceOf(DataAccessException.class);
+        assertThat(broken.memoryKeys()).isZero();
+    }
+
+    @Test
+    void shouldSweepExpiredKeysInBatches() {
+        Timestamp expired = Timestamp.from(Instant.now().minusSeconds(60));
+        Timestamp valid = Timestamp.from(Instant.now().plusSeconds(3600));
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            rows.add(new Object[]{"POST /v1/users expired-" + i, "hash", 201, expired, expired});
+        }
+        rows.add(new Object[]{"POST /v1/users valid", "hash", 201, expired, valid});
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO idempotency_keys (idempotency_key, request_hash, status, created_at, expires_at)
+                VALUES (?, ?, ?, ?, ?)""", rows);
+
+        assertThat(store.sweep()).isEqualTo(2_500);
+        assertThat(jdbcTemplate.queryForList("SELECT idempotency_key FROM idempotency_keys", String.class))
+                .containsExactly("POST /v1/users valid");
+    }
+}
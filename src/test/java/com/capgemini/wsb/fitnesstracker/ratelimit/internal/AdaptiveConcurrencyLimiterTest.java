@@ -0,0 +1,82 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLI = 1_000_000;
+
+    private static final RateLimitProperties.Concurrency PROPERTIES = new RateLimitProperties.Concurrency(
+            true, 20, 4, 200, Duration.ofMillis(100), 10, 1.5, 0.2, Duration.ofSeconds(1),
+            List.of());
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(PROPERTIES, clock::get);
+
+    @Test
+    void shouldRejectRequestsAboveLimit() {
+        for (int i = 0; i < 20; i++) {
+            assertThat(limiter.tryAcquire()).isNotNull();
+        }
+
+        assertThat(limiter.tryAcquire()).isNull();
+        assertThat(limiter.inFlight()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldAdmitAndReleaseRequests_whenClockIsNegative() {
+        clock.set(-5_000 * MILLI);
+        AdaptiveConcurrencyLimiter negativeClock = new AdaptiveConcurrencyLimiter(PROPERTIES, clock::get);
+
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            permits.add(negativeClock.tryAcquire());
+        }
+        assertThat(permits).doesNotContainNull();
+        clock.addAndGet(10 * MILLI);
+        permits.forEach(negativeClock::release);
+
+        assertThat(negativeClock.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldGrowLimitWhileLatencyIsStable_andShrinkWhenItRises() {
+        runWindows(30, 20, 10 * MILLI);
+        int grown = limiter.limit();
+        assertThat(grown).isGreaterThan(20);
+
+        runWindows(10, grown, 60 * MILLI);
+
+        assertThat(limiter.limit()).isLessThan(grown * 3 / 4);
+    }
+
+    @Test
+    void shouldNotGrowLimit_whenMostlyUnused() {
+        runWindows(30, 3, 10 * MILLI);
+
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    private void runWindows(int windows, int concurrency, long latencyNanos) {
+        for (int window = 0; window < windows; window++) {
+            List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+                if (permit != null) {
+                    permits.add(permit);
+                }
+            }
+            clock.addAndGet(Math.max(latencyNanos, 100 * MILLI));
+            for (int i = 0; i < permits.size(); i++) {
+                limiter.release(new AdaptiveConcurrencyLimiter.Permit(clock.get() - latencyNanos));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private static final RateLimitProperties PROPERTIES = new RateLimitProperties(true, "X-Client-Id", 1000, 1000,
+            100, 16, Duration.ofMinutes(1), new RateLimitProperties.Concurrency(true, 8, 8, 8, Duration.ofMillis(100),
+            10, 1.5, 0.2, Duration.ofSeconds(1), List.of("/v1/users/*/trainings/stream", "/v1/trainings/*/track/**")));
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(PROPERTIES.concurrency(), System::nanoTime);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitFilter filter = new RateLimitFilter(
+            new TokenBuckets(1000, 1000, 100, 16, System::currentTimeMillis), limiter, PROPERTIES,
+            meterRegistry.counter("client_rate"), meterRegistry.counter("concurrency"));
+
+    @Test
+    void shouldPassStreamingRequests_whenConcurrencyLimitIsReached() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            assertThat(limiter.tryAcquire()).isNotNull();
+        }
+
+        assertThat(perform("/v1/trainings/7/track/points")).isEqualTo(200);
+        assertThat(perform("/v1/users/3/trainings/stream")).isEqualTo(200);
+        assertThat(perform("/v1/trainings/7")).isEqualTo(429);
+        assertThat(limiter.inFlight()).isEqualTo(8);
+    }
+
+    private int perform(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
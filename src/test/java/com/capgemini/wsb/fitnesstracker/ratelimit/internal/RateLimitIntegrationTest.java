@@ -0,0 +1,61 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {"rate-limit.requests-per-second=0.5", "rate-limit.burst=3"})
+class RateLimitIntegrationTest extends IntegrationTestBase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void shouldRejectClientAboveItsRate_withRetryAfter() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/v1/users").header("X-Client-Id", "sync-client")).andExpect(status().isOk());
+        }
+
+        mockMvc.perform(get("/v1/users").header("X-Client-Id", "sync-client"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+        mockMvc.perform(get("/v1/users").header("X-Client-Id", "other-client")).andExpect(status().isOk());
+        assertThat(meterRegistry.counter("ratelimit.rejected", "reason", "client_rate").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ratelimit.concurrency.limit").gauge().value()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldLimitAddress_whenClientIdChangesOnEveryRequest() throws Exception {
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            int status = mockMvc.perform(get("/v1/users").header("X-Client-Id", "rotating-" + i)
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.7");
+                                return request;
+                            }))
+                    .andReturn().getResponse().getStatus();
+            if (status == 200) {
+                accepted++;
+            }
+        }
+
+        // Po jednym żądaniu 16 klientów z własnym kubełkiem, potem 3 żądania z kubełka adresu
+        // (plus żeton uzupełniony w trakcie).
+        assertThat(accepted).isBetween(16 + 3, 16 + 4);
+    }
+}
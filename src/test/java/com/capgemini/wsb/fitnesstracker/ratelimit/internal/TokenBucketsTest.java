@@ -0,0 +1,108 @@
+package com.capgemini.wsb.fitnesstracker.ratelimit.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class TokenBucketsTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    @Test
+    void shouldAllowBurstThenRefillAtConfiguredRate() {
+        TokenBuckets buckets = new TokenBuckets(2, 3, 100, 4, clock::get);
+
+        assertThat(buckets.tryAcquire("client", null)).isZero();
+        assertThat(buckets.tryAcquire("client", null)).isZero();
+        assertThat(buckets.tryAcquire("client", null)).isZero();
+        assertThat(buckets.tryAcquire("client", null)).isEqualTo(500);
+        assertThat(buckets.tryAcquire("other", null)).isZero();
+
+        clock.addAndGet(499);
+        assertThat(buckets.tryAcquire("client", null)).isBetween(1L, 2L);
+        clock.addAndGet(1);
+        assertThat(buckets.tryAcquire("client", null)).isZero();
+        assertThat(buckets.tryAcquire("client", null)).isPositive();
+    }
+
+    @Test
+    void shouldNotLoseRefill_whenRequestedMoreOftenThanOneUnitAccrues() {
+        TokenBuckets buckets = new TokenBuckets(0.5, 1, 100, 4, clock::get);
+        assertThat(buckets.tryAcquire("client", null)).isZero();
+
+        int accepted = 0;
+        for (int millis = 0; millis < 20_000; millis++) {
+            clock.incrementAndGet();
+            if (buckets.tryAcquire("client", null) == 0) {
+                accepted++;
+            }
+        }
+
+        assertThat(accepted).isEqualTo(10);
+    }
+
+    @Test
+    void shouldSweepOnlyRefilledBuckets_andShareOverflowBucket() {
+        TokenBuckets buckets = new TokenBuckets(10, 10, 2, 4, clock::get);
+        buckets.tryAcquire("first", null);
+        clock.addAndGet(500);
+        buckets.tryAcquire("second", null);
+        buckets.tryAcquire("third", null);
+        buckets.tryAcquire("fourth", null);
+        assertThat(buckets.clients()).isEqualTo(3);
+
+        clock.addAndGet(500);
+        assertThat(buckets.sweep()).isEqualTo(1);
+        assertThat(buckets.clients()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldShareAddressBucket_whenClientIdsRotateBeyondLimitPerAddress() {
+        TokenBuckets buckets = new TokenBuckets(1, 2, 100, 4, clock::get);
+
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (buckets.tryAcquire("10.0.0.1", "client-" + i) == 0) {
+                accepted++;
+            }
+        }
+
+        assertThat(accepted).isEqualTo(4 + 2);
+        assertThat(buckets.clients()).isEqualTo(1 + 4);
+        assertThat(buckets.tryAcquire("10.0.0.2", "client-0")).isZero();
+    }
+
+    @Test
+    void shouldMeasureAcquireOverhead_underContention() throws InterruptedException {
+        long origin = System.nanoTime();
+        TokenBuckets buckets = new TokenBuckets(1_000_000, TokenBuckets.MAX_BURST, 100_000, 4,
+                () -> (System.nanoTime() - origin) / 1_000_000);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int iterations = 200_000;
+        List<Thread> workers = new ArrayList<>();
+        long startedAt = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            String client = "client-" + (t % 4);
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    buckets.tryAcquire(client, null);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanosPerAcquire = (System.nanoTime() - startedAt) * threads / ((long) threads * iterations);
+
+        log.info("Token bucket acquire: {} threads, {} ns per call per thread", threads, nanosPerAcquire);
+        assertThat(buckets.clients()).isEqualTo(Math.min(threads, 4));
+    }
+}
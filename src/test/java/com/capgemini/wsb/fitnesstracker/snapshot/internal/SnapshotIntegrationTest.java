@@ -0,0 +1,199 @@
+package com.capgemini.wsb.fitnesstracker.snapshot.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.exception.api.BusinessException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@IntegrationTest
+@SpringBootTest(properties = {"snapshot.block-rows=4", "snapshot.restore-threads=3",
+        "snapshot.directory=target/test-snapshots"})
+class SnapshotIntegrationTest extends IntegrationTestBase {
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private SnapshotEndpoint snapshotEndpoint;
+
+    @Autowired
+    private JpaRepository<User, Long> userRepository;
+
+    @Autowired
+    private JpaRepository<Training, Long> trainingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    void deleteAllRows() {
+        jdbcTemplate.update("DELETE FROM training_tombstones");
+        jdbcTemplate.update("DELETE FROM trainings");
+        jdbcTemplate.update("DELETE FROM users");
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void shouldRestoreIdenticalUsersAndTrainings_whenRestoringDumpedSnapshot() throws Exception {
+        List<User> users = new ArrayList<>();
+        List<Training> trainings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User user = existingUser(generateUser(i));
+            users.add(user);
+            for (int j = 0; j < 3; j++) {
+                Date start = new Date(1_700_000_000_000L + (i * 3L + j) * 7_200_000);
+                trainings.add(persistTraining(new Training(user, start, new Date(start.getTime() + 3_600_000),
+                        ActivityType.values()[j], 5.5 * j, 10.25 + i)));
+            }
+        }
+        Path snapshot = directory.resolve("fitness.snapshot");
+
+        SnapshotService.SnapshotSummary dumped = snapshotService.dump(snapshot);
+        trainingRepository.deleteAll();
+        userRepository.deleteAll();
+        SnapshotService.SnapshotSummary restored = snapshotService.restore(snapshot);
+
+        assertThat(dumped.users()).isEqualTo(10);
+        assertThat(dumped.trainings()).isEqualTo(30);
+        assertThat(restored.users()).isEqualTo(10);
+        assertThat(restored.trainings()).isEqualTo(30);
+        assertThat(getAllUsers()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(users);
+        assertThat(getAllTrainings()).usingRecursiveFieldByFieldElementComparatorIgnoringFields("user", "startTime", "endTime")
+                .containsExactlyInAnyOrderElementsOf(trainings);
+        assertThat(getAllTrainings()).extracting(training -> training.getStartTime().getTime())
+                .containsExactlyInAnyOrderElementsOf(trainings.stream().map(training -> training.getStartTime().getTime()).toList());
+
+        User created = existingUser(generateUser(99));
+        assertThat(created.getId()).isGreaterThan(users.get(users.size() - 1).getId());
+    }
+
+    @Test
+    void shouldKeepVersionsCaloriesChangeSequenceAndTombstones_andSkipSoftDeletedUsers() throws Exception {
+        User kept = existingUser(generateUser(1));
+        User deleted = existingUser(generateUser(2));
+        for (int i = 0; i < 6; i++) {
+            Date start = new Date(1_700_000_000_000L + i * 7_200_000L);
+            persistTraining(new Training(i % 2 == 0 ? kept : deleted, start, new Date(start.getTime() + 3_600_000),
+                    ActivityType.RUNNING, 5.0, 10.0));
+        }
+        jdbcTemplate.update("UPDATE users SET first_name = 'Changed' WHERE id = ?", kept.getId());
+        jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE id = ?", kept.getId());
+        jdbcTemplate.update("UPDATE trainings SET calories = 321, calories_model = 2, version = 4 WHERE user_id = ?", kept.getId());
+        jdbcTemplate.update("""
+                INSERT INTO training_tombstones (training_id, user_id, change_seq, deleted_at)
+                VALUES (1000000, ?, NEXT VALUE FOR training_change_seq, CURRENT_TIMESTAMP)""", kept.getId());
+        jdbcTemplate.update("UPDATE users SET deleted_at = CURRENT_TIMESTAMP WHERE id = ?", deleted.getId());
+        String keptTrainings = "SELECT id, version, calories, calories_model, change_seq FROM trainings WHERE user_id = ? ORDER BY id";
+        List<Map<String, Object>> trainingsBefore = jdbcTemplate.queryForList(keptTrainings, kept.getId());
+        List<Map<String, Object>> tombstonesBefore = jdbcTemplate.queryForList("SELECT * FROM training_tombstones");
+        Map<String, Object> userBefore = jdbcTemplate.queryForMap("SELECT * FROM users WHERE id = ?", kept.getId());
+        Path snapshot = directory.resolve("fitness.snapshot");
+
+        SnapshotService.SnapshotSummary dumped = snapshotService.dump(snapshot);
+        deleteAllRows();
+        snapshotService.restore(snapshot);
+
+        assertThat(dumped.users()).isEqualTo(1);
+        assertThat(dumped.trainings()).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM users", Long.class)).containsExactly(kept.getId());
+        assertThat(jdbcTemplate.queryForMap("SELECT * FROM users WHERE id = ?", kept.getId())).isEqualTo(userBefore);
+        assertThat(jdbcTemplate.queryForList(keptTrainings, kept.getId())).isEqualTo(trainingsBefore);
+        assertThat(jdbcTemplate.queryForList("SELECT * FROM training_tombstones")).isEqualTo(tombstonesBefore);
+        long restoredMaxChangeSeq = jdbcTemplate.queryForObject(
+                "SELECT MAX(change_seq) FROM (SELECT change_seq FROM trainings UNION ALL SELECT change_seq FROM training_tombstones)",
+                Long.class);
+        assertThat(jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR training_change_seq", Long.class))
+                .isEqualTo(restoredMaxChangeSeq + 1);
+    }
+
+    @Test
+    void shouldRejectSnapshot_whenBlockChecksumDoesNotMatch() throws Exception {
+        existingUser(generateUser(1));
+        Path snapshot = directory.resolve("fitness.snapshot");
+        snapshotService.dump(snapshot);
+        userRepository.deleteAll();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            long lastDataByte = channel.size() - SnapshotCodec.BLOCK_HEADER_SIZE - 1;
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), lastDataByte);
+        }
+
+        assertThatThrownBy(() -> snapshotService.restore(snapshot)).isInstanceOf(InvalidSnapshotException.class);
+    }
+
+    @Test
+    void shouldKeepPreviousSnapshot_whenDumpFails() throws Exception {
+        existingUser(generateUser(1));
+        Path snapshot = directory.resolve("fitness.snapshot");
+        snapshotService.dump(snapshot);
+        byte[] previous = Files.readAllBytes(snapshot);
+        existingUser(generateUser(2));
+
+        // Zrzut przerywany przy ostatniej tabeli - po zapisaniu użytkowników i treningów.
+        jdbcTemplate.execute("ALTER TABLE training_tombstones RENAME TO training_tombstones_hidden");
+        try {
+            assertThatThrownBy(() -> snapshotService.dump(snapshot)).isInstanceOf(DataAccessException.class);
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE training_tombstones_hidden RENAME TO training_tombstones");
+        }
+
+        assertThat(Files.readAllBytes(snapshot)).isEqualTo(previous);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(snapshot);
+        }
+    }
+
+    @Test
+    void shouldDumpOnlyInsideSnapshotDirectory_whenRunThroughEndpoint() throws Exception {
+        existingUser(generateUser(1));
+
+        SnapshotService.SnapshotSummary dumped = snapshotEndpoint.run("dump", "nested/../endpoint.snapshot");
+
+        assertThat(Path.of(dumped.path())).isEqualTo(Path.of("target/test-snapshots/endpoint.snapshot").toAbsolutePath());
+        assertThat(Path.of(dumped.path())).isRegularFile();
+        for (String outside : List.of("../outside.snapshot", "nested/../../outside.snapshot",
+                directory.resolve("absolute.snapshot").toString(), ".")) {
+            assertThatThrownBy(() -> snapshotEndpoint.run("dump", outside)).isInstanceOf(BusinessException.class);
+            assertThatThrownBy(() -> snapshotEndpoint.run("restore", outside)).isInstanceOf(BusinessException.class);
+        }
+        assertThat(Path.of("target/outside.snapshot")).doesNotExist();
+        assertThat(directory.resolve("absolute.snapshot")).doesNotExist();
+    }
+
+    private static User generateUser(int index) {
+        return new User("First" + index, "Last" + index, LocalDate.of(1980 + index, 1, 1), randomUUID() + "@example.com");
+    }
+}
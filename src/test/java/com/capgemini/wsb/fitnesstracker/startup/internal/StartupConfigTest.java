@@ -0,0 +1,45 @@
+package com.capgemini.wsb.fitnesstracker.startup.internal;
+
+import jakarta.annotation.PostConstruct;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StartupConfigTest {
+
+    private final LazyInitializationExcludeFilter filter = StartupConfig.backgroundJobsLazyInitializationExcludeFilter();
+
+    @Test
+    void shouldKeepBackgroundJobsEager() {
+        assertThat(filter.isExcluded("scheduledJob", new RootBeanDefinition(ScheduledJob.class), ScheduledJob.class)).isTrue();
+        assertThat(filter.isExcluded("startedJob", new RootBeanDefinition(StartedJob.class), StartedJob.class)).isTrue();
+    }
+
+    @Test
+    void shouldLeaveOtherBeansLazy() {
+        assertThat(filter.isExcluded("plainBean", new RootBeanDefinition(PlainBean.class), PlainBean.class)).isFalse();
+    }
+
+    static class ScheduledJob {
+
+        @Scheduled(fixedDelay = 1000)
+        void run() {
+        }
+    }
+
+    static class StartedJob {
+
+        @PostConstruct
+        void start() {
+        }
+    }
+
+    static class PlainBean {
+
+        void work() {
+        }
+    }
+}
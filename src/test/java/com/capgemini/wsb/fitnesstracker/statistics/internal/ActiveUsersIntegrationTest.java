@@ -0,0 +1,128 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@SpringBootTest(properties = "statistics.active-users.flush-interval=1h")
+class ActiveUsersIntegrationTest extends IntegrationTestBase {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 3, 1);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ActiveUsers activeUsers;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteGeneratedData() {
+        jdbcTemplate.update("DELETE FROM active_user_sketches");
+        jdbcTemplate.update("DELETE FROM trainings");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void shouldEstimateActiveUsersOfGeneratedMonth_withinErrorBound() {
+        long firstUserId = generateUsers(20_000);
+        generateTrainings(firstUserId, 20_000, 60_000);
+        activeUsers.seed();
+
+        for (ActivityType activityType : new ActivityType[]{null, ActivityType.CYCLING}) {
+            ActiveUsersDto month = activeUsers.count(FIRST_DAY, FIRST_DAY.plusDays(30), activityType, true);
+            ActiveUsersDto day = activeUsers.count(FIRST_DAY.plusDays(10), FIRST_DAY.plusDays(10), activityType, true);
+            log.info("Active users {}: month {}, day {}", activityType, month, day);
+
+            assertThat((double) month.estimate()).isCloseTo(month.exact(), within(3 * HyperLogLog.RELATIVE_STANDARD_ERROR * month.exact()));
+            assertThat((double) day.estimate()).isCloseTo(day.exact(), within(3 * HyperLogLog.RELATIVE_STANDARD_ERROR * day.exact()));
+        }
+    }
+
+    @Test
+    void shouldCountUsersOfNewTrainings_beforeAndAfterFlush() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(existingUser(new User("Jan", "Kowalski", LocalDate.of(1990, 1, 1), "active" + i + "@domain.com")));
+        }
+        Instant start = FIRST_DAY.atStartOfDay().toInstant(java.time.ZoneOffset.UTC).plusSeconds(3_600);
+        for (User user : users) {
+            trainingService.createTraining(new Training(user, java.util.Date.from(start),
+                    java.util.Date.from(start.plusSeconds(1_800)), ActivityType.RUNNING, 5, 10));
+        }
+        trainingService.createTraining(new Training(users.get(0), java.util.Date.from(start.plusSeconds(7_200)),
+                java.util.Date.from(start.plusSeconds(9_000)), ActivityType.WALKING, 2, 4));
+
+        mockMvc.perform(get("/v1/stats/active-users").param("from", "2024-03-01").param("to", "2024-03-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estimate").value(3));
+        activeUsers.flush();
+        mockMvc.perform(get("/v1/stats/active-users").param("from", "2024-03-01").param("to", "2024-03-31")
+                        .param("activityType", "WALKING").param("exact", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estimate").value(1))
+                .andExpect(jsonPath("$.exact").value(1))
+                .andExpect(jsonPath("$.relativeStandardError").value(HyperLogLog.RELATIVE_STANDARD_ERROR));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM active_user_sketches", Long.class)).isEqualTo(2);
+        mockMvc.perform(get("/v1/stats/active-users").param("from", "2024-03-02").param("to", "2024-03-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private long generateUsers(int count) {
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[]{"User", "No" + i, Date.valueOf("1990-01-01"), "generated" + i + "@domain.com"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (first_name, last_name, birthdate, email) VALUES (?, ?, ?, ?)", rows);
+        return jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class);
+    }
+
+    private void generateTrainings(long firstUserId, int users, int count) {
+        Random random = new Random(42);
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Część użytkowników trenuje często, większość sporadycznie.
+            long userId = firstUserId + (random.nextBoolean() ? random.nextInt(users / 10) : random.nextInt(users));
+            Instant start = FIRST_DAY.plusDays(random.nextInt(31)).atStartOfDay(java.time.ZoneOffset.UTC).toInstant()
+                    .plusSeconds(random.nextInt(80_000));
+            rows.add(new Object[]{userId, Timestamp.from(start), Timestamp.from(start.plusSeconds(3_600)),
+                    random.nextInt(ActivityType.values().length), 10.0, 10.0});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO trainings (user_id, start_time, end_time, activity_type, distance, average_speed)
+                VALUES (?, ?, ?, ?, ?, ?)""", rows);
+    }
+}
@@ -0,0 +1,38 @@
+package com.capgemini.wsb.fitnesstracker.statistics.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    void shouldEstimateWithinThreeStandardErrors() {
+        for (int users : new int[]{1_000, 20_000, 300_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (long id = 1; id <= users; id++) {
+                sketch.add(id);
+                sketch.add(id);
+            }
+
+            assertThat((double) sketch.estimate()).isCloseTo(users, within(3 * HyperLogLog.RELATIVE_STANDARD_ERROR * users));
+        }
+    }
+
+    @Test
+    void shouldEstimateUnion_whenMergingOverlappingSketches() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (long id = 1; id <= 60_000; id++) {
+            first.add(id);
+            second.add(id + 30_000);
+        }
+
+        HyperLogLog union = new HyperLogLog().merge(first).merge(second);
+
+        assertThat((double) union.estimate()).isCloseTo(90_000, within(3 * HyperLogLog.RELATIVE_STANDARD_ERROR * 90_000));
+        assertThat(union.merge(first).estimate()).isEqualTo(union.estimate());
+        assertThat(HyperLogLog.fromBytes(union.toBytes()).estimate()).isEqualTo(union.estimate());
+    }
+}
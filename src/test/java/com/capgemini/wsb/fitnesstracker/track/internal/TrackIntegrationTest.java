@@ -0,0 +1,278 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingsDeletedEvent;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.assertj.core.api.Assertions.within;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@SpringBootTest(properties = "track.chunk-points=100")
+class TrackIntegrationTest extends IntegrationTestBase {
+
+    private static final Instant START = Instant.parse("2024-05-01T06:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TrackChunkRepository chunkRepository;
+
+    @Autowired
+    private TrackLevelRepository levelRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void shouldStoreTrackInChunks_andStreamBackPointsInRange() throws Exception {
+        Training training = existingTraining();
+        List<TrackPoint> points = points(0, 250);
+
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.points").value(250))
+                .andExpect(jsonPath("$.chunks").value(3));
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points(250, 10))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.chunks").value(1));
+
+        assertThat(chunkRepository.countPoints(training.getId())).isEqualTo(260);
+        List<TrackPoint> all = readPoints(get("/v1/trainings/{trainingId}/track/points", training.getId()));
+        assertThat(all).hasSize(260);
+        assertThat(all.get(42).time()).isEqualTo(points.get(42).time());
+        assertThat(all.get(42).latitude()).isCloseTo(points.get(42).latitude(), within(1e-7));
+        assertThat(all.get(42).elevation()).isCloseTo(points.get(42).elevation(), within(0.1));
+        assertThat(all.get(42).heartRate()).isEqualTo(points.get(42).heartRate());
+        assertThat(all.get(42).cadence()).isNull();
+
+        List<TrackPoint> range = readPoints(get("/v1/trainings/{trainingId}/track/points", training.getId())
+                .param("from", START.plusSeconds(95).toString())
+                .param("to", START.plusSeconds(205).toString()));
+        assertThat(range).extracting(TrackPoint::time)
+                .containsExactlyElementsOf(points.subList(95, 205).stream().map(TrackPoint::time).toList());
+    }
+
+    @Test
+    void shouldServeSimplifiedLevel_matchingZoom() throws Exception {
+        Training training = existingTraining();
+        List<TrackPoint> points = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            double deviation = i == 100 ? 0.00003 : i == 300 ? 0.003 : 0;
+            points.add(new TrackPoint(START.plusSeconds(i), 52.2297 + deviation, 21.0122 + i * 0.0001, null, null, null));
+        }
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points)))
+                .andExpect(status().isCreated());
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                mockMvc.perform(get("/v1/trainings/{trainingId}/track", training.getId()))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.level").value(1)));
+
+        mockMvc.perform(get("/v1/trainings/{trainingId}/track", training.getId()).param("zoom", "18"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.level").value(1))
+                .andExpect(jsonPath("$.sourcePointCount").value(400))
+                .andExpect(jsonPath("$.coordinates", hasSize(8)))
+                .andExpect(jsonPath("$.coordinates[0][0]").value(closeTo(21.0122, 1e-7)))
+                .andExpect(jsonPath("$.coordinates[0][1]").value(closeTo(52.2297, 1e-7)));
+        mockMvc.perform(get("/v1/trainings/{trainingId}/track", training.getId()).param("zoom", "12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.level").value(2))
+                .andExpect(jsonPath("$.coordinates", hasSize(5)));
+        mockMvc.perform(get("/v1/trainings/{trainingId}/track", training.getId()).param("zoom", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.level").value(5))
+                .andExpect(jsonPath("$.coordinates", hasSize(2)));
+        mockMvc.perform(get("/v1/trainings/{trainingId}/track", training.getId()).param("zoom", "31"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldNotWriteLevels_whenTrackIsDeletedBeforeRebuild() throws Exception {
+        Training training = existingTraining();
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points(0, 10))))
+                .andExpect(status().isCreated());
+        await().atMost(Duration.ofSeconds(10)).until(() -> countLevels(training) > 0);
+
+        // Usunięcie treningu zatwierdzone przed przeliczeniem poziomów zleconym ostatnią wysyłką.
+        transactionTemplate.executeWithoutResult(status ->
+                eventPublisher.publishEvent(new TrainingsDeletedEvent(training.getUser().getId(), List.of(training.getId()))));
+        long builds = meterRegistry.timer("track.levels.build").count();
+        eventPublisher.publishEvent(new TrackAppendedEvent(training.getId()));
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> meterRegistry.timer("track.levels.build").count() > builds);
+        assertThat(countLevels(training)).isZero();
+    }
+
+    @Test
+    void shouldRejectPoints_whenNotAfterLastStoredPoint() throws Exception {
+        Training training = existingTraining();
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points(0, 10))))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points(5, 10))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectPoints_whenNotAfterPreviousAtStoredMillisecondPrecision() throws Exception {
+        Training training = existingTraining();
+        String body = """
+                {"time": "2024-05-01T06:00:00.000100Z", "latitude": 52.2, "longitude": 21.0}
+                {"time": "2024-05-01T06:00:00.000900Z", "latitude": 52.2, "longitude": 21.0}
+                """;
+
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+        assertThat(chunkRepository.countPoints(training.getId())).isZero();
+    }
+
+    @Test
+    void shouldKeepTrackOrdered_whenUploadsRunConcurrently() throws Exception {
+        Training training = existingTraining();
+        int uploads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(uploads);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                String body = ndjson(points(i * 150, 150));
+                statuses.add(executor.submit(() -> {
+                    start.await();
+                    return mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", training.getId())
+                                    .contentType(MediaType.APPLICATION_NDJSON)
+                                    .content(body))
+                            .andReturn().getResponse().getStatus();
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            for (Future<Integer> status : statuses) {
+                // Wysyłka wcześniejszych punktów po późniejszych jest odrzucana jako nieuporządkowana, nigdy jako błąd.
+                assertThat(status.get(30, TimeUnit.SECONDS)).isIn(201, 400);
+                created += status.get() == 201 ? 1 : 0;
+            }
+            assertThat(created).isPositive();
+            // Przerwana wysyłka zostawia zapisane wcześniej fragmenty, więc punktów może być więcej.
+            long stored = chunkRepository.countPoints(training.getId());
+            assertThat(stored).isGreaterThanOrEqualTo(created * 150L);
+            List<TrackPoint> all = readPoints(get("/v1/trainings/{trainingId}/track/points", training.getId()));
+            assertThat(all).hasSize((int) stored);
+            assertThat(all).extracting(TrackPoint::time).doesNotHaveDuplicates().isSorted();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReturnNotFound_whenTrainingDoesNotExist() throws Exception {
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", Long.MAX_VALUE)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson(points(0, 1))))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/v1/trainings/{trainingId}/track/points", Long.MAX_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    private Training existingTraining() {
+        User user = existingUser(new User("Track", "Runner", LocalDate.of(1990, 1, 1),
+                "runner" + System.nanoTime() + "@domain.com"));
+        return persistTraining(new Training(user, Date.from(START), Date.from(START.plusSeconds(3_600)),
+                ActivityType.RUNNING, 10, 10));
+    }
+
+    private int countLevels(Training training) {
+        return levelRepository.findByTrainingIdOrderByLevel(training.getId()).size();
+    }
+
+    private static List<TrackPoint> points(int from, int count) {
+        List<TrackPoint> points = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            points.add(new TrackPoint(START.plusSeconds(i), 52.2297 + i * 0.00001, 21.0122 + i * 0.000013,
+                    100.0 + (i % 7) * 0.3, 120 + i % 40, null));
+        }
+        return points;
+    }
+
+    private String ndjson(List<TrackPoint> points) throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (TrackPoint point : points) {
+            body.append(objectMapper.writeValueAsString(point)).append('\n');
+        }
+        return body.toString();
+    }
+
+    private List<TrackPoint> readPoints(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<TrackPoint> points = new ArrayList<>();
+        objectMapper.readerFor(TrackPoint.class).readValues(body).forEachRemaining(point -> points.add((TrackPoint) point));
+        return points;
+    }
+}
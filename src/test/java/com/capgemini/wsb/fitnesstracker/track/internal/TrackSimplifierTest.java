@@ -0,0 +1,51 @@
+package com.capgemini.wsb.fitnesstracker.track.internal;
+
+import com.capgemini.wsb.fitnesstracker.track.api.TrackPoint;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackSimplifierTest {
+
+    private static final Instant START = Instant.parse("2024-05-01T06:00:00Z");
+    /**
+     * Około 1,1 m szerokości geograficznej.
+     */
+    private static final double METER = 0.00001;
+
+    @Test
+    void shouldKeepOnlyCorners_whenPointsLieOnStraightSegments() {
+        List<TrackPoint> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            points.add(point(points.size(), 52 + i * METER, 21));
+        }
+        for (int i = 1; i < 100; i++) {
+            points.add(point(points.size(), 52 + 99 * METER, 21 + i * METER));
+        }
+
+        List<TrackPoint> simplified = TrackSimplifier.simplify(points, 1);
+
+        assertThat(simplified).containsExactly(points.get(0), points.get(99), points.get(points.size() - 1));
+    }
+
+    @Test
+    void shouldKeepDeviations_onlyWhenLargerThanTolerance() {
+        List<TrackPoint> points = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double deviation = i == 100 ? 5 * METER : i == 200 ? 50 * METER : 0;
+            points.add(point(i, 52 + deviation, 21 + i * METER));
+        }
+
+        assertThat(TrackSimplifier.simplify(points, 2)).hasSize(8);
+        assertThat(TrackSimplifier.simplify(points, 20)).hasSize(5);
+        assertThat(TrackSimplifier.simplify(points, 100)).containsExactly(points.get(0), points.get(299));
+    }
+
+    private static TrackPoint point(int second, double latitude, double longitude) {
+        return new TrackPoint(START.plusSeconds(second), latitude, longitude, null, null, null);
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Date;
 
 import static java.time.LocalDate.now;
 import static java.util.UUID.randomUUID;
@@ -183,6 +184,105 @@ class TrainingApiIntegrationTest extends IntegrationTestBase {
                 .andExpect(jsonPath("$.averageSpeed").value(0.0));
     }
 
+    @Test
+    void shouldRejectTraining_whenCreatingTrainingOverlappingExistingOne() throws Exception {
+
+        User user1 = existingUser(generateClient());
+        Training training1 = persistTraining(generateTrainingWithDetails(user1, "2024-05-19 19:00:00", "2024-05-19 20:30:00", ActivityType.RUNNING, 14, 11.5));
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        sdf.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "%s",
+                    "endTime": "%s",
+                    "activityType": "CYCLING",
+                    "distance": 20.0,
+                    "averageSpeed": 20.0
+                }
+                """.formatted(user1.getId(),
+                sdf.format(new Date(training1.getEndTime().getTime() - 30 * 60 * 1000)),
+                sdf.format(new Date(training1.getEndTime().getTime() + 30 * 60 * 1000)));
+
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldRejectTraining_whenOverlappedTrainingStartsTogetherWithZeroLengthOne() throws Exception {
+
+        User user1 = existingUser(generateClient());
+        Training training1 = persistTraining(generateTrainingWithDetails(user1, "2024-05-19 19:00:00", "2024-05-19 20:30:00", ActivityType.RUNNING, 14, 11.5));
+        persistTraining(generateTrainingWithDetails(user1, "2024-05-19 19:00:00", "2024-05-19 19:00:00", ActivityType.WALKING, 0, 0));
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        sdf.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "%s",
+                    "endTime": "%s",
+                    "activityType": "CYCLING",
+                    "distance": 20.0,
+                    "averageSpeed": 20.0
+                }
+                """.formatted(user1.getId(),
+                sdf.format(new Date(training1.getStartTime().getTime() + 30 * 60 * 1000)),
+                sdf.format(new Date(training1.getEndTime().getTime() + 30 * 60 * 1000)));
+
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldRejectUpdate_whenUpdatedTrainingOverlapsAnotherOne() throws Exception {
+
+        User user1 = existingUser(generateClient());
+        Training training1 = persistTraining(generateTrainingWithDetails(user1, "2024-05-19 19:00:00", "2024-05-19 20:30:00", ActivityType.RUNNING, 14, 11.5));
+        Training training2 = persistTraining(generateTrainingWithDetails(user1, "2024-05-20 19:00:00", "2024-05-20 20:30:00", ActivityType.RUNNING, 14, 11.5));
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        sdf.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+        String requestBody = """
+                {
+                "startTime": "%s",
+                "endTime": "%s",
+                "activityType": "RUNNING",
+                "distance": 14.0,
+                "averageSpeed": 11.5
+                }
+                """.formatted(sdf.format(training1.getStartTime()), sdf.format(training2.getEndTime()));
+
+        mockMvc.perform(put("/v1/trainings/{trainingId}", training2.getId()).contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldRejectTraining_whenSameTrainingIsSentTwice() throws Exception {
+
+        User user1 = existingUser(generateClient());
+
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "2024-04-01T11:00:00",
+                    "endTime": "2024-04-01T11:00:00",
+                    "activityType": "RUNNING",
+                    "distance": 10.52,
+                    "averageSpeed": 8.2
+                }
+                """.formatted(user1.getId());
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andDo(log())
+                .andExpect(status().isConflict());
+    }
+
     private static User generateClient() {
         return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
     }
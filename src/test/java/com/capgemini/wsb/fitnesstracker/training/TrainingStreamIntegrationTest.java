@@ -0,0 +1,197 @@
+package com.capgemini.wsb.fitnesstracker.training;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.LocalDate.now;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingStreamIntegrationTest extends IntegrationTestBase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Test
+    void shouldPushCreatedTraining_whenSubscribedToUserStream() throws Exception {
+        User user1 = existingUser(generateClient());
+        User user2 = existingUser(generateClient());
+
+        MvcResult stream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user1.getId())
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        createTraining(user2, "2024-04-01T10:00:00");
+        createTraining(user1, "2024-04-01T12:00:00");
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            String content = stream.getResponse().getContentAsString();
+            assertThat(content).contains("event:training");
+            assertThat(content).contains("\"email\":\"%s\"".formatted(user1.getEmail()));
+            assertThat(content).doesNotContain(user2.getEmail());
+        });
+    }
+
+    @Test
+    void shouldReplayMissedTrainings_whenResumingWithLastEventId() throws Exception {
+        User user1 = existingUser(generateClient());
+
+        MvcResult firstStream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user1.getId())
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        createTraining(user1, "2024-04-01T10:00:00");
+
+        String lastEventId = await().atMost(Duration.ofSeconds(5))
+                .until(() -> eventId(firstStream.getResponse().getContentAsString()), id -> id != null);
+
+        createTraining(user1, "2024-04-02T10:00:00");
+
+        MvcResult resumedStream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user1.getId())
+                        .header("Last-Event-ID", lastEventId)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            String content = resumedStream.getResponse().getContentAsString();
+            assertThat(content).contains("2024-04-02");
+            assertThat(content).doesNotContain("2024-04-01");
+        });
+    }
+
+    @Test
+    void shouldSendEachTrainingOnceAndInOrder_whenResumingWhileTrainingsAreCreated() throws Exception {
+        User user = existingUser(generateClient());
+        MvcResult firstStream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user.getId())
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        createTraining(user, "2024-06-01T10:00:00");
+        String lastEventId = await().atMost(Duration.ofSeconds(5))
+                .until(() -> eventId(firstStream.getResponse().getContentAsString()), id -> id != null);
+        createTraining(user, "2024-06-02T10:00:00");
+
+        // Treningi tworzone równolegle z wznowieniem strumienia - część trafia do odtworzenia, część na żywo.
+        CompletableFuture<Void> creating = CompletableFuture.runAsync(() -> {
+            for (int day = 3; day <= 10; day++) {
+                try {
+                    createTraining(user, "2024-06-%02dT10:00:00".formatted(day));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        MvcResult resumedStream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user.getId())
+                        .header("Last-Event-ID", lastEventId)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        creating.get(10, TimeUnit.SECONDS);
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(eventIds(resumedStream.getResponse().getContentAsString())).hasSize(9));
+        List<Long> eventIds = eventIds(resumedStream.getResponse().getContentAsString());
+        assertThat(eventIds).doesNotHaveDuplicates().isSorted();
+        assertThat(eventIds.get(0)).isEqualTo(Long.parseLong(lastEventId) + 1);
+    }
+
+    @Test
+    void shouldPushCreatedTraining_whileSharedSchedulerIsBusy() throws Exception {
+        User user = existingUser(generateClient());
+        MvcResult stream = mockMvc.perform(get("/v1/users/{userId}/trainings/stream", user.getId())
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Długie zadania w tle zajmują wszystkie wątki współdzielonego schedulera.
+        int poolSize = taskScheduler.getPoolSize();
+        CountDownLatch busy = new CountDownLatch(poolSize);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < poolSize; i++) {
+            taskScheduler.execute(() -> {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            assertThat(busy.await(5, TimeUnit.SECONDS)).isTrue();
+            createTraining(user, "2024-05-01T10:00:00");
+
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                    assertThat(stream.getResponse().getContentAsString()).contains("event:training"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void shouldReturnNotFound_whenStreamingTrainingsOfUnknownUser() throws Exception {
+        mockMvc.perform(get("/v1/users/{userId}/trainings/stream", Long.MAX_VALUE)
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+    }
+
+    private void createTraining(User user, String startTime) throws Exception {
+        String requestBody = """
+                {
+                    "userId": "%s",
+                    "startTime": "%s",
+                    "endTime": "%s",
+                    "activityType": "RUNNING",
+                    "distance": 10.52,
+                    "averageSpeed": 8.2
+                }
+                """.formatted(user.getId(), startTime, startTime);
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isCreated());
+    }
+
+    private static String eventId(String content) {
+        return content.lines()
+                .filter(line -> line.startsWith("id:"))
+                .map(line -> line.substring("id:".length()))
+                .reduce((first, second) -> second)
+                .orElse(null);
+    }
+
+    private static List<Long> eventIds(String content) {
+        return content.lines()
+                .filter(line -> line.startsWith("id:"))
+                .map(line -> Long.parseLong(line.substring("id:".length())))
+                .toList();
+    }
+
+    private static User generateClient() {
+        return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
+    }
+}
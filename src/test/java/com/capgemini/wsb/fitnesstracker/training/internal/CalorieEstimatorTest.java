@@ -0,0 +1,80 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.CalorieEstimator.CalorieBatch;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingCaloriesProperties.MetCoefficients;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CalorieEstimatorTest {
+
+    private static final Instant START = Instant.parse("2024-05-01T06:00:00Z");
+    private static final User USER_AGED_30 = new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan@domain.com");
+
+    @Test
+    void shouldScaleMetByDuration_andAdjustForAge() {
+        CalorieEstimator estimator = estimator(Map.of());
+
+        // MET 10 (10 km/h) * 70 kg * 1 h * (1534.5 / 1680)
+        assertThat(estimator.estimate(training(USER_AGED_30, ActivityType.RUNNING, Duration.ofHours(1), 10, 10))).isEqualTo(639);
+        assertThat(estimator.estimate(training(USER_AGED_30, ActivityType.RUNNING, Duration.ofHours(2), 20, 10))).isEqualTo(1279);
+        User olderUser = new User("Anna", "Nowak", LocalDate.of(1954, 1, 1), "anna@domain.com");
+        assertThat(estimator.estimate(training(olderUser, ActivityType.RUNNING, Duration.ofHours(1), 10, 10))).isLessThan(639);
+    }
+
+    @Test
+    void shouldDeriveSpeedFromDistance_whenAverageSpeedMissing() {
+        CalorieEstimator estimator = estimator(Map.of());
+
+        // MET 0.7 * 5 km/h = 3.5
+        assertThat(estimator.estimate(training(USER_AGED_30, ActivityType.WALKING, Duration.ofHours(1), 5, 0))).isEqualTo(224);
+    }
+
+    @Test
+    void shouldChangeModelVersion_whenCoefficientsChange() {
+        CalorieEstimator defaults = estimator(Map.of());
+        CalorieEstimator overridden = estimator(Map.of(ActivityType.TENNIS, new MetCoefficients(8, 0, 8)));
+
+        assertThat(estimator(Map.of()).modelVersion()).isEqualTo(defaults.modelVersion());
+        assertThat(overridden.modelVersion()).isNotEqualTo(defaults.modelVersion());
+        assertThat(overridden.estimate(training(USER_AGED_30, ActivityType.TENNIS, Duration.ofHours(1), 0, 0)))
+                .isGreaterThan(defaults.estimate(training(USER_AGED_30, ActivityType.TENNIS, Duration.ofHours(1), 0, 0)));
+    }
+
+    @Test
+    void shouldEstimateBatchRows_likeSingleTrainings() {
+        CalorieEstimator estimator = estimator(Map.of());
+        CalorieBatch batch = CalorieBatch.allocate(2);
+        batch.activityTypes()[0] = ActivityType.RUNNING.ordinal();
+        batch.startMillis()[0] = START.toEpochMilli();
+        batch.durationMillis()[0] = Duration.ofHours(1).toMillis();
+        batch.averageSpeeds()[0] = 10;
+        batch.birthEpochDays()[0] = (int) USER_AGED_30.getBirthdate().toEpochDay();
+        batch.activityTypes()[1] = ActivityType.CYCLING.ordinal();
+        batch.startMillis()[1] = START.toEpochMilli();
+        batch.durationMillis()[1] = Duration.ofHours(1).toMillis();
+        batch.averageSpeeds()[1] = 20;
+        batch.setUnknownBirthdate(1);
+
+        estimator.estimate(batch, 0, 2);
+
+        assertThat(batch.calories()).containsExactly(639, 560);
+    }
+
+    private static CalorieEstimator estimator(Map<ActivityType, MetCoefficients> met) {
+        return new CalorieEstimator(new TrainingCaloriesProperties(70, met, false, Duration.ofHours(1), 100, 1000, 1, 100));
+    }
+
+    private static Training training(User user, ActivityType activityType, Duration duration, double distance,
+                                     double averageSpeed) {
+        return new Training(user, Date.from(START), Date.from(START.plus(duration)), activityType, distance, averageSpeed);
+    }
+}
@@ -0,0 +1,184 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.eventlog.api.TrainingEvent;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@IntegrationTest
+@SpringBootTest(properties = {
+        "training.calories.recompute-enabled=false",
+        "training.calories.recompute-batch-size=3",
+        "training.calories.recompute-parallelism=2",
+        "training.calories.recompute-users-per-transaction=1"
+})
+@RecordApplicationEvents
+class CaloriesRecomputeIntegrationTest extends IntegrationTestBase {
+
+    private static final Instant START = Instant.parse("2024-05-01T06:00:00Z");
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private CaloriesRecomputeJob recomputeJob;
+
+    @Autowired
+    private CalorieEstimator estimator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TrainingUserLocks userLocks;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @AfterEach
+    void deleteStatistics() {
+        jdbcTemplate.update("DELETE FROM statistics");
+    }
+
+    @Test
+    void shouldEstimateCaloriesOnWrite_andKeepUserStatisticsInSync() {
+        User user = existingUser(new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan.calories@domain.com"));
+        createStatistics(user);
+
+        Training created = trainingService.createTraining(training(user, 0, ActivityType.RUNNING, 10));
+        assertThat(created.getCalories()).isEqualTo(639);
+        assertThat(totalCalories(user)).isEqualTo(639);
+
+        Training updated = trainingService.updateTraining(new Training(created.getId(), user, created.getStartTime(),
+                created.getEndTime(), ActivityType.RUNNING, 12, 12));
+        assertThat(updated.getCalories()).isEqualTo(767);
+        assertThat(totalCalories(user)).isEqualTo(767);
+    }
+
+    @Test
+    void shouldRecomputeTrainingsEstimatedWithOtherModel_andApplyDifferenceToStatistics() {
+        User user = existingUser(new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan.recompute@domain.com"));
+        createStatistics(user);
+        List<Training> trainings = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            trainings.add(trainingService.createTraining(training(user, i, ActivityType.CYCLING, 20)));
+        }
+        int expectedTotal = trainings.stream().mapToInt(Training::getCalories).sum();
+        // Stan po zmianie współczynników: zapisane wartości pochodzą ze starego modelu.
+        jdbcTemplate.update("UPDATE trainings SET calories = 100, calories_model = ?", estimator.modelVersion() + 1);
+        jdbcTemplate.update("UPDATE statistics SET total_calories_burned = 700");
+
+        assertThat(recomputeJob.recompute()).isEqualTo(7);
+
+        assertThat(jdbcTemplate.queryForList("SELECT calories FROM trainings ORDER BY id", Integer.class))
+                .containsExactlyElementsOf(trainings.stream().map(Training::getCalories).toList());
+        assertThat(totalCalories(user)).isEqualTo(expectedTotal);
+        assertThat(applicationEvents.stream(TrainingCaloriesRecomputedEvent.class)
+                .flatMap(event -> event.updated().stream()))
+                .hasSize(7)
+                .allSatisfy(event -> {
+                    assertThat(event.type()).isEqualTo(TrainingEvent.Type.UPDATED);
+                    assertThat(event.userId()).isEqualTo(user.getId());
+                    assertThat(event.activityType()).isEqualTo(ActivityType.CYCLING);
+                })
+                .extracting(TrainingEvent::calories)
+                .containsExactlyElementsOf(trainings.stream().map(Training::getCalories).toList());
+        assertThat(recomputeJob.recompute()).isZero();
+        assertThat(trainingService.getTrainingById(trainings.get(0).getId()))
+                .hasValueSatisfying(training -> assertThat(training.getCalories()).isEqualTo(trainings.get(0).getCalories()));
+    }
+
+    @Test
+    void shouldWaitForUserLock_beforeSavingRecomputedCalories() throws Exception {
+        User user = existingUser(new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan.locked@domain.com"));
+        createStatistics(user);
+        trainingService.createTraining(training(user, 0, ActivityType.RUNNING, 10));
+        jdbcTemplate.update("UPDATE trainings SET calories = 100, calories_model = ?", estimator.modelVersion() + 1);
+
+        CompletableFuture<Long> recomputation = new CompletableFuture<>();
+        Thread recompute = new Thread(() -> recomputation.complete(recomputeJob.recompute()));
+        userLocks.withUserLock(user.getId(), () -> {
+            recompute.start();
+            // Przeliczenie porcji czeka na blokadę użytkownika, więc numer zmiany nie jest jeszcze nadany.
+            await(() -> recompute.getState() == Thread.State.WAITING);
+            assertThat(jdbcTemplate.queryForObject("SELECT calories FROM trainings", Integer.class)).isEqualTo(100);
+            return null;
+        });
+
+        assertThat(recomputation.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT calories FROM trainings", Integer.class)).isEqualTo(639);
+    }
+
+    @Test
+    void shouldSaveRecomputedCaloriesOfOtherUsers_whileOneUserIsLocked() throws Exception {
+        User first = existingUser(new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan.first@domain.com"));
+        User locked = existingUser(new User("Jan", "Kowalski", LocalDate.of(1994, 1, 1), "jan.second@domain.com"));
+        Training firstTraining = trainingService.createTraining(training(first, 0, ActivityType.RUNNING, 10));
+        Training lockedTraining = trainingService.createTraining(training(locked, 1, ActivityType.RUNNING, 10));
+        jdbcTemplate.update("UPDATE trainings SET calories = 100, calories_model = ?", estimator.modelVersion() + 1);
+
+        CompletableFuture<Long> recomputation = new CompletableFuture<>();
+        Thread recompute = new Thread(() -> recomputation.complete(recomputeJob.recompute()));
+        userLocks.withUserLock(locked.getId(), () -> {
+            recompute.start();
+            // Porcja obejmuje obu użytkowników, ale transakcja pierwszego nie czeka na blokadę drugiego.
+            await(() -> recompute.getState() == Thread.State.WAITING);
+            assertThat(calories(firstTraining)).isEqualTo(639);
+            assertThat(calories(lockedTraining)).isEqualTo(100);
+            return null;
+        });
+
+        assertThat(recomputation.get(10, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(calories(lockedTraining)).isEqualTo(639);
+    }
+
+    private int calories(Training training) {
+        return jdbcTemplate.queryForObject("SELECT calories FROM trainings WHERE id = ?", Integer.class, training.getId());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void createStatistics(User user) {
+        jdbcTemplate.update("""
+                INSERT INTO statistics (user_id, total_trainings, total_distance, total_calories_burned)
+                VALUES (?, 0, 0, 0)""", user.getId());
+    }
+
+    private int totalCalories(User user) {
+        return jdbcTemplate.queryForObject("SELECT total_calories_burned FROM statistics WHERE user_id = ?", Integer.class,
+                user.getId());
+    }
+
+    private static Training training(User user, int day, ActivityType activityType, double averageSpeed) {
+        Instant start = START.plusSeconds(day * 86_400L);
+        return new Training(user, Date.from(start), Date.from(start.plusSeconds(3_600)), activityType, averageSpeed,
+                averageSpeed);
+    }
+}
@@ -0,0 +1,68 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LogLinearHistogramTest {
+
+    @Test
+    void shouldPlaceValuesInBucketsWithBoundedRelativeError() {
+        for (long units = 0; units < 1_000_000; units = units * 3 / 2 + 1) {
+            int bucket = LogLinearHistogram.bucketOf(units, 1);
+            long lower = LogLinearHistogram.lowerBoundUnits(bucket);
+            long upper = LogLinearHistogram.upperBoundUnits(bucket);
+
+            assertThat(units).isBetween(lower, upper - 1);
+            assertThat((double) (upper - lower)).isLessThanOrEqualTo(Math.max(1, lower / (double) LogLinearHistogram.SUB_BUCKETS));
+        }
+        assertThat(LogLinearHistogram.bucketOf(Double.MAX_VALUE, 1)).isEqualTo(LogLinearHistogram.BUCKETS - 1);
+        assertThat(LogLinearHistogram.bucketOf(-5, 1)).isZero();
+    }
+
+    @Test
+    void shouldComputeQuantilesAndRank_ofMergedHistograms() {
+        LogLinearHistogram first = new LogLinearHistogram(0.01);
+        LogLinearHistogram second = new LogLinearHistogram(0.01);
+        for (int speed = 1; speed <= 1000; speed++) {
+            (speed % 2 == 0 ? first : second).record(speed / 10.0, 1);
+        }
+
+        long[] merged = LogLinearHistogram.merge(first.snapshot(), second.snapshot());
+
+        assertThat(LogLinearHistogram.total(merged)).isEqualTo(1000);
+        assertThat(LogLinearHistogram.quantileUnits(merged, 0.5) * 0.01).isCloseTo(50, within(50.0 / LogLinearHistogram.SUB_BUCKETS));
+        assertThat(LogLinearHistogram.quantileUnits(merged, 0.9) * 0.01).isCloseTo(90, within(90.0 / LogLinearHistogram.SUB_BUCKETS));
+        assertThat(LogLinearHistogram.percentileRank(merged, LogLinearHistogram.bucketOf(80, 0.01))).isCloseTo(0.8, within(0.03));
+    }
+
+    @Test
+    void shouldDrainAndRestoreCounts_andRoundTripThroughEncoding() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1);
+        histogram.record(3_600, 5);
+        histogram.record(42, 2);
+        histogram.record(42, -1);
+
+        long[] drained = histogram.drain();
+        assertThat(LogLinearHistogram.total(histogram.snapshot())).isZero();
+        histogram.restore(drained);
+
+        assertThat(LogLinearHistogram.decode(LogLinearHistogram.encode(histogram.snapshot()))).containsExactly(drained);
+        assertThat(LogLinearHistogram.total(drained)).isEqualTo(6);
+    }
+
+    @Test
+    void shouldKeepNegativeCountsThroughEncoding_untilMatchingAdditionIsMerged() {
+        LogLinearHistogram removal = new LogLinearHistogram(1);
+        removal.record(42, -1);
+        LogLinearHistogram addition = new LogLinearHistogram(1);
+        addition.record(42, 1);
+
+        long[] stored = LogLinearHistogram.decode(LogLinearHistogram.encode(removal.snapshot()));
+        assertThat(stored[LogLinearHistogram.bucketOf(42, 1)]).isEqualTo(-1);
+
+        long[] merged = LogLinearHistogram.decode(LogLinearHistogram.encode(LogLinearHistogram.merge(stored, addition.snapshot())));
+        assertThat(merged).containsOnly(0L);
+    }
+}
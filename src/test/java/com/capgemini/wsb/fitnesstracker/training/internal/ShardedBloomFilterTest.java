@@ -0,0 +1,56 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedBloomFilterTest {
+
+    private static final int CAPACITY = 100_000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Test
+    void shouldContainEveryInsertedFingerprint() {
+        ShardedBloomFilter filter = ShardedBloomFilter.create(CAPACITY, FALSE_POSITIVE_PROBABILITY, 16);
+        String[] fingerprints = new String[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            fingerprints[i] = randomFingerprint();
+            filter.put(fingerprints[i]);
+        }
+
+        for (String fingerprint : fingerprints) {
+            assertThat(filter.mightContain(fingerprint)).isTrue();
+        }
+    }
+
+    @Test
+    void shouldKeepFalsePositiveRateNearConfiguredProbability_whenFilledToCapacity() {
+        ShardedBloomFilter filter = ShardedBloomFilter.create(CAPACITY, FALSE_POSITIVE_PROBABILITY, 16);
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.put(randomFingerprint());
+        }
+
+        int probes = 200_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(randomFingerprint())) {
+                falsePositives++;
+            }
+        }
+
+        double falsePositiveRate = (double) falsePositives / probes;
+        assertThat(falsePositiveRate).isLessThan(FALSE_POSITIVE_PROBABILITY * 1.5);
+        assertThat(filter.expectedFalsePositiveProbability()).isLessThan(FALSE_POSITIVE_PROBABILITY * 1.5);
+    }
+
+    private String randomFingerprint() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,286 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.internal.UserRepository;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static java.time.LocalDate.now;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@SpringBootTest(properties = {
+        "training.sharding.enabled=true",
+        "training.sharding.active-shards=2",
+        "training.sharding.shards[0].url=" + ShardedTrainingIntegrationTest.SHARD_URL + "0",
+        "training.sharding.shards[1].url=" + ShardedTrainingIntegrationTest.SHARD_URL + "1",
+        "training.sharding.shards[2].url=" + ShardedTrainingIntegrationTest.SHARD_URL + "2",
+        "training.calories.recompute-enabled=false"
+})
+@AutoConfigureMockMvc(addFilters = false)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ShardedTrainingIntegrationTest extends IntegrationTestBase {
+
+    static final String SHARD_URL = "jdbc:h2:mem:training-shard-";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ShardedTrainingStore shardedStore;
+
+    @Autowired
+    private TrainingUserLocks userLocks;
+
+    @Autowired
+    private TrainingShardingProperties shardingProperties;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldStoreTrainingsOfUserInSingleShard_andMergeCrossUserQueriesByEndTime() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            User user = existingUser(generateClient());
+            users.add(user);
+            createTraining(user, "2024-05-%02dT10:00:00".formatted(10 - i), "2024-05-%02dT11:00:00".formatted(10 - i));
+            createTraining(user, "2024-05-%02dT10:00:00".formatted(20 + i), "2024-05-%02dT11:00:00".formatted(20 + i));
+        }
+
+        for (User user : users) {
+            int expectedShard = ShardedTrainingStore.shardFor(user.getId(), 2);
+            for (int shard = 0; shard < 3; shard++) {
+                assertThat(countTrainings(shard, user)).isEqualTo(shard == expectedShard ? 2 : 0);
+            }
+        }
+        assertThat(getAllTrainings()).isEmpty();
+
+        mockMvc.perform(get("/v1/trainings/finished/{afterTime}", "2024-05-15"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(6)))
+                .andExpect(jsonPath("$[*].endTime", contains(
+                        "2024-05-20T11:00:00.000+00:00", "2024-05-21T11:00:00.000+00:00", "2024-05-22T11:00:00.000+00:00",
+                        "2024-05-23T11:00:00.000+00:00", "2024-05-24T11:00:00.000+00:00", "2024-05-25T11:00:00.000+00:00")))
+                .andExpect(jsonPath("$[0].user.email").value(users.get(0).getEmail()));
+        mockMvc.perform(get("/v1/trainings/{userId}", users.get(3).getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+        mockMvc.perform(get("/v1/trainings/activityType").param("activityType", "running"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(12)));
+    }
+
+    @Test
+    void shouldRejectOverlappingAndDuplicateTrainings_whenSharded() throws Exception {
+        User user = existingUser(generateClient());
+        createTraining(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00");
+
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody(user, "2024-05-10T10:30:00", "2024-05-10T11:30:00")))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00")))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldEstimateCaloriesCheckVersionAndNumberChanges_whenSharded() throws Exception {
+        User user = existingUser(generateClient());
+        createTraining(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00");
+        Training training = shardedStore.findByUser(user).get(0);
+        assertThat(training.getCalories()).isPositive();
+        String token = JsonPath.read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), "$.nextToken");
+
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 11.0, \"version\": 0}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 12.0, \"version\": 0}"))
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId()).param("since", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fullResync").value(false))
+                .andExpect(jsonPath("$.trainings", hasSize(1)))
+                .andExpect(jsonPath("$.trainings[0].distance").value(11.0));
+    }
+
+    @Test
+    void shouldMoveTrainingsToNewShards_whenResharding() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User user = existingUser(generateClient());
+            users.add(user);
+            createTraining(user, "2024-05-%02dT10:00:00".formatted(i + 1), "2024-05-%02dT11:00:00".formatted(i + 1));
+        }
+
+        shardedStore.reshard(3);
+
+        for (User user : users) {
+            int expectedShard = ShardedTrainingStore.shardFor(user.getId(), 3);
+            for (int shard = 0; shard < 3; shard++) {
+                assertThat(countTrainings(shard, user)).isEqualTo(shard == expectedShard ? 1 : 0);
+            }
+            mockMvc.perform(get("/v1/trainings/{userId}", user.getId()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$", hasSize(1)));
+        }
+        mockMvc.perform(get("/v1/trainings"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(10)));
+    }
+
+    @Test
+    void shouldKeepReshardedLayout_whenStoreIsRestartedWithConfiguredShardCount() throws Exception {
+        User user = existingUser(generateClient());
+        while (ShardedTrainingStore.shardFor(user.getId(), 2) == ShardedTrainingStore.shardFor(user.getId(), 3)) {
+            user = existingUser(generateClient());
+        }
+        createTraining(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00");
+
+        shardedStore.reshard(3);
+
+        ShardedTrainingStore restarted = new ShardedTrainingStore(shardingProperties, userRepository, userLocks, taskScheduler, jdbcTemplate);
+        try {
+            assertThat(shardingProperties.activeShards()).isEqualTo(2);
+            assertThat(restarted.activeShards()).isEqualTo(3);
+            assertThat(restarted.findByUser(user)).hasSize(1);
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    void shouldMoveTrainings_onlyAfterOtherInstancesAcknowledgedNewLayout() throws Exception {
+        User user = existingUser(generateClient());
+        while (ShardedTrainingStore.shardFor(user.getId(), 2) == ShardedTrainingStore.shardFor(user.getId(), 3)) {
+            user = existingUser(generateClient());
+        }
+        createTraining(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00");
+        TrainingShardingProperties otherInstance = new TrainingShardingProperties(true, shardingProperties.shards(),
+                shardingProperties.activeShards(), 1, Duration.ofHours(1), Duration.ofMinutes(1));
+        ShardedTrainingStore other = new ShardedTrainingStore(otherInstance, userRepository, userLocks, taskScheduler, jdbcTemplate);
+        try {
+            CompletableFuture<Long> resharding = CompletableFuture.supplyAsync(() -> shardedStore.reshard(3));
+
+            // Druga instancja wciąż zapisuje według starego układu - trening nie może zostać jeszcze przeniesiony.
+            Thread.sleep(500);
+            assertThat(resharding).isNotDone();
+            assertThat(countTrainings(ShardedTrainingStore.shardFor(user.getId(), 2), user)).isEqualTo(1);
+
+            other.refreshLayout();
+
+            assertThat(resharding.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(countTrainings(ShardedTrainingStore.shardFor(user.getId(), 3), user)).isEqualTo(1);
+            assertThat(other.findByUser(user)).hasSize(1);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void shouldNotLoseUpdate_whenTrainingIsChangedDuringResharding() throws Exception {
+        User user = existingUser(generateClient());
+        while (ShardedTrainingStore.shardFor(user.getId(), 2) == ShardedTrainingStore.shardFor(user.getId(), 3)) {
+            user = existingUser(generateClient());
+        }
+        createTraining(user, "2024-05-10T10:00:00", "2024-05-10T11:00:00");
+        Training training = shardedStore.findByUser(user).get(0);
+
+        Training changed = new Training(training.getId(), user, training.getStartTime(), training.getEndTime(),
+                training.getActivityType(), 42.0, training.getAverageSpeed());
+        changed.setFingerprint(training.getFingerprint());
+
+        CompletableFuture<Long> resharding = new CompletableFuture<>();
+        Thread migration = new Thread(() -> resharding.complete(shardedStore.reshard(3)));
+        User owner = user;
+        userLocks.withUserLock(owner.getId(), () -> {
+            migration.start();
+            // Migracja odczytała porcję i czeka na blokadę użytkownika.
+            await(() -> migration.getState() == Thread.State.WAITING);
+            return shardedStore.update(changed);
+        });
+
+        assertThat(resharding.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(countTrainings(ShardedTrainingStore.shardFor(owner.getId(), 3), owner)).isEqualTo(1);
+        assertThat(shardedStore.findByUser(owner)).singleElement()
+                .extracting(Training::getDistance).isEqualTo(42.0);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void createTraining(User user, String startTime, String endTime) throws Exception {
+        mockMvc.perform(post("/v1/trainings").contentType(MediaType.APPLICATION_JSON)
+                        .content(requestBody(user, startTime, endTime)))
+                .andExpect(status().isCreated());
+    }
+
+    private static String requestBody(User user, String startTime, String endTime) {
+        return """
+                {
+                    "userId": "%s",
+                    "startTime": "%s",
+                    "endTime": "%s",
+                    "activityType": "RUNNING",
+                    "distance": 10.52,
+                    "averageSpeed": 8.2
+                }
+                """.formatted(user.getId(), startTime, endTime);
+    }
+
+    private static long countTrainings(int shard, User user) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(SHARD_URL + shard));
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trainings WHERE user_id = ?", Long.class, user.getId());
+    }
+
+    private static User generateClient() {
+        return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
+    }
+}
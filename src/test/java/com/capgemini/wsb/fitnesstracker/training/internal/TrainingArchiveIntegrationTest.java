@@ -0,0 +1,248 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingOverlapException;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+
+import static java.time.LocalDate.now;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@DirtiesContext
+class TrainingArchiveIntegrationTest extends IntegrationTestBase {
+
+    @TempDir
+    static Path archiveDirectory;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TrainingArchiver archiver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TrainingArchive archive;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void archiveProperties(DynamicPropertyRegistry registry) {
+        registry.add("training.archive.enabled", () -> "true");
+        registry.add("training.archive.directory", archiveDirectory::toString);
+        registry.add("training.archive.batch-size", () -> "2");
+    }
+
+    @Test
+    void shouldMoveColdTrainingsToArchive_andStillServeThemFromReadPaths() throws Exception {
+        User user = existingUser(generateClient());
+        persistTraining(training(user, "2020-03-01T10:00:00Z"));
+        persistTraining(training(user, "2020-04-01T10:00:00Z"));
+        persistTraining(training(user, "2020-05-01T10:00:00Z"));
+        Training recent = persistTraining(training(user, Instant.now().minusSeconds(7_200).toString()));
+
+        assertThat(archiver.archiveColdTrainings()).isEqualTo(3);
+
+        assertThat(getAllTrainings()).extracting(Training::getId).containsExactly(recent.getId());
+        mockMvc.perform(get("/v1/trainings/{userId}", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].user.email").value(user.getEmail()));
+        mockMvc.perform(get("/v1/trainings/finished/{afterTime}", "2020-03-15"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].startTime", contains(
+                        "2020-04-01T10:00:00.000+00:00", "2020-05-01T10:00:00.000+00:00", formatUtc(recent.getStartTime()))));
+    }
+
+    @Test
+    void shouldProjectRequestedFields_ofHotAndArchivedTrainings() throws Exception {
+        User user = existingUser(generateClient());
+        Training archived = persistTraining(training(user, "2017-03-01T10:00:00Z"));
+        archiver.archiveColdTrainings();
+        Training recent = persistTraining(training(user, Instant.now().minusSeconds(7_200).toString()));
+
+        mockMvc.perform(get("/v1/trainings").param("fields", "id,user,distance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)].user.email".formatted(archived.getId())).value(user.getEmail()))
+                .andExpect(jsonPath("$[?(@.id == %d)].distance".formatted(archived.getId())).value(10.5))
+                .andExpect(jsonPath("$[?(@.id == %d)].user.email".formatted(recent.getId())).value(user.getEmail()))
+                .andExpect(jsonPath("$[*].startTime").doesNotExist());
+    }
+
+    @Test
+    void shouldNotArchiveTrainingTwice_whenRunIsRepeatedBeforeRowsAreDeleted() throws Exception {
+        User user = existingUser(generateClient());
+        Training first = persistTraining(training(user, "2019-03-01T10:00:00Z"));
+        Training second = persistTraining(training(user, "2019-03-02T10:00:00Z"));
+        // Przerwana archiwizacja: segment zapisany, wiersze zostały w bazie.
+        archive.append(YearMonth.of(2019, 3), List.of(ArchivedTraining.of(first)));
+        int segments = segmentFiles();
+
+        assertThat(archiver.archiveColdTrainings()).isEqualTo(2);
+
+        assertThat(segmentFiles()).isEqualTo(segments + 1);
+        assertThat(trainingService.getTrainingsByUser(user)).extracting(Training::getId)
+                .containsExactlyInAnyOrder(first.getId(), second.getId());
+    }
+
+    @Test
+    void shouldRejectOverlapAndDuplicate_ofArchivedTraining() {
+        User user = existingUser(generateClient());
+        Training archived = persistTraining(training(user, "2019-06-01T10:00:00Z"));
+        archiver.archiveColdTrainings();
+
+        assertThatThrownBy(() -> trainingService.createTraining(training(user, "2019-06-01T10:00:00Z")))
+                .isInstanceOf(DuplicateTrainingException.class);
+        assertThatThrownBy(() -> trainingService.createTraining(training(user, "2019-06-01T10:30:00Z")))
+                .isInstanceOf(TrainingOverlapException.class)
+                .hasMessageContaining(archived.getId().toString());
+        assertThat(trainingService.createTraining(training(user, "2019-06-01T11:00:00Z")).getId()).isNotNull();
+    }
+
+    @Test
+    void shouldPageSearch_acrossHotAndArchivedTrainings() throws Exception {
+        User user = existingUser(generateClient());
+        Training march = persistTraining(training(user, "2020-03-01T10:00:00Z"));
+        Training april = persistTraining(training(user, "2020-04-01T10:00:00Z"));
+        Training may = persistTraining(training(user, "2020-05-01T10:00:00Z"));
+        archiver.archiveColdTrainings();
+        Training june = persistTraining(training(user, "2020-06-01T10:00:00Z"));
+        Training recent = persistTraining(training(user, Instant.now().minusSeconds(7_200).toString()));
+
+        assertThat(searchAllPages("userId", user.getId().toString()))
+                .containsExactly(recent.getId(), june.getId(), may.getId(), april.getId(), march.getId());
+        assertThat(searchAllPages("activityType", "RUNNING"))
+                .containsSubsequence(recent.getId(), june.getId(), may.getId(), april.getId(), march.getId());
+        assertThat(searchAllPages("from", "2020-03-15T00:00:00Z"))
+                .containsSubsequence(recent.getId(), june.getId(), may.getId(), april.getId())
+                .doesNotContain(march.getId());
+    }
+
+    @Test
+    void shouldRewriteSegmentsAndDeleteTracks_ofArchivedTrainingsOfDeletedUser() throws Exception {
+        User deleted = existingUser(generateClient());
+        User kept = existingUser(generateClient());
+        Training tracked = persistTraining(training(deleted, "2018-03-01T10:00:00Z"));
+        Training other = persistTraining(training(deleted, "2018-03-02T10:00:00Z"));
+        Training keptTraining = persistTraining(training(kept, "2018-03-03T10:00:00Z"));
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", tracked.getId())
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("""
+                                {"time": "2018-03-01T10:00:00Z", "latitude": 52.2297, "longitude": 21.0122}
+                                {"time": "2018-03-01T10:00:01Z", "latitude": 52.2298, "longitude": 21.0123}
+                                """))
+                .andExpect(status().isCreated());
+        archiver.archiveColdTrainings();
+
+        userService.deleteUser(deleted.getId());
+        await().atMost(Duration.ofSeconds(10)).until(() -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM users WHERE id = ?", Long.class, deleted.getId()) == 0);
+
+        assertThat(archivedIds()).contains(keptTraining.getId()).doesNotContain(tracked.getId(), other.getId());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM track_chunks WHERE training_id = ?", Long.class,
+                tracked.getId())).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM training_archive_purges", Long.class)).isZero();
+        assertThat(trainingService.getTrainingsByUser(kept)).extracting(Training::getId)
+                .containsExactly(keptTraining.getId());
+    }
+
+    private List<Long> archivedIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".seg")).toList()) {
+                TrainingSegment.open(file).findAll().forEach(archived -> ids.add(archived.id()));
+            }
+        }
+        return ids;
+    }
+
+    private int segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(archiveDirectory)) {
+            return (int) files.filter(path -> path.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private List<Long> searchAllPages(String filter, String value) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/v1/trainings/search").param(filter, value).param("limit", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            JsonNode page = objectMapper.readTree(mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            assertThat(page.get("trainings").size()).isLessThanOrEqualTo(2);
+            page.get("trainings").forEach(training -> ids.add(training.get("id").asLong()));
+            cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static Training training(User user, String startTime) {
+        Date start = Date.from(Instant.parse(startTime));
+        return new Training(user, start, new Date(start.getTime() + 3_600_000), ActivityType.RUNNING, 10.5, 8.2);
+    }
+
+    private static String formatUtc(Date date) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS+00:00");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return sdf.format(date);
+    }
+
+    private static User generateClient() {
+        return new User(randomUUID().toString(), randomUUID().toString(), now(), randomUUID().toString());
+    }
+}
@@ -0,0 +1,209 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingPurger;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingChangesIntegrationTest extends IntegrationTestBase {
+
+    private static final int TRAININGS = 2_000;
+    private static final long HOUR = 3_600_000L;
+    private static final long FIRST_START = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private TrainingPurger trainingPurger;
+
+    @Autowired
+    private TrainingChanges trainingChanges;
+
+    @AfterEach
+    void deleteGeneratedRows() {
+        jdbcTemplate.update("DELETE FROM training_tombstones");
+        jdbcTemplate.update("DELETE FROM trainings");
+        jdbcTemplate.update("DELETE FROM users");
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void shouldReturnOnlyCreatedUpdatedAndDeletedTrainings_sinceToken() throws Exception {
+        User user = existingUser(new User("Delta", "Sync", LocalDate.of(1990, 1, 1), "delta.sync@domain.com"));
+        insertTrainings(user.getId());
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM trainings ORDER BY id", Long.class);
+
+        MvcResult full = mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId()))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode fullSync = read(full);
+        assertThat(fullSync.get("fullResync").asBoolean()).isTrue();
+        assertThat(fullSync.get("trainings")).hasSize(TRAININGS);
+
+        Long updatedId = ids.get(TRAININGS - 1);
+        mockMvc.perform(patch("/v1/trainings/{id}", updatedId).contentType(MergePatch.MEDIA_TYPE).content("{\"distance\": 42.0}"))
+                .andExpect(status().isOk());
+        Training created = trainingService.createTraining(new Training(user, new Date(FIRST_START - 2 * HOUR),
+                new Date(FIRST_START - HOUR), ActivityType.RUNNING, 5.0, 10.0));
+        trainingPurger.deleteChunk(user.getId(), 2);
+
+        MvcResult delta = mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId())
+                        .param("since", fullSync.get("nextToken").asText()))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonNode changes = read(delta);
+        assertThat(changes.get("fullResync").asBoolean()).isFalse();
+        assertThat(changes.get("hasMore").asBoolean()).isFalse();
+        assertThat(ids(changes.get("trainings"))).containsExactly(updatedId, created.getId());
+        assertThat(changes.get("trainings").get(0).get("distance").asDouble()).isEqualTo(42.0);
+        assertThat(ids(changes.get("deleted"))).containsExactly(ids.get(0), ids.get(1));
+
+        int fullBytes = full.getResponse().getContentAsByteArray().length;
+        int deltaBytes = delta.getResponse().getContentAsByteArray().length;
+        log.info("Full sync of {} trainings: {} bytes; delta with 2 changes and 2 deletions: {} bytes",
+                TRAININGS, fullBytes, deltaBytes);
+        assertThat(deltaBytes).isLessThan(fullBytes / 100);
+
+        JsonNode unchanged = read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId())
+                        .param("since", changes.get("nextToken").asText()))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertThat(unchanged.get("trainings")).isEmpty();
+        assertThat(unchanged.get("deleted")).isEmpty();
+    }
+
+    @Test
+    void shouldPageChanges_inChangeSequenceOrder() throws Exception {
+        User user = existingUser(new User("Paged", "Sync", LocalDate.of(1990, 1, 1), "paged.sync@domain.com"));
+        String token = read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId()))
+                .andReturn()).get("nextToken").asText();
+        insertTrainings(user.getId());
+        // Zmiana z pominięciem Hibernate też dostaje nowy numer zmiany.
+        Long firstId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM trainings", Long.class);
+        jdbcTemplate.update("UPDATE trainings SET calories = 100 WHERE id = ?", firstId);
+
+        long firstIssuedAt = TrainingChangeToken.parse(token).issuedAt();
+        List<Long> synced = new ArrayList<>();
+        int pages = 0;
+        boolean hasMore;
+        do {
+            JsonNode page = read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId())
+                            .param("since", token)
+                            .param("limit", "300"))
+                    .andExpect(status().isOk())
+                    .andReturn());
+            assertThat(page.get("trainings").size()).isLessThanOrEqualTo(300);
+            synced.addAll(ids(page.get("trainings")));
+            hasMore = page.get("hasMore").asBoolean();
+            token = page.get("nextToken").asText();
+            if (hasMore) {
+                // Czas wydania odświeżany jest dopiero po odebraniu wszystkich zmian.
+                assertThat(TrainingChangeToken.parse(token).issuedAt()).isEqualTo(firstIssuedAt);
+            }
+            pages++;
+        } while (hasMore);
+
+        assertThat(pages).isEqualTo(7);
+        assertThat(synced).hasSize(TRAININGS).doesNotHaveDuplicates().endsWith(firstId);
+    }
+
+    @Test
+    void shouldFallBackToFullResync_whenTokenIsOlderThanTombstoneRetention() throws Exception {
+        User user = existingUser(new User("Stale", "Sync", LocalDate.of(1990, 1, 1), "stale.sync@domain.com"));
+        insertTrainings(user.getId());
+
+        long beforeRetention = Instant.now().minus(Duration.ofDays(31)).toEpochMilli();
+        JsonNode stale = read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId())
+                        .param("since", new TrainingChangeToken(1, beforeRetention).toString()))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertThat(stale.get("fullResync").asBoolean()).isTrue();
+        assertThat(stale.get("trainings")).hasSize(TRAININGS);
+
+        JsonNode fromFuture = read(mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId())
+                        .param("since", new TrainingChangeToken(Long.MAX_VALUE / 2, System.currentTimeMillis()).toString()))
+                .andExpect(status().isOk())
+                .andReturn());
+        assertThat(fromFuture.get("fullResync").asBoolean()).isTrue();
+
+        mockMvc.perform(get("/v1/users/{id}/trainings/changes", user.getId()).param("since", "not-a-token"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldPurgeTombstones_olderThanRetention() {
+        User user = existingUser(new User("Purged", "Sync", LocalDate.of(1990, 1, 1), "purged.sync@domain.com"));
+        insertTrainings(user.getId());
+        trainingPurger.deleteChunk(user.getId(), 10);
+        jdbcTemplate.update("UPDATE training_tombstones SET deleted_at = ? WHERE training_id IN "
+                        + "(SELECT training_id FROM training_tombstones ORDER BY training_id LIMIT 4)",
+                Timestamp.from(Instant.now().minus(Duration.ofDays(31))));
+
+        assertThat(trainingChanges.purgeTombstones()).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM training_tombstones", Long.class)).isEqualTo(6);
+    }
+
+    private void insertTrainings(Long userId) {
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO trainings (user_id, start_time, end_time, activity_type, distance, average_speed)
+                        VALUES (?, ?, ?, ?, ?, ?)""",
+                IntStream.range(0, TRAININGS)
+                        .mapToObj(i -> new Object[]{userId, new Timestamp(FIRST_START + 2 * i * HOUR),
+                                new Timestamp(FIRST_START + (2 * i + 1) * HOUR), ActivityType.RUNNING.ordinal(), 10.0, 12.0})
+                        .toList());
+    }
+
+    private JsonNode read(MvcResult result) throws Exception {
+        return objectMapper.readTree(result.getResponse().getContentAsByteArray());
+    }
+
+    private static List<Long> ids(JsonNode array) {
+        List<Long> ids = new ArrayList<>();
+        array.forEach(node -> ids.add(node.isNumber() ? node.asLong() : node.get("id").asLong()));
+        return ids;
+    }
+}
@@ -0,0 +1,102 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.hamcrest.Matchers.closeTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@SpringBootTest(properties = "training.distribution.flush-interval=1h")
+class TrainingDistributionIntegrationTest extends IntegrationTestBase {
+
+    private static final Instant START = Instant.parse("2024-05-01T06:00:00Z");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private TrainingDistributions distributions;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldReturnQuantiles_andRankOfTraining() throws Exception {
+        User user = existingUser(new User("Jan", "Kowalski", LocalDate.of(1990, 1, 1), "jan.distribution@domain.com"));
+        List<Training> trainings = new ArrayList<>();
+        for (int speed = 1; speed <= 100; speed++) {
+            trainings.add(trainingService.createTraining(training(user, speed, ActivityType.CYCLING, speed)));
+        }
+
+        mockMvc.perform(get("/v1/trainings/distribution")
+                        .param("activityType", "CYCLING")
+                        .param("metric", "AVERAGE_SPEED"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(100))
+                .andExpect(jsonPath("$.quantiles.p50").value(closeTo(50, 50.0 / LogLinearHistogram.SUB_BUCKETS)))
+                .andExpect(jsonPath("$.quantiles.p90").value(closeTo(90, 90.0 / LogLinearHistogram.SUB_BUCKETS)))
+                .andExpect(jsonPath("$.buckets[0].from").value(1.0))
+                .andExpect(jsonPath("$.buckets[0].count").value(1));
+        mockMvc.perform(get("/v1/trainings/{trainingId}/rank", trainings.get(89).getId()).param("metric", "AVERAGE_SPEED"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.value").value(90.0))
+                .andExpect(jsonPath("$.percentile").value(closeTo(90, 1.5)));
+        mockMvc.perform(get("/v1/trainings/{trainingId}/rank", Long.MAX_VALUE).param("metric", "DISTANCE"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldMoveUpdatedValue_andMergeCountsPersistedByOtherInstances() {
+        User user = existingUser(new User("Jan", "Kowalski", LocalDate.of(1990, 1, 1), "jan.merge@domain.com"));
+        Training training = trainingService.createTraining(training(user, 1, ActivityType.SWIMMING, 2));
+        trainingService.updateTraining(new Training(training.getId(), user, training.getStartTime(), training.getEndTime(),
+                ActivityType.SWIMMING, 3, 3));
+        distributions.flush();
+
+        LogLinearHistogram otherInstance = new LogLinearHistogram(DistributionMetric.DISTANCE.unit());
+        otherInstance.record(3, 4);
+        jdbcTemplate.update("UPDATE training_histograms SET counts = ?, updated_at = ? WHERE name = 'SWIMMING.DISTANCE'",
+                LogLinearHistogram.encode(LogLinearHistogram.merge(otherInstance.snapshot(),
+                        LogLinearHistogram.decode(jdbcTemplate.queryForObject(
+                                "SELECT counts FROM training_histograms WHERE name = 'SWIMMING.DISTANCE'", byte[].class)))),
+                Timestamp.from(Instant.now()));
+        trainingService.createTraining(training(user, 2, ActivityType.SWIMMING, 1));
+        distributions.flush();
+
+        TrainingDistributionDto distance = distributions.describe(ActivityType.SWIMMING, DistributionMetric.DISTANCE);
+        assertThat(distance.count()).isEqualTo(6);
+        assertThat(distance.buckets()).extracting(TrainingDistributionDto.Bucket::count).containsExactly(1L, 5L);
+        assertThat(distance.buckets().get(1).from()).isCloseTo(3.0, within(3.0 / LogLinearHistogram.SUB_BUCKETS));
+    }
+
+    private static Training training(User user, int day, ActivityType activityType, double averageSpeed) {
+        Instant start = START.plusSeconds(day * 86_400L);
+        return new Training(user, Date.from(start), Date.from(start.plusSeconds(3_600)), activityType, averageSpeed,
+                averageSpeed);
+    }
+}
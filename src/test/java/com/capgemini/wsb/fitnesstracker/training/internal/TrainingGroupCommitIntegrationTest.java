@@ -0,0 +1,182 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.DuplicateTrainingException;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@SpringBootTest(properties = "training.ingestion.mode=group-commit")
+class TrainingGroupCommitIntegrationTest extends IntegrationTestBase {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TrainingRepository trainingRepository;
+
+    @Autowired
+    private TrainingUserLocks userLocks;
+
+    @Autowired
+    private TrainingDuplicateFilter duplicateFilter;
+
+    @Autowired
+    private CalorieEstimator calorieEstimator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ShardedTrainingStore shardedStore;
+
+    @Autowired
+    private TrainingArchive archive;
+
+    @Autowired
+    private StatisticsCalories statisticsCalories;
+
+    @Test
+    void shouldWriteConcurrentTrainings_inFewerCommits() throws Exception {
+        int devices = TrainingSyncIngestionIntegrationTest.DEVICES;
+        int trainingsPerDevice = TrainingSyncIngestionIntegrationTest.TRAININGS_PER_DEVICE;
+        List<User> users = IntStream.range(0, devices)
+                .mapToObj(i -> existingUser(new User("Device", "Owner", LocalDate.of(1990, 1, 1), "group-%d@domain.com".formatted(i))))
+                .toList();
+
+        TrainingIngestionWorkload.Result result = TrainingIngestionWorkload.run(trainingService, users, trainingsPerDevice,
+                entityManagerFactory.unwrap(SessionFactory.class).getStatistics());
+
+        log.info("Group commit ingestion: {}", result);
+        List<Training> trainings = getAllTrainings();
+        assertThat(trainings).hasSize(devices * trainingsPerDevice);
+        assertThat(trainings).allSatisfy(training -> assertThat(training.getCalories()).isNotNull());
+        assertThat(result.commits()).isLessThan(devices * trainingsPerDevice / 2);
+    }
+
+    @Test
+    void shouldRejectDuplicate_submittedConcurrently() throws Exception {
+        User user = existingUser(new User("Double", "Tap", LocalDate.of(1990, 1, 1), "double@domain.com"));
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        CyclicBarrier start = new CyclicBarrier(2);
+        try {
+            List<Future<Training>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return trainingService.createTraining(training(user, 0));
+                }));
+            }
+            List<Throwable> failures = new ArrayList<>();
+            for (Future<Training> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+
+            assertThat(failures).singleElement().isInstanceOf(DuplicateTrainingException.class);
+            assertThat(getAllTrainings()).hasSize(1);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldApplyBackpressure_andDrainQueueOnShutdown() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TrainingGroupCommitter committer = new TrainingGroupCommitter(
+                new TrainingIngestionProperties(TrainingIngestionProperties.Mode.GROUP_COMMIT, 2, 1, Duration.ofMillis(5),
+                        Duration.ofMillis(200), Duration.ofSeconds(30), Duration.ofSeconds(30)),
+                trainingRepository, userLocks, duplicateFilter, calorieEstimator, transactionTemplate, eventPublisher,
+                shardedStore, archive, statisticsCalories, meterRegistry);
+        committer.start();
+        User user = existingUser(new User("Slow", "Database", LocalDate.of(1990, 1, 1), "slow@domain.com"));
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        List<Future<Training>> results = new ArrayList<>();
+        try {
+            // Dopóki test trzyma blokadę użytkownika, wątek zapisu czeka z jednym treningiem, a dwa wypełniają kolejkę.
+            userLocks.withUserLock(user.getId(), () -> {
+                for (int i = 0; i < 5; i++) {
+                    Training training = training(user, i);
+                    results.add(callers.submit(() -> committer.submit(training)));
+                }
+                await().atMost(Duration.ofSeconds(5))
+                        .until(() -> meterRegistry.counter("training.ingestion.rejected").count() == 2);
+                callers.submit(() -> {
+                    committer.close();
+                    return null;
+                });
+                await().pollDelay(Duration.ofMillis(100)).until(() -> true);
+                return null;
+            });
+            callers.shutdown();
+            assertThat(callers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+            long written = results.stream().filter(result -> {
+                try {
+                    return result.get().getId() != null;
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(TrainingIngestionOverloadedException.class);
+                    return false;
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).count();
+            assertThat(written).isEqualTo(3);
+            assertThat(getAllTrainings()).hasSize(3);
+            assertThatThrownBy(() -> committer.submit(training(user, 10)))
+                    .isInstanceOf(TrainingIngestionOverloadedException.class);
+        } finally {
+            callers.shutdownNow();
+            committer.close();
+        }
+    }
+
+    private static Training training(User user, int slot) {
+        Training training = new Training(user, new Date(2 * slot * HOUR), new Date((2 * slot + 1) * HOUR),
+                ActivityType.RUNNING, 10.0, 10.0);
+        training.setFingerprint(TrainingFingerprint.of(training));
+        return training;
+    }
+}
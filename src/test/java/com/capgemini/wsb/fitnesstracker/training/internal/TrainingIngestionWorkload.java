@@ -0,0 +1,85 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.hibernate.stat.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obciążenie porównujące tryby zapisu treningów: każdy wątek to urządzenie jednego użytkownika wysyłające
+ * kolejne, nienakładające się treningi.
+ */
+final class TrainingIngestionWorkload {
+
+    private static final long HOUR = 3_600_000L;
+
+    private TrainingIngestionWorkload() {
+    }
+
+    record Result(int trainings, long commits, long millis, long p50Micros, long p99Micros) {
+
+        long commitsPerSecond() {
+            return commits * 1000 / Math.max(1, millis);
+        }
+
+        long trainingsPerSecond() {
+            return trainings * 1000L / Math.max(1, millis);
+        }
+
+        @Override
+        public String toString() {
+            return "%d trainings in %d ms (%d/s), %d commits (%d/s), latency p50 %d us, p99 %d us".formatted(
+                    trainings, millis, trainingsPerSecond(), commits, commitsPerSecond(), p50Micros, p99Micros);
+        }
+    }
+
+    static Result run(TrainingService trainingService, List<User> devices, int trainingsPerDevice,
+                      Statistics statistics) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(devices.size());
+        CyclicBarrier start = new CyclicBarrier(devices.size() + 1);
+        try {
+            List<Future<long[]>> latencies = new ArrayList<>();
+            for (User device : devices) {
+                latencies.add(callers.submit(() -> {
+                    long[] nanos = new long[trainingsPerDevice];
+                    start.await();
+                    for (int i = 0; i < trainingsPerDevice; i++) {
+                        long startedAt = System.nanoTime();
+                        trainingService.createTraining(new Training(device, new Date(2 * i * HOUR),
+                                new Date((2 * i + 1) * HOUR), ActivityType.RUNNING, 10.0, 10.0));
+                        nanos[i] = System.nanoTime() - startedAt;
+                    }
+                    return nanos;
+                }));
+            }
+            statistics.clear();
+            start.await();
+            long startedAt = System.nanoTime();
+            long[] all = new long[devices.size() * trainingsPerDevice];
+            for (int i = 0; i < latencies.size(); i++) {
+                System.arraycopy(latencies.get(i).get(), 0, all, i * trainingsPerDevice, trainingsPerDevice);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            long commits = statistics.getSuccessfulTransactionCount();
+            Arrays.sort(all);
+            return new Result(all.length, commits, millis, percentileMicros(all, 0.50), percentileMicros(all, 0.99));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static long percentileMicros(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sortedNanos[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,131 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingPatchIntegrationTest extends IntegrationTestBase {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void shouldUpdateOnlyPatchedFields_withSingleUpdateStatement() throws Exception {
+        Training training = existingTraining("patched@domain.com");
+        trainingService.getTrainingById(training.getId());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"averageSpeed\": 12.5, \"version\": 0}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.averageSpeed").value(12.5))
+                .andExpect(jsonPath("$.distance").value(10.0))
+                .andExpect(jsonPath("$.activityType").value("RUNNING"))
+                .andExpect(jsonPath("$.version").value(1));
+
+        log.info("PATCH of training issued {} statements, loaded {} entities from the database",
+                statistics.getPrepareStatementCount(), statistics.getEntityLoadCount());
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+        // UPDATE treningu i korekta kalorii w statystykach użytkownika.
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(trainingService.getTrainingById(training.getId())).hasValueSatisfying(updated -> {
+            assertThat(updated.getAverageSpeed()).isEqualTo(12.5);
+            assertThat(updated.getStartTime().getTime()).isEqualTo(training.getStartTime().getTime());
+        });
+    }
+
+    @Test
+    void shouldRejectPatch_whenVersionIsStale() throws Exception {
+        Training training = existingTraining("stale@domain.com");
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 11.0, \"version\": 0}"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 12.0, \"version\": 0}"))
+                .andExpect(status().isConflict());
+
+        assertThat(trainingService.getTrainingById(training.getId()))
+                .hasValueSatisfying(updated -> assertThat(updated.getDistance()).isEqualTo(11.0));
+    }
+
+    @Test
+    void shouldRejectPatch_whenRowChangedAfterItWasRead() throws Exception {
+        Training training = existingTraining("concurrent@domain.com");
+        trainingService.getTrainingById(training.getId());
+        // Zmiana z pominięciem Hibernate - w cache drugiego poziomu zostaje wersja 0.
+        jdbcTemplate.update("UPDATE trainings SET version = version + 1 WHERE id = ?", training.getId());
+
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 12.0}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldRejectInvalidPatches() throws Exception {
+        Training training = existingTraining("invalid@domain.com");
+
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"calories\": 100}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": null}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/v1/trainings/{id}", training.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"endTime\": 0}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/v1/trainings/{id}", Long.MAX_VALUE)
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"distance\": 12.0}"))
+                .andExpect(status().isNotFound());
+    }
+
+    private Training existingTraining(String email) {
+        User user = existingUser(new User("Patch", "Runner", LocalDate.of(1990, 1, 1), email));
+        return trainingService.createTraining(new Training(user, new Date(10 * HOUR), new Date(11 * HOUR),
+                ActivityType.RUNNING, 10.0, 10.0));
+    }
+}
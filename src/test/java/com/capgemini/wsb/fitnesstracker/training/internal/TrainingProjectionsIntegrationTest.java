@@ -0,0 +1,57 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingProjectionsIntegrationTest extends IntegrationTestBase {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void shouldReturnOnlyRequestedFields() throws Exception {
+        User user = existingUser(new User("Sparse", "Runner", LocalDate.of(1990, 1, 1), "sparse.runner@domain.com"));
+        Training training = persistTraining(new Training(user, new Date(10 * HOUR), new Date(11 * HOUR),
+                ActivityType.RUNNING, 10.0, 10.0));
+
+        mockMvc.perform(get("/v1/trainings").param("fields", "id,userId,distance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(training.getId()))
+                .andExpect(jsonPath("$[0].userId").value(user.getId()))
+                .andExpect(jsonPath("$[0].distance").value(10.0))
+                .andExpect(jsonPath("$[0].user").doesNotExist())
+                .andExpect(jsonPath("$[0].startTime").doesNotExist());
+        mockMvc.perform(get("/v1/trainings").param("fields", "activityType,user"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].activityType").value("RUNNING"))
+                .andExpect(jsonPath("$[0].user.email").value("sparse.runner@domain.com"))
+                .andExpect(jsonPath("$[0].user.birthdate").value("1990-01-01"));
+        mockMvc.perform(get("/v1/trainings"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].averageSpeed").value(10.0))
+                .andExpect(jsonPath("$[0].user.firstName").value("Sparse"));
+    }
+
+    @Test
+    void shouldRejectUnknownField() throws Exception {
+        mockMvc.perform(get("/v1/trainings").param("fields", "fingerprint"))
+                .andExpect(status().isBadRequest());
+    }
+}
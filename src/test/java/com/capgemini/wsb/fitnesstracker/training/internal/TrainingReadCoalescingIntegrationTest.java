@@ -0,0 +1,99 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@IntegrationTest
+class TrainingReadCoalescingIntegrationTest extends IntegrationTestBase {
+
+    private static final int CALLERS = 32;
+    private static final int ROUNDS = 10;
+    private static final int TRAININGS = 3_000;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void deleteGeneratedTrainings() {
+        jdbcTemplate.update("DELETE FROM trainings");
+    }
+
+    @Test
+    void shouldServeThunderingHerdWithFewQueries() throws Exception {
+        User user = existingUser(new User("Viral", "Athlete", LocalDate.of(1995, 5, 5), "viral@domain.com"));
+        List<Object[]> rows = new ArrayList<>(TRAININGS);
+        for (int i = 0; i < TRAININGS; i++) {
+            long start = i * 7_200_000L;
+            rows.add(new Object[]{user.getId(), new Timestamp(start), new Timestamp(start + 3_600_000), 0, 10.0, 10.0});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO trainings (user_id, start_time, end_time, activity_type, distance, average_speed)
+                VALUES (?, ?, ?, ?, ?, ?)""", rows);
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        double loadsBefore = calls("load");
+        sessionFactory.getStatistics().clear();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                // Pusty cache - bez łączenia każde z równoczesnych wywołań trafiłoby do bazy.
+                CyclicBarrier barrier = new CyclicBarrier(CALLERS, () -> sessionFactory.getCache().evictAllRegions());
+                List<Future<List<Training>>> results = new ArrayList<>();
+                for (int i = 0; i < CALLERS; i++) {
+                    results.add(executor.submit(() -> {
+                        barrier.await();
+                        return trainingService.getTrainingsByUser(user);
+                    }));
+                }
+                for (Future<List<Training>> result : results) {
+                    assertThat(result.get(30, TimeUnit.SECONDS)).hasSize(TRAININGS);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long queries = sessionFactory.getStatistics().getQueryExecutionCount();
+        double loads = calls("load") - loadsBefore;
+        log.info("Thundering herd: {} calls, {} loads, {} database queries", CALLERS * ROUNDS, loads, queries);
+        assertThat(queries).isLessThanOrEqualTo((long) loads);
+        assertThat(loads).isLessThan(CALLERS * ROUNDS / 4.0);
+    }
+
+    private double calls(String result) {
+        return meterRegistry.counter("singleflight.calls", "name", "training.by.user", "result", result).count();
+    }
+}
@@ -0,0 +1,187 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingSearchIntegrationTest extends IntegrationTestBase {
+
+    private static final int USERS = 100;
+    private static final int TRAININGS = 10_000;
+    private static final long MINUTE = 60_000L;
+    private static final Instant FIRST_START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final String FROM = "2024-03-01T00:00:00Z";
+    private static final String TO = "2024-04-01T00:00:00Z";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    void deleteGeneratedRows() {
+        jdbcTemplate.update("DELETE FROM trainings");
+        jdbcTemplate.update("DELETE FROM users");
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void shouldMatchInMemoryFiltering_forEveryFilterCombination() throws Exception {
+        List<Row> rows = generateTrainings();
+        long userId = rows.get(0).userId();
+        long from = Instant.parse(FROM).toEpochMilli();
+        long to = Instant.parse(TO).toEpochMilli();
+
+        Map<String, Search> matrix = new LinkedHashMap<>();
+        matrix.put("user", new Search(Map.of("userId", userId), row -> row.userId() == userId));
+        matrix.put("user+range", new Search(Map.of("userId", userId, "from", FROM, "to", TO),
+                row -> row.userId() == userId && row.startTime() >= from && row.startTime() < to));
+        matrix.put("user+type+distance", new Search(Map.of("userId", userId, "activityType", "running", "minDistance", 10),
+                row -> row.userId() == userId && row.activityType() == ActivityType.RUNNING && row.distance() >= 10));
+        matrix.put("type", new Search(Map.of("activityType", "CYCLING"), row -> row.activityType() == ActivityType.CYCLING));
+        matrix.put("type+range", new Search(Map.of("activityType", "CYCLING", "from", FROM, "to", TO),
+                row -> row.activityType() == ActivityType.CYCLING && row.startTime() >= from && row.startTime() < to));
+        matrix.put("type+speed", new Search(Map.of("activityType", "SWIMMING", "minSpeed", 10, "maxSpeed", 20),
+                row -> row.activityType() == ActivityType.SWIMMING && row.averageSpeed() >= 10 && row.averageSpeed() < 20));
+        matrix.put("range", new Search(Map.of("from", FROM, "to", TO), row -> row.startTime() >= from && row.startTime() < to));
+        matrix.put("range+distance+speed", new Search(Map.of("from", FROM, "maxDistance", 5, "minSpeed", 15),
+                row -> row.startTime() >= from && row.distance() < 5 && row.averageSpeed() >= 15));
+
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Search> entry : matrix.entrySet()) {
+            List<Long> expected = rows.stream()
+                    .filter(entry.getValue().expected())
+                    .sorted(Comparator.comparingLong(Row::startTime).thenComparingLong(Row::id).reversed())
+                    .map(Row::id)
+                    .toList();
+            long best = Long.MAX_VALUE;
+            Result result = null;
+            for (int round = 0; round < 3; round++) {
+                long startedAt = System.nanoTime();
+                result = searchAllPages(entry.getValue().params());
+                best = Math.min(best, (System.nanoTime() - startedAt) / 1_000_000);
+            }
+            assertThat(result.ids()).as(entry.getKey()).isEqualTo(expected);
+            report.append("%n  %-22s %-30s %6d rows %4d pages %6d ms".formatted(
+                    entry.getKey(), result.index(), expected.size(), result.pages(), best));
+        }
+        log.info("Training search over {} trainings, pages of 200, best of 3:{}", TRAININGS, report);
+    }
+
+    @Test
+    void shouldRejectUnboundedOrInvalidSearches() throws Exception {
+        mockMvc.perform(get("/v1/trainings/search"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("minDistance", "5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("activityType", "RUNNING").param("limit", "100000"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("activityType", "RUNNING").param("cursor", "abc"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("activityType", "RUNNING")
+                        .param("minSpeed", "20").param("maxSpeed", "10"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("activityType", "ROWING"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/trainings/search").param("activityType", "RUNNING"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.index").value("idx_trainings_type_start"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    private Result searchAllPages(Map<String, Object> params) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        String index;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/v1/trainings/search").param("limit", "200");
+            params.forEach((name, value) -> request.param(name, value.toString()));
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            JsonNode page = objectMapper.readTree(mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            page.get("trainings").forEach(training -> ids.add(training.get("id").asLong()));
+            index = page.get("index").asText();
+            cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+            pages++;
+        } while (cursor != null);
+        return new Result(ids, index, pages);
+    }
+
+    private List<Row> generateTrainings() {
+        jdbcTemplate.batchUpdate("INSERT INTO users (first_name, last_name, birthdate, email) VALUES (?, ?, ?, ?)",
+                IntStream.range(0, USERS)
+                        .mapToObj(i -> new Object[]{"Search" + i, "User" + i, Date.valueOf(LocalDate.of(1990, 1, 1)),
+                                "search" + i + "@domain.com"})
+                        .toList());
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class);
+        Random random = new Random(46);
+        ActivityType[] activityTypes = ActivityType.values();
+        List<Object[]> trainings = new ArrayList<>(TRAININGS);
+        for (int i = 0; i < TRAININGS; i++) {
+            // Co trzeci trening zaczyna się razem z poprzednim - kursor musi rozróżniać je po ID.
+            long start = FIRST_START.toEpochMilli() + (i - i % 3 / 2) * 23 * MINUTE;
+            trainings.add(new Object[]{userIds.get(random.nextInt(USERS)), new Timestamp(start), new Timestamp(start + 45 * MINUTE),
+                    activityTypes[random.nextInt(activityTypes.length)].ordinal(), 1 + random.nextDouble() * 29,
+                    5 + random.nextDouble() * 25});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO trainings (user_id, start_time, end_time, activity_type, distance, average_speed)
+                VALUES (?, ?, ?, ?, ?, ?)""", trainings);
+        return jdbcTemplate.query("SELECT id, user_id, start_time, activity_type, distance, average_speed FROM trainings",
+                (resultSet, rowNum) -> new Row(resultSet.getLong("id"), resultSet.getLong("user_id"),
+                        resultSet.getTimestamp("start_time").getTime(), activityTypes[resultSet.getInt("activity_type")],
+                        resultSet.getDouble("distance"), resultSet.getDouble("average_speed")));
+    }
+
+    private record Row(long id, long userId, long startTime, ActivityType activityType, double distance,
+                       double averageSpeed) {
+    }
+
+    private record Search(Map<String, Object> params, Predicate<Row> expected) {
+    }
+
+    private record Result(List<Long> ids, String index, int pages) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.training.internal.TrainingSegment.ArchivedTraining;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrainingSegmentTest {
+
+    private static final long JANUARY_2023 = 1_672_531_200_000L;
+
+    @TempDir
+    private Path directory;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void shouldReadBackEveryTraining_whenSegmentSpansManyBlocks() throws Exception {
+        List<ArchivedTraining> trainings = generateTrainings(5_000, 300);
+
+        TrainingSegment segment = TrainingSegment.write(directory.resolve("trainings.seg"), trainings);
+        TrainingSegment reopened = TrainingSegment.open(segment.path());
+
+        assertThat(reopened.rowCount()).isEqualTo(trainings.size());
+        assertThat(reopened.findAll()).containsExactlyInAnyOrderElementsOf(trainings);
+        assertThat(reopened.sizeInBytes()).isLessThan(trainings.size() * 7L * Long.BYTES);
+    }
+
+    @Test
+    void shouldReturnOnlyTrainingsOfUser_whenSearchingBySparseIndex() throws Exception {
+        List<ArchivedTraining> trainings = generateTrainings(5_000, 300);
+        TrainingSegment segment = TrainingSegment.write(directory.resolve("trainings.seg"), trainings);
+
+        for (long userId = 0; userId <= 301; userId++) {
+            long expectedUserId = userId;
+            assertThat(segment.findByUser(userId)).containsExactlyInAnyOrderElementsOf(
+                    trainings.stream().filter(training -> training.userId() == expectedUserId).toList());
+        }
+    }
+
+    @Test
+    void shouldReturnOnlyTrainingsFinishedAfterGivenTime() throws Exception {
+        List<ArchivedTraining> trainings = generateTrainings(2_000, 50);
+        TrainingSegment segment = TrainingSegment.write(directory.resolve("trainings.seg"), trainings);
+        long time = JANUARY_2023 + 15L * 24 * 3_600_000;
+
+        assertThat(segment.findFinishedAfter(time)).containsExactlyInAnyOrderElementsOf(
+                trainings.stream().filter(training -> training.endTime() > time).toList());
+    }
+
+    private List<ArchivedTraining> generateTrainings(int count, int users) {
+        List<ArchivedTraining> trainings = new ArrayList<>();
+        ActivityType[] activityTypes = ActivityType.values();
+        for (int i = 0; i < count; i++) {
+            long start = JANUARY_2023 + random.nextLong(31L * 24 * 3_600_000);
+            trainings.add(new ArchivedTraining(1_000 + i, 1 + random.nextInt(users), start,
+                    start + random.nextLong(4 * 3_600_000), activityTypes[random.nextInt(activityTypes.length)],
+                    random.nextDouble() * 100, random.nextDouble() * 30));
+        }
+        return trainings;
+    }
+}
@@ -0,0 +1,47 @@
+package com.capgemini.wsb.fitnesstracker.training.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class TrainingSyncIngestionIntegrationTest extends IntegrationTestBase {
+
+    static final int DEVICES = 16;
+    static final int TRAININGS_PER_DEVICE = 50;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void shouldCommitEveryTrainingInItsOwnTransaction() throws Exception {
+        List<User> devices = IntStream.range(0, DEVICES)
+                .mapToObj(i -> existingUser(new User("Device", "Owner", LocalDate.of(1990, 1, 1), "sync-%d@domain.com".formatted(i))))
+                .toList();
+
+        TrainingIngestionWorkload.Result result = TrainingIngestionWorkload.run(trainingService, devices, TRAININGS_PER_DEVICE,
+                entityManagerFactory.unwrap(SessionFactory.class).getStatistics());
+
+        log.info("Synchronous ingestion: {}", result);
+        assertThat(getAllTrainings()).hasSize(DEVICES * TRAININGS_PER_DEVICE);
+        assertThat(result.commits()).isGreaterThanOrEqualTo(DEVICES * TRAININGS_PER_DEVICE);
+    }
+}
@@ -0,0 +1,113 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+@SpringBootTest(properties = {"user.deletion.chunk-size=50", "user.deletion.pause-between-chunks=0ms"})
+class UserDeletionIntegrationTest extends IntegrationTestBase {
+
+    private static final int TRAININGS = 230;
+    private static final long HOUR = 3_600_000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldHideUserImmediately_andPurgeTrainingsTracksAndStatisticsInBackground() throws Exception {
+        User user = existingUser(new User("Usuwany", "Biegacz", LocalDate.of(1985, 4, 4), "deleted@domain.com"));
+        List<Training> trainings = new ArrayList<>();
+        for (int i = 0; i < TRAININGS; i++) {
+            trainings.add(new Training(user, new Date(i * 2 * HOUR), new Date(i * 2 * HOUR + HOUR), ActivityType.RUNNING,
+                    10 + i % 5, 10));
+        }
+        createAllTrainings(trainings);
+        Long trackedTrainingId = trainings.get(0).getId();
+        mockMvc.perform(post("/v1/trainings/{trainingId}/track/points", trackedTrainingId)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("""
+                                {"time": "1970-01-01T00:00:00Z", "latitude": 52.2297, "longitude": 21.0122}
+                                {"time": "1970-01-01T00:00:01Z", "latitude": 52.2298, "longitude": 21.0123}
+                                """))
+                .andExpect(status().isCreated());
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> count("SELECT COUNT(*) FROM track_levels WHERE training_id = ?", trackedTrainingId) > 0);
+        jdbcTemplate.update("""
+                INSERT INTO statistics (user_id, total_trainings, total_distance, total_calories_burned)
+                VALUES (?, ?, 0, 0)""", user.getId(), TRAININGS);
+        User other = existingUser(new User("Zostaje", "Biegacz", LocalDate.of(1985, 4, 4), "kept@domain.com"));
+        persistTraining(new Training(other, new Date(0), new Date(HOUR), ActivityType.CYCLING, 30, 25));
+
+        mockMvc.perform(delete("/v1/users/{id}", user.getId())).andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/v1/users/{id}", user.getId())).andExpect(status().isNotFound());
+        mockMvc.perform(delete("/v1/users/{id}", user.getId())).andExpect(status().isNotFound());
+        mockMvc.perform(get("/v1/trainings"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].user.email").value("kept@domain.com"));
+        mockMvc.perform(get("/v1/users/{id}/deletion", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.trainingsTotal").value(TRAININGS));
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> mockMvc.perform(get("/v1/users/{id}/deletion", user.getId()))
+                .andExpect(jsonPath("$.finishedAt").isNotEmpty())
+                .andExpect(jsonPath("$.trainingsDeleted").value(TRAININGS)));
+        assertThat(count("SELECT COUNT(*) FROM trainings WHERE user_id = ?", user.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM track_chunks WHERE training_id = ?", trackedTrainingId)).isZero();
+        assertThat(count("SELECT COUNT(*) FROM track_levels WHERE training_id = ?", trackedTrainingId)).isZero();
+        assertThat(count("SELECT COUNT(*) FROM statistics WHERE user_id = ?", user.getId())).isZero();
+        assertThat(count("SELECT COUNT(*) FROM users WHERE id = ?", user.getId())).isZero();
+        assertThat(getAllTrainings()).singleElement().extracting(training -> training.getUser().getId()).isEqualTo(other.getId());
+    }
+
+    @Test
+    void shouldRejectImportOfEmailOfUserBeingDeleted() throws Exception {
+        User user = existingUser(new User("Usuwany", "Importowany", LocalDate.of(1985, 4, 4), "reimported@domain.com"));
+        jdbcTemplate.update("UPDATE users SET deleted_at = CURRENT_TIMESTAMP WHERE id = ?", user.getId());
+
+        mockMvc.perform(post("/v1/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"firstName": "Nowy", "lastName": "Importowany", "birthdate": "1990-01-01",
+                                  "email": "reimported@domain.com"}]"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows[0].outcome").value("INVALID"))
+                .andExpect(jsonPath("$.rows[0].message").value("User with this email is being deleted"));
+
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", user.getId());
+    }
+
+    private long count(String sql, Long id) {
+        return jdbcTemplate.queryForObject(sql, Long.class, id);
+    }
+}
@@ -0,0 +1,155 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class UserImportIntegrationTest extends IntegrationTestBase {
+
+    private static final int GENERATED_USERS = 100_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteImportedUsers() {
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void shouldReportOutcomeOfEveryJsonRow() throws Exception {
+        User existing = existingUser(new User("Jan", "Kowalski", LocalDate.of(1980, 1, 1), "jan@domain.com"));
+        mockMvc.perform(get("/v1/users/{id}", existing.getId())).andExpect(jsonPath("$.firstName").value("Jan"));
+        String body = """
+                [
+                  {"firstName": "Anna", "lastName": "Nowak", "birthdate": "1990-02-03", "email": " Anna@Domain.com "},
+                  {"firstName": "Anna", "lastName": "Duplicate", "birthdate": "1990-02-03", "email": "anna@domain.COM"},
+                  {"firstName": "Janusz", "lastName": "Kowalski", "birthdate": "1981-01-01", "email": "JAN@domain.com"},
+                  {"firstName": "Ewa", "lastName": "Lis", "birthdate": "03.02.1990", "email": "ewa@domain.com"},
+                  {"firstName": "Bez", "lastName": "Maila", "birthdate": "1990-02-03"}
+                ]""";
+
+        JsonNode report = objectMapper.readTree(mockMvc.perform(post("/v1/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        assertThat(report.get("created").asLong()).isEqualTo(1);
+        assertThat(report.get("updated").asLong()).isEqualTo(1);
+        assertThat(report.get("duplicates").asLong()).isEqualTo(1);
+        assertThat(report.get("invalid").asLong()).isEqualTo(2);
+        JsonNode rows = report.get("rows");
+        assertThat(rows.get(0).get("outcome").asText()).isEqualTo("CREATED");
+        assertThat(rows.get(0).get("email").asText()).isEqualTo("anna@domain.com");
+        assertThat(rows.get(1).get("outcome").asText()).isEqualTo("DUPLICATE_IN_BATCH");
+        assertThat(rows.get(1).get("message").asText()).isEqualTo("Duplicate of row 1");
+        assertThat(rows.get(2).get("outcome").asText()).isEqualTo("UPDATED");
+        assertThat(rows.get(2).get("id").asLong()).isEqualTo(existing.getId());
+        assertThat(rows.get(3).get("outcome").asText()).isEqualTo("INVALID");
+        assertThat(rows.get(4).get("message").asText()).isEqualTo("Email is required");
+        mockMvc.perform(get("/v1/users/{id}", existing.getId())).andExpect(jsonPath("$.firstName").value("Janusz"));
+        mockMvc.perform(get("/v1/users/{id}", rows.get(0).get("id").asLong())).andExpect(jsonPath("$.lastName").value("Nowak"));
+    }
+
+    @Test
+    void shouldUpdateExistingUser_whenStoredEmailDiffersOnlyInCaseAndWhitespace() throws Exception {
+        User existing = existingUser(new User("Ola", "Mazur", LocalDate.of(1992, 3, 4), "Ola.Mazur@Domain.com"));
+        String body = """
+                [{"firstName": "Aleksandra", "lastName": "Mazur", "birthdate": "1992-03-04", "email": "OLA.mazur@domain.COM"}]""";
+
+        JsonNode report = objectMapper.readTree(mockMvc.perform(post("/v1/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        assertThat(report.get("updated").asLong()).isEqualTo(1);
+        assertThat(report.get("rows").get(0).get("id").asLong()).isEqualTo(existing.getId());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class)).isEqualTo(1);
+        mockMvc.perform(get("/v1/users/{id}", existing.getId())).andExpect(jsonPath("$.firstName").value("Aleksandra"));
+    }
+
+    @Test
+    void shouldImportAndThenUpsertLargeCsv() throws Exception {
+        StringBuilder csv = new StringBuilder("email,firstName,lastName,birthdate\n");
+        for (int i = 0; i < GENERATED_USERS; i++) {
+            csv.append("user").append(i).append("@corp.example,\"Imię ").append(i).append("\",\"Nazwisko, ").append(i)
+                    .append("\",1985-06-").append(String.format("%02d", i % 28 + 1)).append('\n');
+        }
+        csv.append("USER7@corp.example,Powtórzony,Wiersz,1985-06-01\n");
+        byte[] content = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        JsonNode created = importCsv(content);
+        JsonNode updated = importCsv(content);
+
+        log.info("Imported {} users from CSV in {} ms ({} rows/s), upserted them again in {} ms ({} rows/s)",
+                GENERATED_USERS, created.get("millis"), created.get("rowsPerSecond"), updated.get("millis"),
+                updated.get("rowsPerSecond"));
+        assertThat(created.get("created").asLong()).isEqualTo(GENERATED_USERS);
+        assertThat(created.get("duplicates").asLong()).isEqualTo(1);
+        assertThat(updated.get("updated").asLong()).isEqualTo(GENERATED_USERS);
+        assertThat(updated.get("created").asLong()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class)).isEqualTo(GENERATED_USERS);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_name FROM users WHERE email = 'user42@corp.example'", String.class))
+                .isEqualTo("Nazwisko, 42");
+    }
+
+    @Test
+    void shouldRejectCsvWithoutRequiredColumns() throws Exception {
+        mockMvc.perform(post("/v1/users/batch").contentType("text/csv").content("email,name\na@b.c,Jan\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReportRowsSavedBeforeMalformedJson() throws Exception {
+        String body = """
+                [
+                  {"firstName": "Anna", "lastName": "Nowak", "birthdate": "1990-02-03", "email": "anna@domain.com"},
+                  {"firstName": "Ewa", "lastName": "Lis", "birthdate": "1991-02-03", "email": "ewa@domain.com"},
+                  {"firstName": "Ola" "lastName": "Mazur"}
+                ]""";
+
+        JsonNode report = objectMapper.readTree(mockMvc.perform(post("/v1/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        assertThat(report.get("created").asLong()).isEqualTo(2);
+        assertThat(report.get("rows")).hasSize(2);
+        assertThat(report.get("error").asText()).startsWith("Malformed user import at row 3");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class)).isEqualTo(2);
+    }
+
+    private JsonNode importCsv(byte[] content) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/v1/users/batch").contentType("text/csv").content(content))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+    }
+}
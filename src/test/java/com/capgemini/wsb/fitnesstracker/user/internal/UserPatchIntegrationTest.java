@@ -0,0 +1,117 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.common.api.MergePatch;
+import com.capgemini.wsb.fitnesstracker.exception.api.VersionConflictException;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.api.UserDto;
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class UserPatchIntegrationTest extends IntegrationTestBase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void shouldPatchUserWithSingleUpdate_andRejectStaleVersion() throws Exception {
+        User user = existingUser(new User("Anna", "Nowak", LocalDate.of(1990, 2, 3), "anna.patch@domain.com"));
+        mockMvc.perform(get("/v1/users/{id}", user.getId())).andExpect(jsonPath("$.version").value(0));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(patch("/v1/users/{id}", user.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"lastName\": \"Kowalska\", \"version\": 0}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.firstName").value("Anna"))
+                .andExpect(jsonPath("$.lastName").value("Kowalska"))
+                .andExpect(jsonPath("$.version").value(1));
+        long patchStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        mockMvc.perform(put("/v1/users/{id}", user.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"firstName": "Anna", "lastName": "Kowalska-Nowak", "birthdate": "1990-02-03",
+                                 "email": "anna.patch@domain.com"}"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(2));
+        long putStatements = statistics.getPrepareStatementCount();
+        log.info("User update statements: PATCH {}, PUT {}", patchStatements, putStatements);
+        assertThat(patchStatements).isEqualTo(1);
+        assertThat(putStatements).isEqualTo(1);
+
+        mockMvc.perform(patch("/v1/users/{id}", user.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"firstName\": \"Ania\", \"version\": 1}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get("/v1/users/{id}", user.getId())).andExpect(jsonPath("$.firstName").value("Anna"));
+        mockMvc.perform(patch("/v1/users/{id}", user.getId())
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"email\": null}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/v1/users/{id}", Long.MAX_VALUE)
+                        .contentType(MergePatch.MEDIA_TYPE)
+                        .content("{\"firstName\": \"Nikt\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldRejectUpdate_whenUserWasModifiedConcurrently() {
+        User user = existingUser(new User("Ewa", "Lis", LocalDate.of(1991, 4, 5), "ewa.put@domain.com"));
+        User replacement = new User("Ewa", "Lis-Kot", LocalDate.of(1991, 4, 5), "ewa.put@domain.com");
+        UserDto replacementDto = new UserDto(null, "Ewa", "Lis-Kot", LocalDate.of(1991, 4, 5), "ewa.put@domain.com", null);
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            userRepository.findById(user.getId());
+            // Równoległa zmiana po odczycie użytkownika przez tę transakcję.
+            jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE id = ?", user.getId());
+            userService.updateUser(user.getId(), replacement);
+        })).isInstanceOf(VersionConflictException.class);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            userRepository.findById(user.getId());
+            jdbcTemplate.update("UPDATE users SET version = version + 1 WHERE id = ?", user.getId());
+            userService.updateUser(user.getId(), replacementDto);
+        })).isInstanceOf(VersionConflictException.class);
+    }
+}
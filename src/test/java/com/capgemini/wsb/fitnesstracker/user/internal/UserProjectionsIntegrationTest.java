@@ -0,0 +1,97 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Slf4j
+@IntegrationTest
+@AutoConfigureMockMvc(addFilters = false)
+class UserProjectionsIntegrationTest extends IntegrationTestBase {
+
+    private static final int USERS = 5_000;
+    private static final int ROUNDS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldReturnOnlyRequestedFields_inRequestedOrder() throws Exception {
+        User user = existingUser(new User("Sparse", "Fields", LocalDate.of(1990, 1, 1), "sparse@domain.com"));
+
+        mockMvc.perform(get("/v1/users").param("fields", "email,id,email"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(user.getId()))
+                .andExpect(jsonPath("$[0].email").value("sparse@domain.com"))
+                .andExpect(jsonPath("$[0].firstName").doesNotExist())
+                .andExpect(jsonPath("$[0].*", contains("sparse@domain.com", user.getId().intValue())));
+        mockMvc.perform(get("/v1/users/simple"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].*", contains(user.getId().intValue(), "sparse@domain.com")));
+        mockMvc.perform(get("/v1/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].birthdate").value("1990-01-01"))
+                .andExpect(jsonPath("$[0].version").value(0));
+    }
+
+    @Test
+    void shouldRejectUnknownOrEmptyFieldset() throws Exception {
+        mockMvc.perform(get("/v1/users").param("fields", "id,password"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/users").param("fields", " , "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void narrowFieldsetShouldProduceSmallerResponse() throws Exception {
+        List<Object[]> rows = IntStream.range(0, USERS)
+                .mapToObj(i -> new Object[]{"First" + i, "Last" + i, Date.valueOf(LocalDate.of(1980, 1, 1).plusDays(i)),
+                        "projection" + i + "@domain.com"})
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO users (first_name, last_name, birthdate, email) VALUES (?, ?, ?, ?)", rows);
+
+        Measurement full = measure(null);
+        Measurement narrow = measure("id,email");
+        log.info("GET /v1/users for {} users: all fields {} bytes in {} ms, id,email {} bytes in {} ms",
+                USERS, full.bytes(), full.millis(), narrow.bytes(), narrow.millis());
+        assertThat(narrow.bytes()).isLessThan(full.bytes() / 2);
+    }
+
+    private Measurement measure(String fields) throws Exception {
+        int bytes = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startedAt = System.nanoTime();
+            var request = get("/v1/users");
+            if (fields != null) {
+                request.param("fields", fields);
+            }
+            bytes = mockMvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray().length;
+            best = Math.min(best, (System.nanoTime() - startedAt) / 1_000_000);
+        }
+        return new Measurement(bytes, best);
+    }
+
+    private record Measurement(int bytes, long millis) {
+    }
+}
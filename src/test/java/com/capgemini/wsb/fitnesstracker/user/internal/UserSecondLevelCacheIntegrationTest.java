@@ -0,0 +1,127 @@
+package com.capgemini.wsb.fitnesstracker.user.internal;
+
+import com.capgemini.wsb.fitnesstracker.IntegrationTest;
+import com.capgemini.wsb.fitnesstracker.IntegrationTestBase;
+import com.capgemini.wsb.fitnesstracker.training.api.Training;
+import com.capgemini.wsb.fitnesstracker.training.api.TrainingService;
+import com.capgemini.wsb.fitnesstracker.training.internal.ActivityType;
+import com.capgemini.wsb.fitnesstracker.user.api.User;
+import com.capgemini.wsb.fitnesstracker.user.api.UserNotFoundException;
+import com.capgemini.wsb.fitnesstracker.user.api.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Date;
+
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@IntegrationTest
+// Usuwanie w tle kończy się po pierwszym treningu - pozostałe treningi usuniętego użytkownika czekają na usunięcie.
+@SpringBootTest(properties = {"user.deletion.chunk-size=1", "user.deletion.pause-between-chunks=1h"})
+class UserSecondLevelCacheIntegrationTest extends IntegrationTestBase {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private TrainingService trainingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void resetCache() {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictAllRegions();
+        sessionFactory.getStatistics().clear();
+    }
+
+    @Test
+    void shouldServeUserFromCache_andReturnUpdatedUser_whenUpdatedThroughService() {
+        User user = existingUser(generateUser());
+        userService.getUserById(user.getId());
+        assertThat(sessionFactory.getCache().containsEntity(User.class, user.getId())).isTrue();
+
+        // Zmiana z pominięciem Hibernate nie jest widoczna - odczyt pochodzi z cache.
+        jdbcTemplate.update("UPDATE users SET first_name = 'Bypassed' WHERE id = ?", user.getId());
+        assertThat(userService.getUserById(user.getId()).getFirstName()).isEqualTo(user.getFirstName());
+
+        userService.updateUser(user.getId(), new User("Updated", "Name", user.getBirthdate(), user.getEmail()));
+
+        assertThat(userService.getUserById(user.getId()).getFirstName()).isEqualTo("Updated");
+        Statistics statistics = sessionFactory.getStatistics();
+        assertThat(statistics.getDomainDataRegionStatistics("users").getHitCount()).isPositive();
+        assertThat(meterRegistry.find("hibernate.second.level.cache.requests").tags("region", "users", "result", "hit").meters())
+                .isNotEmpty();
+    }
+
+    @Test
+    void shouldEvictUserFromCache_whenDeletedThroughService() {
+        User user = existingUser(generateUser());
+        userService.getUserById(user.getId());
+        assertThat(sessionFactory.getCache().containsEntity(User.class, user.getId())).isTrue();
+
+        userService.deleteUser(user.getId());
+
+        assertThatThrownBy(() -> userService.getUserById(user.getId())).isInstanceOf(UserNotFoundException.class);
+    }
+
+    @Test
+    void shouldHideCachedTrainingsOfUser_whenDeletedThroughService() {
+        User user = existingUser(generateUser());
+        persistTraining(new Training(user, new Date(1_000_000), new Date(2_000_000), ActivityType.RUNNING, 10, 8));
+        Training remaining = persistTraining(new Training(user, new Date(3_000_000), new Date(4_000_000),
+                ActivityType.RUNNING, 10, 8));
+        assertThat(trainingService.getTrainingById(remaining.getId())).isPresent();
+        assertThat(trainingService.getTrainingsByType(ActivityType.RUNNING)).hasSize(2);
+        assertThat(sessionFactory.getCache().containsEntity(Training.class, remaining.getId())).isTrue();
+
+        userService.deleteUser(user.getId());
+        // Pierwsza porcja jest usuwana w tle - oczekiwanie, by nie wpłynęła na kolejne testy.
+        await().atMost(Duration.ofSeconds(10)).until(() -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM trainings WHERE user_id = ?", Long.class, user.getId()) == 1);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trainings WHERE id = ?", Long.class, remaining.getId()))
+                .isEqualTo(1);
+        assertThat(trainingService.getTrainingById(remaining.getId())).isEmpty();
+        assertThat(trainingService.getTrainingsByType(ActivityType.RUNNING)).isEmpty();
+    }
+
+    @Test
+    void shouldCacheTrainingQuery_andInvalidateIt_whenTrainingIsSaved() {
+        User user = existingUser(generateUser());
+        persistTraining(new Training(user, new Date(1_000_000), new Date(2_000_000), ActivityType.RUNNING, 10, 8));
+
+        assertThat(trainingService.getTrainingsByType(ActivityType.RUNNING)).hasSize(1);
+        assertThat(trainingService.getTrainingsByType(ActivityType.RUNNING)).hasSize(1);
+        assertThat(sessionFactory.getStatistics().getQueryRegionStatistics("training-queries").getHitCount()).isEqualTo(1);
+
+        persistTraining(new Training(user, new Date(3_000_000), new Date(4_000_000), ActivityType.RUNNING, 10, 8));
+
+        assertThat(trainingService.getTrainingsByType(ActivityType.RUNNING)).hasSize(2);
+    }
+
+    private static User generateUser() {
+        return new User(randomUUID().toString(), randomUUID().toString(), LocalDate.of(1990, 1, 1), randomUUID().toString());
+    }
+}